@@ -83,6 +83,7 @@ public class Kernel {
     protected XdagSync sync;
     protected XdagPow pow;
     private SyncManager syncMgr;
+    protected RawBlockPruner rawPruner;
 
     protected Bytes firstAccount;
     protected Block firstBlock;
@@ -141,7 +142,10 @@ public class Kernel {
                 dbFactory.getDB(DatabaseName.INDEX),
                 dbFactory.getDB(DatabaseName.BLOCK),
                 dbFactory.getDB(DatabaseName.TIME),
-                dbFactory.getDB(DatabaseName.TXHISTORY));
+                dbFactory.getDB(DatabaseName.TXHISTORY),
+                new BlockCache(config.getNodeSpec().getStoreBlockInfoCacheSize(),
+                        config.getNodeSpec().getStoreRawBlockCacheSize()),
+                RawBlockSegmentStore.open(config));
         log.info("Block Store init.");
         blockStore.start();
 
@@ -168,6 +172,11 @@ public class Kernel {
         // Initialize blockchain
         blockchain = new BlockchainImpl(this);
         XdagStats xdagStats = blockchain.getXdagStats();
+
+        if (config.getNodeSpec().isStorePrune()) {
+            rawPruner = new RawBlockPruner(blockStore, config.getNodeSpec().getStorePruneKeepEpochs());
+            rawPruner.start();
+        }
         
         // Create genesis block if first startup
         if (xdagStats.getOurLastBlockHash() == null) {
@@ -282,6 +291,12 @@ public class Kernel {
 
         // Stop data layer
         blockchain.stopCheckMain();
+        if (rawPruner != null) {
+            rawPruner.stop();
+        }
+        if (orphanBlockStore != null) {
+            orphanBlockStore.stop();
+        }
 
         // Close all databases
         for (DatabaseName name : DatabaseName.values()) {
@@ -41,6 +41,7 @@ import io.xdag.crypto.encryption.Aes;
 import io.xdag.crypto.exception.CryptoException;
 import io.xdag.crypto.keys.ECKeyPair;
 import io.xdag.crypto.keys.PrivateKey;
+import io.xdag.crypto.keys.PublicKey;
 import io.xdag.utils.SimpleEncoder;
 import io.xdag.utils.Numeric;
 import io.xdag.utils.SimpleDecoder;
@@ -62,10 +63,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
@@ -90,6 +91,13 @@ public class Wallet {
     private final Config config;
 
     private final Map<Bytes, ECKeyPair> accounts = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Account positions by public key and by address hash, rebuilt lazily after the accounts change
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile KeyIndex keyIndex;
     private String password;
 
     // HD wallet key
@@ -130,14 +138,14 @@ public class Wallet {
     public void lock() {
         password = null;
         accounts.clear();
+        keyIndex = null;
     }
 
     public ECKeyPair getDefKey() {
-        List<ECKeyPair> accountList = getAccounts();
-        if (CollectionUtils.isNotEmpty(accountList)) {
-            return accountList.getFirst();
+        requireUnlocked();
+        synchronized (accounts) {
+            return accounts.isEmpty() ? null : accounts.values().iterator().next();
         }
-        return null;
     }
 
     /**
@@ -180,6 +188,7 @@ public class Wallet {
                         Bytes b = Bytes.wrap(toBytesAddress(account));
                         accounts.put(b, account);
                     }
+                    keyIndex = null;
                 }
             }
             this.password = password;
@@ -281,6 +290,7 @@ public class Wallet {
     public void setAccounts(List<ECKeyPair> list) {
         requireUnlocked();
         accounts.clear();
+        keyIndex = null;
         for (ECKeyPair key : list) {
             addAccount(key);
         }
@@ -291,9 +301,7 @@ public class Wallet {
      */
     public ECKeyPair getAccount(int idx) {
         requireUnlocked();
-        synchronized (accounts) {
-            return getAccounts().get(idx);
-        }
+        return keyIndex().keys.get(idx);
     }
 
     /**
@@ -353,6 +361,60 @@ public class Wallet {
         }
     }
 
+    /**
+     * Returns the position of the account owning the public key, as in {@link #getAccounts()}, or -1.
+     */
+    public int getAccountIndex(PublicKey publicKey) {
+        return getAccountIndex(publicKey.toBytes());
+    }
+
+    /**
+     * Returns the position of the account owning the compressed public key, as in {@link #getAccounts()}, or -1.
+     */
+    public int getAccountIndex(Bytes publicKey) {
+        requireUnlocked();
+        Integer idx = keyIndex().byPublicKey.get(publicKey);
+        return idx == null ? -1 : idx;
+    }
+
+    /**
+     * Returns the position of the account with the address hash, as in {@link #getAccounts()}, or -1.
+     */
+    public int getAccountIndex(byte[] address) {
+        requireUnlocked();
+        Integer idx = keyIndex().byAddress.get(Bytes.wrap(address));
+        return idx == null ? -1 : idx;
+    }
+
+    private KeyIndex keyIndex() {
+        KeyIndex idx = keyIndex;
+        if (idx == null) {
+            synchronized (accounts) {
+                idx = keyIndex;
+                if (idx == null) {
+                    idx = new KeyIndex(Lists.newArrayList(accounts.entrySet()));
+                    keyIndex = idx;
+                }
+            }
+        }
+        return idx;
+    }
+
+    private static final class KeyIndex {
+        private final List<ECKeyPair> keys = new ArrayList<>();
+        private final Map<Bytes, Integer> byPublicKey = new HashMap<>();
+        private final Map<Bytes, Integer> byAddress = new HashMap<>();
+
+        private KeyIndex(List<Entry<Bytes, ECKeyPair>> entries) {
+            for (int i = 0; i < entries.size(); i++) {
+                Entry<Bytes, ECKeyPair> entry = entries.get(i);
+                keys.add(entry.getValue());
+                byPublicKey.putIfAbsent(entry.getValue().getPublicKey().toBytes(), i);
+                byAddress.putIfAbsent(entry.getKey(), i);
+            }
+        }
+    }
+
     /**
      * Adds a new account to the wallet.
      */
@@ -366,6 +428,7 @@ public class Wallet {
             }
 
             accounts.put(b, newKey);
+            keyIndex = null;
             return true;
         }
     }
@@ -405,7 +468,9 @@ public class Wallet {
     public boolean removeAccount(byte[] address) {
         requireUnlocked();
         synchronized (accounts) {
-            return accounts.remove(Bytes.of(address)) != null;
+            boolean removed = accounts.remove(Bytes.of(address)) != null;
+            keyIndex = null;
+            return removed;
         }
     }
 
@@ -473,6 +538,7 @@ public class Wallet {
 //            Bip32Key bip44Keypair = WalletUtils.generateBip44KeyPair(masterKeyPair, nextAccountIndex++);
             Bytes b = Bytes.wrap(toBytesAddress(bip44Keypair.keyPair()));
             accounts.put(b, bip44Keypair.keyPair());
+            keyIndex = null;
             return bip44Keypair.keyPair();
         }
     }
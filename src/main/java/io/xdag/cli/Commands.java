@@ -37,6 +37,7 @@ import io.xdag.net.Channel;
 import io.xdag.pool.ChannelSupervise;
 import io.xdag.utils.BasicUtils;
 import io.xdag.utils.BytesUtils;
+import io.xdag.utils.UInt128;
 import io.xdag.utils.XdagTime;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -50,7 +51,6 @@ import org.apache.tuweni.units.bigints.UInt64;
 import org.bouncycastle.util.encoders.Hex;
 
 import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
@@ -285,8 +285,8 @@ public class Commands {
         // Create and broadcast transaction blocks
         List<BlockWrapper> txs = createTransactionBlock(ourAccounts, to, remark, txNonce, txFee);
         for (BlockWrapper blockWrapper : txs) {
-            ImportResult result = kernel.getSyncMgr().validateAndAddNewBlock(blockWrapper);
-            if (result == ImportResult.IMPORTED_BEST || result == ImportResult.IMPORTED_NOT_BEST) {
+            ImportOutcome result = kernel.getSyncMgr().validateAndAddNewBlock(blockWrapper);
+            if (result.isImported()) {
                 kernel.getChannelMgr().sendNewBlock(blockWrapper);
                 Block block = new Block(new XdagBlock(blockWrapper.getBlock().getXdagBlock().getData().toArray()));
                 List<Address> inputs = block.getInputs();
@@ -298,7 +298,7 @@ public class Commands {
                     }
                 }
                 str.append(hash2Address(blockWrapper.getBlock().getHashLow())).append("\n");
-            } else if (result == ImportResult.INVALID_BLOCK) {
+            } else if (result.getResult() == ImportResult.INVALID_BLOCK) {
                 str.append(result.getErrorInfo());
             }
         }
@@ -412,9 +412,9 @@ public class Commands {
         XdagTopStatus xdagTopStatus = kernel.getBlockchain().getXdagTopStatus();
 
         // Calculate difficulties
-        BigInteger currentDiff = xdagTopStatus.getTopDiff() != null ? xdagTopStatus.getTopDiff() : BigInteger.ZERO;
-        BigInteger netDiff = xdagStats.getMaxdifficulty() != null ? xdagStats.getMaxdifficulty() : BigInteger.ZERO;
-        BigInteger maxDiff = netDiff.max(currentDiff);
+        UInt128 currentDiff = xdagTopStatus.getTopDiff() != null ? xdagTopStatus.getTopDiff() : UInt128.ZERO;
+        UInt128 netDiff = xdagStats.getMaxdifficulty() != null ? xdagStats.getMaxdifficulty() : UInt128.ZERO;
+        UInt128 maxDiff = netDiff.max(currentDiff);
 
         return String.format("""
                         Statistics for ours and maximum known parameters:
@@ -435,8 +435,8 @@ public class Commands {
                 xdagStats.nextra,
                 xdagStats.nnoref,
                 xdagStats.nwaitsync,
-                currentDiff.toString(16),
-                maxDiff.toString(16),
+                currentDiff.toHexString(),
+                maxDiff.toHexString(),
                 kernel.getBlockchain().getSupply(xdagStats.nmain).toDecimal(9, XUnit.XDAG).toPlainString(),
                 kernel.getBlockchain().getSupply(Math.max(xdagStats.nmain, xdagStats.totalnmain)).toDecimal(9, XUnit.XDAG).toPlainString(),
                 kernel.getAddressStore().getAllBalance().toDecimal(9, XUnit.XDAG).toPlainString(),
@@ -575,7 +575,7 @@ public class Commands {
                 getStateByFlags(block.getInfo().getFlags()),
                 Hex.toHexString(block.getInfo().getHash()),
                 block.getInfo().getRemark() == null ? StringUtils.EMPTY : new String(block.getInfo().getRemark(), StandardCharsets.UTF_8),
-                block.getInfo().getDifficulty().toString(16),
+                block.getInfo().getDifficulty().toHexString(),
                 hash2Address(block.getHash()), block.getInfo().getAmount().toDecimal(9, XUnit.XDAG).toPlainString(),
                 block.getInfo().getRef() == null ? "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA" : hash2Address(Bytes32.wrap(block.getInfo().getRef())),
                 block.getInfo().getRef() == null ? XAmount.ZERO.toDecimal(9, XUnit.XDAG).toPlainString() :  kernel.getBlockStore().getBlockInfoByHash(block.getHashLow()).getFee().toDecimal(9, XUnit.XDAG).toPlainString()
@@ -798,8 +798,8 @@ public class Commands {
         // Generate multiple transaction blocks
         List<BlockWrapper> txs = createTransactionBlock(ourBlocks, to, remark, null, XAmount.ZERO);
         for (BlockWrapper blockWrapper : txs) {
-            ImportResult result = kernel.getSyncMgr().validateAndAddNewBlock(blockWrapper);
-            if (result == ImportResult.IMPORTED_BEST || result == ImportResult.IMPORTED_NOT_BEST) {
+            ImportOutcome result = kernel.getSyncMgr().validateAndAddNewBlock(blockWrapper);
+            if (result.isImported()) {
                 kernel.getChannelMgr().sendNewBlock(blockWrapper);
                 str.append(BasicUtils.hash2Address(blockWrapper.getBlock().getHashLow())).append("\n");
             }
@@ -822,8 +822,8 @@ public class Commands {
         // Generate transaction blocks to reward node
         List<BlockWrapper> txs = createTransactionBlock(paymentsToNodesMap, to, remark, null, XAmount.ZERO);
         for (BlockWrapper blockWrapper : txs) {
-            ImportResult result = kernel.getSyncMgr().validateAndAddNewBlock(blockWrapper);
-            if (result == ImportResult.IMPORTED_BEST || result == ImportResult.IMPORTED_NOT_BEST) {
+            ImportOutcome result = kernel.getSyncMgr().validateAndAddNewBlock(blockWrapper);
+            if (result.isImported()) {
                 kernel.getChannelMgr().sendNewBlock(blockWrapper);
                 str.append(BasicUtils.hash2Address(blockWrapper.getBlock().getHashLow()));
             } else {
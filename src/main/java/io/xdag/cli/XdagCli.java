@@ -34,9 +34,12 @@ import io.xdag.crypto.bip.Bip39Mnemonic;
 import io.xdag.crypto.encoding.Base58;
 import io.xdag.crypto.keys.AddressUtils;
 import io.xdag.crypto.keys.ECKeyPair;
-import io.xdag.db.SnapshotStore;
 import io.xdag.db.rocksdb.DatabaseName;
+import io.xdag.db.rocksdb.RawBlockSegmentStore;
+import io.xdag.db.rocksdb.RocksdbFactory;
 import io.xdag.db.rocksdb.RocksdbKVSource;
+import io.xdag.db.rocksdb.RocksdbMigration;
+import io.xdag.db.rocksdb.SnapshotFile;
 import io.xdag.db.rocksdb.SnapshotStoreImpl;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.XdagTime;
@@ -49,7 +52,9 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Scanner;
 import org.apache.commons.lang3.Strings;
@@ -61,6 +66,11 @@ public class XdagCli extends Launcher {
 
     private static final Scanner scanner = new Scanner(new InputStreamReader(System.in, StandardCharsets.UTF_8));
 
+    /**
+     * Stores written to a snapshot file, in file order
+     */
+    private static final List<String> SNAPSHOT_SECTIONS = List.of("SNAPSHOT/BLOCKS", "SNAPSHOT/ADDRESS");
+
     /**
      * Creates a new Xdag CLI instance.
      */
@@ -131,6 +141,24 @@ public class XdagCli extends Launcher {
                 .hasArg(true).optionalArg(true).argName("covertuint").type(String.class)
                 .build();
         addOption(makeSnapshotOption);
+
+        Option exportSnapshotOption = Option.builder()
+                .longOpt(XdagOption.EXPORT_SNAPSHOT.toString()).desc("make snapshot and write it to a file")
+                .hasArg(true).optionalArg(false).argName("filename").type(String.class)
+                .build();
+        addOption(exportSnapshotOption);
+
+        Option importSnapshotOption = Option.builder()
+                .longOpt(XdagOption.IMPORT_SNAPSHOT.toString()).desc("load a snapshot file for --enablesnapshot")
+                .hasArg(true).optionalArg(false).argName("filename").type(String.class)
+                .build();
+        addOption(importSnapshotOption);
+
+        Option migrateStoreOption = Option.builder()
+                .longOpt(XdagOption.MIGRATE_STORE.toString())
+                .desc("move the store databases into column families of one database")
+                .build();
+        addOption(migrateStoreOption);
     }
 
     public static void main(String[] args, XdagCli cli) throws Exception {
@@ -194,6 +222,12 @@ public class XdagCli extends Launcher {
                 convertXAmount = true;
             }
             makeSnapshot(convertXAmount);
+        } else if (cmd.hasOption(XdagOption.EXPORT_SNAPSHOT.toString())) {
+            exportSnapshot(cmd.getOptionValue(XdagOption.EXPORT_SNAPSHOT.toString()).trim());
+        } else if (cmd.hasOption(XdagOption.IMPORT_SNAPSHOT.toString())) {
+            importSnapshot(cmd.getOptionValue(XdagOption.IMPORT_SNAPSHOT.toString()).trim());
+        } else if (cmd.hasOption(XdagOption.MIGRATE_STORE.toString())) {
+            migrateStore();
         } else {
             if (cmd.hasOption(XdagOption.ENABLE_SNAPSHOT.toString())) {
                 String[] values = cmd.getOptionValues(XdagOption.ENABLE_SNAPSHOT.toString().trim());
@@ -500,32 +534,114 @@ public class XdagCli extends Launcher {
         return new String(console.readPassword(prompt));
     }
 
-    public void makeSnapshot(boolean b) {
+    public SnapshotStoreImpl makeSnapshot(boolean b) {
         System.out.println("make snapshot start");
         System.out.println("convertXAmount = " + b);
         long start = System.currentTimeMillis();
         this.getConfig().getSnapshotSpec().setSnapshotJ(true);
-        RocksdbKVSource blockSource = new RocksdbKVSource(DatabaseName.TIME.toString());
-        blockSource.setConfig(getConfig());
+        RocksdbFactory dbFactory = null;
+        RocksdbKVSource blockSource;
+        RocksdbKVSource indexSource;
+        if (getConfig().getNodeSpec().isStoreColumnFamilies()) {
+            dbFactory = new RocksdbFactory(getConfig());
+            blockSource = (RocksdbKVSource) dbFactory.getDB(DatabaseName.TIME);
+            indexSource = (RocksdbKVSource) dbFactory.getDB(DatabaseName.INDEX);
+        } else {
+            blockSource = new RocksdbKVSource(DatabaseName.TIME.toString());
+            blockSource.setConfig(getConfig());
+            indexSource = new RocksdbKVSource(DatabaseName.INDEX.toString());
+            indexSource.setConfig(getConfig());
+        }
         blockSource.init();
+        indexSource.init();
         RocksdbKVSource snapshotSource = new RocksdbKVSource("SNAPSHOT/BLOCKS");
         snapshotSource.setConfig(getConfig());
         snapshotSource.init();
-        RocksdbKVSource indexSource = new RocksdbKVSource(DatabaseName.INDEX.toString());
-        indexSource.setConfig(getConfig());
-        indexSource.init();
-        SnapshotStore snapshotStore = new SnapshotStoreImpl(snapshotSource);
+        SnapshotStoreImpl snapshotStore = new SnapshotStoreImpl(snapshotSource);
+        RawBlockSegmentStore rawSegments = RawBlockSegmentStore.open(getConfig());
+        if (rawSegments != null) {
+            rawSegments.start();
+            snapshotStore.setRawSegments(rawSegments);
+        }
 
         snapshotStore.makeSnapshot(blockSource,indexSource,b);
-
-        Path source = Paths.get(getConfig().getRootDir() + "/rocksdb/xdagdb/ADDRESS");
-        Path target = Paths.get(getConfig().getRootDir() + "/rocksdb/xdagdb/SNAPSHOT/ADDRESS");
-        copyDir(source.toString(),target.toString());
+        snapshotSource.close();
+
+        if (dbFactory != null) {
+            RocksdbKVSource addressSource = (RocksdbKVSource) dbFactory.getDB(DatabaseName.ADDRESS);
+            addressSource.init();
+            RocksdbKVSource snapshotAddressSource = new RocksdbKVSource("SNAPSHOT/ADDRESS");
+            snapshotAddressSource.setConfig(getConfig());
+            snapshotAddressSource.init();
+            RocksdbMigration.copy(addressSource, snapshotAddressSource, System.out);
+            snapshotAddressSource.close();
+            dbFactory.close();
+        } else {
+            Path source = Paths.get(getConfig().getRootDir() + "/rocksdb/xdagdb/ADDRESS");
+            Path target = Paths.get(getConfig().getRootDir() + "/rocksdb/xdagdb/SNAPSHOT/ADDRESS");
+            copyDir(source.toString(),target.toString());
+        }
         long end = System.currentTimeMillis();
         System.out.println("make snapshot done");
         System.out.println("time：" + (end - start) + "ms");
         System.out.println("snapshot height: " + snapshotStore.getHeight());
         System.out.println("next start frame: " + Long.toHexString(XdagTime.getEndOfEpoch(snapshotStore.getNextTime()) + 1));
+        return snapshotStore;
+    }
+
+    public void exportSnapshot(String file) throws IOException {
+        SnapshotStoreImpl snapshotStore = makeSnapshot(false);
+        System.out.println("export snapshot start");
+        long start = System.currentTimeMillis();
+        Map<String, RocksdbKVSource> sections = new LinkedHashMap<>();
+        for (String name : SNAPSHOT_SECTIONS) {
+            RocksdbKVSource source = new RocksdbKVSource(name);
+            source.setConfig(getConfig());
+            source.init();
+            sections.put(name, source);
+        }
+        try {
+            long count = SnapshotFile.export(Paths.get(file), snapshotStore.getHeight(), snapshotStore.getNextTime(),
+                    sections);
+            System.out.println("export snapshot done, " + count + " entries, time：" + (System.currentTimeMillis() - start) + "ms");
+        } finally {
+            sections.values().forEach(RocksdbKVSource::close);
+        }
+    }
+
+    public void importSnapshot(String file) throws IOException {
+        System.out.println("import snapshot start");
+        long start = System.currentTimeMillis();
+        Map<String, RocksdbKVSource> sections = new LinkedHashMap<>();
+        for (String name : SNAPSHOT_SECTIONS) {
+            RocksdbKVSource source = new RocksdbKVSource(name);
+            source.setConfig(getConfig());
+            source.init();
+            sections.put(name, source);
+        }
+        try {
+            // the file replaces whatever snapshot was there, once it is verified
+            SnapshotFile.Header header = SnapshotFile.ingest(Paths.get(file), sections::get,
+                    Paths.get(getConfig().getNodeSpec().getStoreDir(), "SNAPSHOT", "ingest"));
+            long nextFrame = XdagTime.getEndOfEpoch(header.getNextTime()) + 1;
+            System.out.println("import snapshot done, " + header.getEntries() + " entries, time：" + (System.currentTimeMillis() - start) + "ms");
+            System.out.println("snapshot height: " + header.getHeight());
+            System.out.println("next start frame: " + Long.toHexString(nextFrame));
+            System.out.println("start with --" + XdagOption.ENABLE_SNAPSHOT + " true " + header.getHeight() + " "
+                    + Long.toHexString(nextFrame));
+        } finally {
+            sections.values().forEach(RocksdbKVSource::close);
+        }
+    }
+
+    public void migrateStore() throws IOException {
+        System.out.println("migrate store to column families start");
+        long start = System.currentTimeMillis();
+        long count = RocksdbMigration.migrateToColumnFamilies(getConfig(), System.out);
+        System.out.println("migrate store done, " + count + " entries, time：" + (System.currentTimeMillis() - start) + "ms");
+        if (!getConfig().getNodeSpec().isStoreColumnFamilies()) {
+            System.out.println("set node.store.columnFamilies.enable = true in the config to use the migrated store");
+        }
     }
 
     /**
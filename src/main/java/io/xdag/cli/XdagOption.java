@@ -82,7 +82,22 @@ public enum XdagOption {
     /**
      * Create a new snapshot
      */
-    MAKE_SNAPSHOT("makesnapshot");
+    MAKE_SNAPSHOT("makesnapshot"),
+
+    /**
+     * Make a snapshot and write it to a snapshot file
+     */
+    EXPORT_SNAPSHOT("exportsnapshot"),
+
+    /**
+     * Load a snapshot file into the snapshot stores
+     */
+    IMPORT_SNAPSHOT("importsnapshot"),
+
+    /**
+     * Move standalone store databases into column families of one database
+     */
+    MIGRATE_STORE("migratestore");
 
     private final String name;
 
@@ -105,6 +105,17 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
     protected int storeMaxOpenFiles = 1024;
     protected int storeMaxThreads = 1;
     protected boolean storeFromBackup = false;
+    protected long storeBlockInfoCacheSize = 64;
+    protected long storeRawBlockCacheSize = 128;
+    protected boolean storeColumnFamilies = false;
+    protected long storeBlockCacheSize = 256;
+    protected long storeWriteBufferSize = 128;
+    protected Map<String, Map<String, String>> storeColumnFamilyOptions = new HashMap<>();
+    protected String storeProfile = "default";
+    protected Map<String, Map<String, String>> storeTuning = new HashMap<>();
+    protected boolean storeRawSegments = false;
+    protected boolean storePrune = false;
+    protected long storePruneKeepEpochs = 16384;
     protected String originStoreDir = "./testdate";
 
     // Whitelist configuration
@@ -249,6 +260,33 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
         enableTxHistory = config.hasPath("node.transaction.history.enable") && config.getBoolean("node.transaction.history.enable");
         enableGenerateBlock = config.hasPath("node.generate.block.enable") && config.getBoolean("node.generate.block.enable");
         txPageSizeLimit = config.hasPath("node.transaction.history.pageSizeLimit") ? config.getInt("node.transaction.history.pageSizeLimit") : 500;
+        storeBlockInfoCacheSize = config.hasPath("node.store.cache.blockInfo") ? config.getLong("node.store.cache.blockInfo") : 64;
+        storeRawBlockCacheSize = config.hasPath("node.store.cache.rawBlock") ? config.getLong("node.store.cache.rawBlock") : 128;
+        storeColumnFamilies = config.hasPath("node.store.columnFamilies.enable") && config.getBoolean("node.store.columnFamilies.enable");
+        storeBlockCacheSize = config.hasPath("node.store.blockCacheSize") ? config.getLong("node.store.blockCacheSize") : 256;
+        storeWriteBufferSize = config.hasPath("node.store.writeBufferSize") ? config.getLong("node.store.writeBufferSize") : 128;
+        storeRawSegments = config.hasPath("node.store.rawSegments.enable") && config.getBoolean("node.store.rawSegments.enable");
+        storePrune = config.hasPath("node.store.prune.enable") && config.getBoolean("node.store.prune.enable");
+        storePruneKeepEpochs = config.hasPath("node.store.prune.keepEpochs") ? config.getLong("node.store.prune.keepEpochs") : 16384;
+        if (config.hasPath("node.store.columnFamilies.options")) {
+            com.typesafe.config.Config cfOptions = config.getConfig("node.store.columnFamilies.options");
+            for (String store : cfOptions.root().keySet()) {
+                Map<String, String> options = new HashMap<>();
+                cfOptions.getConfig(store).entrySet()
+                        .forEach(e -> options.put(e.getKey(), String.valueOf(e.getValue().unwrapped())));
+                storeColumnFamilyOptions.put(store, options);
+            }
+        }
+        storeProfile = config.hasPath("node.store.profile") ? config.getString("node.store.profile") : "default";
+        if (config.hasPath("node.store.tuning")) {
+            com.typesafe.config.Config tuning = config.getConfig("node.store.tuning");
+            for (String store : tuning.root().keySet()) {
+                Map<String, String> options = new HashMap<>();
+                tuning.getConfig(store).entrySet()
+                        .forEach(e -> options.put(e.getKey(), String.valueOf(e.getValue().unwrapped())));
+                storeTuning.put(store, options);
+            }
+        }
         fundAddress = config.hasPath("fund.address") ? config.getString("fund.address") : "4duPWMbYUgAifVYkKDCWxLvRRkSByf5gb";
         fundRation = config.hasPath("fund.ration") ? config.getDouble("fund.ration") : 5;
         nodeRation = config.hasPath("node.ration") ? config.getDouble("node.ration") : 5;
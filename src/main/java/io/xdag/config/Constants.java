@@ -66,6 +66,10 @@ public class Constants {
     public static final long REQUEST_BLOCKS_MAX_TIME = UInt64.valueOf(1L << 20).toLong();
     public static final long REQUEST_WAIT = 64;
     public static final long MAX_ALLOWED_EXTRA = 65536;
+    /**
+     * Extra blocks older than this many epochs are dropped from memory
+     */
+    public static final long MAX_EXTRA_AGE_EPOCHS = 1024;
     /**
      * Number of confirmations per round is 16
      */
@@ -29,6 +29,7 @@ import io.xdag.net.message.MessageCode;
 
 import java.net.InetSocketAddress;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -79,6 +80,17 @@ public interface NodeSpec {
     int getStoreMaxOpenFiles();
     int getStoreMaxThreads();
     boolean isStoreFromBackup();
+    long getStoreBlockInfoCacheSize();
+    long getStoreRawBlockCacheSize();
+    boolean isStoreColumnFamilies();
+    long getStoreBlockCacheSize();
+    long getStoreWriteBufferSize();
+    Map<String, Map<String, String>> getStoreColumnFamilyOptions();
+    String getStoreProfile();
+    Map<String, Map<String, String>> getStoreTuning();
+    boolean isStoreRawSegments();
+    boolean isStorePrune();
+    long getStorePruneKeepEpochs();
 
     // Network packet settings
     int getNetMaxFrameBodySize();
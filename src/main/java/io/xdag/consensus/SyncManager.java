@@ -35,6 +35,7 @@ import io.xdag.net.Channel;
 import io.xdag.net.ChannelManager;
 import io.xdag.net.Peer;
 import io.xdag.net.node.Node;
+import io.xdag.utils.HashKey;
 import io.xdag.utils.XdagTime;
 import lombok.Getter;
 import lombok.Setter;
@@ -67,10 +68,21 @@ public class SyncManager extends AbstractXdagLifecycle {
     // Number of keys to remove when syncMap exceeds MAX_SIZE
     public static final int DELETE_NUM = 5000;
 
+    // Blocks submitted but not yet connected, further blocks are dropped and fetched again as missing parents
+    public static final int MAX_IN_FLIGHT = 4096;
+
     private static final ThreadFactory factory = new BasicThreadFactory.Builder()
             .namingPattern("SyncManager-thread-%d")
             .daemon(true)
             .build();
+    private static final ThreadFactory validatorFactory = new BasicThreadFactory.Builder()
+            .namingPattern("SyncManager-validator-%d")
+            .daemon(true)
+            .build();
+    private static final ThreadFactory connectorFactory = new BasicThreadFactory.Builder()
+            .namingPattern("SyncManager-connector-%d")
+            .daemon(true)
+            .build();
     private Kernel kernel;
     private Blockchain blockchain;
     private long importStart;
@@ -88,17 +100,33 @@ public class SyncManager extends AbstractXdagLifecycle {
     /**
      * Queue for blocks with missing links
      */
-    private ConcurrentHashMap<Bytes32, Queue<BlockWrapper>> syncMap = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<HashKey, Queue<BlockWrapper>> syncMap = new ConcurrentHashMap<>();
     /**
      * Queue for polling oldest blocks
      */
-    private ConcurrentLinkedQueue<Bytes32> syncQueue = new ConcurrentLinkedQueue<>();
+    private ConcurrentLinkedQueue<HashKey> syncQueue = new ConcurrentLinkedQueue<>();
 
     private ScheduledExecutorService checkStateTask;
 
     private ScheduledFuture<?> checkStateFuture;
     private final TransactionHistoryStore txHistoryStore;
 
+    /**
+     * Pre-validation stage of {@link #submitNewBlock}, verifies signatures in parallel
+     */
+    private final ExecutorService validators = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), validatorFactory);
+    /**
+     * Connect stage of {@link #submitNewBlock}, connects the pre-validated blocks one at a time in submission order
+     */
+    private final ExecutorService connector = Executors.newSingleThreadExecutor(connectorFactory);
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private final Object pipelineLock = new Object();
+    /**
+     * Connect stage of the last submitted block, the next one is connected after it
+     */
+    private CompletableFuture<Void> connectTail = CompletableFuture.completedFuture(null);
+
     public SyncManager(Kernel kernel) {
         this.kernel = kernel;
         this.blockchain = kernel.getBlockchain();
@@ -122,6 +150,8 @@ public class SyncManager extends AbstractXdagLifecycle {
             this.stateListener.isRunning = false;
         }
         stopStateTask();
+        validators.shutdown();
+        connector.shutdown();
     }
 
     private void checkState() {
@@ -173,16 +203,17 @@ public class SyncManager extends AbstractXdagLifecycle {
      * Process blocks in queue and add them to the chain
      */
     // TODO: Modify consensus
-    public ImportResult importBlock(BlockWrapper blockWrapper) {
+    public ImportOutcome importBlock(BlockWrapper blockWrapper) {
         log.debug("importBlock:{}", blockWrapper.getBlock().getHashLow());
-        ImportResult importResult = blockchain
-                .tryToConnect(new Block(new XdagBlock(blockWrapper.getBlock().getXdagBlock().getData().toArray())));
+        Block block = new Block(new XdagBlock(blockWrapper.getBlock().getXdagBlock().getData().toArray()));
+        block.copyValidation(blockWrapper.getBlock());
+        ImportOutcome importResult = blockchain.connectBlock(block);
 
-        if (importResult == EXIST) {
+        if (importResult.getResult() == EXIST) {
             log.debug("Block have exist:{}", blockWrapper.getBlock().getHashLow());
         }
 
-        if (!blockWrapper.isOld() && (importResult == IMPORTED_BEST || importResult == IMPORTED_NOT_BEST)) {
+        if (!blockWrapper.isOld() && importResult.isImported()) {
             Peer blockPeer = blockWrapper.getRemotePeer();
             Node node = kernel.getClient().getNode();
             if (blockPeer == null || !StringUtils.equals(blockPeer.getIp(), node.getIp()) || blockPeer.getPort() != node.getPort()) {
@@ -194,11 +225,73 @@ public class SyncManager extends AbstractXdagLifecycle {
         return importResult;
     }
 
-    public synchronized ImportResult validateAndAddNewBlock(BlockWrapper blockWrapper) {
-        blockWrapper.getBlock().parse();
-        ImportResult result = importBlock(blockWrapper);
+    /**
+     * Import a block received from the network without waiting for the chain. Blocks are pre-validated on the
+     * validator pool in parallel and connected one at a time on the connector thread in the order they were
+     * submitted. Never blocks the calling network thread.
+     */
+    public void submitNewBlock(BlockWrapper blockWrapper) {
+        if (!inFlight.tryAcquire()) {
+            // a block referring to the dropped one asks the peers for it again
+            log.debug("Import pipeline is full, drop block {}", blockWrapper.getBlock().getHashLow());
+            return;
+        }
+        CompletableFuture<ImportOutcome> checked;
+        try {
+            checked = CompletableFuture.supplyAsync(() -> preValidate(blockWrapper), validators);
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            return;
+        }
+        synchronized (pipelineLock) {
+            connectTail = connectTail.thenCombineAsync(checked, (previous, invalid) -> invalid, connector)
+                    .handleAsync((invalid, e) -> {
+                        try {
+                            if (e != null) {
+                                log.error("Failed to validate block {}", blockWrapper.getBlock().getHashLow(), e);
+                            } else if (invalid != null) {
+                                log.debug("validateAndAddNewBlock:{}, {}", blockWrapper.getBlock().getHashLow(), invalid);
+                            } else {
+                                addNewBlock(blockWrapper);
+                            }
+                        } catch (Exception ex) {
+                            log.error("Failed to import block {}", blockWrapper.getBlock().getHashLow(), ex);
+                        } finally {
+                            inFlight.release();
+                        }
+                        return null;
+                    }, connector);
+        }
+    }
+
+    public ImportOutcome validateAndAddNewBlock(BlockWrapper blockWrapper) {
+        ImportOutcome invalid = preValidate(blockWrapper);
+        if (invalid != null) {
+            log.debug("validateAndAddNewBlock:{}, {}", blockWrapper.getBlock().getHashLow(), invalid);
+            return invalid;
+        }
+        return addNewBlock(blockWrapper);
+    }
+
+    /**
+     * Stateless checks and signature verification, run outside the chain lock
+     *
+     * @return the failed result, null if the block may be connected
+     */
+    private ImportOutcome preValidate(BlockWrapper blockWrapper) {
+        Block block = blockWrapper.getBlock();
+        block.parse();
+        if (block.isPreValidated() || blockchain.getBlockByHash(block.getHashLow(), false) != null) {
+            // connecting reports it as existing
+            return null;
+        }
+        return blockchain.preValidate(block);
+    }
+
+    private synchronized ImportOutcome addNewBlock(BlockWrapper blockWrapper) {
+        ImportOutcome result = importBlock(blockWrapper);
         log.debug("validateAndAddNewBlock:{}, {}", blockWrapper.getBlock().getHashLow(), result);
-        switch (result) {
+        switch (result.getResult()) {
             case EXIST, IMPORTED_BEST, IMPORTED_NOT_BEST, IN_MEM -> syncPopBlock(blockWrapper);
             case NO_PARENT -> {
                 if (syncPushBlock(blockWrapper, result.getHashlow())) {//Return true to indicate that it has been more than 60 seconds since the last time it was placed here due to the lack of a parent reference, and request to inquire about the parent block from other nodes again
@@ -230,9 +323,9 @@ public class SyncManager extends AbstractXdagLifecycle {
     public boolean syncPushBlock(BlockWrapper blockWrapper, Bytes32 hashLow) {
         if (syncMap.size() >= MAX_SIZE) {
             for (int j = 0; j < DELETE_NUM; j++) {
-                List<Bytes32> keyList = new ArrayList<>(syncMap.keySet());
+                List<HashKey> keyList = new ArrayList<>(syncMap.keySet());
 
-                Bytes32 key = keyList.get(CryptoProvider.nextInt(0, keyList.size()));
+                HashKey key = keyList.get(CryptoProvider.nextInt(0, keyList.size()));
                 assert key != null;
                 if (syncMap.remove(key) != null) blockchain.getXdagStats().nwaitsync--;
             }
@@ -245,7 +338,7 @@ public class SyncManager extends AbstractXdagLifecycle {
         newQueue.add(blockWrapper);
         blockchain.getXdagStats().nwaitsync++;
 
-        syncMap.merge(hashLow, newQueue,
+        syncMap.merge(HashKey.of(hashLow), newQueue,
                 (oldQ, newQ) -> {
                     blockchain.getXdagStats().nwaitsync--;
                     for (BlockWrapper b : oldQ) {
@@ -274,13 +367,14 @@ public class SyncManager extends AbstractXdagLifecycle {
     public void syncPopBlock(BlockWrapper blockWrapper) {
         Block block = blockWrapper.getBlock();
 
-        Queue<BlockWrapper> queue = syncMap.getOrDefault(block.getHashLow(), null);
+        HashKey key = HashKey.of(block.getHashLow());
+        Queue<BlockWrapper> queue = syncMap.getOrDefault(key, null);
         if (queue != null) {
-            syncMap.remove(block.getHashLow());
+            syncMap.remove(key);
             blockchain.getXdagStats().nwaitsync--;
             queue.forEach(bw -> {
-                ImportResult importResult = importBlock(bw);
-                switch (importResult) {
+                ImportOutcome importResult = importBlock(bw);
+                switch (importResult.getResult()) {
                     case EXIST, IN_MEM, IMPORTED_BEST, IMPORTED_NOT_BEST -> {
                         // TODO: Need to remove after successful import
                         syncPopBlock(bw);
@@ -33,6 +33,8 @@ import io.xdag.crypto.keys.Signature;
 import io.xdag.crypto.keys.Signer;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.SimpleEncoder;
+import io.xdag.utils.UInt128;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -76,9 +78,15 @@ public class Block implements Cloneable {
      */
     private List<Address> outputs = new CopyOnWriteArrayList<>();
     /**
-     * Record public keys (prefix + compressed public key)
+     * Record public keys (prefix + compressed public key), decompressed lazily for parsed blocks
      */
-    private List<PublicKey> pubKeys = new CopyOnWriteArrayList<>();
+    private volatile List<PublicKey> pubKeys = new CopyOnWriteArrayList<>();
+    /**
+     * Compressed public keys of a parsed block, null for blocks built locally
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private List<Bytes> pubKeyFields;
     private Map<Signature, Integer> insigs = new LinkedHashMap<>();
     private Signature outsig;
     /**
@@ -87,11 +95,27 @@ public class Block implements Cloneable {
     private Bytes32 nonce;
     private XdagBlock xdagBlock;
     private boolean parsed;
+    /**
+     * Whether links, signatures and keys have been decoded from {@link #xdagBlock}
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile boolean bodyParsed = true;
     private boolean isOurs;
     private byte[] encoded;
     private int tempLength;
     private boolean pretopCandidate;
-    private BigInteger pretopCandidateDiff;
+    private UInt128 pretopCandidateDiff;
+    /**
+     * Keys whose signatures verified, computed once by {@link #verifiedKeys()}
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile List<PublicKey> verifiedKeys;
+    /**
+     * Set once {@link Blockchain#preValidate(Block)} passed, so that connecting skips the stateless checks
+     */
+    private volatile boolean preValidated;
 
     public Block(
             Config config,
@@ -231,36 +255,68 @@ public class Block implements Cloneable {
     }
 
     /**
-     * Parse 512 bytes data
+     * Parse the header of 512 bytes data, links, signatures and keys are decoded on first access
      */
     public void parse() {
         if (this.parsed) {
             return;
         }
+        this.verifiedKeys = null;
+        this.preValidated = false;
         if (this.info == null) {
             this.info = new BlockInfo();
         }
         this.info.setHash(calcHash());
-        Bytes32 header = Bytes32.wrap(xdagBlock.getField(0).getData());
-        this.transportHeader = header.getLong(0, ByteOrder.LITTLE_ENDIAN);
-        this.info.type = header.getLong(8, ByteOrder.LITTLE_ENDIAN);
-        this.info.setTimestamp(header.getLong(16, ByteOrder.LITTLE_ENDIAN));
-        this.info.setFee(XAmount.of(header.getLong(24, ByteOrder.LITTLE_ENDIAN), XUnit.NANO_XDAG));
+        Bytes data = xdagBlock.getData();
+        this.transportHeader = data.getLong(0, ByteOrder.LITTLE_ENDIAN);
+        this.info.type = data.getLong(8, ByteOrder.LITTLE_ENDIAN);
+        this.info.setTimestamp(data.getLong(16, ByteOrder.LITTLE_ENDIAN));
+        this.info.setFee(XAmount.of(data.getLong(24, ByteOrder.LITTLE_ENDIAN), XUnit.NANO_XDAG));
+        for (int i = 1; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
+            if (xdagBlock.getFieldType(i) == XDAG_FIELD_REMARK) {
+                this.info.setRemark(data.slice(i * 32, 32).toArray());
+            }
+        }
+        this.bodyParsed = false;
+        this.parsed = true;
+    }
+
+    private void ensureBody() {
+        if (!bodyParsed) {
+            parseBody();
+        }
+    }
+
+    /**
+     * Decode links, signatures, nonce and compressed keys, each into fresh collections so that clones
+     * taken before the body was decoded keep their own copy
+     */
+    private synchronized void parseBody() {
+        if (bodyParsed) {
+            return;
+        }
+        List<Address> bodyInputs = new CopyOnWriteArrayList<>();
+        List<Address> bodyOutputs = new CopyOnWriteArrayList<>();
+        List<Bytes> bodyKeys = new ArrayList<>();
+        Map<Signature, Integer> bodyInsigs = new LinkedHashMap<>();
+        Address bodyCoinBase = null;
+        TxAddress bodyTxNonce = null;
+        Signature bodyOutsig = null;
+        Bytes32 bodyNonce = null;
         for (int i = 1; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
             XdagField field = xdagBlock.getField(i);
             if (field == null) {
                 throw new IllegalArgumentException("xdagBlock field:" + i + " is null");
             }
             switch (field.getType()) {
-                case XDAG_FIELD_TRANSACTION_NONCE -> txNonceField = new TxAddress(field);
-                case XDAG_FIELD_IN -> inputs.add(new Address(field, false));
-                case XDAG_FIELD_INPUT -> inputs.add(new Address(field, true));
-                case XDAG_FIELD_OUT -> outputs.add(new Address(field, false));
-                case XDAG_FIELD_OUTPUT -> outputs.add(new Address(field, true));
-                case XDAG_FIELD_REMARK -> this.info.setRemark(field.getData().toArray());
+                case XDAG_FIELD_TRANSACTION_NONCE -> bodyTxNonce = new TxAddress(field);
+                case XDAG_FIELD_IN -> bodyInputs.add(new Address(field, false));
+                case XDAG_FIELD_INPUT -> bodyInputs.add(new Address(field, true));
+                case XDAG_FIELD_OUT -> bodyOutputs.add(new Address(field, false));
+                case XDAG_FIELD_OUTPUT -> bodyOutputs.add(new Address(field, true));
                 case XDAG_FIELD_COINBASE -> {
-                    this.coinBase = new Address(field, true);
-                    outputs.add(new Address(field, true));
+                    bodyCoinBase = new Address(field, true);
+                    bodyOutputs.add(new Address(field, true));
                 }
                 case XDAG_FIELD_SIGN_IN, XDAG_FIELD_SIGN_OUT -> {
                     BigInteger r;
@@ -285,40 +341,154 @@ public class Block implements Cloneable {
 
                                 Signature tmp = Signature.create(r, s, (byte) 0);
                                 if (ixf.getType().ordinal() == XDAG_FIELD_SIGN_IN.ordinal()) {
-                                    insigs.put(tmp, i);
+                                    bodyInsigs.put(tmp, i);
                                 } else {
-                                    outsig = tmp;
+                                    bodyOutsig = tmp;
                                 }
                             }
                         }
                     }
                     if (i == MAX_LINKS && field.getType().ordinal() == XDAG_FIELD_SIGN_IN.ordinal()) {
-                        this.nonce = Bytes32.wrap(xdagBlock.getField(i).getData());
+                        bodyNonce = Bytes32.wrap(xdagBlock.getField(i).getData());
                     }
                 }
                 case XDAG_FIELD_PUBLIC_KEY_0, XDAG_FIELD_PUBLIC_KEY_1 -> {
-                    Bytes key = xdagBlock.getField(i).getData();
+                    // keep the compressed form, decompression is deferred to getPubKeys()
                     boolean yBit = (field.getType().ordinal() == XDAG_FIELD_PUBLIC_KEY_1.ordinal());
-                    PublicKey publicKey = PublicKey.fromXCoordinate(key, yBit);
-                    //TODO
-                    //FixME
-                    //ECPoint point = Sign.decompressKey(key.toUnsignedBigInteger(), yBit);
-                    // Parse to uncompressed public key without prefix
-//                    byte[] encodePub = publicKey.toBytes().toArray();
-//                    byte[] encodePub = point.getEncoded(false);
-//                    SECPPublicKey publicKey = SECPPublicKey.create(
-//                            new BigInteger(1, Arrays.copyOfRange(encodePub, 1, encodePub.length)), Sign.CURVE_NAME);
-                    pubKeys.add(publicKey);
+                    bodyKeys.add(Bytes.concatenate(Bytes.of(yBit ? 0x03 : 0x02), field.getData()));
                 }
                 default -> {
                 }
                 //                    log.debug("no match xdagBlock field type:" + field.getType());
             }
         }
-        this.parsed = true;
+        this.inputs = bodyInputs;
+        this.outputs = bodyOutputs;
+        this.insigs = bodyInsigs;
+        this.coinBase = bodyCoinBase;
+        this.txNonceField = bodyTxNonce;
+        this.outsig = bodyOutsig;
+        this.nonce = bodyNonce;
+        this.pubKeyFields = Collections.unmodifiableList(bodyKeys);
+        this.pubKeys = null;
+        this.bodyParsed = true;
+    }
+
+    /**
+     * Public keys of the block, decompressed on first call
+     */
+    public List<PublicKey> getPubKeys() {
+        ensureBody();
+        List<PublicKey> keys = pubKeys;
+        return keys != null ? keys : decodePubKeys();
+    }
+
+    private synchronized List<PublicKey> decodePubKeys() {
+        if (pubKeys == null) {
+            List<PublicKey> keys = new CopyOnWriteArrayList<>();
+            for (Bytes encoded : pubKeyFields) {
+                keys.add(PublicKey.fromXCoordinate(encoded.slice(1), encoded.get(0) == 0x03));
+            }
+            pubKeys = keys;
+        }
+        return pubKeys;
+    }
+
+    /**
+     * Compressed public keys (prefix + x coordinate) without decompressing them
+     */
+    public List<Bytes> getPubKeyBytes() {
+        ensureBody();
+        List<Bytes> fields = pubKeyFields;
+        if (fields != null) {
+            return fields;
+        }
+        List<Bytes> res = new ArrayList<>(pubKeys.size());
+        for (PublicKey publicKey : pubKeys) {
+            res.add(publicKey.toBytes());
+        }
+        return res;
+    }
+
+    public void setPubKeys(List<PublicKey> pubKeys) {
+        ensureBody();
+        this.pubKeys = pubKeys;
+        this.pubKeyFields = null;
+    }
+
+    public List<Address> getInputs() {
+        ensureBody();
+        return inputs;
+    }
+
+    public List<Address> getOutputs() {
+        ensureBody();
+        return outputs;
+    }
+
+    public Address getCoinBase() {
+        ensureBody();
+        return coinBase;
+    }
+
+    public TxAddress getTxNonceField() {
+        ensureBody();
+        return txNonceField;
+    }
+
+    public Map<Signature, Integer> getInsigs() {
+        ensureBody();
+        return insigs;
+    }
+
+    public Bytes32 getNonce() {
+        ensureBody();
+        return nonce;
+    }
+
+    public void setNonce(Bytes32 nonce) {
+        ensureBody();
+        this.nonce = nonce;
+    }
+
+    public void setOutsig(Signature outsig) {
+        ensureBody();
+        this.outsig = outsig;
+    }
+
+    public void setInputs(List<Address> inputs) {
+        ensureBody();
+        this.inputs = inputs;
+    }
+
+    public void setOutputs(List<Address> outputs) {
+        ensureBody();
+        this.outputs = outputs;
+    }
+
+    public void setInsigs(Map<Signature, Integer> insigs) {
+        ensureBody();
+        this.insigs = insigs;
+    }
+
+    /**
+     * Copy of this block that shares nothing mutable with it, a block whose body was not decoded yet stays
+     * lazy and decodes its own copy
+     */
+    public Block copy() {
+        Block ano = (Block) clone();
+        if (ano != null && bodyParsed) {
+            ano.inputs = new CopyOnWriteArrayList<>(getInputs());
+            ano.outputs = new CopyOnWriteArrayList<>(getOutputs());
+            ano.insigs = new LinkedHashMap<>(getInsigs());
+            List<PublicKey> keys = pubKeys;
+            ano.pubKeys = keys == null ? null : new CopyOnWriteArrayList<>(keys);
+        }
+        return ano;
     }
 
     public byte[] toBytes() {
+        ensureBody();
         SimpleEncoder encoder = new SimpleEncoder();
         encoder.write(getEncodedBody());
 
@@ -347,6 +517,7 @@ public class Block implements Cloneable {
      * without signature
      */
     private byte[] getEncodedBody() {
+        ensureBody();
         SimpleEncoder encoder = new SimpleEncoder();
         encoder.writeField(getEncodedHeader());
         List<Address> all = Lists.newArrayList();
@@ -361,10 +532,8 @@ public class Block implements Cloneable {
         if (info.getRemark() != null) {
             encoder.write(info.getRemark());
         }
-        for (PublicKey publicKey : pubKeys) {
-            byte[] pubkeyBytes = publicKey.toBytes().toArray();
-            byte[] key = BytesUtils.subArray(pubkeyBytes, 1, 32);
-            encoder.writeField(key);
+        for (Bytes publicKey : getPubKeyBytes()) {
+            encoder.writeField(publicKey.slice(1, 32).toArray());
         }
         encoded = encoder.toBytes();
         return encoded;
@@ -404,6 +573,7 @@ public class Block implements Cloneable {
         Bytes32 hash = HashUtils.doubleSha256(Bytes.wrap(digest));
         //log.debug("sign hash:{}", Hex.toHexString(hash.toArray()));
         Signature signature = Signer.sign(hash, ecKey);
+        verifiedKeys = null;
         if (type == XDAG_FIELD_SIGN_OUT) {
             outsig = signature;
         } else {
@@ -415,6 +585,10 @@ public class Block implements Cloneable {
      * Only match input signatures and return useful keys
      */
     public List<PublicKey> verifiedKeys() {
+        List<PublicKey> cached = verifiedKeys;
+        if (cached != null) {
+            return cached;
+        }
         List<PublicKey> keys = getPubKeys();
         List<PublicKey> res = Lists.newArrayList();
         Bytes digest;
@@ -425,7 +599,7 @@ public class Block implements Cloneable {
                 // TODO: paulochen can this be replaced?
                 byte[] pubkeyBytes = publicKey.toBytes().toArray();
                 hash = HashUtils.doubleSha256(Bytes.wrap(digest, Bytes.wrap(pubkeyBytes)));
-                if (Signer.verify(hash, sig, publicKey)) {
+                if (SignatureCache.verify(hash, sig, publicKey)) {
                     res.add(publicKey);
                 }
             }
@@ -435,11 +609,22 @@ public class Block implements Cloneable {
             // TODO: paulochen can this be replaced?
             byte[] pubkeyBytes = publicKey.toBytes().toArray();
             hash = HashUtils.doubleSha256(Bytes.wrap(digest, Bytes.wrap(pubkeyBytes)));
-            if (Signer.verify(hash, this.getOutsig(), publicKey)) {
+            if (SignatureCache.verify(hash, this.getOutsig(), publicKey)) {
                 res.add(publicKey);
             }
         }
-        return res;
+        verifiedKeys = Collections.unmodifiableList(res);
+        return verifiedKeys;
+    }
+
+    /**
+     * Take over the pre-validation of a block decoded from the same raw data
+     */
+    public void copyValidation(Block validated) {
+        if (validated != this && validated.preValidated) {
+            this.verifiedKeys = validated.verifiedKeys;
+            this.preValidated = true;
+        }
     }
 
     /**
@@ -472,7 +657,8 @@ public class Block implements Cloneable {
     }
 
     public Signature getOutsig() {
-        return outsig == null ? null : outsig;
+        ensureBody();
+        return outsig;
     }
 
     @Override
@@ -541,6 +727,57 @@ public class Block implements Cloneable {
         return links;
     }
 
+    /**
+     * Number of links of the given type. While the body is not decoded the count comes from the field types of the
+     * header, so bulk paths that only classify blocks do not decode links, signatures and keys.
+     */
+    public int countLinks(XdagField.FieldType type) {
+        if (!bodyParsed && xdagBlock != null) {
+            return xdagBlock.countFields(type);
+        }
+        int count = 0;
+        for (Address link : inputs) {
+            if (link.getType() == type) {
+                count++;
+            }
+        }
+        for (Address link : outputs) {
+            if (link.getType() == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Visit the links in the order of {@link #getLinks()}. While the body is not decoded they are read straight from
+     * the raw fields into one reused hashlow, a visitor that keeps it has to copy it.
+     */
+    public void forEachLink(LinkVisitor visitor) {
+        if (bodyParsed || xdagBlock == null) {
+            for (Address link : getLinks()) {
+                visitor.visit(link.getAddress(), link.getIsAddress());
+            }
+            return;
+        }
+        MutableBytes32 hashlow = MutableBytes32.create();
+        // inputs first, then outputs, as the decoded body lists them
+        for (int pass = 0; pass < 2; pass++) {
+            for (int n = 1; n < XdagBlock.XDAG_BLOCK_FIELDS; n++) {
+                if (xdagBlock.isLink(n) && xdagBlock.isInputLink(n) == (pass == 0)) {
+                    xdagBlock.copyLinkHashLow(n, hashlow);
+                    visitor.visit(hashlow, xdagBlock.isAddressLink(n));
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface LinkVisitor {
+
+        void visit(Bytes32 hashlow, boolean isAddress);
+    }
+
     @Override
     public Object clone() {
         Block ano = null;
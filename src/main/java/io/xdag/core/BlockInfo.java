@@ -25,7 +25,7 @@
 package io.xdag.core;
 
 
-import java.math.BigInteger;
+import io.xdag.utils.UInt128;
 import java.util.Arrays;
 import java.util.Objects;
 import lombok.Getter;
@@ -45,7 +45,7 @@ public class BlockInfo {
     // Block height in the chain
     private long height;
     // Block difficulty value
-    private BigInteger difficulty;
+    private UInt128 difficulty;
     // Reference to another block
     private byte[] ref;
     // Link to block with maximum difficulty
@@ -67,6 +67,31 @@ public class BlockInfo {
     private boolean isSnapshot = false;
     private SnapshotInfo snapshotInfo = null;
 
+    /**
+     * Create a detached copy so callers can mutate it without affecting cached instances
+     */
+    public BlockInfo copy() {
+        BlockInfo copy = new BlockInfo();
+        copy.type = type;
+        copy.flags = flags;
+        copy.height = height;
+        copy.difficulty = difficulty;
+        copy.ref = ref == null ? null : ref.clone();
+        copy.maxDiffLink = maxDiffLink == null ? null : maxDiffLink.clone();
+        copy.fee = fee;
+        copy.remark = remark == null ? null : remark.clone();
+        copy.hash = hash == null ? null : hash.clone();
+        copy.hashlow = hashlow == null ? null : hashlow.clone();
+        copy.amount = amount;
+        copy.timestamp = timestamp;
+        copy.isSnapshot = isSnapshot;
+        if (snapshotInfo != null) {
+            byte[] data = snapshotInfo.getData();
+            copy.snapshotInfo = new SnapshotInfo(snapshotInfo.getType(), data == null ? null : data.clone());
+        }
+        return copy;
+    }
+
     @Override
     public String toString() {
         return "BlockInfo{" +
@@ -31,6 +31,7 @@ import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.units.bigints.UInt64;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public interface Blockchain {
 
@@ -40,6 +41,19 @@ public interface Blockchain {
     // Try to connect a new block to the blockchain
     ImportResult tryToConnect(Block block);
 
+    /**
+     * Same as {@link #tryToConnect(Block)}, also telling why a block was turned away
+     */
+    ImportOutcome connectBlock(Block block);
+
+    /**
+     * Run the checks of {@link #tryToConnect(Block)} that need no chain state and verify the signatures, so that
+     * connecting the block later does less work under the chain lock. Safe to call from several threads.
+     *
+     * @return the failed result, null if the block passed
+     */
+    ImportOutcome preValidate(Block block);
+
     // Create a new block with given parameters
     Block createNewBlock(
             Map<Address, ECKeyPair> pairs,
@@ -85,6 +99,9 @@ public interface Blockchain {
     // Get blocks within specified time range
     List<Block> getBlocksByTime(long starttime, long endtime);
 
+    // Lazily read blocks within specified time range, the stream has to be closed
+    Stream<Block> streamBlocksByTime(long starttime, long endtime);
+
     // Start main chain check thread with given period
     void startCheckMain(long period);
 
@@ -39,15 +39,18 @@ import io.xdag.crypto.hash.HashUtils;
 import io.xdag.crypto.keys.ECKeyPair;
 import io.xdag.crypto.keys.PublicKey;
 import io.xdag.crypto.keys.Signature;
-import io.xdag.crypto.keys.Signer;
 import io.xdag.db.*;
 import io.xdag.db.rocksdb.RocksdbKVSource;
 import io.xdag.db.rocksdb.SnapshotStoreImpl;
+import io.xdag.db.rocksdb.UnitOfWork;
 import io.xdag.listener.BlockMessage;
 import io.xdag.listener.Listener;
 import io.xdag.listener.PretopMessage;
 import io.xdag.utils.BasicUtils;
 import io.xdag.utils.BytesUtils;
+import io.xdag.utils.HashKey;
+import io.xdag.utils.HashKeyMap;
+import io.xdag.utils.UInt128;
 import io.xdag.utils.XdagTime;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -63,11 +66,11 @@ import org.apache.tuweni.units.bigints.UInt64;
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.encoders.Hex;
 
-import java.math.BigInteger;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.Stream;
 
 import static io.xdag.config.Constants.*;
 import static io.xdag.config.Constants.MessageType.NEW_LINK;
@@ -87,7 +90,6 @@ public class BlockchainImpl implements Blockchain {
 
     // Static gas fee accumulator
     private static XAmount sumGas = XAmount.ZERO;
-    private static final long MAX_ORPHAN_SIZE = 3750;
 
     // Thread factory for main chain checking
     private static final ThreadFactory factory = BasicThreadFactory.builder()
@@ -107,8 +109,9 @@ public class BlockchainImpl implements Blockchain {
     private final OrphanBlockStore orphanBlockStore;
 
     // In-memory pools and maps
-    private final LinkedHashMap<Bytes, Block> memOrphanPool = new LinkedHashMap<>();
-    private final Map<Bytes, Integer> memOurBlocks = new ConcurrentHashMap<>();
+    private final ExtraBlockPool memOrphanPool = new ExtraBlockPool(MAX_ALLOWED_EXTRA, MAX_EXTRA_AGE_EPOCHS);
+    private final Map<HashKey, Integer> memOurBlocks = new ConcurrentHashMap<>();
+    private final MainChainSegment mainSegment = new MainChainSegment();
 
     // Stats and status tracking
     private final XdagStats xdagStats;
@@ -127,15 +130,18 @@ public class BlockchainImpl implements Blockchain {
     private SnapshotStore snapshotAddressStore;
     private final XdagExtStats xdagExtStats;
 
-    // roll back transaction
+    // roll back transaction, both maps are guarded by mBlockTx
     @Getter
-    private final Map<Bytes32, Bytes32> mBlockTx = new ConcurrentHashMap<>();
+    private final HashKeyMap<Bytes32> mBlockTx = new HashKeyMap<>();
     @Getter
-    private final Map<Bytes32, Long> mBlockTimedOut = new ConcurrentHashMap<>();
+    private final HashKeyMap<Long> mBlockTimedOut = new HashKeyMap<>();
     private final ScheduledExecutorService rollBackLoop = Executors.newSingleThreadScheduledExecutor();
 
     private List<Block> rollTxList = new LinkedList<>();
 
+    // Unit of work whose rollback already puts the stats and the top status back
+    private UnitOfWork guardedUnit;
+
     private final Cache<Bytes32, Byte> syncTxStatusCache = CacheBuilder.newBuilder()
             .maximumSize(500000)
             .expireAfterWrite(60, TimeUnit.MINUTES)
@@ -212,8 +218,10 @@ public class BlockchainImpl implements Blockchain {
         checkLoop = new ScheduledThreadPoolExecutor(1, factory);
         this.startCheckMain(1024);
 
-        this.mBlockTx.clear();
-        this.mBlockTimedOut.clear();
+        synchronized (mBlockTx) {
+            this.mBlockTx.clear();
+            this.mBlockTimedOut.clear();
+        }
         this.startCleaner();
         List<Block> blocks = listMainBlocksByHeight(10);
         if (blocks != null) {
@@ -279,314 +287,269 @@ public class BlockchainImpl implements Blockchain {
 
     // Try to connect a new block to the chain
     @Override
-    public synchronized ImportResult tryToConnect(Block block) {
+    public ImportResult tryToConnect(Block block) {
+        return connectBlock(block).getResult();
+    }
+
+    @Override
+    public synchronized ImportOutcome connectBlock(Block block) {
 
         // TODO: if current height is snapshot height, we need change logic to process new block
 
-        try {
-            ImportResult result = ImportResult.IMPORTED_NOT_BEST;
-
-            // Validate block type
-            long type = block.getType() & 0xf;
-            if (kernel.getConfig() instanceof MainnetConfig) {
-                if (type != XDAG_FIELD_HEAD.asByte()) {
-                    result = ImportResult.ERROR;
-                    result.setErrorInfo("Block type error, is not a mainnet block");
-                    log.debug("Block type error, is not a mainnet block");
-                    return result;
-                }
-            } else {
-                if (type != XDAG_FIELD_HEAD_TEST.asByte()) {
-                    result = ImportResult.ERROR;
-                    result.setErrorInfo("Block type error, is not a testnet block");
-                    log.debug("Block type error, is not a testnet block");
-                    return result;
-                }
+        // all store writes of this connect, including setMain/unSetMain on a chain switch, go out as one batch
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            restoreOnRollback(uow);
+            try {
+                return connect(block);
+            } catch (Throwable e) {
+                // a failed connect must not leave part of its writes behind
+                uow.setRollbackOnly();
+                throw e;
             }
+        } catch (Throwable e) {
+            log.error(e.getMessage(), e);
+            return ImportOutcome.of(ImportResult.ERROR, e.getMessage());
+        }
+    }
 
-            // Validate block timestamp
-            if (block.getTimestamp() > (XdagTime.getCurrentTimestamp() + MAIN_CHAIN_PERIOD / 4)
-                    || block.getTimestamp() < kernel.getConfig().getXdagEra()
-            ) {
-                result = ImportResult.INVALID_BLOCK;
-                result.setErrorInfo("Block's time is illegal");
-                log.debug("Block's time is illegal");
-                return result;
-            }
+    /**
+     * Put the stats and the top status back as they were when the unit was entered if its writes are discarded.
+     * The pools and maps of the chain undo each of their changes themselves.
+     */
+    private void restoreOnRollback(UnitOfWork uow) {
+        if (guardedUnit == uow) {
+            return;
+        }
+        guardedUnit = uow;
+        XdagStats stats = new XdagStats(xdagStats);
+        byte[] top = xdagTopStatus.getTop();
+        UInt128 topDiff = xdagTopStatus.getTopDiff();
+        byte[] preTop = xdagTopStatus.getPreTop();
+        UInt128 preTopDiff = xdagTopStatus.getPreTopDiff();
+        uow.onRollback(() -> {
+            xdagStats.rollbackTo(stats);
+            xdagTopStatus.setTop(top);
+            xdagTopStatus.setTopDiff(topDiff);
+            xdagTopStatus.setPreTop(preTop);
+            xdagTopStatus.setPreTopDiff(preTopDiff);
+        });
+    }
 
-            if (isAccountTx(block) && orphanBlockStore.getOrphanSize() >= MAX_ORPHAN_SIZE) {
-                result = ImportResult.INVALID_BLOCK;
-                result.setErrorInfo("Orphan block pool is full");
-                log.debug("Orphan block pool is full");
-                return result;
-            }
+    private ImportOutcome connect(Block block) {
+        ImportResult result = ImportResult.IMPORTED_NOT_BEST;
 
-            // Check if block already exists
-            if (isExist(block.getHashLow())) {
-                return ImportResult.EXIST;
+        if (!block.isPreValidated()) {
+            ImportOutcome invalid = validateStateless(block);
+            if (invalid != null) {
+                return invalid;
             }
+        }
 
-            if (isExistInMem(block.getHashLow())) {
-                return ImportResult.IN_MEM;
-            }
+        // Check if block already exists
+        if (isExist(block.getHashLow())) {
+            return ImportOutcome.of(ImportResult.EXIST);
+        }
 
-            // Check if extra block
-            if (isExtraBlock(block)) {
-                updateBlockFlag(block, BI_EXTRA, true);
-            }
+        if (isExistInMem(block.getHashLow())) {
+            return ImportOutcome.of(ImportResult.IN_MEM);
+        }
 
-            if (isTxBlock(block) && XAmount.ZERO.compareTo(getTxFee(block)) == 0) {
-                result = ImportResult.INVALID_BLOCK;
-                result.setErrorInfo("There is a problem with the transaction fee of this transaction block");
-                log.debug("Block's fee is illegal");
-                return result;
-            }
+        // a re-broadcast of a transaction the pool holds already is reported as known above, not as turned away
+        if (isAccountTx(block) && !orphanBlockStore.admit(getAccountTxSender(block), getAccountTxNonce(block),
+                getTxFee(block))) {
+            log.debug("Orphan block pool is full or the fee is too low to replace");
+            return ImportOutcome.of(ImportResult.INVALID_BLOCK,
+                    "Orphan block pool is full or the fee is too low to replace");
+        }
 
-            // Validate block references
-            List<Address> all = block.getLinks().stream().distinct().toList();
-            int inputFieldCounter = 0;
+        // Check if extra block
+        if (isExtraBlock(block)) {
+            updateBlockFlag(block, BI_EXTRA, true);
+        }
 
-            for (Address ref : all) {
-                if (ref != null && !ref.isAddress) {
-                    if (ref.getType() == XDAG_FIELD_OUT && !ref.getAmount().isZero()) {
-                        result = ImportResult.INVALID_BLOCK;
-                        result.setHashlow(ref.getAddress());
-                        result.setErrorInfo("Address's amount isn't zero");
-                        log.debug("Address's amount isn't zero");
-                        return result;
-                    }
-                    Block refBlock = getBlockByHash(ref.getAddress(), false);
-                    if (refBlock == null) {
-                        result = ImportResult.NO_PARENT;
-                        result.setHashlow(ref.getAddress());
-                        result.setErrorInfo("Block have no parent for " + result.getHashlow().toHexString());
-                        log.debug("Block have no parent for {}", result.getHashlow().toHexString());
-                        return result;
-                    } else {
-                        // Ensure ref block's time is earlier than block's time
-                        if (refBlock.getTimestamp() >= block.getTimestamp()) {
-                            result = ImportResult.INVALID_BLOCK;
-                            result.setHashlow(refBlock.getHashLow());
-                            result.setErrorInfo("Ref block's time >= block's time");
-                            log.debug("Ref block's time >= block's time");
-                            return result;
-                        }
-                        // Ensure TX block's amount is enough to subtract minGas, Amount must >= 0.1
-                        if (ref.getType() == XDAG_FIELD_IN && ref.getAmount().subtract(getTxFee(block)).isNegative()) {
-                            result = ImportResult.INVALID_BLOCK;
-                            result.setHashlow(ref.getAddress());
-                            result.setErrorInfo("Ref block's balance < fee");
-                            log.debug("Ref block's balance < fee");
-                            return result;
-                        }
-                    }
+        // Validate block references
+        List<Address> all = block.getLinks().stream().distinct().toList();
+
+        for (Address ref : all) {
+            if (ref != null && !ref.isAddress) {
+                Block refBlock = getBlockByHash(ref.getAddress(), false);
+                if (refBlock == null) {
+                    log.debug("Block have no parent for {}", ref.getAddress().toHexString());
+                    return ImportOutcome.of(ImportResult.NO_PARENT,
+                            "Block have no parent for " + ref.getAddress().toHexString(), ref.getAddress());
                 } else {
-                    // Ensure that there is only one input.
-                    if (ref != null && ref.type == XDAG_FIELD_INPUT) {
-                        inputFieldCounter = inputFieldCounter + 1;
-                        if (inputFieldCounter > 1) {
-                            result = ImportResult.INVALID_BLOCK;
-                            result.setErrorInfo("The quantity of the input must be exactly one.");
-                            log.debug("The quantity of the input must be exactly one.");
-                            return result;
-                        }
-                    }
-                    if (ref != null && ref.type == XDAG_FIELD_INPUT && !addressStore.addressIsExist(BytesUtils.byte32ToArray(ref.getAddress()).toArray())) {
-                        result = ImportResult.INVALID_BLOCK;
-                        result.setErrorInfo("Address isn't exist " + Base58.encodeCheck(
-                                BytesUtils.byte32ToArray(ref.getAddress())));
-                        log.debug("Address isn't exist {}",
-                                Base58.encodeCheck(BytesUtils.byte32ToArray(ref.getAddress())));
-                        return result;
+                    // Ensure ref block's time is earlier than block's time
+                    if (refBlock.getTimestamp() >= block.getTimestamp()) {
+                        log.debug("Ref block's time >= block's time");
+                        return ImportOutcome.of(ImportResult.INVALID_BLOCK, "Ref block's time >= block's time",
+                                refBlock.getHashLow());
                     }
-                    // Ensure TX block's input's & output's amount is enough to subtract minGas, Amount must >= 0.1
-                    if (ref != null && (ref.getType() == XDAG_FIELD_INPUT || ref.getType() == XDAG_FIELD_OUTPUT)) {
-                        if (getTxFee(block).isPositive() && outPutLimit(block).isPositive()) {
-                            if (ref.getType() == XDAG_FIELD_INPUT && ref.getAmount().subtract(getTxFee(block)).isNegative()) {
-                                result = ImportResult.INVALID_BLOCK;
-                                result.setHashlow(ref.getAddress());
-                                result.setErrorInfo("Ref input amount < Gas");
-                                return result;
-                            } else if (ref.getType() == XDAG_FIELD_OUTPUT && ref.getAmount().subtract(outPutLimit(block)).isNegative()) {
-                                result = ImportResult.INVALID_BLOCK;
-                                result.setHashlow(ref.getAddress());
-                                result.setErrorInfo("Ref output amount < Gas");
-                                log.debug("Ref output amount < Gas");
-                                return result;
-                            }
-                        } else {
-                            result = ImportResult.INVALID_BLOCK;
-                            result.setErrorInfo("When constructing a block, the fee entered is illegal");
-                            return result;
-                        }
-                    }
-                }
-
-                // Determine if ref is a block
-                if (ref != null && compareAmountTo(ref.getAmount(), XAmount.ZERO) != 0) {
-                    log.debug("Try to connect a tx Block:{}", block.getHash().toHexString());
-                    updateBlockFlag(block, BI_EXTRA, false);
-                }
-            }
-
-            if (isAccountTx(block)) {
-                if(block.getTxNonceField() == null) {
-                    result = ImportResult.INVALID_BLOCK;
-                    result.setErrorInfo("Account transaction block must have nonce.");
-                    return result;
-                }
-            } else if (isTxBlock(block)) {
-                if(block.getTxNonceField() != null) {
-                    result = ImportResult.INVALID_BLOCK;
-                    result.setErrorInfo("The main block transaction block should not contain nonce.");
-                    return result;
                 }
             } else {
-                if(block.getTxNonceField() != null) {
-                    result = ImportResult.INVALID_BLOCK;
-                    result.setErrorInfo("The main block or link block should not contain nonce.");
-                    return result;
+                if (ref != null && ref.type == XDAG_FIELD_INPUT && !addressStore.addressIsExist(BytesUtils.byte32ToArray(ref.getAddress()).toArray())) {
+                    log.debug("Address isn't exist {}",
+                            Base58.encodeCheck(BytesUtils.byte32ToArray(ref.getAddress())));
+                    return ImportOutcome.of(ImportResult.INVALID_BLOCK, "Address isn't exist " + Base58.encodeCheck(
+                            BytesUtils.byte32ToArray(ref.getAddress())));
                 }
             }
 
-            // Validate block inputs
-            if (!canUseInput(block)) {
-                result = ImportResult.INVALID_BLOCK;
-                result.setHashlow(block.getHashLow());
-                result.setErrorInfo("Block's input can't be used");
-                log.debug("Block's input can't be used");
-                return ImportResult.INVALID_BLOCK;
+            // Determine if ref is a block
+            if (ref != null && compareAmountTo(ref.getAmount(), XAmount.ZERO) != 0) {
+                log.debug("Try to connect a tx Block:{}", block.getHash().toHexString());
+                updateBlockFlag(block, BI_EXTRA, false);
             }
+        }
 
-            int id = 0;
-            // Remove links
-            for (Address ref : all) {
-                FieldType fType;
-                if (!ref.isAddress) {
-                    removeOrphan(ref.getAddress(),
-                            (block.getInfo().flags & BI_EXTRA) != 0
-                                    ? OrphanRemoveActions.ORPHAN_REMOVE_EXTRA
-                                    : OrphanRemoveActions.ORPHAN_REMOVE_NORMAL);
+        // Validate block inputs
+        if (!canUseInput(block)) {
+            log.debug("Block's input can't be used");
+            return ImportOutcome.of(ImportResult.INVALID_BLOCK, "Block's input can't be used", block.getHashLow());
+        }
 
-                    fType = ref.getType().equals(XDAG_FIELD_IN) ? XDAG_FIELD_OUT : XDAG_FIELD_IN;
-                } else {
-                    fType = ref.getType().equals(XDAG_FIELD_INPUT) ? XDAG_FIELD_OUTPUT : XDAG_FIELD_INPUT;
-                }
+        int id = 0;
+        // Remove links
+        for (Address ref : all) {
+            FieldType fType;
+            if (!ref.isAddress) {
+                removeOrphan(ref.getAddress(),
+                        (block.getInfo().flags & BI_EXTRA) != 0
+                                ? OrphanRemoveActions.ORPHAN_REMOVE_EXTRA
+                                : OrphanRemoveActions.ORPHAN_REMOVE_NORMAL);
 
-                if (compareAmountTo(ref.getAmount(), XAmount.ZERO) != 0) {
-                    if (fType.equals(XDAG_FIELD_OUT) || fType.equals(XDAG_FIELD_OUTPUT)) {
-                        onNewTxHistory(ref.getAddress(), block.getHashLow(), fType, ref.getAmount(),
-                                block.getTimestamp(), block.getInfo().getRemark(), ref.isAddress, id);
-                    } else {
-                        XAmount singleOutputFee = outPutLimit(block);
-                        onNewTxHistory(ref.getAddress(), block.getHashLow(), fType, ref.getAmount().subtract(singleOutputFee),
-                                block.getTimestamp(), block.getInfo().getRemark(), ref.isAddress, id);
-                    }
-                }
-                id++;
+                fType = ref.getType().equals(XDAG_FIELD_IN) ? XDAG_FIELD_OUT : XDAG_FIELD_IN;
+            } else {
+                fType = ref.getType().equals(XDAG_FIELD_INPUT) ? XDAG_FIELD_OUTPUT : XDAG_FIELD_INPUT;
             }
 
-            // Check current main chain
-            checkNewMain();
-
-            // Check if block is ours
-            if (checkMineAndAdd(block)) {
-                log.debug("A block hash:{} become mine", block.getHashLow().toHexString());
-                updateBlockFlag(block, BI_OURS, true);
+            if (compareAmountTo(ref.getAmount(), XAmount.ZERO) != 0) {
+                if (fType.equals(XDAG_FIELD_OUT) || fType.equals(XDAG_FIELD_OUTPUT)) {
+                    onNewTxHistory(ref.getAddress(), block.getHashLow(), fType, ref.getAmount(),
+                            block.getTimestamp(), block.getInfo().getRemark(), ref.isAddress, id);
+                } else {
+                    XAmount singleOutputFee = outPutLimit(block);
+                    onNewTxHistory(ref.getAddress(), block.getHashLow(), fType, ref.getAmount().subtract(singleOutputFee),
+                            block.getTimestamp(), block.getInfo().getRemark(), ref.isAddress, id);
+                }
             }
+            id++;
+        }
 
-            // Calculate block difficulty
-            BigInteger cuDiff = calculateCurrentBlockDiff(block);
-            calculateBlockDiff(block, cuDiff);
+        // Check current main chain
+        checkNewMain();
 
-            // Process extra blocks
-            processExtraBlock();
+        // Check if block is ours
+        if (checkMineAndAdd(block)) {
+            log.debug("A block hash:{} become mine", block.getHashLow().toHexString());
+            updateBlockFlag(block, BI_OURS, true);
+        }
 
-            // Update main chain based on difficulty
-            if (block.getInfo().getDifficulty().compareTo(xdagTopStatus.getTopDiff()) > 0) {
-                // Fork chain
-                long currentHeight = xdagStats.nmain;
+        // Calculate block difficulty
+        UInt128 cuDiff = calculateCurrentBlockDiff(block);
+        calculateBlockDiff(block, cuDiff);
 
-                // Find common ancestor
-                Block blockRef = findAncestor(block, isSyncFixFork(xdagStats.nmain));
+        // Process extra blocks
+        processExtraBlock();
 
-                // Unwind main chain to ancestor
-                unWindMain(blockRef);
+        // Update main chain based on difficulty
+        if (block.getInfo().getDifficulty().compareTo(xdagTopStatus.getTopDiff()) > 0) {
+            // Fork chain
+            switchMainChain(block);
 
-                // Update new chain
-                updateNewChain(block, isSyncFixFork(xdagStats.nmain));
+            Block currentTop = getBlockByHash(xdagTopStatus.getTop() == null ? null :
+                    Bytes32.wrap(xdagTopStatus.getTop()), false);
+            UInt128 currentTopDiff = xdagTopStatus.getTopDiff();
+            log.debug("update top: {}", block.getHashLow());
 
-                // Log unwind info
-                if (currentHeight - xdagStats.nmain > 1) {
-                    log.info("XDAG:Before unwind, height = {}, After unwind, height = {}, unwind number = {}",
-                            currentHeight, xdagStats.nmain, currentHeight - xdagStats.nmain);
-                }
+            // Update top status
+            xdagTopStatus.setTopDiff(block.getInfo().getDifficulty());
+            xdagTopStatus.setTop(block.getHashLow().toArray());
 
-                Block currentTop = getBlockByHash(xdagTopStatus.getTop() == null ? null :
-                        Bytes32.wrap(xdagTopStatus.getTop()), false);
-                BigInteger currentTopDiff = xdagTopStatus.getTopDiff();
-                log.debug("update top: {}", block.getHashLow());
+            // Update pre-top
+            setPreTop(currentTop, currentTopDiff);
 
-                // Update top status
-                xdagTopStatus.setTopDiff(block.getInfo().getDifficulty());
-                xdagTopStatus.setTop(block.getHashLow().toArray());
+            // Notify PoW thread if needed
+            if (XdagTime.getEpoch(block.getTimestamp()) < XdagTime.getCurrentEpoch()) {
+                onNewPretop();
+            }
 
-                // Update pre-top
-                setPreTop(currentTop, currentTopDiff);
+            result = ImportResult.IMPORTED_BEST;
+            xdagStats.updateMaxDiff(xdagTopStatus.getTopDiff());
+            xdagStats.updateDiff(xdagTopStatus.getTopDiff());
+        }
 
-                // Notify PoW thread if needed
-                if (XdagTime.getEpoch(block.getTimestamp()) < XdagTime.getCurrentEpoch()) {
-                    onNewPretop();
-                }
+        // Update block stats
+        xdagStats.nblocks++;
+        xdagStats.totalnblocks = Math.max(xdagStats.nblocks, xdagStats.totalnblocks);
+
+        if ((block.getInfo().flags & BI_EXTRA) != 0) {
+            block.getInfo().setFee(XAmount.ZERO);
+            putExtraBlock(block);
+            xdagStats.nextra++;
+        } else {
+            saveBlock(block);
+            dealOrphan(block);
+            xdagStats.nnoref++;
+        }
+        blockStore.saveXdagStatus(xdagStats);
 
-                result = ImportResult.IMPORTED_BEST;
-                xdagStats.updateMaxDiff(xdagTopStatus.getTopDiff());
-                xdagStats.updateDiff(xdagTopStatus.getTopDiff());
+        // Log transaction info
+        if (!block.getInputs().isEmpty()) {
+            if ((block.getInfo().getFlags() & BI_OURS) != 0) {
+                log.info("XDAG:pool transaction(reward). block hash:{}", block.getHash().toHexString());
             }
+        }
 
-            // Update block stats
-            xdagStats.nblocks++;
-            xdagStats.totalnblocks = Math.max(xdagStats.nblocks, xdagStats.totalnblocks);
+        // Update hashrate stats
+        int i = (int) (XdagTime.getEpoch(block.getTimestamp()) & (HASH_RATE_LAST_MAX_TIME - 1));
+        if (XdagTime.getEpoch(block.getTimestamp()) > XdagTime.getEpoch(xdagExtStats.getHashrate_last_time())) {
+            xdagExtStats.getHashRateTotal()[i] = UInt128.ZERO;
+            xdagExtStats.getHashRateOurs()[i] = UInt128.ZERO;
+            xdagExtStats.setHashrate_last_time(block.getTimestamp());
+        }
 
-            if ((block.getInfo().flags & BI_EXTRA) != 0) {
-                block.getInfo().setFee(XAmount.ZERO);
-                memOrphanPool.put(block.getHashLow(), block);
-                xdagStats.nextra++;
-            } else {
-                saveBlock(block);
-                dealOrphan(block);
-                xdagStats.nnoref++;
-            }
-            blockStore.saveXdagStatus(xdagStats);
+        if (cuDiff.compareTo(xdagExtStats.getHashRateTotal()[i]) > 0) {
+            xdagExtStats.getHashRateTotal()[i] = cuDiff;
+        }
 
-            // Log transaction info
-            if (!block.getInputs().isEmpty()) {
-                if ((block.getInfo().getFlags() & BI_OURS) != 0) {
-                    log.info("XDAG:pool transaction(reward). block hash:{}", block.getHash().toHexString());
-                }
-            }
+        if ((block.getInfo().getFlags() & BI_OURS) != 0
+                && cuDiff.compareTo(xdagExtStats.getHashRateOurs()[i]) > 0) {
+            xdagExtStats.getHashRateOurs()[i] = cuDiff;
+        }
 
-            // Update hashrate stats
-            int i = (int) (XdagTime.getEpoch(block.getTimestamp()) & (HASH_RATE_LAST_MAX_TIME - 1));
-            if (XdagTime.getEpoch(block.getTimestamp()) > XdagTime.getEpoch(xdagExtStats.getHashrate_last_time())) {
-                xdagExtStats.getHashRateTotal()[i] = BigInteger.ZERO;
-                xdagExtStats.getHashRateOurs()[i] = BigInteger.ZERO;
-                xdagExtStats.setHashrate_last_time(block.getTimestamp());
-            }
+        return ImportOutcome.of(result);
+    }
 
-            if (cuDiff.compareTo(xdagExtStats.getHashRateTotal()[i]) > 0) {
-                xdagExtStats.getHashRateTotal()[i] = cuDiff;
-            }
+    /**
+     * Move the main chain over to the chain of block: find the fork point, unwind the old chain down to it and mark
+     * the new chain. Every state change of the switch is staged in one unit of work and written as one batch, so a
+     * failure part way leaves the stores on the old chain.
+     */
+    private void switchMainChain(Block block) {
+        long currentHeight = xdagStats.nmain;
+        long start = System.nanoTime();
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            restoreOnRollback(uow);
+            try {
+                // Find common ancestor
+                Block blockRef = findAncestor(block, isSyncFixFork(xdagStats.nmain));
+
+                // Unwind main chain to ancestor
+                unWindMain(blockRef);
 
-            if ((block.getInfo().getFlags() & BI_OURS) != 0
-                    && cuDiff.compareTo(xdagExtStats.getHashRateOurs()[i]) > 0) {
-                xdagExtStats.getHashRateOurs()[i] = cuDiff;
+                // Update new chain
+                updateNewChain(block, isSyncFixFork(xdagStats.nmain));
+            } catch (RuntimeException | Error e) {
+                uow.setRollbackOnly();
+                throw e;
             }
+        }
 
-            return result;
-        } catch (Throwable e) {
-            log.error(e.getMessage(), e);
-            return ImportResult.ERROR;
+        // Log unwind info
+        if (currentHeight - xdagStats.nmain > 1) {
+            log.info("XDAG:Before unwind, height = {}, After unwind, height = {}, unwind number = {}, took {} ms",
+                    currentHeight, xdagStats.nmain, currentHeight - xdagStats.nmain,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
         }
     }
 
@@ -598,8 +561,10 @@ public class BlockchainImpl implements Blockchain {
 
         for (Address link : links) {
             if (!link.isAddress && !link.getType().equals(XDAG_FIELD_IN)) {
-                Block txBlock = getBlockByHash(link.getAddress(), true);
-                if (block.getHashLow().equals(mBlockTx.get(link.addressHash)) || (txBlock.getInfo().getRef() != null && equalBytes(txBlock.getInfo().getRef(), block.getHashLow().toArray()))) {
+                // decide on the info, only rolled back blocks need their body
+                Block txBlock = getBlockByHash(link.getAddress(), false);
+                if (block.getHashLow().equals(getMBlockOfTx(link.addressHash)) || (txBlock.getInfo().getRef() != null && equalBytes(txBlock.getInfo().getRef(), block.getHashLow().toArray()))) {
+                    txBlock = getBlockByHash(link.getAddress(), true);
                     if ((txBlock.getInfo().flags & BI_MAIN_CHAIN) == 0) {
                         rollTxList.add(txBlock);
                         if ((txBlock.getInfo().flags & BI_REF) != 0) {
@@ -608,16 +573,14 @@ public class BlockchainImpl implements Blockchain {
                             xdagStats.nnoref++;
                             blockStore.saveXdagStatus(xdagStats);
                         }
-                        mBlockTx.remove(link.addressHash);
-                        mBlockTimedOut.remove(link.addressHash);
+                        removeMBlockTx(link.addressHash);
                         log.debug("roll main block :{} , txBlock :{} , mBlockTx size :{}", block.getHashLow(), link.addressHash, mBlockTx.size());
                         continue;
                     }
                     List<Address> mTXs = txBlock.getLinks();
                     for (Address mTX : mTXs) {
                         if (mTX.getType().equals(XDAG_FIELD_IN)) {
-                            mBlockTx.remove(link.addressHash);
-                            mBlockTimedOut.remove(link.addressHash);
+                            removeMBlockTx(link.addressHash);
                             rollTxList.add(txBlock);
                             if ((txBlock.getInfo().flags & BI_REF) == 0) continue;
                             txBlock=getBlockByHash(link.getAddress(),false);
@@ -633,25 +596,147 @@ public class BlockchainImpl implements Blockchain {
         }
     }
 
+    @Override
+    public ImportOutcome preValidate(Block block) {
+        ImportOutcome invalid = validateStateless(block);
+        if (invalid == null) {
+            // warm the caches the connect reads under the lock
+            block.getHashLow();
+            block.verifiedKeys();
+            block.setPreValidated(true);
+        }
+        return invalid;
+    }
+
+    /**
+     * Checks of {@link #tryToConnect(Block)} that only look at the block itself
+     *
+     * @return the failed result, null if the block passed
+     */
+    private ImportOutcome validateStateless(Block block) {
+        // Validate block type
+        long type = block.getType() & 0xf;
+        if (kernel.getConfig() instanceof MainnetConfig) {
+            if (type != XDAG_FIELD_HEAD.asByte()) {
+                log.debug("Block type error, is not a mainnet block");
+                return ImportOutcome.of(ImportResult.ERROR, "Block type error, is not a mainnet block");
+            }
+        } else {
+            if (type != XDAG_FIELD_HEAD_TEST.asByte()) {
+                log.debug("Block type error, is not a testnet block");
+                return ImportOutcome.of(ImportResult.ERROR, "Block type error, is not a testnet block");
+            }
+        }
+
+        // Validate block timestamp
+        if (block.getTimestamp() > (XdagTime.getCurrentTimestamp() + MAIN_CHAIN_PERIOD / 4)
+                || block.getTimestamp() < kernel.getConfig().getXdagEra()
+        ) {
+            log.debug("Block's time is illegal");
+            return ImportOutcome.of(ImportResult.INVALID_BLOCK, "Block's time is illegal");
+        }
+
+        if (isTxBlock(block) && XAmount.ZERO.compareTo(getTxFee(block)) == 0) {
+            log.debug("Block's fee is illegal");
+            return ImportOutcome.of(ImportResult.INVALID_BLOCK,
+                    "There is a problem with the transaction fee of this transaction block");
+        }
+
+        List<Address> all = block.getLinks().stream().distinct().toList();
+        int inputFieldCounter = 0;
+        for (Address ref : all) {
+            if (ref == null) {
+                continue;
+            }
+            if (!ref.isAddress) {
+                if (ref.getType() == XDAG_FIELD_OUT && !ref.getAmount().isZero()) {
+                    log.debug("Address's amount isn't zero");
+                    return ImportOutcome.of(ImportResult.INVALID_BLOCK,
+                            "Address's amount isn't zero", ref.getAddress());
+                }
+                // Ensure TX block's amount is enough to subtract minGas, Amount must >= 0.1
+                if (ref.getType() == XDAG_FIELD_IN && ref.getAmount().subtract(getTxFee(block)).isNegative()) {
+                    log.debug("Ref block's balance < fee");
+                    return ImportOutcome.of(ImportResult.INVALID_BLOCK, "Ref block's balance < fee", ref.getAddress());
+                }
+            } else {
+                // Ensure that there is only one input.
+                if (ref.type == XDAG_FIELD_INPUT) {
+                    inputFieldCounter = inputFieldCounter + 1;
+                    if (inputFieldCounter > 1) {
+                        log.debug("The quantity of the input must be exactly one.");
+                        return ImportOutcome.of(ImportResult.INVALID_BLOCK,
+                                "The quantity of the input must be exactly one.");
+                    }
+                }
+                // Ensure TX block's input's & output's amount is enough to subtract minGas, Amount must >= 0.1
+                if (ref.getType() == XDAG_FIELD_INPUT || ref.getType() == XDAG_FIELD_OUTPUT) {
+                    if (getTxFee(block).isPositive() && outPutLimit(block).isPositive()) {
+                        if (ref.getType() == XDAG_FIELD_INPUT && ref.getAmount().subtract(getTxFee(block)).isNegative()) {
+                            return ImportOutcome.of(ImportResult.INVALID_BLOCK,
+                                    "Ref input amount < Gas", ref.getAddress());
+                        } else if (ref.getType() == XDAG_FIELD_OUTPUT && ref.getAmount().subtract(outPutLimit(block)).isNegative()) {
+                            log.debug("Ref output amount < Gas");
+                            return ImportOutcome.of(ImportResult.INVALID_BLOCK,
+                                    "Ref output amount < Gas", ref.getAddress());
+                        }
+                    } else {
+                        return ImportOutcome.of(ImportResult.INVALID_BLOCK,
+                                "When constructing a block, the fee entered is illegal");
+                    }
+                }
+            }
+        }
+
+        if (isAccountTx(block)) {
+            if (block.getTxNonceField() == null) {
+                return ImportOutcome.of(ImportResult.INVALID_BLOCK, "Account transaction block must have nonce.");
+            }
+        } else if (isTxBlock(block)) {
+            if (block.getTxNonceField() != null) {
+                return ImportOutcome.of(ImportResult.INVALID_BLOCK,
+                        "The main block transaction block should not contain nonce.");
+            }
+        } else {
+            if (block.getTxNonceField() != null) {
+                return ImportOutcome.of(ImportResult.INVALID_BLOCK,
+                        "The main block or link block should not contain nonce.");
+            }
+        }
+        return null;
+    }
+
     public void dealOrphan(Block block) {
         if (kernel.getConfig().getEnableGenerateBlock() && kernel.getPow() != null) {
             UInt64 nonce = UInt64.ZERO;
             XAmount fee = getTxFee(block);
             byte[] address = null;
             if (isAccountTx(block)) {
-                List<Address> refs = block.getLinks();
-                for (Address txRef : refs) {
-                    if (txRef.getType().equals(XDAG_FIELD_INPUT)) {
-                        address = BytesUtils.byte32ToArray(txRef.getAddress()).toArray();
-                        nonce = block.getTxNonceField().getTransactionNonce();
-                        break;
-                    }
+                address = getAccountTxSender(block);
+                if (address != null) {
+                    nonce = block.getTxNonceField().getTransactionNonce();
                 }
             }
             getOrphanBlockStore().addOrphan(block, isTxBlock(block), nonce, fee, address);
         }
     }
 
+    /**
+     * Sending account of an account transaction, null if it has no input address
+     */
+    private byte[] getAccountTxSender(Block block) {
+        for (Address txRef : block.getLinks()) {
+            if (txRef.getType().equals(XDAG_FIELD_INPUT)) {
+                return BytesUtils.byte32ToArray(txRef.getAddress()).toArray();
+            }
+        }
+        return null;
+    }
+
+    private UInt64 getAccountTxNonce(Block block) {
+        return block.getTxNonceField() == null ? UInt64.ZERO : block.getTxNonceField().getTransactionNonce();
+    }
+
     public XAmount getTxFee(Block block) {
         if (!isTxBlock(block)) {
             return XAmount.ZERO;
@@ -660,8 +745,7 @@ public class BlockchainImpl implements Blockchain {
         if (xdagBlock == null) {
             return XAmount.ZERO;
         } else {
-            Bytes32 header = Bytes32.wrap(xdagBlock.getField(0).getData());
-            XAmount fee = XAmount.of(header.getLong(24, ByteOrder.LITTLE_ENDIAN), XUnit.NANO_XDAG);
+            XAmount fee = XAmount.of(xdagBlock.getData().getLong(24, ByteOrder.LITTLE_ENDIAN), XUnit.NANO_XDAG);
             if (fee.compareTo(XAmount.ZERO) == 0) {
                 return MIN_GAS.multiply(outPutNum(block));
             } else if (fee.isNegative()) {
@@ -683,10 +767,10 @@ public class BlockchainImpl implements Blockchain {
         if (getBlockByHash(refHashLow, true) != null) {
             Block block = getBlockByHash(refHashLow, true);
             if (!isTxBlock(block) && (block.getInfo().flags & BI_MAIN_CHAIN) == 0) {
-                for (Address link : block.getLinks()) {
-                    if (equalBytes(block.getInfo().getRef(), mHashLow.toArray())) {
-                        sum += txNumber(link.getAddress(), block.getHashLow());
-                    }
+                if (equalBytes(block.getInfo().getRef(), mHashLow.toArray())) {
+                    int[] links = {0};
+                    block.forEachLink((link, isAddress) -> links[0] += txNumber(link.copy(), block.getHashLow()));
+                    sum += links[0];
                 }
                 return sum;
             }
@@ -722,37 +806,19 @@ public class BlockchainImpl implements Blockchain {
     }
 
     public boolean isAccountTx(Block block) {
-        List<Address> inputs = block.getInputs();
-        if (inputs == null) return false;
-
-        int inputCount = 0;
-        for (Address ref : inputs) {
-            if (ref.getType() == XDAG_FIELD_IN) {
-                return false; // 不允许出现 IN
-            } else if (ref.getType() == XDAG_FIELD_INPUT) {
-                inputCount++;
-            }
-        }
-        return inputCount == 1;
+        // the link types come from the header, serving and listing blocks does not decode their bodies
+        return block.countLinks(XDAG_FIELD_IN) == 0 && block.countLinks(XDAG_FIELD_INPUT) == 1;
     }
 
     public boolean isMainTxBlock(Block block) {
-        List<Address> inputs = block.getInputs();
-        if (inputs == null) return false;
-
-        for (Address ref : inputs) {
-            if (ref.getType() == XDAG_FIELD_INPUT) {
-                return false; // no INPUT
-            }
-        }
-
-        // At least one XDAG_FIELD_IN
-        return inputs.stream().anyMatch(ref -> ref.getType() == XDAG_FIELD_IN);
+        // no INPUT, at least one XDAG_FIELD_IN
+        return block.countLinks(XDAG_FIELD_INPUT) == 0 && block.countLinks(XDAG_FIELD_IN) > 0;
     }
 
     public int outPutNum(Block block) {
         if (isTxBlock(block)) {
-            return block.getOutputs().size();
+            return block.countLinks(XDAG_FIELD_OUT) + block.countLinks(XDAG_FIELD_OUTPUT)
+                    + block.countLinks(XDAG_FIELD_COINBASE);
         }
         return -1;
     }
@@ -919,16 +985,28 @@ public class BlockchainImpl implements Blockchain {
 
     // Process extra blocks
     public void processExtraBlock() {
-        if (memOrphanPool.size() > MAX_ALLOWED_EXTRA) {
-            Block reuse = memOrphanPool.entrySet().iterator().next().getValue();
-            log.debug("Remove when extra too big");
-            removeOrphan(reuse.getHashLow(), OrphanRemoveActions.ORPHAN_REMOVE_REUSE);
-            xdagStats.nblocks--;
-            xdagStats.totalnblocks = Math.max(xdagStats.nblocks, xdagStats.totalnblocks);
+        List<Block> reuse = memOrphanPool.overflow();
+        if (!reuse.isEmpty()) {
+            log.debug("Remove {} extra blocks when extra too big", reuse.size());
+        }
+        List<Block> expired = memOrphanPool.expired();
+        if (!expired.isEmpty()) {
+            log.debug("Remove {} extra blocks older than {} epochs", expired.size(), MAX_EXTRA_AGE_EPOCHS);
+        }
+        reuse.forEach(this::reuseExtraBlock);
+        expired.forEach(this::reuseExtraBlock);
+    }
 
-            if ((reuse.getInfo().flags & BI_OURS) != 0) {
-                removeOurBlock(reuse);
-            }
+    private void reuseExtraBlock(Block reuse) {
+        if (!memOrphanPool.containsKey(reuse.getHashLow())) {
+            return;
+        }
+        removeOrphan(reuse.getHashLow(), OrphanRemoveActions.ORPHAN_REMOVE_REUSE);
+        xdagStats.nblocks--;
+        xdagStats.totalnblocks = Math.max(xdagStats.nblocks, xdagStats.totalnblocks);
+
+        if ((reuse.getInfo().flags & BI_OURS) != 0) {
+            removeOurBlock(reuse);
         }
     }
 
@@ -949,29 +1027,47 @@ public class BlockchainImpl implements Blockchain {
     // Check and update main chain
     @Override
     public synchronized void checkNewMain() {
-        Block p = null;
-        int i = 0;
-
-        // If it's a snapshot point main block, return directly since data before snapshot is already determined
-        if (xdagTopStatus.getTop() != null) {
-            for (Block block = getBlockByHash(Bytes32.wrap(xdagTopStatus.getTop()), false); block != null
-                    && ((block.getInfo().flags & BI_MAIN) == 0);
-                 block = getMaxDiffLink(getBlockByHash(block.getHashLow(), true), true)) {
-
-                if ((block.getInfo().flags & BI_MAIN_CHAIN) != 0) {
-                    p = block;
-                    ++i;
-                }
-            }
+        if (xdagTopStatus.getTop() == null) {
+            return;
         }
+        Bytes32 top = Bytes32.wrap(xdagTopStatus.getTop());
+        if (!top.equals(mainSegment.getTop())) {
+            updateMainSegment(top);
+        }
+        int i = mainSegment.size();
+        Bytes32 oldest = mainSegment.oldest();
+        if (oldest == null || i <= 1) {
+            return;
+        }
+        Block p = getBlockByHash(oldest, false);
         long ct = XdagTime.getCurrentTimestamp();
         if (p != null
                 && ((p.getInfo().flags & BI_REF) != 0)
-                && i > 1
                 && ct >= p.getTimestamp() + 2 * 1024) {
 //            log.info("setMain success block:{}", Hex.toHexString(p.getHashLow()));
-            setMain(p);
+            setMain(getBlockByHash(oldest, true));
+        }
+    }
+
+    /**
+     * Walk the max difficulty path from the new top down to the last main block or to a block the segment already
+     * holds, reading block infos only.
+     */
+    private void updateMainSegment(Bytes32 top) {
+        List<Bytes32> fresh = new ArrayList<>();
+        Bytes32 anchor = null;
+        for (Block block = getBlockByHash(top, false); block != null
+                && ((block.getInfo().flags & BI_MAIN) == 0);
+             block = getMaxDiffLink(block, false)) {
+            if (mainSegment.contains(block.getHashLow())) {
+                anchor = block.getHashLow();
+                break;
+            }
+            if ((block.getInfo().flags & BI_MAIN_CHAIN) != 0) {
+                fresh.add(block.getHashLow());
+            }
         }
+        mainSegment.extend(top, anchor, fresh);
     }
 
     @Override
@@ -986,8 +1082,10 @@ public class BlockchainImpl implements Blockchain {
         log.debug("Unwind main to block,{}", block == null ? "null" : block.getHashLow().toHexString());
         if (xdagTopStatus.getTop() != null) {
             log.debug("now pretop : {}", xdagTopStatus.getPreTop() == null ? "null" : Bytes32.wrap(xdagTopStatus.getPreTop()).toHexString());
+            mainSegment.invalidate();
             for (Block tmp = getBlockByHash(Bytes32.wrap(xdagTopStatus.getTop()), true); tmp != null
                     && !blockEqual(block, tmp); tmp = getMaxDiffLink(tmp, true)) {
+                // a raw block carries the fee of its header, the accumulated fee is only in the stored info
                 BlockInfo info = blockStore.getBlockInfo(tmp.getHashLow());
                 if (info != null) {
                     tmp.getInfo().setFee(info.getFee());
@@ -1181,8 +1279,8 @@ public class BlockchainImpl implements Blockchain {
 //            }
             for (Address link : links) {
                 if (!link.isAddress) {
-                    Block ref = getBlockByHash(link.getAddress(), false);
                     if (link.getType() == XDAG_FIELD_IN) {
+                        Block ref = getBlockByHash(link.getAddress(), false);
                         // Only input references to the main block transaction block will go through this.
                         addAndAccept(ref, link.getAmount());
                         XAmount allBalance = addressStore.getAllBalance();
@@ -1249,13 +1347,18 @@ public class BlockchainImpl implements Blockchain {
                     ref = getBlockByHash(ref.getHashLow(), true);
                     ref.getInfo().setFee(fee);
                     unApplyBlock(ref, false);
+                    // pick up the info written by the recursion
+                    ref = getBlockByHash(ref.getHashLow(), false);
                 }
                 // Remove the flag that was set for the transaction block with the nonce error, and restore it to the Pending state.
-                fee = ref.getFee();
-                ref = getBlockByHash(ref.getHashLow(), true);
-                ref.getInfo().setFee(fee);
-                if (isTxBlock(ref) && ref.getInfo().getRef() == null && (ref.getInfo().flags & BI_MAIN_REF) != 0) {
-                    updateBlockFlag(ref, BI_MAIN_REF, false);
+                // The body is only loaded for blocks the flag check applies to.
+                if (ref.getInfo().getRef() == null && (ref.getInfo().flags & BI_MAIN_REF) != 0) {
+                    fee = ref.getFee();
+                    ref = getBlockByHash(ref.getHashLow(), true);
+                    ref.getInfo().setFee(fee);
+                    if (isTxBlock(ref)) {
+                        updateBlockFlag(ref, BI_MAIN_REF, false);
+                    }
                 }
             }
         }
@@ -1267,35 +1370,53 @@ public class BlockchainImpl implements Blockchain {
     public void setMain(Block block) {
 
         synchronized (this) {
-            // Set reward
-            long mainNumber = xdagStats.nmain + 1;
-            log.debug("mainNumber = {},hash = {}", mainNumber, Hex.toHexString(block.getInfo().getHash()));
-            XAmount reward = getReward(mainNumber);
-            block.getInfo().setHeight(mainNumber);
-            updateBlockFlag(block, BI_MAIN, true);
-
-            // Accept reward
-            acceptAmount(block, reward);
-            xdagStats.nmain++;
-
-            // Recursively execute blocks referenced by main block and get fees
-            XAmount mainBlockFee = applyBlock(true, block); //the mainBlock may have tx, return the fee to itself.
-            if (mainBlockFee.compareTo(XAmount.ZERO) < 0) {// normal mainBlock will not go into this
-                return;
-            } else {
-                acceptAmount(block, mainBlockFee); //add the fee
-                block.getInfo().setFee(mainBlockFee);
-                blockStore.saveBlockInfo(block.getInfo());
+            try (UnitOfWork uow = UnitOfWork.begin()) {
+                restoreOnRollback(uow);
+                try {
+                    doSetMain(block);
+                } catch (RuntimeException | Error e) {
+                    uow.setRollbackOnly();
+                    throw e;
+                }
             }
-            // Main block REF points to itself
-            // TODO: Add fee
-            updateBlockRef(block, new Address(block));
+        }
+    }
 
-            if (randomx != null) {
-                randomx.randomXSetForkTime(block);
-            }
+    private void doSetMain(Block block) {
+        // Set reward
+        long mainNumber = xdagStats.nmain + 1;
+        log.debug("mainNumber = {},hash = {}", mainNumber, Hex.toHexString(block.getInfo().getHash()));
+        XAmount reward = getReward(mainNumber);
+        block.getInfo().setHeight(mainNumber);
+        updateBlockFlag(block, BI_MAIN, true);
+        mainSegment.confirmed(block.getHashLow());
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            // the segment is rebuilt from the stored infos on the next checkNewMain
+            uow.onRollback(mainSegment::invalidate);
         }
 
+        // Accept reward
+        acceptAmount(block, reward);
+        xdagStats.nmain++;
+        blockStore.setMainHeight(mainNumber, block.getInfo().getHashlow());
+
+        // Recursively execute blocks referenced by main block and get fees
+        XAmount mainBlockFee = applyBlock(true, block); //the mainBlock may have tx, return the fee to itself.
+        if (mainBlockFee.compareTo(XAmount.ZERO) < 0) {// normal mainBlock will not go into this
+            return;
+        } else {
+            acceptAmount(block, mainBlockFee); //add the fee
+            block.getInfo().setFee(mainBlockFee);
+            blockStore.saveBlockInfo(block.getInfo());
+        }
+        // Main block REF points to itself
+        // TODO: Add fee
+        updateBlockRef(block, new Address(block));
+
+        if (randomx != null) {
+            randomx.randomXSetForkTime(block);
+        }
     }
 
     /**
@@ -1305,26 +1426,38 @@ public class BlockchainImpl implements Blockchain {
     public void unSetMain(Block block) {
 
         synchronized (this) {
+            try (UnitOfWork uow = UnitOfWork.begin()) {
+                restoreOnRollback(uow);
+                try {
+                    doUnSetMain(block);
+                } catch (RuntimeException | Error e) {
+                    uow.setRollbackOnly();
+                    throw e;
+                }
+            }
+        }
+    }
 
-            log.debug("UnSet main,{}, mainnumber = {}", block.getHash().toHexString(), xdagStats.nmain);
+    private void doUnSetMain(Block block) {
+        log.debug("UnSet main,{}, mainnumber = {}", block.getHash().toHexString(), xdagStats.nmain);
 
-            XAmount reward = getReward(block.getInfo().getHeight());
-            updateBlockFlag(block, BI_MAIN, false);
+        XAmount reward = getReward(block.getInfo().getHeight());
+        updateBlockFlag(block, BI_MAIN, false);
 
-            xdagStats.nmain--;
+        blockStore.unSetMainHeight(block.getInfo().getHeight());
+        xdagStats.nmain--;
 
-            acceptAmount(block, XAmount.ZERO.subtract(reward));
-            unApplyBlock(block, true);
+        acceptAmount(block, XAmount.ZERO.subtract(reward));
+        unApplyBlock(block, true);
 
-            acceptAmount(block, XAmount.ZERO.subtract(block.getFee()));
-            if (randomx != null) {
-                randomx.randomXUnsetForkTime(block);
-            }
-            block.getInfo().setFee(XAmount.ZERO);
-            block.getInfo().setHeight(0);
-            updateBlockFlag(block, BI_MAIN_REF, false);
-            updateBlockRef(block, null);
+        acceptAmount(block, XAmount.ZERO.subtract(block.getFee()));
+        if (randomx != null) {
+            randomx.randomXUnsetForkTime(block);
         }
+        block.getInfo().setFee(XAmount.ZERO);
+        block.getInfo().setHeight(0);
+        updateBlockFlag(block, BI_MAIN_REF, false);
+        updateBlockRef(block, null);
     }
 
     public void processNonceAfterTransactionExecution(Address link) {
@@ -1485,7 +1618,7 @@ public class BlockchainImpl implements Blockchain {
      * @param target     target block
      * @param targetDiff difficulty of block
      */
-    public void setPreTop(Block target, BigInteger targetDiff) {
+    public void setPreTop(Block target, UInt128 targetDiff) {
         if (target == null) {
             return;
         }
@@ -1521,19 +1654,19 @@ public class BlockchainImpl implements Blockchain {
     /**
      * Calculate current block difficulty
      */
-    public BigInteger calculateCurrentBlockDiff(Block block) {
+    public UInt128 calculateCurrentBlockDiff(Block block) {
         if (block == null) {
-            return BigInteger.ZERO;
+            return UInt128.ZERO;
         }
         if (block.getInfo().getDifficulty() != null) {
             return block.getInfo().getDifficulty();
         }
         //TX block would not set diff, fix a diff = 1;
         if (!block.getInputs().isEmpty()) {
-            return BigInteger.ONE;
+            return UInt128.ONE;
         }
 
-        BigInteger blockDiff;
+        UInt128 blockDiff;
         // Set initial block difficulty
         if (randomx != null && randomx.isRandomxFork(XdagTime.getEpoch(block.getTimestamp()))
                 && XdagTime.isEndOfEpoch(block.getTimestamp())) {
@@ -1548,9 +1681,9 @@ public class BlockchainImpl implements Blockchain {
     /**
      * Set block difficulty and max difficulty connection and return block difficulty
      */
-    public BigInteger calculateBlockDiff(Block block, BigInteger cuDiff) {
+    public UInt128 calculateBlockDiff(Block block, UInt128 cuDiff) {
         if (block == null) {
-            return BigInteger.ZERO;
+            return UInt128.ZERO;
         }
         if (block.getInfo().getDifficulty() != null) {
             return block.getInfo().getDifficulty();
@@ -1558,7 +1691,7 @@ public class BlockchainImpl implements Blockchain {
 
         block.getInfo().setDifficulty(cuDiff);
 
-        BigInteger maxDiff = cuDiff;
+        UInt128 maxDiff = cuDiff;
         Address maxDiffLink = null;
 
         // Temporary block
@@ -1581,11 +1714,11 @@ public class BlockchainImpl implements Blockchain {
                 // If the referenced block's epoch is less than current block's round
                 if (XdagTime.getEpoch(refBlock.getTimestamp()) < XdagTime.getEpoch(block.getTimestamp())) {
                     // If difficulty is greater than current max difficulty
-                    BigInteger refDifficulty = refBlock.getInfo().getDifficulty();
+                    UInt128 refDifficulty = refBlock.getInfo().getDifficulty();
                     if (refDifficulty == null) {
-                        refDifficulty = BigInteger.ZERO;
+                        refDifficulty = UInt128.ZERO;
                     }
-                    BigInteger curDiff = refDifficulty.add(cuDiff);
+                    UInt128 curDiff = refDifficulty.add(cuDiff);
                     if (curDiff.compareTo(maxDiff) > 0) {
                         maxDiff = curDiff;
                         maxDiffLink = ref;
@@ -1595,7 +1728,7 @@ public class BlockchainImpl implements Blockchain {
                     // 1. maxDiff+diff0 for different epochs
                     // 2. maxDiff for same epoch
                     tmpBlock = refBlock; // tmpBlock is from link
-                    BigInteger curDiff = refBlock.getInfo().getDifficulty();
+                    UInt128 curDiff = refBlock.getInfo().getDifficulty();
                     while ((tmpBlock != null)
                             && XdagTime.getEpoch(tmpBlock.getTimestamp()) == XdagTime.getEpoch(block.getTimestamp())) {
                         tmpBlock = getMaxDiffLink(tmpBlock, false);
@@ -1607,7 +1740,7 @@ public class BlockchainImpl implements Blockchain {
                         curDiff = tmpBlock.getInfo().getDifficulty().add(cuDiff);
                     }
                     if (curDiff == null) {
-                        curDiff = BigInteger.ZERO;
+                        curDiff = UInt128.ZERO;
                     }
                     if (curDiff.compareTo(maxDiff) > 0) {
                         maxDiff = curDiff;
@@ -1625,14 +1758,14 @@ public class BlockchainImpl implements Blockchain {
         return maxDiff;
     }
 
-    public BigInteger getDiffByRandomXHash(Block block) {
+    public UInt128 getDiffByRandomXHash(Block block) {
         long epoch = XdagTime.getEpoch(block.getTimestamp());
         MutableBytes data = MutableBytes.create(64);
         Bytes32 rxHash = HashUtils.sha256(block.getXdagBlock().getData().slice(0, 512 - 32));
         data.set(0, rxHash);
         data.set(32, block.getXdagBlock().getField(15).getData());
         byte[] blockHash = randomx.randomXBlockHash(data.toArray(), epoch);
-        BigInteger diff;
+        UInt128 diff;
         if (blockHash != null) {
             Bytes32 hash = Bytes32.wrap(Arrays.reverse(blockHash));
             diff = getDiffByRawHash(hash);
@@ -1643,7 +1776,7 @@ public class BlockchainImpl implements Blockchain {
         return diff;
     }
 
-    public BigInteger getDiffByRawHash(Bytes32 hash) {
+    public UInt128 getDiffByRawHash(Bytes32 hash) {
         return getDiffByHash(hash);
     }
 
@@ -1671,17 +1804,62 @@ public class BlockchainImpl implements Blockchain {
         if (hashlow == null) {
             return null;
         }
-        // Ensure that hashlow is hashlow
-        MutableBytes32 keyHashlow = MutableBytes32.create();
-        keyHashlow.set(8, Objects.requireNonNull(hashlow).slice(8, 24));
-
-        Block b = memOrphanPool.get(Bytes32.wrap(keyHashlow));
-        if (b == null) {
+        // Ensure that hashlow is hashlow, a hashlow is passed through without copying
+        Block b = memOrphanPool.get(HashKey.ofHashLow(hashlow));
+        if (b != null) {
+            keepInfoOnRollback(b);
+        } else {
+            Bytes32 keyHashlow = hashlow;
+            if (hashlow.getLong(0) != 0) {
+                MutableBytes32 copy = MutableBytes32.create();
+                copy.set(8, hashlow.slice(8, 24));
+                keyHashlow = copy;
+            }
             b = blockStore.getBlockByHash(keyHashlow, isRaw);
         }
         return b;
     }
 
+    private void putExtraBlock(Block block) {
+        Bytes32 hashlow = block.getHashLow().copy();
+        Block previous = memOrphanPool.put(hashlow, block);
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            uow.onRollback(() -> {
+                if (previous == null) {
+                    memOrphanPool.remove(hashlow);
+                } else {
+                    memOrphanPool.put(hashlow, previous);
+                }
+            });
+        }
+    }
+
+    private Block removeExtraBlock(Bytes hashlow) {
+        Block removed = memOrphanPool.remove(hashlow);
+        UnitOfWork uow = UnitOfWork.current();
+        if (removed != null && uow != null) {
+            Bytes32 key = Bytes32.wrap(hashlow.toArray());
+            uow.onRollback(() -> memOrphanPool.put(key, removed));
+        }
+        return removed;
+    }
+
+    /**
+     * Extra blocks are shared through the pool, their info is put back if the unit changing it is rolled back
+     */
+    private void keepInfoOnRollback(Block block) {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null && block.getInfo() != null) {
+            BlockInfo info = block.getInfo().copy();
+            boolean saved = block.isSaved;
+            uow.onRollback(() -> {
+                block.setInfo(info);
+                block.isSaved = saved;
+            });
+        }
+    }
+
     public Block getMaxDiffLink(Block block, boolean isRaw) {
         if (block.getInfo().getMaxDiffLink() != null) {
             return getBlockByHash(Bytes32.wrap(block.getInfo().getMaxDiffLink()), isRaw);
@@ -1702,8 +1880,7 @@ public class BlockchainImpl implements Blockchain {
                 // Then removeBlockInfo is complete
                 // Remove from MemOrphanPool
                 Bytes key = b.getHashLow();
-                Block removeBlockRaw = memOrphanPool.get(key);
-                memOrphanPool.remove(key);
+                Block removeBlockRaw = removeExtraBlock(key);
                 if (action != OrphanRemoveActions.ORPHAN_REMOVE_REUSE) {
                     // Save block
                     saveBlock(removeBlockRaw);
@@ -1780,13 +1957,15 @@ public class BlockchainImpl implements Blockchain {
         block.isSaved = true;
         blockStore.saveBlock(block);
         // If it's our account
-        if (memOurBlocks.containsKey(block.getHash())) {
+        HashKey hashKey = HashKey.of(block.getHash());
+        if (memOurBlocks.containsKey(hashKey)) {
 //            log.info("new account:{}", Hex.toHexString(block.getHash()));
             if (xdagStats.getOurLastBlockHash() == null) {
                 blockStore.saveXdagStatus(xdagStats);
             }
-            addOurBlock(memOurBlocks.get(block.getHash()), block);
-            memOurBlocks.remove(block.getHash());
+            addOurBlock(memOurBlocks.get(hashKey), block);
+            keepOurBlockOnRollback(hashKey);
+            memOurBlocks.remove(hashKey);
         }
 
         if (block.isPretopCandidate()) {
@@ -1894,7 +2073,7 @@ public class BlockchainImpl implements Blockchain {
             Bytes digest = Bytes.wrap(subdata, Bytes.wrap(publicKeyBytes));
 //            log.debug("verify encoded:{}", Hex.toHexString(digest));
             Bytes32 hash = HashUtils.doubleSha256(digest);
-            if (Signer.verify(hash, sig, publicKey)) {
+            if (SignatureCache.verify(hash, sig, publicKey)) {
                 SnapshotInfo snapshotInfo = blockInfo.getSnapshotInfo();
                 byte[] pubkeyBytes = publicKey.toBytes().toArray();
                 if (snapshotInfo != null) {
@@ -1910,31 +2089,57 @@ public class BlockchainImpl implements Blockchain {
         return false;
     }
 
+    /**
+     * The output signature digest covers the signing public key, so the key cannot be recovered from it. A block
+     * of ours is signed out either by a key it carries in its public key fields or, for main and link blocks, by
+     * the default key. Only those candidates are looked up in the wallet and verified.
+     */
     public boolean checkMineAndAdd(Block block) {
-        List<ECKeyPair> ourkeys = wallet.getAccounts();
         // Only one output signature
         Signature signature = block.getOutsig();
-        // Iterate through all keys
-        for (int i = 0; i < ourkeys.size(); i++) {
-            ECKeyPair ecKey = ourkeys.get(i);
-            // TODO: Optimize
-            byte[] publicKeyBytes = ecKey.getPublicKey().toBytes().toArray();
-            Bytes digest = Bytes.wrap(block.getSubRawData(block.getOutsigIndex() - 2), Bytes.wrap(publicKeyBytes));
-            Bytes32 hash = HashUtils.doubleSha256(Bytes.wrap(digest));
-            // Use hyperledger besu crypto native secp256k1
-            if (Signer.verify(hash, signature, ecKey.getPublicKey())) {
-                log.debug("verify block success hash={}.", hash.toHexString());
-                addOurBlock(i, block);
+        if (signature == null) {
+            return false;
+        }
+        Bytes subdata = null;
+        // compressed keys are matched first, only our own keys are ever needed decompressed
+        for (Bytes key : block.getPubKeyBytes()) {
+            int i = wallet.getAccountIndex(key);
+            if (i < 0) {
+                continue;
+            }
+            if (subdata == null) {
+                subdata = block.getSubRawData(block.getOutsigIndex() - 2);
+            }
+            if (verifyOurOutsig(block, subdata, signature, i, wallet.getAccount(i).getPublicKey())) {
                 return true;
             }
         }
+        ECKeyPair defKey = wallet.getDefKey();
+        if (defKey == null) {
+            return false;
+        }
+        if (subdata == null) {
+            subdata = block.getSubRawData(block.getOutsigIndex() - 2);
+        }
+        return verifyOurOutsig(block, subdata, signature, 0, defKey.getPublicKey());
+    }
+
+    private boolean verifyOurOutsig(Block block, Bytes subdata, Signature signature, int keyIndex, PublicKey publicKey) {
+        Bytes32 hash = HashUtils.doubleSha256(Bytes.wrap(subdata, publicKey.toBytes()));
+        if (SignatureCache.verify(hash, signature, publicKey)) {
+            log.debug("verify block success hash={}.", hash.toHexString());
+            addOurBlock(keyIndex, block);
+            return true;
+        }
         return false;
     }
 
     public void addOurBlock(int keyIndex, Block block) {
         xdagStats.setOurLastBlockHash(block.getHash().toArray());
         if (!block.isSaved()) {
-            memOurBlocks.put(block.getHash(), keyIndex);
+            HashKey hashKey = HashKey.of(block.getHash());
+            keepOurBlockOnRollback(hashKey);
+            memOurBlocks.put(hashKey, keyIndex);
         } else {
             blockStore.saveOurBlock(keyIndex, block.getInfo().getHashlow());
         }
@@ -1942,12 +2147,28 @@ public class BlockchainImpl implements Blockchain {
 
     public void removeOurBlock(Block block) {
         if (!block.isSaved) {
-            memOurBlocks.remove(block.getHash());
+            HashKey hashKey = HashKey.of(block.getHash());
+            keepOurBlockOnRollback(hashKey);
+            memOurBlocks.remove(hashKey);
         } else {
             blockStore.removeOurBlock(block.getHashLow().toArray());
         }
     }
 
+    private void keepOurBlockOnRollback(HashKey hashKey) {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            Integer previous = memOurBlocks.get(hashKey);
+            uow.onRollback(() -> {
+                if (previous == null) {
+                    memOurBlocks.remove(hashKey);
+                } else {
+                    memOurBlocks.put(hashKey, previous);
+                }
+            });
+        }
+    }
+
     public XAmount getReward(long nmain) {
         XAmount start = getStartAmount(nmain);
         long nanoAmount = start.toXAmount().toLong();
@@ -1981,6 +2202,11 @@ public class BlockchainImpl implements Blockchain {
         return blockStore.getBlocksUsedTime(starttime, endtime);
     }
 
+    @Override
+    public Stream<Block> streamBlocksByTime(long starttime, long endtime) {
+        return blockStore.streamBlocksByTime(starttime, endtime);
+    }
+
     @Override
     public void startCheckMain(long period) {
         if (checkLoop == null) {
@@ -2027,6 +2253,7 @@ public class BlockchainImpl implements Blockchain {
 
     @Override
     public void stopCheckMain() {
+        log.info("Signature cache stats: {}", SignatureCache.statsSummary());
         try {
 
             if (checkLoopFuture != null) {
@@ -2034,6 +2261,7 @@ public class BlockchainImpl implements Blockchain {
             }
             // Shutdown thread pool
             checkLoop.shutdownNow();
+            rollBackLoop.shutdownNow();
             checkLoop.awaitTermination(5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             log.error(e.getMessage(), e);
@@ -2182,14 +2410,14 @@ public class BlockchainImpl implements Blockchain {
 
     // ADD: Get main blocks using new version method
     public List<Block> listMainBlocksByHeight(int count) {
-        List<Block> res = new ArrayList<>();
         long currentHeight = xdagStats.nmain;
-        for (int i = 0; i < count; i++) {
-            Block block = getBlockByHeightNew(currentHeight - i);
-            if (block != null) {
-                res.add(block);
-            }
+        long lowest = Math.max(1, currentHeight - count + 1);
+        if (kernel.getConfig().getSnapshotSpec().isSnapshotEnabled()
+                && !kernel.getConfig().getSnapshotSpec().isSnapshotJ()) {
+            lowest = Math.max(lowest, snapshotHeight - 128);
         }
+        List<Block> res = blockStore.getBlocksByHeight(lowest, currentHeight);
+        Collections.reverse(res);
         return res;
     }
 
@@ -2197,24 +2425,27 @@ public class BlockchainImpl implements Blockchain {
     public void saveMBlockTx(List<Block> blocks) {
         for (Block block : blocks) {
             long time = System.currentTimeMillis();
-            if ((block.getInfo().flags & BI_EXTRA) == 0 && getBlockByHash(block.getHashLow(), true) != null) {
-                block = getBlockByHash(block.getHashLow(), true);
+            if ((block.getInfo().flags & BI_EXTRA) == 0) {
+                Block stored = getBlockByHash(block.getHashLow(), true);
+                if (stored != null) {
+                    block = stored;
+                }
             }
             List<Address> links = block.getLinks();
             for (Address link : links) {
-                if (link.isAddress) continue;
-                Block txBlock = getBlockByHash(link.getAddress(), true);
-                if (txBlock != null && mBlockTx.get(link.addressHash) == null) {
+                if (link.isAddress || getMBlockOfTx(link.addressHash) != null) continue;
+                Block txBlock = getBlockByHash(link.getAddress(), false);
+                if (txBlock != null) {
                     if ((txBlock.getInfo().flags & BI_MAIN_CHAIN) == 0) {
-                        mBlockTx.put(link.addressHash, block.getHashLow());
-                        mBlockTimedOut.put(link.addressHash, time);
+                        putMBlockTx(link.addressHash, block.getHashLow(), time);
                         log.debug("Save main block: {} , tx: {} , mBlockTx size :{}", block.getHashLow().toHexString(), link.addressHash, mBlockTx.size());
                         continue;
                     }
+                    txBlock = getBlockByHash(link.getAddress(), true);
+                    if (txBlock == null) continue;
                     for (Address txLink : txBlock.getLinks()) {
                         if (txLink.getType().equals(XDAG_FIELD_IN)) {
-                            mBlockTx.put(link.addressHash, block.getHashLow());
-                            mBlockTimedOut.put(link.addressHash, time);
+                            putMBlockTx(link.addressHash, block.getHashLow(), time);
                             log.debug("Save main txBlock: {} , tx: {} , mBlockTx size :{}", block.getHashLow().toHexString(), link.addressHash, mBlockTx.size());
                             break;
                         }
@@ -2231,16 +2462,64 @@ public class BlockchainImpl implements Blockchain {
 
     private void cleanMBlockTimeOut(long maxAgeMillis) {
         long now = System.currentTimeMillis();
-        for (Iterator<Map.Entry<Bytes32, Long>> it = mBlockTimedOut.entrySet().iterator(); it.hasNext(); ) {
-            Map.Entry<Bytes32, Long> entry = it.next();
-            if (now - entry.getValue() > maxAgeMillis) {
-                mBlockTx.remove(entry.getKey());
-                it.remove();
-                log.debug("Cleaned expired mBlockTX: {} , current mBlockTx size :{}", Hex.toHexString(entry.getKey().toArray()), mBlockTx.size());
-            }
+        synchronized (mBlockTx) {
+            mBlockTimedOut.removeIf((tx, time) -> {
+                if (now - time <= maxAgeMillis) {
+                    return false;
+                }
+                mBlockTx.remove(tx);
+                log.debug("Cleaned expired mBlockTX: {} , current mBlockTx size :{}", tx, mBlockTx.size());
+                return true;
+            });
         }
     }
 
+    private Bytes32 getMBlockOfTx(Bytes32 txHashlow) {
+        synchronized (mBlockTx) {
+            return mBlockTx.get(txHashlow);
+        }
+    }
+
+    private void putMBlockTx(Bytes32 txHashlow, Bytes32 mainHashlow, long time) {
+        synchronized (mBlockTx) {
+            keepMBlockTxOnRollback(txHashlow);
+            mBlockTx.put(txHashlow, mainHashlow);
+            mBlockTimedOut.put(txHashlow, time);
+        }
+    }
+
+    private void removeMBlockTx(Bytes32 txHashlow) {
+        synchronized (mBlockTx) {
+            keepMBlockTxOnRollback(txHashlow);
+            mBlockTx.remove(txHashlow);
+            mBlockTimedOut.remove(txHashlow);
+        }
+    }
+
+    // called holding mBlockTx
+    private void keepMBlockTxOnRollback(Bytes32 txHashlow) {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow == null) {
+            return;
+        }
+        HashKey key = HashKey.of(txHashlow);
+        Bytes32 previous = mBlockTx.get(key);
+        Long time = mBlockTimedOut.get(key);
+        uow.onRollback(() -> {
+            synchronized (mBlockTx) {
+                if (previous == null) {
+                    mBlockTx.remove(key);
+                    mBlockTimedOut.remove(key);
+                } else {
+                    mBlockTx.put(key, previous);
+                    if (time != null) {
+                        mBlockTimedOut.put(key, time);
+                    }
+                }
+            }
+        });
+    }
+
     @Override
     public List<Block> listMainBlocks(int count) {
         return listMainBlocksByHeight(count);
@@ -0,0 +1,228 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.core;
+
+import io.xdag.utils.HashKey;
+import io.xdag.utils.XdagTime;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * In-memory pool of extra blocks keyed by hashlow and bucketed by epoch. Hashlows are held as {@link HashKey}s.
+ * <p>
+ * Lookups go to a {@link ConcurrentHashMap} and take no lock, so readers such as
+ * {@link BlockchainImpl#getBlockByHash} do not contend with the chain lock. Writers serialize on the pool. Entries
+ * iterate from the oldest epoch to the newest, and {@link #overflow()} and {@link #expired()} tell the
+ * blockchain which blocks to reuse so that the pool stays within its capacity and age.
+ */
+public class ExtraBlockPool extends AbstractMap<Bytes, Block> {
+
+    @Getter
+    private final long capacity;
+    @Getter
+    private final long maxAgeEpochs;
+
+    private final Map<HashKey, Block> blocks = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, Set<HashKey>> epochs = new ConcurrentSkipListMap<>();
+
+    public ExtraBlockPool(long capacity, long maxAgeEpochs) {
+        this.capacity = capacity;
+        this.maxAgeEpochs = maxAgeEpochs;
+    }
+
+    /**
+     * Keys given as {@link HashKey} are used as they are, 32-byte {@link Bytes} are converted
+     */
+    private static HashKey key(Object hashlow) {
+        if (hashlow instanceof HashKey key) {
+            return key;
+        }
+        if (hashlow instanceof Bytes bytes && bytes.size() == HashKey.BYTES) {
+            return HashKey.of(bytes);
+        }
+        return null;
+    }
+
+    @Override
+    public Block get(Object hashlow) {
+        HashKey key = key(hashlow);
+        return key == null ? null : blocks.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object hashlow) {
+        HashKey key = key(hashlow);
+        return key != null && blocks.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return blocks.size();
+    }
+
+    @Override
+    public synchronized Block put(Bytes hashlow, Block block) {
+        HashKey key = HashKey.of(hashlow);
+        Block previous = blocks.put(key, block);
+        if (previous != null) {
+            unlink(key, previous);
+        }
+        epochs.computeIfAbsent(XdagTime.getEpoch(block.getTimestamp()), e -> ConcurrentHashMap.newKeySet())
+                .add(key);
+        return previous;
+    }
+
+    @Override
+    public synchronized Block remove(Object hashlow) {
+        HashKey key = key(hashlow);
+        Block removed = key == null ? null : blocks.remove(key);
+        if (removed != null) {
+            unlink(key, removed);
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized void clear() {
+        blocks.clear();
+        epochs.clear();
+    }
+
+    private void unlink(HashKey hashlow, Block block) {
+        long epoch = XdagTime.getEpoch(block.getTimestamp());
+        Set<HashKey> bucket = epochs.get(epoch);
+        if (bucket != null && bucket.remove(hashlow) && bucket.isEmpty()) {
+            epochs.remove(epoch);
+        }
+    }
+
+    /**
+     * Oldest block, null if the pool is empty
+     */
+    public Block oldest() {
+        for (Set<HashKey> bucket : epochs.values()) {
+            for (HashKey hashlow : bucket) {
+                Block block = blocks.get(hashlow);
+                if (block != null) {
+                    return block;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Oldest blocks beyond the capacity
+     */
+    public List<Block> overflow() {
+        long excess = blocks.size() - capacity;
+        List<Block> result = new ArrayList<>();
+        if (excess <= 0) {
+            return result;
+        }
+        for (Entry<Bytes, Block> entry : entrySet()) {
+            result.add(entry.getValue());
+            if (result.size() >= excess) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Blocks more than {@link #getMaxAgeEpochs()} epochs older than the newest block of the pool, measured against
+     * the pool rather than the clock so that replaying old blocks keeps them
+     */
+    public List<Block> expired() {
+        List<Block> result = new ArrayList<>();
+        Map.Entry<Long, Set<HashKey>> newest = epochs.lastEntry();
+        if (newest == null) {
+            return result;
+        }
+        for (Set<HashKey> bucket : epochs.headMap(newest.getKey() - maxAgeEpochs).values()) {
+            bucket.stream().map(blocks::get).filter(Objects::nonNull).forEach(result::add);
+        }
+        return result;
+    }
+
+    /**
+     * Entries from the oldest epoch to the newest, weakly consistent like the iterators of concurrent collections
+     */
+    @Override
+    public Set<Entry<Bytes, Block>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Bytes, Block>> iterator() {
+                Iterator<Entry<Bytes, Block>> it = epochs.values().stream()
+                        .flatMap(Set::stream)
+                        .map(k -> {
+                            Block b = blocks.get(k);
+                            return b == null ? null
+                                    : (Entry<Bytes, Block>) new SimpleImmutableEntry<Bytes, Block>(k.toBytes32(), b);
+                        })
+                        .filter(Objects::nonNull)
+                        .iterator();
+                return new Iterator<>() {
+                    private Entry<Bytes, Block> last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Entry<Bytes, Block> next() {
+                        return last = it.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null) {
+                            throw new IllegalStateException();
+                        }
+                        ExtraBlockPool.this.remove(last.getKey());
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return blocks.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package io.xdag.core;
+
+import org.apache.tuweni.bytes.Bytes32;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Result of importing one block, together with why it failed. A new instance is made per import, so results of
+ * blocks validated on different threads never overwrite each other.
+ */
+@Getter
+@ToString
+public final class ImportOutcome {
+
+    private final ImportResult result;
+
+    // Error message if import failed
+    private final String errorInfo;
+
+    // Truncated hash of the block the failure refers to, the missing parent for NO_PARENT
+    private final Bytes32 hashlow;
+
+    private ImportOutcome(ImportResult result, String errorInfo, Bytes32 hashlow) {
+        this.result = result;
+        this.errorInfo = errorInfo;
+        this.hashlow = hashlow;
+    }
+
+    public static ImportOutcome of(ImportResult result) {
+        return new ImportOutcome(result, null, null);
+    }
+
+    public static ImportOutcome of(ImportResult result, String errorInfo) {
+        return new ImportOutcome(result, errorInfo, null);
+    }
+
+    public static ImportOutcome of(ImportResult result, String errorInfo, Bytes32 hashlow) {
+        return new ImportOutcome(result, errorInfo, hashlow == null ? null : hashlow.copy());
+    }
+
+    public boolean isImported() {
+        return result == ImportResult.IMPORTED_BEST || result == ImportResult.IMPORTED_NOT_BEST;
+    }
+}
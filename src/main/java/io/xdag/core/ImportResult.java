@@ -24,11 +24,6 @@
 
 package io.xdag.core;
 
-import org.apache.tuweni.bytes.MutableBytes32;
-
-import lombok.Getter;
-import lombok.Setter;
-
 /**
  * Enum representing different results of block import operations
  * ERROR - Import failed with error
@@ -39,6 +34,7 @@ import lombok.Setter;
  * IMPORTED_EXTRA - Block imported as extra
  * IMPORTED_NOT_BEST - Block imported but not in main chain
  * IMPORTED_BEST - Block imported into main chain
+ * The details of a failure travel with the {@link ImportOutcome} of the import.
  */
 public enum ImportResult {
     ERROR,
@@ -49,30 +45,5 @@ public enum ImportResult {
 
     IMPORTED_EXTRA,
     IMPORTED_NOT_BEST,
-    IMPORTED_BEST;
-
-    // Truncated hash of the block
-    private MutableBytes32 hashLow;
-
-    // Error message if import failed
-    @Setter
-    @Getter
-    private String errorInfo;
-
-    /**
-     * Get the truncated hash of the block
-     * @return The truncated hash as MutableBytes32
-     */
-    public MutableBytes32 getHashlow() {
-        return hashLow;
-    }
-
-    /**
-     * Set the truncated hash of the block
-     * @param hashLow The truncated hash to set
-     */
-    public void setHashlow(MutableBytes32 hashLow) {
-        this.hashLow = hashLow;
-    }
-
+    IMPORTED_BEST
 }
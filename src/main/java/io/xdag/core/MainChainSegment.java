@@ -0,0 +1,108 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.core;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * The unconfirmed part of the main chain: hashlows of the {@code BI_MAIN_CHAIN} blocks on the max difficulty path
+ * from the top down to the last {@code BI_MAIN} block, oldest first.
+ * <p>
+ * {@link BlockchainImpl#checkNewMain()} extends it from the new top until it meets a block it already holds,
+ * confirming a block pops the oldest entry and unwinding the main chain invalidates it. Not thread safe, callers
+ * hold the chain lock.
+ */
+public class MainChainSegment {
+
+    private final ArrayDeque<Bytes32> chain = new ArrayDeque<>();
+    private final Set<Bytes32> members = new HashSet<>();
+
+    /**
+     * Top the segment was built for, null when it must be rebuilt
+     */
+    @Getter
+    private Bytes32 top;
+
+    public boolean contains(Bytes32 hashlow) {
+        return members.contains(hashlow);
+    }
+
+    public int size() {
+        return chain.size();
+    }
+
+    /**
+     * The next block to become main, or null
+     */
+    public Bytes32 oldest() {
+        return chain.peekFirst();
+    }
+
+    /**
+     * Move the segment to a new top.
+     *
+     * @param anchor newest block kept from the current segment, null to drop all of it
+     * @param fresh main chain blocks between the anchor and the new top, newest first
+     */
+    public void extend(Bytes32 top, Bytes32 anchor, List<Bytes32> fresh) {
+        if (anchor == null) {
+            chain.clear();
+            members.clear();
+        } else {
+            while (!chain.isEmpty() && !anchor.equals(chain.peekLast())) {
+                members.remove(chain.pollLast());
+            }
+        }
+        for (int i = fresh.size() - 1; i >= 0; i--) {
+            Bytes32 hashlow = fresh.get(i);
+            if (members.add(hashlow)) {
+                chain.addLast(hashlow);
+            }
+        }
+        this.top = top;
+    }
+
+    /**
+     * A block became main. Only the oldest entry can be confirmed, anything else means the segment is stale.
+     */
+    public void confirmed(Bytes32 hashlow) {
+        if (hashlow.equals(chain.peekFirst())) {
+            members.remove(chain.pollFirst());
+        } else if (top != null) {
+            invalidate();
+        }
+    }
+
+    public void invalidate() {
+        chain.clear();
+        members.clear();
+        top = null;
+    }
+}
@@ -23,7 +23,7 @@
  */
 package io.xdag.core;
 
-import java.math.BigInteger;
+import io.xdag.utils.UInt128;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -41,7 +41,7 @@ public class PreBlockInfo {
     // Block height in the chain
     private long height;
     // Block mining difficulty
-    private BigInteger difficulty;
+    private UInt128 difficulty;
     // Reference to previous blocks
     private byte[] ref;
     // Link to block with maximum difficulty
@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.core;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.xdag.crypto.keys.PublicKey;
+import io.xdag.crypto.keys.Signer;
+import io.xdag.crypto.keys.Signature;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Bounded cache of ECDSA verification results keyed by (signing digest, signature, public key).
+ * <p>
+ * The same signature is checked many times: against every pubkey of its own block, again when the block is
+ * spent as an input, once per wallet key for our own blocks, and all over again when a block is re-imported
+ * after a main chain rollback. Verification is deterministic, so both outcomes are remembered.
+ */
+@Slf4j
+public final class SignatureCache {
+
+    /**
+     * Roughly 200 bytes per entry, about 50MB at capacity
+     */
+    public static final long MAX_ENTRIES = 1L << 18;
+
+    private static final Cache<Bytes, Boolean> CACHE = Caffeine.newBuilder()
+            .maximumSize(MAX_ENTRIES)
+            .recordStats()
+            .build();
+
+    private SignatureCache() {
+    }
+
+    /**
+     * Same contract as {@link Signer#verify(Bytes32, Signature, PublicKey)}, answered from the cache when possible
+     */
+    public static boolean verify(Bytes32 hash, Signature sig, PublicKey publicKey) {
+        if (hash == null || sig == null || publicKey == null) {
+            return false;
+        }
+        Bytes key = Bytes.concatenate(hash, sig.encodedBytes(), publicKey.toBytes());
+        Boolean verified = CACHE.getIfPresent(key);
+        if (verified == null) {
+            verified = Signer.verify(hash, sig, publicKey);
+            CACHE.put(key, verified);
+        }
+        return verified;
+    }
+
+    public static long size() {
+        return CACHE.estimatedSize();
+    }
+
+    public static void invalidateAll() {
+        CACHE.invalidateAll();
+    }
+
+    public static CacheStats getStats() {
+        return CACHE.stats();
+    }
+
+    public static String statsSummary() {
+        CacheStats stats = CACHE.stats();
+        return String.format("signature[size:%d hit:%d miss:%d rate:%.2f%% evict:%d]",
+                CACHE.estimatedSize(), stats.hitCount(), stats.missCount(), stats.hitRate() * 100,
+                stats.evictionCount());
+    }
+}
@@ -111,6 +111,13 @@ public class XAmount implements Comparable<XAmount> {
         return BasicUtils.xdag2amount(toDecimal(9, XUnit.XDAG).doubleValue());
     }
 
+    /**
+     * Get the raw amount in nano units
+     */
+    public long toLong() {
+        return nano;
+    }
+
     @Override
     public int compareTo(XAmount other) {
         return this.lessThan(other) ? -1 : (this.greaterThan(other) ? 1 : 0);
@@ -24,29 +24,35 @@
 
 package io.xdag.core;
 
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_COINBASE;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_IN;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_INPUT;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUT;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUTPUT;
 import static io.xdag.core.XdagField.FieldType.fromByte;
 
 import java.nio.ByteOrder;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.apache.tuweni.bytes.MutableBytes32;
 
-import lombok.Getter;
-
 public class XdagBlock {
 
     public static final int XDAG_BLOCK_FIELDS = 16;
+    private static final int FIELD_SIZE = 32;
 
     /**
      * Block data with signature
      */
     private MutableBytes data;
+    private long sum;
     /**
-     * -- GETTER --
-     * Get block sums
+     * Whether {@link #sum} still has to be computed from {@link #data}
      */
-    @Getter
-    private long sum;
-    private XdagField[] fields;
+    private boolean sumPending;
+    /**
+     * Built from {@link #data} on first access to a field
+     */
+    private volatile XdagField[] fields;
 
     public XdagBlock() {
         fields = new XdagField[XDAG_BLOCK_FIELDS];
@@ -62,19 +68,26 @@ public class XdagBlock {
 
     public XdagBlock(MutableBytes data) {
         this.data = data;
-        if (data != null && data.size() == 512) {
-            fields = new XdagField[XDAG_BLOCK_FIELDS];
-            for (int i = 0; i < XDAG_BLOCK_FIELDS; i++) {
-                MutableBytes32 fieldBytes = MutableBytes32.create();
-                fieldBytes.set(0, data.slice(i * 32, 32));
-                fields[i] = new XdagField(fieldBytes);
-                fields[i].setType(fromByte(getMsgCode(i)));
-            }
-            for (int i = 0; i < XDAG_BLOCK_FIELDS; i++) {
-                sum += fields[i].getSum();
-                fields[i].setType(fromByte(getMsgCode(i)));
+        this.sumPending = isRaw();
+    }
+
+    private boolean isRaw() {
+        return data != null && data.size() == XDAG_BLOCK_FIELDS * FIELD_SIZE;
+    }
+
+    /**
+     * Get block sums
+     */
+    public long getSum() {
+        if (sumPending) {
+            long total = 0;
+            for (int i = 0; i < XDAG_BLOCK_FIELDS * FIELD_SIZE; i += 8) {
+                total += data.getLong(i, ByteOrder.LITTLE_ENDIAN);
             }
+            sum = total;
+            sumPending = false;
         }
+        return sum;
     }
 
     public byte getMsgCode(int n) {
@@ -83,11 +96,21 @@ public class XdagBlock {
     }
 
     public XdagField[] getFields() {
-        if (this.fields == null) {
-            throw new Error("no fields");
-        } else {
-            return this.fields;
+        XdagField[] result = this.fields;
+        if (result == null) {
+            if (!isRaw()) {
+                throw new Error("no fields");
+            }
+            result = new XdagField[XDAG_BLOCK_FIELDS];
+            for (int i = 0; i < XDAG_BLOCK_FIELDS; i++) {
+                MutableBytes32 fieldBytes = MutableBytes32.create();
+                fieldBytes.set(0, data.slice(i * FIELD_SIZE, FIELD_SIZE));
+                result[i] = new XdagField(fieldBytes);
+                result[i].setType(fromByte(getMsgCode(i)));
+            }
+            this.fields = result;
         }
+        return result;
     }
 
     public XdagField getField(int number) {
@@ -107,4 +130,82 @@ public class XdagBlock {
         return data;
     }
 
+    /*
+     * Accessors below read straight from the raw 512 bytes without building fields, for bulk paths that
+     * only need the header and links of many blocks.
+     */
+
+    /**
+     * Field type nibbles of the header
+     */
+    public long getFieldTypes() {
+        return getData().getLong(8, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public long getTimestamp() {
+        return getData().getLong(16, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public XdagField.FieldType getFieldType(int n) {
+        return fromByte((byte) (getFieldTypes() >> (n << 2) & 0xf));
+    }
+
+    /**
+     * Number of fields of the given type
+     */
+    public int countFields(XdagField.FieldType type) {
+        long types = getFieldTypes();
+        int count = 0;
+        for (int n = 1; n < XDAG_BLOCK_FIELDS; n++) {
+            if ((types >> (n << 2) & 0xf) == type.asByte()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Whether field n is an input link, to a block or an address
+     */
+    public boolean isInputLink(int n) {
+        XdagField.FieldType type = getFieldType(n);
+        return type == XDAG_FIELD_IN || type == XDAG_FIELD_INPUT;
+    }
+
+    /**
+     * Whether field n links to a block or an address
+     */
+    public boolean isLink(int n) {
+        XdagField.FieldType type = getFieldType(n);
+        return type == XDAG_FIELD_IN || type == XDAG_FIELD_OUT || isAddressLink(type);
+    }
+
+    public boolean isAddressLink(int n) {
+        return isAddressLink(getFieldType(n));
+    }
+
+    private static boolean isAddressLink(XdagField.FieldType type) {
+        return type == XDAG_FIELD_INPUT || type == XDAG_FIELD_OUTPUT || type == XDAG_FIELD_COINBASE;
+    }
+
+    /**
+     * Write the hashlow of link field n into out, the same value as {@link Address#getAddress()}
+     */
+    public void copyLinkHashLow(int n, MutableBytes32 out) {
+        MutableBytes raw = getData();
+        int base = n * FIELD_SIZE;
+        int end = isAddressLink(getFieldType(n)) ? 28 : 32;
+        out.clear();
+        for (int k = 8; k < end; k++) {
+            out.set(k, raw.get(base + FIELD_SIZE - 1 - k));
+        }
+    }
+
+    /**
+     * Amount of link field n in nano xdag, the same value as {@link Address#getAmount()}
+     */
+    public long getLinkAmount(int n) {
+        return getData().getLong(n * FIELD_SIZE + 24, ByteOrder.LITTLE_ENDIAN);
+    }
+
 }
@@ -25,7 +25,7 @@ package io.xdag.core;
 
 import static io.xdag.config.Constants.HASH_RATE_LAST_MAX_TIME;
 
-import java.math.BigInteger;
+import io.xdag.utils.UInt128;
 import java.util.Arrays;
 import lombok.Getter;
 import lombok.Setter;
@@ -37,9 +37,9 @@ import lombok.Setter;
 @Setter
 public class XdagExtStats {
     // Array to store total network hash rate history
-    private BigInteger[] hashRateTotal = new BigInteger[HASH_RATE_LAST_MAX_TIME];
+    private UInt128[] hashRateTotal = new UInt128[HASH_RATE_LAST_MAX_TIME];
     // Array to store our node's hash rate history  
-    private BigInteger[] hashRateOurs = new BigInteger[HASH_RATE_LAST_MAX_TIME];
+    private UInt128[] hashRateOurs = new UInt128[HASH_RATE_LAST_MAX_TIME];
     // Timestamp of last hash rate update
     private long hashrate_last_time;
 
@@ -48,8 +48,8 @@ public class XdagExtStats {
      * and sets initial timestamp
      */
     public XdagExtStats() {
-        Arrays.fill(hashRateTotal, BigInteger.ZERO);
-        Arrays.fill(hashRateOurs, BigInteger.ZERO); 
+        Arrays.fill(hashRateTotal, UInt128.ZERO);
+        Arrays.fill(hashRateOurs, UInt128.ZERO); 
         hashrate_last_time = 0L;
     }
 }
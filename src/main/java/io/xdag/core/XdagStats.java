@@ -24,7 +24,7 @@
 
 package io.xdag.core;
 
-import java.math.BigInteger;
+import io.xdag.utils.UInt128;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -35,8 +35,8 @@ import lombok.Setter;
 @Setter
 public class XdagStats {
 
-    public BigInteger difficulty;
-    public BigInteger maxdifficulty;
+    public UInt128 difficulty;
+    public UInt128 maxdifficulty;
     public long nblocks;          // Number of blocks
     public long totalnblocks;     // Total number of blocks
     public long nmain;            // Number of main blocks
@@ -56,15 +56,15 @@ public class XdagStats {
      * Default constructor initializing difficulties to zero
      */
     public XdagStats() {
-        difficulty = BigInteger.ZERO;
-        maxdifficulty = BigInteger.ZERO;
+        difficulty = UInt128.ZERO;
+        maxdifficulty = UInt128.ZERO;
     }
 
     /**
      * Constructor for remote node statistics
      */
     public XdagStats(
-            BigInteger maxdifficulty,
+            UInt128 maxdifficulty,
             long totalnblocks,
             long totalnmain,
             int totalnhosts,
@@ -88,12 +88,35 @@ public class XdagStats {
         this.totalnmain = xdagStats.totalnmain;
         this.nhosts = xdagStats.nhosts;
         this.totalnhosts = xdagStats.totalnhosts;
+        this.nwaitsync = xdagStats.nwaitsync;
+        this.nnoref = xdagStats.nnoref;
+        this.nextra = xdagStats.nextra;
+        this.maintime = xdagStats.maintime;
+        this.balance = xdagStats.balance;
+        this.globalMiner = xdagStats.globalMiner;
+        this.ourLastBlockHash = xdagStats.ourLastBlockHash;
+    }
+
+    /**
+     * Put back the counters kept by the chain as they are in the copy, the network counters stay as they are
+     */
+    public void rollbackTo(XdagStats saved) {
+        this.difficulty = saved.difficulty;
+        this.maxdifficulty = saved.maxdifficulty;
+        this.nblocks = saved.nblocks;
+        this.totalnblocks = saved.totalnblocks;
+        this.nmain = saved.nmain;
+        this.totalnmain = saved.totalnmain;
+        this.nnoref = saved.nnoref;
+        this.nextra = saved.nextra;
+        this.balance = saved.balance;
+        this.ourLastBlockHash = saved.ourLastBlockHash;
     }
 
     /**
      * Initialize statistics with initial values
      */
-    public void init(BigInteger diff, long totalnmain, long totalnblocks) {
+    public void init(UInt128 diff, long totalnmain, long totalnblocks) {
         this.difficulty = this.maxdifficulty = diff;
         this.nblocks = this.totalnblocks = totalnblocks;
         this.nmain = this.totalnmain = totalnmain;
@@ -115,7 +138,7 @@ public class XdagStats {
     /**
      * Update maximum difficulty if new value is higher
      */
-    public void updateMaxDiff(BigInteger maxdifficulty) {
+    public void updateMaxDiff(UInt128 maxdifficulty) {
         if (this.getMaxdifficulty().compareTo(maxdifficulty) < 0) {
             this.maxdifficulty = maxdifficulty;
         }
@@ -124,7 +147,7 @@ public class XdagStats {
     /**
      * Update current difficulty if new value is higher
      */
-    public void updateDiff(BigInteger difficulty) {
+    public void updateDiff(UInt128 difficulty) {
         if (this.difficulty.compareTo(difficulty) < 0) {
             this.difficulty = difficulty;
         }
@@ -23,7 +23,7 @@
  */
 package io.xdag.core;
 
-import java.math.BigInteger;
+import io.xdag.utils.UInt128;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -44,7 +44,7 @@ public class XdagTopStatus {
     /**
      * The top block difficulty.
      */
-    private BigInteger topDiff;
+    private UInt128 topDiff;
 
     /**
      * The pre-top block hash.
@@ -54,11 +54,11 @@ public class XdagTopStatus {
     /**
      * The pre-top block difficulty.
      */
-    private BigInteger preTopDiff;
+    private UInt128 preTopDiff;
 
     public XdagTopStatus() {
-        topDiff = BigInteger.ZERO;
-        preTopDiff = BigInteger.ZERO;
+        topDiff = UInt128.ZERO;
+        preTopDiff = UInt128.ZERO;
     }
 
 }
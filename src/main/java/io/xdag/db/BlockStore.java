@@ -32,13 +32,17 @@ import org.apache.tuweni.bytes.MutableBytes;
 
 import java.util.List;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 public interface BlockStore extends XdagLifecycle {
 
     byte SETTING_STATS = (byte) 0x10;
+    byte SETTING_CODEC_VERSION = (byte) 0x11;
+    byte SETTING_PRUNED_TIME = (byte) 0x12;
     byte TIME_HASH_INFO = (byte) 0x20;
     byte HASH_BLOCK_INFO = (byte) 0x30;
     byte SUMS_BLOCK_INFO = (byte) 0x40;
+    byte SUMS_SLOT_INFO = (byte) 0x41;
     byte OURS_BLOCK_INFO = (byte) 0x50;
     byte SETTING_TOP_STATUS = (byte) 0x60;
     byte SNAPSHOT_BOOT = (byte) 0x70;
@@ -75,8 +79,22 @@ public interface BlockStore extends XdagLifecycle {
 
     List<Block> getBlocksByTime(long startTime);
 
+    Stream<Block> streamBlocksByTime(long startTime, long endTime);
+
     Block getBlockByHeight(long height);
 
+    List<Block> getBlocksByHeight(long fromHeight, long toHeight);
+
+    void setMainHeight(long height, byte[] hashlow);
+
+    void unSetMainHeight(long height);
+
+    int pruneRawBlocks(long beforeTime, int maxKeys);
+
+    long getRawPrunedTime();
+
+    void compactTimeIndex(long fromTime, long toTime);
+
     Block getBlockByHash(Bytes32 hashlow, boolean isRaw);
 
     Block getBlockInfoByHash(Bytes32 hashlow);
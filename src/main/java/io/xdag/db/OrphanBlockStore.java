@@ -40,6 +40,11 @@ public interface OrphanBlockStore extends XdagLifecycle {
      */
     byte[] ORPHAN_SIZE = Hex.decode("FFFFFFFFFFFFFFFF");
 
+    /**
+     * Capacity of the pool for account transactions
+     */
+    long MAX_ORPHAN_SIZE = 3750;
+
     void reset();
 
     List<Address> getOrphan(long num, long[] sendTime, boolean isMain);
@@ -52,4 +57,10 @@ public interface OrphanBlockStore extends XdagLifecycle {
 
     long getOrphanSize();
 
+    /**
+     * Whether an account transaction may enter the pool. Below capacity every transaction may, a full pool takes it
+     * as a replacement of the same account and nonce or when it outbids the cheapest transaction it can evict
+     */
+    boolean admit(byte[] address, UInt64 nonce, XAmount fee);
+
 }
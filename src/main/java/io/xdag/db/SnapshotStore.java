@@ -29,7 +29,6 @@ import io.xdag.core.XAmount;
 import io.xdag.crypto.keys.ECKeyPair;
 import io.xdag.db.rocksdb.RocksdbKVSource;
 import java.util.List;
-import org.rocksdb.RocksIterator;
 
 public interface SnapshotStore {
 
@@ -43,7 +42,7 @@ public interface SnapshotStore {
 
     void saveAddress(BlockStore blockStore,AddressStore addressStore, TransactionHistoryStore txHistoryStore, List<ECKeyPair> keys,long snapshotTime);
 
-    void save(RocksIterator iter, BlockInfo blockInfo);
+    void save(byte[] key, BlockInfo blockInfo);
 
     void setBlockInfo(BlockInfo blockInfo, PreBlockInfo preBlockInfo);
 
@@ -29,6 +29,10 @@ package io.xdag.db.execption;
  */
 public final class DeserializationException extends SerDeException {
 
+    public DeserializationException(final String message) {
+        super(message);
+    }
+
     public DeserializationException(
             final String message,
             final Throwable throwable
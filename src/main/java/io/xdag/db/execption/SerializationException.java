@@ -29,6 +29,10 @@ package io.xdag.db.execption;
  */
 public final class SerializationException extends SerDeException {
 
+    public SerializationException(final String message) {
+        super(message);
+    }
+
     public SerializationException(
             final String message,
             final Throwable throwable
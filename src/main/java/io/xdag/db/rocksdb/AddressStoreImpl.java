@@ -23,18 +23,43 @@
  */
 package io.xdag.db.rocksdb;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.xdag.core.XAmount;
 import io.xdag.db.AddressStore;
 import io.xdag.utils.BytesUtils;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.units.bigints.UInt64;
 
+/**
+ * Account state (balance, transaction quantity, executed nonce) with a write-back cache in front of the address
+ * database.
+ * <p>
+ * Writes made inside a {@link UnitOfWork} are kept per thread and written once per key when the unit commits, so
+ * they land in the same batch as the block state that caused them. The shared cache and the address count and
+ * amount sum held in memory only take the values after the batch is persisted; a rolled back unit, e.g. a failed
+ * connect or unwind, just drops its pending values. Writes outside a unit of work go straight to the database.
+ */
 @Slf4j
 public class AddressStoreImpl implements AddressStore {
     private static final int ADDRESS_SIZE = 20; // Corrected constant name to uppercase
+    private static final long ACCOUNT_CACHE_ENTRIES = 1L << 17;
     private final KVSource<byte[], byte[]> addressSource; // Renamed for clarity
 
+    /**
+     * Committed values by database key, empty for keys that are not stored
+     */
+    private final Cache<Bytes, Optional<UInt64>> accounts = Caffeine.newBuilder()
+            .maximumSize(ACCOUNT_CACHE_ENTRIES)
+            .build();
+    private final ThreadLocal<Pending> pending = new ThreadLocal<>();
+    private volatile long addressSize;
+    private volatile long amountSum;
+
     // Constructor to initialize address source
     public AddressStoreImpl(KVSource<byte[], byte[]> addressSource) {
         this.addressSource = addressSource;
@@ -48,6 +73,9 @@ public class AddressStoreImpl implements AddressStore {
         if (addressSource.get(new byte[]{AMOUNT_SUM}) == null) {
             addressSource.put(new byte[]{AMOUNT_SUM}, BytesUtils.longToBytes(0, false));
         }
+        addressSize = BytesUtils.bytesToLong(addressSource.get(new byte[]{ADDRESS_SIZE}), 0, false);
+        amountSum = BytesUtils.bytesToLong(addressSource.get(new byte[]{AMOUNT_SUM}), 0, false);
+        accounts.invalidateAll();
     }
 
     @Override
@@ -64,51 +92,79 @@ public class AddressStoreImpl implements AddressStore {
         this.addressSource.reset();
         addressSource.put(new byte[]{ADDRESS_SIZE}, BytesUtils.longToBytes(0, false));
         addressSource.put(new byte[]{AMOUNT_SUM}, BytesUtils.longToBytes(0, false));
+        pending.remove();
+        accounts.invalidateAll();
+        addressSize = 0;
+        amountSum = 0;
     }
 
     public XAmount getBalanceByAddress(byte[] address) {
-        byte[] data = addressSource.get(BytesUtils.merge(ADDRESS, address));
-        if (data == null) {
+        UInt64 balance = read(key(ADDRESS, address));
+        if (balance == null) {
             log.debug("This public key doesn't exist");
             return XAmount.ZERO;
         } else {
-            return XAmount.ofXAmount(UInt64.fromBytes(Bytes.wrap(data)).toLong());
+            return XAmount.ofXAmount(balance.toLong());
         }
     }
 
     public boolean addressIsExist(byte[] address) {
-        return addressSource.get(BytesUtils.merge(ADDRESS, address)) != null;
+        return read(key(ADDRESS, address)) != null;
     }
 
     public void addAddress(byte[] address) {
-        addressSource.put(BytesUtils.merge(ADDRESS, address), UInt64.ZERO.toBytes().toArray());
-        long currentSize = BytesUtils.bytesToLong(addressSource.get(new byte[]{ADDRESS_SIZE}), 0, false);
-        addressSource.put(new byte[]{ADDRESS_SIZE}, BytesUtils.longToBytes(currentSize + 1, false));
+        write(key(ADDRESS, address), UInt64.ZERO);
+        Pending p = pending();
+        if (p != null) {
+            p.addressSize = (p.addressSize != null ? p.addressSize : addressSize) + 1;
+        } else {
+            synchronized (this) {
+                addressSize++;
+                addressSource.put(new byte[]{ADDRESS_SIZE}, BytesUtils.longToBytes(addressSize, false));
+            }
+        }
     }
 
     public XAmount getAllBalance() {
-        UInt64 u64v = UInt64.fromBytes(Bytes.wrap(addressSource.get(new byte[]{AMOUNT_SUM})));
-        return XAmount.ofXAmount(u64v.toLong());
+        Pending p = pending.get();
+        return XAmount.ofXAmount(p != null && p.amountSum != null ? p.amountSum : amountSum);
     }
 
     @Override
     public void saveAddressSize(byte[] addressSize) {
-        addressSource.put(new byte[]{ADDRESS_SIZE}, addressSize);
+        long size = BytesUtils.bytesToLong(addressSize, 0, false);
+        Pending p = pending();
+        if (p != null) {
+            p.addressSize = size;
+        } else {
+            synchronized (this) {
+                this.addressSize = size;
+                addressSource.put(new byte[]{ADDRESS_SIZE}, addressSize);
+            }
+        }
     }
 
     @Override
     public void saveAmountSum(XAmount balanceSum) { // Fixed typo in method name
-        UInt64 u64v = balanceSum.toXAmount();
-        addressSource.put(new byte[]{AMOUNT_SUM}, u64v.toBytes().toArray());
+        updateAllBalance(balanceSum);
     }
 
     public UInt64 getAddressSize() {
-        return UInt64.fromBytes(Bytes.wrap(addressSource.get(new byte[]{ADDRESS_SIZE})));
+        Pending p = pending.get();
+        return UInt64.valueOf(p != null && p.addressSize != null ? p.addressSize : addressSize);
     }
 
     public void updateAllBalance(XAmount balance) {
-        UInt64 u64V = balance.toXAmount();
-        addressSource.put(new byte[]{AMOUNT_SUM}, u64V.toBytes().toArray());
+        long sum = balance.toXAmount().toLong();
+        Pending p = pending();
+        if (p != null) {
+            p.amountSum = sum;
+        } else {
+            synchronized (this) {
+                amountSum = sum;
+                addressSource.put(new byte[]{AMOUNT_SUM}, BytesUtils.longToBytes(sum, false));
+            }
+        }
     }
 
     // TODO: Move calculation to application layer
@@ -117,71 +173,59 @@ public class AddressStoreImpl implements AddressStore {
             log.debug("The address type is wrong");
             return;
         }
-        if (addressSource.get(BytesUtils.merge(ADDRESS, address)) == null) {
+        Bytes key = key(ADDRESS, address);
+        if (read(key) == null) {
             log.debug("This address doesn't exist");
             addAddress(address);
         }
-        UInt64 u64V = balance.toXAmount();
-        addressSource.put(BytesUtils.merge(ADDRESS, address), u64V.toBytes().toArray());
+        write(key, balance.toXAmount());
     }
 
     @Override
     public void snapshotAddress(byte[] address, XAmount balance) {
-        UInt64 u64V = balance.toXAmount();
-        addressSource.put(address, u64V.toBytes().toArray());
+        write(Bytes.wrap(address), balance.toXAmount());
     }
 
     @Override
     public void snapshotTxQuantity(byte[] address, UInt64 txQuantity) {
-        addressSource.put(address, txQuantity.toBytes().toArray());
+        write(Bytes.wrap(address), txQuantity);
     }
 
     @Override
     public void snapshotExeTxNonceNum(byte[] address, UInt64 exeTxNonceNum) {
-        addressSource.put(address, exeTxNonceNum.toBytes().toArray());
+        write(Bytes.wrap(address), exeTxNonceNum);
     }
 
     @Override
     public UInt64 getTxQuantity(byte[] address) {
-        byte[] key = BytesUtils.merge(CURRENT_TRANSACTION_QUANTITY, address);
-        byte[] txQuantity = addressSource.get(key);
-
-        if (txQuantity == null) {
-            return UInt64.ZERO;
-        } else {
-            return UInt64.fromBytes(Bytes.wrap(txQuantity));
-        }
+        UInt64 txQuantity = read(key(CURRENT_TRANSACTION_QUANTITY, address));
+        return txQuantity == null ? UInt64.ZERO : txQuantity;
     }
 
     @Override
     public void updateTxQuantity(byte[] address, UInt64 newTxQuantity) {
-        byte[] key = BytesUtils.merge(CURRENT_TRANSACTION_QUANTITY, address);
-        addressSource.put(key,newTxQuantity.toBytes().toArray());
+        write(key(CURRENT_TRANSACTION_QUANTITY, address), newTxQuantity);
     }
 
     @Override
     public void updateTxQuantity(byte[] address, UInt64 currentTxNonce, UInt64 currentExeNonce) {
         UInt64 txNonce = currentTxNonce.toLong() >= currentExeNonce.toLong() ? currentTxNonce : currentExeNonce;
-        byte[] key = BytesUtils.merge(CURRENT_TRANSACTION_QUANTITY, address);
-        addressSource.put(key,txNonce.toBytes().toArray());
+        write(key(CURRENT_TRANSACTION_QUANTITY, address), txNonce);
     }
 
     @Override
     public UInt64 getExecutedNonceNum(byte[] address) {
-        byte[] key = BytesUtils.merge(EXECUTED_NONCE_NUM, address);
-        byte[] processedTxNonce = addressSource.get(key);
-        if(processedTxNonce == null){
-            addressSource.put(key,UInt64.ZERO.toBytes().toArray());
-            return UInt64.ZERO;
-        } else {
-            return UInt64.fromBytes(Bytes.wrap(processedTxNonce));
-        }
+        UInt64 processedTxNonce = read(key(EXECUTED_NONCE_NUM, address));
+        return processedTxNonce == null ? UInt64.ZERO : processedTxNonce;
     }
 
     @Override
     public void updateExcutedNonceNum(byte[] address, boolean addOrSubstract) {
-        byte[] key = BytesUtils.merge(EXECUTED_NONCE_NUM, address);
-        UInt64 before = getExecutedNonceNum(address);
+        Bytes key = key(EXECUTED_NONCE_NUM, address);
+        UInt64 before = read(key);
+        if (before == null) {
+            before = UInt64.ZERO;
+        }
         UInt64 now;
         if (addOrSubstract) {
             now = before.add(UInt64.ONE);
@@ -192,6 +236,105 @@ public class AddressStoreImpl implements AddressStore {
                 now = before.subtract(UInt64.ONE);
             }
         }
-        addressSource.put(key,now.toBytes().toArray());
+        write(key, now);
+    }
+
+    private static Bytes key(byte prefix, byte[] address) {
+        return Bytes.wrap(BytesUtils.merge(prefix, address));
+    }
+
+    /**
+     * @return the value the calling thread sees for the key, or null if it is not stored
+     */
+    private UInt64 read(Bytes key) {
+        Pending p = pending.get();
+        if (p != null) {
+            UInt64 value = p.values.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return accounts.get(key, k -> {
+            byte[] data = addressSource.get(k.toArrayUnsafe());
+            return data == null ? Optional.empty() : Optional.of(UInt64.fromBytes(Bytes.wrap(data)));
+        }).orElse(null);
+    }
+
+    private void write(Bytes key, UInt64 value) {
+        Pending p = pending();
+        if (p != null) {
+            p.values.put(key, value);
+        } else {
+            addressSource.put(key.toArrayUnsafe(), value.toBytes().toArray());
+            accounts.put(key, Optional.of(value));
+        }
+    }
+
+    /**
+     * @return the pending state of the unit of work open on the calling thread, or null outside a unit of work
+     */
+    private Pending pending() {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow == null) {
+            return null;
+        }
+        Pending p = pending.get();
+        if (p == null || p.uow != uow) {
+            Pending created = new Pending(uow);
+            pending.set(created);
+            uow.beforeCommit(() -> flush(created));
+            uow.onRollback(() -> discard(created));
+            p = created;
+        }
+        return p;
+    }
+
+    /**
+     * Stage the pending values into the batch of the committing unit and publish them once it is written
+     */
+    private void flush(Pending p) {
+        discard(p);
+        for (Map.Entry<Bytes, UInt64> entry : p.values.entrySet()) {
+            addressSource.put(entry.getKey().toArrayUnsafe(), entry.getValue().toBytes().toArray());
+        }
+        if (p.addressSize != null) {
+            addressSource.put(new byte[]{ADDRESS_SIZE}, BytesUtils.longToBytes(p.addressSize, false));
+        }
+        if (p.amountSum != null) {
+            addressSource.put(new byte[]{AMOUNT_SUM}, BytesUtils.longToBytes(p.amountSum, false));
+        }
+        p.uow.afterCommit(() -> publish(p));
+    }
+
+    private synchronized void publish(Pending p) {
+        for (Map.Entry<Bytes, UInt64> entry : p.values.entrySet()) {
+            accounts.put(entry.getKey(), Optional.of(entry.getValue()));
+        }
+        if (p.addressSize != null) {
+            addressSize = p.addressSize;
+        }
+        if (p.amountSum != null) {
+            amountSum = p.amountSum;
+        }
+    }
+
+    private void discard(Pending p) {
+        if (pending.get() == p) {
+            pending.remove();
+        }
+    }
+
+    /**
+     * Values written by one unit of work, in write order
+     */
+    private static class Pending {
+        final UnitOfWork uow;
+        final Map<Bytes, UInt64> values = new LinkedHashMap<>();
+        Long addressSize;
+        Long amountSum;
+
+        Pending(UnitOfWork uow) {
+            this.uow = uow;
+        }
     }
 }
@@ -0,0 +1,447 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.core.BlockInfo;
+import io.xdag.core.SnapshotInfo;
+import io.xdag.core.XAmount;
+import io.xdag.core.XdagStats;
+import io.xdag.core.XdagTopStatus;
+import io.xdag.db.execption.DeserializationException;
+import io.xdag.db.execption.SerializationException;
+import io.xdag.utils.UInt128;
+import java.nio.ByteBuffer;
+
+/**
+ * Versioned fixed-offset binary format for the values kept in the index database.
+ * <p>
+ * Every value starts with a 4 byte header: two magic bytes, the format version and the value kind, followed by a
+ * 16 bit presence mask for nullable fields. Scalars and 32 byte hashes live at fixed offsets, variable length
+ * arrays are appended after the fixed part with their lengths stored in the fixed part. Difficulties are 128 bit
+ * values stored right aligned in a 256 bit big-endian slot. The codec keeps no state, so it can be used from any thread without locking.
+ * <p>
+ * Values that do not carry the header are treated as the old Kryo format, see {@link LegacyKryoCodec}.
+ */
+public final class BinaryCodec {
+
+    public static final byte MAGIC_0 = (byte) 0xDA;
+    public static final byte MAGIC_1 = (byte) 0x6C;
+    public static final byte VERSION = 1;
+
+    public static final byte KIND_BLOCK_INFO = 1;
+    public static final byte KIND_XDAG_STATS = 2;
+    public static final byte KIND_TOP_STATUS = 3;
+
+    private static final int HASH_SIZE = 32;
+    private static final int DIFF_SIZE = 32;
+    private static final int HEADER_SIZE = 4;
+    private static final int PRESENCE_OFFSET = 4;
+
+    /*
+     * BlockInfo v1 layout
+     */
+    private static final int BI_TYPE = 8;
+    private static final int BI_HEIGHT = 16;
+    private static final int BI_TIMESTAMP = 24;
+    private static final int BI_AMOUNT = 32;
+    private static final int BI_FEE = 40;
+    private static final int BI_FLAGS = 48;
+    private static final int BI_REMARK_LEN = 52;
+    private static final int BI_SNAPSHOT_LEN = 56;
+    private static final int BI_HASH = 64;
+    private static final int BI_HASHLOW = 96;
+    private static final int BI_REF = 128;
+    private static final int BI_MAX_DIFF_LINK = 160;
+    private static final int BI_DIFFICULTY = 192;
+    public static final int BI_FIXED_SIZE = 224;
+
+    private static final int BI_HAS_HASH = 1;
+    private static final int BI_HAS_HASHLOW = 1 << 1;
+    private static final int BI_HAS_REF = 1 << 2;
+    private static final int BI_HAS_MAX_DIFF_LINK = 1 << 3;
+    private static final int BI_HAS_DIFFICULTY = 1 << 4;
+    private static final int BI_HAS_REMARK = 1 << 5;
+    private static final int BI_HAS_AMOUNT = 1 << 6;
+    private static final int BI_HAS_FEE = 1 << 7;
+    private static final int BI_IS_SNAPSHOT = 1 << 8;
+    private static final int BI_HAS_SNAPSHOT_INFO = 1 << 9;
+    private static final int BI_SNAPSHOT_TYPE = 1 << 10;
+    private static final int BI_HAS_SNAPSHOT_DATA = 1 << 11;
+
+    /*
+     * XdagStats v1 layout
+     */
+    private static final int ST_NBLOCKS = 8;
+    private static final int ST_TOTAL_NBLOCKS = 16;
+    private static final int ST_NMAIN = 24;
+    private static final int ST_TOTAL_NMAIN = 32;
+    private static final int ST_NWAITSYNC = 40;
+    private static final int ST_NNOREF = 48;
+    private static final int ST_NEXTRA = 56;
+    private static final int ST_MAINTIME = 64;
+    private static final int ST_BALANCE = 72;
+    private static final int ST_NHOSTS = 80;
+    private static final int ST_TOTAL_NHOSTS = 84;
+    private static final int ST_GLOBAL_MINER_LEN = 88;
+    private static final int ST_OUR_LAST_LEN = 92;
+    private static final int ST_DIFFICULTY = 96;
+    private static final int ST_MAX_DIFFICULTY = 128;
+    public static final int ST_FIXED_SIZE = 160;
+
+    private static final int ST_HAS_DIFFICULTY = 1;
+    private static final int ST_HAS_MAX_DIFFICULTY = 1 << 1;
+    private static final int ST_HAS_BALANCE = 1 << 2;
+    private static final int ST_HAS_GLOBAL_MINER = 1 << 3;
+    private static final int ST_HAS_OUR_LAST = 1 << 4;
+
+    /*
+     * XdagTopStatus v1 layout
+     */
+    private static final int TS_TOP_LEN = 8;
+    private static final int TS_PRE_TOP_LEN = 12;
+    private static final int TS_TOP_DIFF = 16;
+    private static final int TS_PRE_TOP_DIFF = 48;
+    public static final int TS_FIXED_SIZE = 80;
+
+    private static final int TS_HAS_TOP = 1;
+    private static final int TS_HAS_TOP_DIFF = 1 << 1;
+    private static final int TS_HAS_PRE_TOP = 1 << 2;
+    private static final int TS_HAS_PRE_TOP_DIFF = 1 << 3;
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Check whether the value was written by this codec with the given kind
+     */
+    public static boolean isEncoded(byte[] bytes, byte kind) {
+        return bytes != null
+                && bytes.length >= HEADER_SIZE
+                && bytes[0] == MAGIC_0
+                && bytes[1] == MAGIC_1
+                && bytes[2] == VERSION
+                && bytes[3] == kind;
+    }
+
+    public static byte[] encodeBlockInfo(BlockInfo info) throws SerializationException {
+        byte[] remark = info.getRemark();
+        SnapshotInfo snapshotInfo = info.getSnapshotInfo();
+        byte[] snapshotData = snapshotInfo == null ? null : snapshotInfo.getData();
+        int remarkLen = remark == null ? 0 : remark.length;
+        int snapshotLen = snapshotData == null ? 0 : snapshotData.length;
+
+        byte[] out = new byte[BI_FIXED_SIZE + remarkLen + snapshotLen];
+        ByteBuffer buf = ByteBuffer.wrap(out);
+        writeHeader(out, KIND_BLOCK_INFO);
+
+        int presence = 0;
+        presence |= putHash(out, BI_HASH, info.getHash(), BI_HAS_HASH);
+        presence |= putHash(out, BI_HASHLOW, info.getHashlow(), BI_HAS_HASHLOW);
+        presence |= putHash(out, BI_REF, info.getRef(), BI_HAS_REF);
+        presence |= putHash(out, BI_MAX_DIFF_LINK, info.getMaxDiffLink(), BI_HAS_MAX_DIFF_LINK);
+        presence |= putDifficulty(out, BI_DIFFICULTY, info.getDifficulty(), BI_HAS_DIFFICULTY);
+        if (info.getAmount() != null) {
+            presence |= BI_HAS_AMOUNT;
+            buf.putLong(BI_AMOUNT, info.getAmount().toLong());
+        }
+        if (info.getFee() != null) {
+            presence |= BI_HAS_FEE;
+            buf.putLong(BI_FEE, info.getFee().toLong());
+        }
+        if (info.isSnapshot()) {
+            presence |= BI_IS_SNAPSHOT;
+        }
+        if (snapshotInfo != null) {
+            presence |= BI_HAS_SNAPSHOT_INFO;
+            if (snapshotInfo.getType()) {
+                presence |= BI_SNAPSHOT_TYPE;
+            }
+            if (snapshotData != null) {
+                presence |= BI_HAS_SNAPSHOT_DATA;
+                System.arraycopy(snapshotData, 0, out, BI_FIXED_SIZE + remarkLen, snapshotLen);
+            }
+        }
+        if (remark != null) {
+            presence |= BI_HAS_REMARK;
+            System.arraycopy(remark, 0, out, BI_FIXED_SIZE, remarkLen);
+        }
+
+        buf.putShort(PRESENCE_OFFSET, (short) presence);
+        buf.putLong(BI_TYPE, info.getType());
+        buf.putLong(BI_HEIGHT, info.getHeight());
+        buf.putLong(BI_TIMESTAMP, info.getTimestamp());
+        buf.putInt(BI_FLAGS, info.getFlags());
+        buf.putInt(BI_REMARK_LEN, remarkLen);
+        buf.putInt(BI_SNAPSHOT_LEN, snapshotLen);
+        return out;
+    }
+
+    public static BlockInfo decodeBlockInfo(byte[] bytes) throws DeserializationException {
+        checkHeader(bytes, KIND_BLOCK_INFO, BI_FIXED_SIZE);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int presence = buf.getShort(PRESENCE_OFFSET) & 0xFFFF;
+        int remarkLen = buf.getInt(BI_REMARK_LEN);
+        int snapshotLen = buf.getInt(BI_SNAPSHOT_LEN);
+        checkLength(bytes, BI_FIXED_SIZE, remarkLen, snapshotLen);
+
+        BlockInfo info = new BlockInfo();
+        info.setType(buf.getLong(BI_TYPE));
+        info.setHeight(buf.getLong(BI_HEIGHT));
+        info.setTimestamp(buf.getLong(BI_TIMESTAMP));
+        info.setFlags(buf.getInt(BI_FLAGS));
+        info.setAmount((presence & BI_HAS_AMOUNT) != 0 ? XAmount.of(buf.getLong(BI_AMOUNT)) : null);
+        info.setFee((presence & BI_HAS_FEE) != 0 ? XAmount.of(buf.getLong(BI_FEE)) : null);
+        info.setHash(getHash(bytes, BI_HASH, presence, BI_HAS_HASH));
+        info.setHashlow(getHash(bytes, BI_HASHLOW, presence, BI_HAS_HASHLOW));
+        info.setRef(getHash(bytes, BI_REF, presence, BI_HAS_REF));
+        info.setMaxDiffLink(getHash(bytes, BI_MAX_DIFF_LINK, presence, BI_HAS_MAX_DIFF_LINK));
+        info.setDifficulty(getDifficulty(bytes, BI_DIFFICULTY, presence, BI_HAS_DIFFICULTY));
+        info.setRemark(getArray(bytes, BI_FIXED_SIZE, remarkLen, presence, BI_HAS_REMARK));
+        info.setSnapshot((presence & BI_IS_SNAPSHOT) != 0);
+        if ((presence & BI_HAS_SNAPSHOT_INFO) != 0) {
+            info.setSnapshotInfo(new SnapshotInfo((presence & BI_SNAPSHOT_TYPE) != 0,
+                    getArray(bytes, BI_FIXED_SIZE + remarkLen, snapshotLen, presence, BI_HAS_SNAPSHOT_DATA)));
+        }
+        return info;
+    }
+
+    public static byte[] encodeXdagStats(XdagStats stats) throws SerializationException {
+        byte[] globalMiner = stats.getGlobalMiner();
+        byte[] ourLast = stats.getOurLastBlockHash();
+        int globalMinerLen = globalMiner == null ? 0 : globalMiner.length;
+        int ourLastLen = ourLast == null ? 0 : ourLast.length;
+
+        byte[] out = new byte[ST_FIXED_SIZE + globalMinerLen + ourLastLen];
+        ByteBuffer buf = ByteBuffer.wrap(out);
+        writeHeader(out, KIND_XDAG_STATS);
+
+        int presence = 0;
+        presence |= putDifficulty(out, ST_DIFFICULTY, stats.getDifficulty(), ST_HAS_DIFFICULTY);
+        presence |= putDifficulty(out, ST_MAX_DIFFICULTY, stats.getMaxdifficulty(), ST_HAS_MAX_DIFFICULTY);
+        if (stats.getBalance() != null) {
+            presence |= ST_HAS_BALANCE;
+            buf.putLong(ST_BALANCE, stats.getBalance().toLong());
+        }
+        if (globalMiner != null) {
+            presence |= ST_HAS_GLOBAL_MINER;
+            System.arraycopy(globalMiner, 0, out, ST_FIXED_SIZE, globalMinerLen);
+        }
+        if (ourLast != null) {
+            presence |= ST_HAS_OUR_LAST;
+            System.arraycopy(ourLast, 0, out, ST_FIXED_SIZE + globalMinerLen, ourLastLen);
+        }
+
+        buf.putShort(PRESENCE_OFFSET, (short) presence);
+        buf.putLong(ST_NBLOCKS, stats.getNblocks());
+        buf.putLong(ST_TOTAL_NBLOCKS, stats.getTotalnblocks());
+        buf.putLong(ST_NMAIN, stats.getNmain());
+        buf.putLong(ST_TOTAL_NMAIN, stats.getTotalnmain());
+        buf.putLong(ST_NWAITSYNC, stats.getNwaitsync());
+        buf.putLong(ST_NNOREF, stats.getNnoref());
+        buf.putLong(ST_NEXTRA, stats.getNextra());
+        buf.putLong(ST_MAINTIME, stats.getMaintime());
+        buf.putInt(ST_NHOSTS, stats.getNhosts());
+        buf.putInt(ST_TOTAL_NHOSTS, stats.getTotalnhosts());
+        buf.putInt(ST_GLOBAL_MINER_LEN, globalMinerLen);
+        buf.putInt(ST_OUR_LAST_LEN, ourLastLen);
+        return out;
+    }
+
+    public static XdagStats decodeXdagStats(byte[] bytes) throws DeserializationException {
+        checkHeader(bytes, KIND_XDAG_STATS, ST_FIXED_SIZE);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int presence = buf.getShort(PRESENCE_OFFSET) & 0xFFFF;
+        int globalMinerLen = buf.getInt(ST_GLOBAL_MINER_LEN);
+        int ourLastLen = buf.getInt(ST_OUR_LAST_LEN);
+        checkLength(bytes, ST_FIXED_SIZE, globalMinerLen, ourLastLen);
+
+        XdagStats stats = new XdagStats();
+        stats.setDifficulty(getDifficulty(bytes, ST_DIFFICULTY, presence, ST_HAS_DIFFICULTY));
+        stats.setMaxdifficulty(getDifficulty(bytes, ST_MAX_DIFFICULTY, presence, ST_HAS_MAX_DIFFICULTY));
+        stats.setNblocks(buf.getLong(ST_NBLOCKS));
+        stats.setTotalnblocks(buf.getLong(ST_TOTAL_NBLOCKS));
+        stats.setNmain(buf.getLong(ST_NMAIN));
+        stats.setTotalnmain(buf.getLong(ST_TOTAL_NMAIN));
+        stats.setNwaitsync(buf.getLong(ST_NWAITSYNC));
+        stats.setNnoref(buf.getLong(ST_NNOREF));
+        stats.setNextra(buf.getLong(ST_NEXTRA));
+        stats.setMaintime(buf.getLong(ST_MAINTIME));
+        stats.setNhosts(buf.getInt(ST_NHOSTS));
+        stats.setTotalnhosts(buf.getInt(ST_TOTAL_NHOSTS));
+        stats.setBalance((presence & ST_HAS_BALANCE) != 0 ? XAmount.of(buf.getLong(ST_BALANCE)) : null);
+        stats.setGlobalMiner(getArray(bytes, ST_FIXED_SIZE, globalMinerLen, presence, ST_HAS_GLOBAL_MINER));
+        stats.setOurLastBlockHash(getArray(bytes, ST_FIXED_SIZE + globalMinerLen, ourLastLen, presence,
+                ST_HAS_OUR_LAST));
+        return stats;
+    }
+
+    public static byte[] encodeTopStatus(XdagTopStatus status) throws SerializationException {
+        byte[] top = status.getTop();
+        byte[] preTop = status.getPreTop();
+        int topLen = top == null ? 0 : top.length;
+        int preTopLen = preTop == null ? 0 : preTop.length;
+
+        byte[] out = new byte[TS_FIXED_SIZE + topLen + preTopLen];
+        ByteBuffer buf = ByteBuffer.wrap(out);
+        writeHeader(out, KIND_TOP_STATUS);
+
+        int presence = 0;
+        presence |= putDifficulty(out, TS_TOP_DIFF, status.getTopDiff(), TS_HAS_TOP_DIFF);
+        presence |= putDifficulty(out, TS_PRE_TOP_DIFF, status.getPreTopDiff(), TS_HAS_PRE_TOP_DIFF);
+        if (top != null) {
+            presence |= TS_HAS_TOP;
+            System.arraycopy(top, 0, out, TS_FIXED_SIZE, topLen);
+        }
+        if (preTop != null) {
+            presence |= TS_HAS_PRE_TOP;
+            System.arraycopy(preTop, 0, out, TS_FIXED_SIZE + topLen, preTopLen);
+        }
+
+        buf.putShort(PRESENCE_OFFSET, (short) presence);
+        buf.putInt(TS_TOP_LEN, topLen);
+        buf.putInt(TS_PRE_TOP_LEN, preTopLen);
+        return out;
+    }
+
+    public static XdagTopStatus decodeTopStatus(byte[] bytes) throws DeserializationException {
+        checkHeader(bytes, KIND_TOP_STATUS, TS_FIXED_SIZE);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int presence = buf.getShort(PRESENCE_OFFSET) & 0xFFFF;
+        int topLen = buf.getInt(TS_TOP_LEN);
+        int preTopLen = buf.getInt(TS_PRE_TOP_LEN);
+        checkLength(bytes, TS_FIXED_SIZE, topLen, preTopLen);
+
+        XdagTopStatus status = new XdagTopStatus();
+        status.setTop(getArray(bytes, TS_FIXED_SIZE, topLen, presence, TS_HAS_TOP));
+        status.setPreTop(getArray(bytes, TS_FIXED_SIZE + topLen, preTopLen, presence, TS_HAS_PRE_TOP));
+        status.setTopDiff(getDifficulty(bytes, TS_TOP_DIFF, presence, TS_HAS_TOP_DIFF));
+        status.setPreTopDiff(getDifficulty(bytes, TS_PRE_TOP_DIFF, presence, TS_HAS_PRE_TOP_DIFF));
+        return status;
+    }
+
+    /**
+     * Decode a BlockInfo written either by this codec or by the legacy Kryo format
+     */
+    public static BlockInfo readBlockInfo(byte[] bytes) throws DeserializationException {
+        if (isEncoded(bytes, KIND_BLOCK_INFO)) {
+            return decodeBlockInfo(bytes);
+        }
+        return LegacyKryoCodec.deserialize(bytes, BlockInfo.class);
+    }
+
+    /**
+     * Decode a XdagStats written either by this codec or by the legacy Kryo format
+     */
+    public static XdagStats readXdagStats(byte[] bytes) throws DeserializationException {
+        if (isEncoded(bytes, KIND_XDAG_STATS)) {
+            return decodeXdagStats(bytes);
+        }
+        return LegacyKryoCodec.deserialize(bytes, XdagStats.class);
+    }
+
+    /**
+     * Decode a XdagTopStatus written either by this codec or by the legacy Kryo format
+     */
+    public static XdagTopStatus readTopStatus(byte[] bytes) throws DeserializationException {
+        if (isEncoded(bytes, KIND_TOP_STATUS)) {
+            return decodeTopStatus(bytes);
+        }
+        return LegacyKryoCodec.deserialize(bytes, XdagTopStatus.class);
+    }
+
+    private static void writeHeader(byte[] out, byte kind) {
+        out[0] = MAGIC_0;
+        out[1] = MAGIC_1;
+        out[2] = VERSION;
+        out[3] = kind;
+    }
+
+    private static void checkHeader(byte[] bytes, byte kind, int fixedSize) throws DeserializationException {
+        if (!isEncoded(bytes, kind)) {
+            throw new DeserializationException("Unknown binary codec header, kind " + kind);
+        }
+        if (bytes.length < fixedSize) {
+            throw new DeserializationException("Truncated value, length " + bytes.length + " < " + fixedSize);
+        }
+    }
+
+    private static void checkLength(byte[] bytes, int fixedSize, int len1, int len2) throws DeserializationException {
+        if (len1 < 0 || len2 < 0 || (long) fixedSize + len1 + len2 != bytes.length) {
+            throw new DeserializationException("Corrupted value, length " + bytes.length + " expected "
+                    + ((long) fixedSize + len1 + len2));
+        }
+    }
+
+    private static int putHash(byte[] out, int offset, byte[] hash, int flag) throws SerializationException {
+        if (hash == null) {
+            return 0;
+        }
+        if (hash.length != HASH_SIZE) {
+            throw new SerializationException("Hash field must be " + HASH_SIZE + " bytes, got " + hash.length);
+        }
+        System.arraycopy(hash, 0, out, offset, HASH_SIZE);
+        return flag;
+    }
+
+    private static byte[] getHash(byte[] bytes, int offset, int presence, int flag) {
+        if ((presence & flag) == 0) {
+            return null;
+        }
+        byte[] hash = new byte[HASH_SIZE];
+        System.arraycopy(bytes, offset, hash, 0, HASH_SIZE);
+        return hash;
+    }
+
+    private static int putDifficulty(byte[] out, int offset, UInt128 diff, int flag) {
+        if (diff == null) {
+            return 0;
+        }
+        // stored right aligned in DIFF_SIZE bytes, the leading bytes stay zero
+        diff.toBytes(out, offset + DIFF_SIZE - UInt128.BYTES);
+        return flag;
+    }
+
+    private static UInt128 getDifficulty(byte[] bytes, int offset, int presence, int flag)
+            throws DeserializationException {
+        if ((presence & flag) == 0) {
+            return null;
+        }
+        for (int i = offset; i < offset + DIFF_SIZE - UInt128.BYTES; i++) {
+            if (bytes[i] != 0) {
+                throw new DeserializationException("Difficulty exceeds 128 bits");
+            }
+        }
+        return UInt128.fromBytes(bytes, offset + DIFF_SIZE - UInt128.BYTES);
+    }
+
+    private static byte[] getArray(byte[] bytes, int offset, int len, int presence, int flag) {
+        if ((presence & flag) == 0) {
+            return null;
+        }
+        byte[] array = new byte[len];
+        System.arraycopy(bytes, offset, array, 0, len);
+        return array;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.rocksdb;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.xdag.core.Block;
+import io.xdag.core.BlockInfo;
+import io.xdag.utils.HashKey;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Bounded read cache in front of {@link BlockStoreImpl}.
+ * <p>
+ * Holds decoded {@link BlockInfo}s and parsed raw {@link Block}s keyed by hashlow. Callers of the block store
+ * mutate the objects they get back, so every read hands out a detached copy and every write stores one.
+ */
+@Slf4j
+public class BlockCache {
+
+    /**
+     * Approximate heap footprint of a BlockInfo without variable length arrays
+     */
+    private static final int BLOCK_INFO_BASE_WEIGHT = 256;
+
+    /**
+     * Approximate heap footprint of a parsed block: 512 bytes raw data, 16 field copies, links and keys
+     */
+    private static final int RAW_BLOCK_WEIGHT = 4096;
+
+    private static final long MB = 1024L * 1024L;
+
+    private final Cache<HashKey, BlockInfo> infoCache;
+    private final Cache<HashKey, Block> rawCache;
+
+    /**
+     * @param infoCacheSize capacity of the BlockInfo cache in MB, 0 disables it
+     * @param rawCacheSize capacity of the raw block cache in MB, 0 disables it
+     */
+    public BlockCache(long infoCacheSize, long rawCacheSize) {
+        this.infoCache = Caffeine.newBuilder()
+                .maximumWeight(Math.max(0, infoCacheSize) * MB)
+                .weigher((HashKey k, BlockInfo v) -> weigh(v))
+                .recordStats()
+                .build();
+        this.rawCache = Caffeine.newBuilder()
+                .maximumWeight(Math.max(0, rawCacheSize) * MB)
+                .weigher((HashKey k, Block v) -> RAW_BLOCK_WEIGHT)
+                .recordStats()
+                .build();
+        log.info("Block cache init, blockInfo:{}MB, rawBlock:{}MB", infoCacheSize, rawCacheSize);
+    }
+
+    public BlockInfo getInfo(Bytes32 hashlow) {
+        BlockInfo info = infoCache.getIfPresent(HashKey.of(hashlow));
+        return info == null ? null : info.copy();
+    }
+
+    /**
+     * Get the info of hashlow, loading it on a miss. A load and a put of the same info are ordered, so a load that
+     * read the store before a write cannot replace the info the write put.
+     *
+     * @param loader reads the info from the store, null if there is none
+     */
+    public BlockInfo getInfo(Bytes32 hashlow, Function<Bytes32, BlockInfo> loader) {
+        BlockInfo info = infoCache.get(HashKey.of(hashlow), k -> loader.apply(hashlow));
+        return info == null ? null : info.copy();
+    }
+
+    /**
+     * Cache an info read from the store unless the cache holds one already, which a write may have put meanwhile
+     *
+     * @return a copy of the cached info
+     */
+    public BlockInfo fillInfo(BlockInfo info) {
+        if (info.getHashlow() == null) {
+            return info;
+        }
+        return infoCache.get(HashKey.of(info.getHashlow()), k -> info.copy()).copy();
+    }
+
+    public void putInfo(BlockInfo info) {
+        if (info == null || info.getHashlow() == null) {
+            return;
+        }
+        infoCache.put(HashKey.of(info.getHashlow()), info.copy());
+    }
+
+    public boolean containsInfo(Bytes32 hashlow) {
+        return infoCache.getIfPresent(HashKey.of(hashlow)) != null;
+    }
+
+    public boolean containsRaw(Bytes32 hashlow) {
+        return rawCache.getIfPresent(HashKey.of(hashlow)) != null;
+    }
+
+    /**
+     * Get a parsed block for hashlow, with its info replaced by the given (already detached) BlockInfo.
+     *
+     * @return null if the raw block is not cached
+     */
+    public Block getRaw(Bytes32 hashlow, BlockInfo info) {
+        Block template = rawCache.getIfPresent(HashKey.of(hashlow));
+        if (template == null) {
+            return null;
+        }
+        return assemble(template, info);
+    }
+
+    /**
+     * Remember a freshly parsed block. The block itself stays owned by the caller.
+     */
+    public void putRaw(Bytes32 hashlow, Block block) {
+        if (block == null || block.getXdagBlock() == null) {
+            return;
+        }
+        Block template = block.copy();
+        template.setInfo(block.getInfo().copy());
+        rawCache.put(HashKey.of(hashlow), template);
+    }
+
+    public void invalidate(Bytes32 hashlow) {
+        HashKey key = HashKey.of(hashlow);
+        infoCache.invalidate(key);
+        rawCache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        infoCache.invalidateAll();
+        rawCache.invalidateAll();
+    }
+
+    public CacheStats getInfoStats() {
+        return infoCache.stats();
+    }
+
+    public CacheStats getRawStats() {
+        return rawCache.stats();
+    }
+
+    public String statsSummary() {
+        CacheStats info = infoCache.stats();
+        CacheStats raw = rawCache.stats();
+        return String.format("blockInfo[hit:%d miss:%d rate:%.2f%% evict:%d] rawBlock[hit:%d miss:%d rate:%.2f%% evict:%d]",
+                info.hitCount(), info.missCount(), info.hitRate() * 100, info.evictionCount(),
+                raw.hitCount(), raw.missCount(), raw.hitRate() * 100, raw.evictionCount());
+    }
+
+    /**
+     * Build a block equivalent to {@code new Block(info)} followed by {@code parse()} on the raw data.
+     */
+    private static Block assemble(Block template, BlockInfo info) {
+        BlockInfo parsedInfo = template.getInfo();
+        // fields rewritten by Block.parse() from the 512 bytes
+        info.setHash(parsedInfo.getHash() == null ? null : parsedInfo.getHash().clone());
+        info.type = parsedInfo.type;
+        info.setTimestamp(parsedInfo.getTimestamp());
+        info.setFee(parsedInfo.getFee());
+        if (parsedInfo.getRemark() != null) {
+            info.setRemark(parsedInfo.getRemark().clone());
+        }
+        Block block = template.copy();
+        block.setInfo(info);
+        block.setSaved(true);
+        block.setParsed(true);
+        return block;
+    }
+
+    private static int weigh(BlockInfo info) {
+        int weight = BLOCK_INFO_BASE_WEIGHT;
+        if (info.getRemark() != null) {
+            weight += info.getRemark().length;
+        }
+        if (info.getSnapshotInfo() != null && info.getSnapshotInfo().getData() != null) {
+            weight += info.getSnapshotInfo().getData().length;
+        }
+        return weight;
+    }
+}
@@ -24,11 +24,6 @@
 
 package io.xdag.db.rocksdb;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.KryoException;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
 import com.google.common.collect.Lists;
 import io.xdag.core.*;
 import io.xdag.db.BlockStore;
@@ -38,34 +33,50 @@ import io.xdag.utils.BasicUtils;
 import io.xdag.utils.BlockUtils;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.FileUtils;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
-import org.apache.tuweni.units.bigints.UInt64;
 import org.bouncycastle.util.encoders.Hex;
-import org.objenesis.strategy.StdInstantiatorStrategy;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.math.BigInteger;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import static io.xdag.config.Constants.BI_APPLIED;
+import static io.xdag.config.Constants.BI_MAIN;
+import static io.xdag.config.Constants.BI_OURS;
 import static io.xdag.utils.BytesUtils.equalBytes;
 
 @Slf4j
 public class BlockStoreImpl implements BlockStore {
 
-    private final Kryo kryo;
+    // MB
+    private static final long DEFAULT_INFO_CACHE_SIZE = 64;
+    private static final long DEFAULT_RAW_CACHE_SIZE = 128;
+    /**
+     * Time index entries resolved per batch of a time range scan
+     */
+    private static final int TIME_SCAN_BATCH = 256;
+    /**
+     * Deletes per batch when the tx history is cleared
+     */
+    private static final int DELETE_BATCH = 10_000;
 
     /**
      * <prefix-hash,value> eg:<diff-hash,blockDiff>
@@ -80,74 +91,136 @@ public class BlockStoreImpl implements BlockStore {
      */
     private final KVSource<byte[], byte[]> blockSource;
     private final KVSource<byte[], byte[]> txHistorySource;
+    /**
+     * Sums of the sync protocol, kept in indexSource
+     */
+    private final SumsIndex sumsIndex;
+    /**
+     * Optional segment files holding raw blocks, blockSource then keeps their locations
+     */
+    private final RawBlockSegmentStore rawSegments;
+    /**
+     * Off-heap height to hashlow index of the main chain, rebuilt from the BLOCK_HEIGHT entries on start
+     */
+    @Getter
+    private final MainChainIndex mainChainIndex = new MainChainIndex();
+
+    /**
+     * Hot-path read cache for BlockInfo and parsed raw blocks
+     */
+    @Getter
+    private final BlockCache blockCache;
+    /**
+     * Raw payloads of blocks before this time may have been pruned, see {@link #pruneRawBlocks(long, int)}
+     */
+    private volatile long rawPrunedTime;
 
     public BlockStoreImpl(
             KVSource<byte[], byte[]> index,
             KVSource<byte[], byte[]> time,
             KVSource<byte[], byte[]> block,
             KVSource<byte[], byte[]> txHistory) {
+        this(index, time, block, txHistory, new BlockCache(DEFAULT_INFO_CACHE_SIZE, DEFAULT_RAW_CACHE_SIZE));
+    }
+
+    public BlockStoreImpl(
+            KVSource<byte[], byte[]> index,
+            KVSource<byte[], byte[]> time,
+            KVSource<byte[], byte[]> block,
+            KVSource<byte[], byte[]> txHistory,
+            BlockCache blockCache) {
+        this(index, time, block, txHistory, blockCache, null);
+    }
+
+    public BlockStoreImpl(
+            KVSource<byte[], byte[]> index,
+            KVSource<byte[], byte[]> time,
+            KVSource<byte[], byte[]> block,
+            KVSource<byte[], byte[]> txHistory,
+            BlockCache blockCache,
+            RawBlockSegmentStore rawSegments) {
         this.indexSource = index;
         this.timeSource = time;
         this.blockSource = block;
         this.txHistorySource = txHistory;
-        this.kryo = new Kryo();
-        kryoRegister();
-    }
-
-    private void kryoRegister() {
-        kryo.setReferences(false);
-        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
-        kryo.register(BigInteger.class);
-        kryo.register(byte[].class);
-        kryo.register(BlockInfo.class);
-        kryo.register(XdagStats.class);
-        kryo.register(XdagTopStatus.class);
-        kryo.register(SnapshotInfo.class);
-        kryo.register(UInt64.class);
-        kryo.register(XAmount.class);
+        this.blockCache = blockCache;
+        this.sumsIndex = new SumsIndex(index);
+        this.rawSegments = rawSegments;
     }
 
-    private byte[] serialize(final Object obj) throws SerializationException {
-        synchronized (kryo) {
-            try {
-                final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                final Output output = new Output(outputStream);
-                kryo.writeObject(output, obj);
-                output.flush();
-                output.close();
-                return outputStream.toByteArray();
-            } catch (final IllegalArgumentException | KryoException exception) {
-                throw new SerializationException(exception.getMessage(), exception);
-            }
+    public void start() {
+        indexSource.init();
+        timeSource.init();
+        blockSource.init();
+        txHistorySource.init();
+        if (rawSegments != null) {
+            rawSegments.start();
         }
+        migrateBinaryCodec();
+        sumsIndex.migrateLegacy();
+        rebuildMainChainIndex();
+        byte[] pruned = indexSource.get(new byte[]{SETTING_PRUNED_TIME});
+        rawPrunedTime = pruned == null ? 0 : BytesUtils.bytesToLong(pruned, 0, false);
     }
 
-    private Object deserialize(final byte[] bytes, Class<?> type) throws DeserializationException {
-        synchronized (kryo) {
+    /**
+     * Rewrite BlockInfo values written in the legacy Kryo format with {@link BinaryCodec}. Runs once per database,
+     * reads keep accepting both formats so an interrupted migration is simply resumed on the next start.
+     */
+    private void migrateBinaryCodec() {
+        byte[] version = indexSource.get(new byte[]{SETTING_CODEC_VERSION});
+        if (version != null && version.length == 1 && version[0] >= BinaryCodec.VERSION) {
+            return;
+        }
+        log.info("Migrating block info to binary codec v{}...", BinaryCodec.VERSION);
+        long start = System.currentTimeMillis();
+        AtomicInteger migrated = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        indexSource.fetchPrefix(new byte[]{HASH_BLOCK_INFO}, pair -> {
+            byte[] value = pair.getValue();
+            if (value == null || BinaryCodec.isEncoded(value, BinaryCodec.KIND_BLOCK_INFO)) {
+                return Boolean.FALSE;
+            }
             try {
-                final ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
-                final Input input = new Input(inputStream);
-                return kryo.readObject(input, type);
-            } catch (final IllegalArgumentException | KryoException | NullPointerException exception) {
-                log.debug("Deserialize data:{}", Hex.toHexString(bytes));
-                throw new DeserializationException(exception.getMessage(), exception);
+                indexSource.put(pair.getKey(), BinaryCodec.encodeBlockInfo(BinaryCodec.readBlockInfo(value)));
+                if (migrated.incrementAndGet() % 1000000 == 0) {
+                    log.info("Migrated {} block infos", migrated.get());
+                }
+            } catch (DeserializationException | SerializationException e) {
+                failed.incrementAndGet();
+                log.error("can't migrate block info:{}", Hex.toHexString(pair.getKey()), e);
+            }
+            return Boolean.FALSE;
+        });
+        try {
+            XdagStats stats = getXdagStatus();
+            if (stats != null) {
+                saveXdagStatus(stats);
+            }
+            XdagTopStatus topStatus = getXdagTopStatus();
+            if (topStatus != null) {
+                saveXdagTopStatus(topStatus);
             }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
         }
-    }
-
-    public void start() {
-        indexSource.init();
-        timeSource.init();
-        blockSource.init();
-        txHistorySource.init();
+        if (failed.get() == 0) {
+            indexSource.put(new byte[]{SETTING_CODEC_VERSION}, new byte[]{BinaryCodec.VERSION});
+        }
+        log.info("Binary codec migration done, {} block infos rewritten, {} failed, cost {} ms",
+                migrated.get(), failed.get(), System.currentTimeMillis() - start);
     }
 
     @Override
     public void stop() {
+        log.info("Block cache stats: {}", blockCache.statsSummary());
         indexSource.close();
         timeSource.close();
         blockSource.close();
         txHistorySource.close();
+        if (rawSegments != null) {
+            rawSegments.stop();
+        }
     }
 
     @Override
@@ -156,16 +229,22 @@ public class BlockStoreImpl implements BlockStore {
     }
 
     public void reset() {
+        blockCache.invalidateAll();
         indexSource.reset();
         timeSource.reset();
         blockSource.reset();
         txHistorySource.reset();
+        mainChainIndex.clear();
+        rawPrunedTime = 0;
+        if (rawSegments != null) {
+            rawSegments.reset();
+        }
     }
 
     public void saveXdagStatus(XdagStats status) {
         byte[] value = null;
         try {
-            value = serialize(status);
+            value = BinaryCodec.encodeXdagStats(status);
         } catch (SerializationException e) {
             log.error(e.getMessage(), e);
         }
@@ -197,37 +276,67 @@ public class BlockStoreImpl implements BlockStore {
 
     public List<TxHistory> getAllTxHistoryFromRocksdb() {
         List<TxHistory> res = Lists.newArrayList();
-        Set<byte[]> Keys = txHistorySource.keys();
-        for (byte[] key : Keys) {
-            byte[] txHistoryBytes = txHistorySource.get(key);
-            byte type = BytesUtils.subArray(txHistoryBytes, 0, 1)[0];
-            boolean isAddress = BytesUtils.subArray(txHistoryBytes, 1, 1)[0] == 1;
-            XdagField.FieldType fieldType = XdagField.FieldType.fromByte(type);
-            Bytes32 addresshashlow = Bytes32.wrap(BytesUtils.subArray(txHistoryBytes, 2, 32));
-            Bytes32 txhashlow = Bytes32.wrap(BytesUtils.subArray(txHistoryBytes, 34, 32));
-            String hash = BasicUtils.hash2Address(txhashlow);
-            XAmount amount =
-                    XAmount.ofXAmount(Bytes.wrap(BytesUtils.subArray(txHistoryBytes, 66, 8)).reverse().toLong());
-            long timestamp = BytesUtils.bytesToLong(BytesUtils.subArray(txHistoryBytes, 74, 8), 0, true);
-            Address address = new Address(addresshashlow, fieldType, amount, isAddress);
-            long remarkLength = BytesUtils.bytesToLong(BytesUtils.subArray(txHistoryBytes, 82, 8), 0, true);
-            String remark = null;
-            if (remarkLength != 0) {
-                remark = new String(BytesUtils.subArray(txHistoryBytes, 90, (int) remarkLength),
-                        StandardCharsets.UTF_8).trim();
-            }
-            res.add(new TxHistory(address, hash, timestamp, remark));
+        try (KVCursor<byte[], byte[]> cursor = txHistorySource.cursor(null, null)) {
+            while (cursor.next()) {
+                res.add(parseTxHistory(cursor.value()));
+            }
         }
         return res;
     }
 
+    private TxHistory parseTxHistory(byte[] txHistoryBytes) {
+        byte type = BytesUtils.subArray(txHistoryBytes, 0, 1)[0];
+        boolean isAddress = BytesUtils.subArray(txHistoryBytes, 1, 1)[0] == 1;
+        XdagField.FieldType fieldType = XdagField.FieldType.fromByte(type);
+        Bytes32 addresshashlow = Bytes32.wrap(BytesUtils.subArray(txHistoryBytes, 2, 32));
+        Bytes32 txhashlow = Bytes32.wrap(BytesUtils.subArray(txHistoryBytes, 34, 32));
+        String hash = BasicUtils.hash2Address(txhashlow);
+        XAmount amount =
+                XAmount.ofXAmount(Bytes.wrap(BytesUtils.subArray(txHistoryBytes, 66, 8)).reverse().toLong());
+        long timestamp = BytesUtils.bytesToLong(BytesUtils.subArray(txHistoryBytes, 74, 8), 0, true);
+        Address address = new Address(addresshashlow, fieldType, amount, isAddress);
+        long remarkLength = BytesUtils.bytesToLong(BytesUtils.subArray(txHistoryBytes, 82, 8), 0, true);
+        String remark = null;
+        if (remarkLength != 0) {
+            remark = new String(BytesUtils.subArray(txHistoryBytes, 90, (int) remarkLength),
+                    StandardCharsets.UTF_8).trim();
+        }
+        return new TxHistory(address, hash, timestamp, remark);
+    }
+
     public void deleteAllTxHistoryFromRocksdb() {
-        for (byte[] key : txHistorySource.keys()) {
-            try {
-                txHistorySource.delete(key);
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
+        // the history may hold millions of entries, they go out in bounded batches of their own
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            uow.afterCommit(this::deleteTxHistory);
+        } else {
+            deleteTxHistory();
+        }
+    }
+
+    /**
+     * Delete the history while walking it, the cursor keeps reading the entries it was opened on
+     */
+    private void deleteTxHistory() {
+        List<byte[]> batch = new ArrayList<>(DELETE_BATCH);
+        try (KVCursor<byte[], byte[]> cursor = txHistorySource.cursor(null, null)) {
+            boolean more = true;
+            while (more) {
+                more = cursor.next();
+                if (more) {
+                    batch.add(cursor.key());
+                }
+                if (batch.size() == DELETE_BATCH || (!more && !batch.isEmpty())) {
+                    try (UnitOfWork ignored = UnitOfWork.begin()) {
+                        for (byte[] key : batch) {
+                            txHistorySource.delete(key);
+                        }
+                    }
+                    batch.clear();
+                }
             }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
         }
     }
 
@@ -240,7 +349,7 @@ public class BlockStoreImpl implements BlockStore {
             return null;
         }
         try {
-            status = (XdagStats) deserialize(value, XdagStats.class);
+            status = BinaryCodec.readXdagStats(value);
         } catch (DeserializationException e) {
             log.error(e.getMessage(), e);
         }
@@ -250,7 +359,7 @@ public class BlockStoreImpl implements BlockStore {
     public void saveXdagTopStatus(XdagTopStatus status) {
         byte[] value = null;
         try {
-            value = serialize(status);
+            value = BinaryCodec.encodeTopStatus(status);
         } catch (SerializationException e) {
             log.error(e.getMessage(), e);
         }
@@ -265,7 +374,7 @@ public class BlockStoreImpl implements BlockStore {
             return null;
         }
         try {
-            status = (XdagTopStatus) deserialize(value, XdagTopStatus.class);
+            status = BinaryCodec.readTopStatus(value);
         } catch (DeserializationException e) {
             log.error(e.getMessage(), e);
         }
@@ -277,7 +386,11 @@ public class BlockStoreImpl implements BlockStore {
         long time = block.getTimestamp();
         // Fix: time中只拿key的后缀（hashlow）就够了，值可以不存
         timeSource.put(BlockUtils.getTimeKey(time, block.getHashLow()), new byte[]{0});
-        blockSource.put(block.getHashLow().toArray(), block.getXdagBlock().getData().toArray());
+        byte[] raw = block.getXdagBlock().getData().toArray();
+        if (rawSegments != null && rawSegments.isAppendEnabled()) {
+            raw = rawSegments.append(time, raw);
+        }
+        blockSource.put(block.getHashLow().toArray(), raw);
         saveBlockSums(block);
         //我们读取的fee，确保只能是我们自己节点执行该区块后赋的值才行，此时属于还没执行，统一置为零
         block.getInfo().setFee(XAmount.ZERO);
@@ -353,57 +466,26 @@ public class BlockStoreImpl implements BlockStore {
         }
     }
 
-    public MutableBytes getSums(String key) {
-        byte[] value = indexSource.get(BytesUtils.merge(SUMS_BLOCK_INFO, key.getBytes(StandardCharsets.UTF_8)));
-        if (value == null) {
-            return null;
-        } else {
-            MutableBytes sums = null;
-            try {
-                sums = MutableBytes.wrap((byte[]) deserialize(value, byte[].class));
-            } catch (DeserializationException e) {
-                log.error(e.getMessage(), e);
-            }
-            return sums;
+    /**
+     * Take a block out of the sums, the counters add up modulo 2^64
+     */
+    private void removeBlockSums(long time, long sum) {
+        List<String> filename = FileUtils.getFileName(time);
+        for (int i = 0; i < filename.size(); i++) {
+            updateSum(filename.get(i), -sum, -512, (time >> (40 - 8 * i)) & 0xff);
         }
     }
 
+    public MutableBytes getSums(String key) {
+        return sumsIndex.get(key);
+    }
+
     public void putSums(String key, Bytes sums) {
-        byte[] value = null;
-        try {
-            value = serialize(sums.toArray());
-        } catch (SerializationException e) {
-            log.error(e.getMessage(), e);
-        }
-        indexSource.put(BytesUtils.merge(SUMS_BLOCK_INFO, key.getBytes(StandardCharsets.UTF_8)), value);
+        sumsIndex.put(key, sums);
     }
 
     public void updateSum(String key, long sum, long size, long index) {
-        MutableBytes sums = getSums(key);
-        if (sums == null) {
-//            sums = new byte[4096];
-            sums = MutableBytes.create(4096);
-//            System.arraycopy(BytesUtils.longToBytes(sum, true), 0, sums, (int) (16 * index), 8);
-            sums.set((int) (16 * index), Bytes.wrap(BytesUtils.longToBytes(sum, true)));
-//            System.arraycopy(BytesUtils.longToBytes(size, true), 0, sums, (int) (index * 16 + 8), 8);
-            sums.set((int) (index * 16 + 8), Bytes.wrap(BytesUtils.longToBytes(size, true)));
-            putSums(key, sums);
-        } else {
-            // size + sum
-//            byte[] data = ArrayUtils.subarray(sums, 16 * (int)index, 16 * (int)index + 16);
-            MutableBytes data = sums.slice(16 * (int) index, 16).mutableCopy();
-//            sum += BytesUtils.bytesToLong(data, 0, true);
-            sum += data.getLong(0, ByteOrder.LITTLE_ENDIAN);
-//            size += BytesUtils.bytesToLong(data, 8, true);
-            size += data.getLong(8, ByteOrder.LITTLE_ENDIAN);
-//            System.arraycopy(BytesUtils.longToBytes(sum, true), 0, data, 0, 8);
-            data.set(0, Bytes.wrap(BytesUtils.longToBytes(sum, true)));
-//            System.arraycopy(BytesUtils.longToBytes(size, true), 0, data, 8, 8);
-            data.set(8, Bytes.wrap(BytesUtils.longToBytes(size, true)));
-//            System.arraycopy(data, 0, sums, 16 * (int)index, 16);
-            sums.set(16 * (int) index, data.slice(0, 16));
-            putSums(key, sums);
-        }
+        sumsIndex.add(key, (int) index, sum, size);
     }
 
     public int loadSum(long starttime, long endtime, MutableBytes sums) {
@@ -469,11 +551,27 @@ public class BlockStoreImpl implements BlockStore {
     public void saveBlockInfo(BlockInfo blockInfo) {
         byte[] value = null;
         try {
-            value = serialize(blockInfo);
+            value = BinaryCodec.encodeBlockInfo(blockInfo);
         } catch (SerializationException e) {
             log.error(e.getMessage(), e);
         }
         indexSource.put(BytesUtils.merge(HASH_BLOCK_INFO, blockInfo.getHashlow()), value);
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow == null) {
+            if (value != null) {
+                blockCache.putInfo(blockInfo);
+            } else {
+                blockCache.invalidate(Bytes32.wrap(blockInfo.getHashlow()));
+            }
+        } else {
+            // other threads keep the committed info until the batch is written, this thread reads the staged one
+            Bytes32 hashlow = Bytes32.wrap(blockInfo.getHashlow().clone());
+            blockCache.invalidate(hashlow);
+            if (value != null) {
+                BlockInfo committed = blockInfo.copy();
+                uow.afterCommit(() -> blockCache.putInfo(committed));
+            }
+        }
         // 如果区块是主块的话顺便保存对应的高度信息
         // TODO: paulochen 如果回滚了，对应高度的键值对该怎么更新(直接让其height=0的区块覆盖)
 //        if (blockInfo.getHeight() > 0) {
@@ -484,51 +582,299 @@ public class BlockStoreImpl implements BlockStore {
     }
 
     public boolean hasBlock(Bytes32 hashlow) {
-        return blockSource.get(hashlow.toArray()) != null;
+        return blockCache.containsRaw(hashlow) || blockSource.get(hashlow.toArray()) != null;
     }
 
     public boolean hasBlockInfo(Bytes32 hashlow) {
-        return indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray())) != null;
+        return blockCache.containsInfo(hashlow)
+                || indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray())) != null;
     }
 
     public List<Block> getBlocksUsedTime(long startTime, long endTime) {
-        List<Block> res = Lists.newArrayList();
-        long time = startTime;
-        while (time < endTime) {
-            List<Block> blocks = getBlocksByTime(time);
-            time += 0x10000;
-            if (CollectionUtils.isEmpty(blocks)) {
-                continue;
+        try (Stream<Block> blocks = streamBlocksByTime(startTime, endTime)) {
+            return blocks.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Blocks of the time frames from startTime up to endTime, read lazily with one scan over the time index and
+     * payloads resolved in batches. The stream holds a database cursor until it is exhausted or closed, so consume it
+     * on the calling thread inside try-with-resources.
+     */
+    public Stream<Block> streamBlocksByTime(long startTime, long endTime) {
+        if (endTime <= startTime) {
+            return Stream.empty();
+        }
+        // same time frames as stepping from startTime by 0x10000 while below endTime
+        long frames = (endTime - startTime + 0xffff) >>> 16;
+        byte[] lower = BlockUtils.getTimeKey(startTime, null);
+        byte[] upper = BlockUtils.getTimeKey(startTime + (frames << 16), null);
+        class TimeRangeBlocks extends Spliterators.AbstractSpliterator<Block> {
+            private final Deque<Block> pending = new ArrayDeque<>();
+            private KVCursor<byte[], byte[]> cursor;
+            private boolean exhausted;
+
+            TimeRangeBlocks() {
+                super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Block> action) {
+                // the iterator is opened by the first read, not when the stream is built
+                if (cursor == null && !exhausted) {
+                    cursor = timeSource.cursor(lower, upper);
+                }
+                while (pending.isEmpty() && !exhausted) {
+                    List<Bytes32> hashlows = new ArrayList<>(TIME_SCAN_BATCH);
+                    while (hashlows.size() < TIME_SCAN_BATCH && cursor.next()) {
+                        hashlows.add(timeKeyHash(cursor.key()));
+                    }
+                    if (hashlows.size() < TIME_SCAN_BATCH) {
+                        exhausted = true;
+                        cursor.close();
+                    }
+                    pending.addAll(getRawBlocksByHash(hashlows));
+                }
+                Block block = pending.poll();
+                if (block == null) {
+                    return false;
+                }
+                action.accept(block);
+                return true;
+            }
+
+            void close() {
+                if (cursor != null) {
+                    cursor.close();
+                }
             }
-            res.addAll(blocks);
         }
-        return res;
+        TimeRangeBlocks blocks = new TimeRangeBlocks();
+        return StreamSupport.stream(blocks, false).onClose(blocks::close);
     }
 
     public List<Block> getBlocksByTime(long startTime) {
-        List<Block> blocks = Lists.newArrayList();
-        byte[] keyPrefix = BlockUtils.getTimeKey(startTime, null);
-        List<byte[]> keys = timeSource.prefixKeyLookup(keyPrefix);
-        for (byte[] bytes : keys) {
-            // 1 + 8 : prefix + time
-            byte[] hash = BytesUtils.subArray(bytes, 1 + 8, 32);
-            Block block = getBlockByHash(Bytes32.wrap(hash), true);
+        List<Bytes32> hashlows = Lists.newArrayList();
+        try (KVCursor<byte[], byte[]> cursor = timeSource.prefixCursor(BlockUtils.getTimeKey(startTime, null))) {
+            while (cursor.next()) {
+                hashlows.add(timeKeyHash(cursor.key()));
+            }
+        }
+        return getRawBlocksByHash(hashlows);
+    }
+
+    private static Bytes32 timeKeyHash(byte[] timeKey) {
+        // 1 + 8 : prefix + time
+        return Bytes32.wrap(BytesUtils.subArray(timeKey, 1 + 8, 32));
+    }
+
+    /**
+     * Batched {@link #getRawBlockByHash(Bytes32)}, block infos and raw data missing in the cache are read with one
+     * multiGet each. Blocks without info or raw data are skipped.
+     */
+    private List<Block> getRawBlocksByHash(List<Bytes32> hashlows) {
+        int size = hashlows.size();
+        BlockInfo[] infos = getBlockInfosByHash(hashlows);
+        Block[] blocks = new Block[size];
+        List<Integer> missing = new ArrayList<>();
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (infos[i] == null) {
+                continue;
+            }
+            blocks[i] = blockCache.getRaw(hashlows.get(i), infos[i]);
+            if (blocks[i] == null) {
+                missing.add(i);
+                keys.add(hashlows.get(i).toArray());
+            }
+        }
+        List<byte[]> raws = blockSource.multiGet(keys);
+        for (int j = 0; j < raws.size(); j++) {
+            MutableBytes raw = resolveRaw(raws.get(j));
+            if (raw == null) {
+                continue;
+            }
+            int i = missing.get(j);
+            Block block = new Block(infos[i]);
+            block.setXdagBlock(new XdagBlock(raw));
+            block.setParsed(false);
+            block.parse();
+            blockCache.putRaw(hashlows.get(i), block);
+            blocks[i] = block;
+        }
+
+        List<Block> res = new ArrayList<>(size);
+        for (Block block : blocks) {
             if (block != null) {
-                blocks.add(block);
+                res.add(block);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Batched block info lookup, infos missing in the cache are read with one multiGet
+     *
+     * @return infos in the order of the hashes, null where unknown
+     */
+    private BlockInfo[] getBlockInfosByHash(List<Bytes32> hashlows) {
+        int size = hashlows.size();
+        BlockInfo[] infos = new BlockInfo[size];
+        List<Integer> missing = new ArrayList<>();
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            infos[i] = blockCache.getInfo(hashlows.get(i));
+            if (infos[i] == null) {
+                missing.add(i);
+                keys.add(BytesUtils.merge(HASH_BLOCK_INFO, hashlows.get(i).toArray()));
+            }
+        }
+        List<byte[]> values = indexSource.multiGet(keys);
+        for (int j = 0; j < values.size(); j++) {
+            byte[] value = values.get(j);
+            if (value == null) {
+                continue;
+            }
+            try {
+                infos[missing.get(j)] = cacheInfo(BinaryCodec.readBlockInfo(value));
+            } catch (DeserializationException e) {
+                log.error("can't deserialize data:{}", Hex.toHexString(value));
+                log.error(e.getMessage(), e);
             }
         }
-        return blocks;
+
+        return infos;
     }
 
     // ADD: 通过高度获取区块
     public Block getBlockByHeight(long height) {
-        byte[] hashlow = indexSource.get(BlockUtils.getHeight(height));
+        byte[] hashlow = mainChainIndex.get(height);
+        if (hashlow != null) {
+            Block block = getBlockByHash(Bytes32.wrap(hashlow), false);
+            // a reorg may have moved the height since the index was read
+            if (block != null && block.getInfo().getHeight() == height) {
+                return block;
+            }
+        }
+        hashlow = indexSource.get(BlockUtils.getHeight(height));
         if (hashlow == null) {
             return null;
         }
         return getBlockByHash(Bytes32.wrap(hashlow), false);
     }
 
+    /**
+     * Main blocks of the heights from fromHeight to toHeight, both inclusive, in ascending order. Heights without a
+     * main block are skipped.
+     */
+    public List<Block> getBlocksByHeight(long fromHeight, long toHeight) {
+        List<Block> res = new ArrayList<>();
+        if (fromHeight <= 0 || toHeight < fromHeight) {
+            return res;
+        }
+        int size = (int) Math.min(toHeight - fromHeight + 1, Integer.MAX_VALUE);
+        List<Bytes32> hashlows = new ArrayList<>(size);
+        List<Integer> missing = new ArrayList<>();
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            byte[] hashlow = mainChainIndex.get(fromHeight + i);
+            hashlows.add(hashlow == null ? null : Bytes32.wrap(hashlow));
+            if (hashlow == null) {
+                missing.add(i);
+                keys.add(BlockUtils.getHeight(fromHeight + i));
+            }
+        }
+        List<byte[]> values = indexSource.multiGet(keys);
+        for (int j = 0; j < values.size(); j++) {
+            if (values.get(j) != null) {
+                hashlows.set(missing.get(j), Bytes32.wrap(values.get(j)));
+            }
+        }
+        List<Bytes32> known = new ArrayList<>(size);
+        List<Long> heights = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (hashlows.get(i) != null) {
+                known.add(hashlows.get(i));
+                heights.add(fromHeight + i);
+            }
+        }
+        BlockInfo[] infos = getBlockInfosByHash(known);
+        // a reorg may have moved a height since the in-memory index was read, fall back to the stored index as
+        // getBlockByHeight does
+        List<Integer> stale = new ArrayList<>();
+        List<byte[]> staleKeys = new ArrayList<>();
+        for (int i = 0; i < infos.length; i++) {
+            if (infos[i] == null || infos[i].getHeight() != heights.get(i)) {
+                stale.add(i);
+                staleKeys.add(BlockUtils.getHeight(heights.get(i)));
+            }
+        }
+        if (!stale.isEmpty()) {
+            List<byte[]> stored = indexSource.multiGet(staleKeys);
+            List<Integer> reread = new ArrayList<>();
+            List<Bytes32> rereadHashlows = new ArrayList<>();
+            for (int j = 0; j < stored.size(); j++) {
+                if (stored.get(j) != null) {
+                    reread.add(stale.get(j));
+                    rereadHashlows.add(Bytes32.wrap(stored.get(j)));
+                } else {
+                    infos[stale.get(j)] = null;
+                }
+            }
+            BlockInfo[] rereadInfos = getBlockInfosByHash(rereadHashlows);
+            for (int j = 0; j < rereadInfos.length; j++) {
+                infos[reread.get(j)] = rereadInfos[j];
+            }
+        }
+        for (BlockInfo info : infos) {
+            if (info != null) {
+                res.add(new Block(info));
+            }
+        }
+        return res;
+    }
+
+    public void setMainHeight(long height, byte[] hashlow) {
+        mainChainIndex.set(height, hashlow);
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            uow.onRollback(() -> mainChainIndex.truncate(height - 1));
+        }
+    }
+
+    public void unSetMainHeight(long height) {
+        byte[] hashlow = mainChainIndex.get(height);
+        mainChainIndex.truncate(height - 1);
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null && hashlow != null) {
+            uow.onRollback(() -> mainChainIndex.set(height, hashlow));
+        }
+    }
+
+    /**
+     * Load the main chain heights up to the stored nmain into {@link #mainChainIndex}
+     */
+    private void rebuildMainChainIndex() {
+        mainChainIndex.clear();
+        XdagStats stats = getXdagStatus();
+        long nmain = stats == null ? 0 : stats.nmain;
+        if (nmain <= 0) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try (KVCursor<byte[], byte[]> cursor = indexSource.cursor(BlockUtils.getHeight(1),
+                BlockUtils.getHeight(nmain + 1))) {
+            while (cursor.next()) {
+                byte[] key = cursor.key();
+                if (key.length == 9 && cursor.value().length == 32) {
+                    mainChainIndex.set(BytesUtils.bytesToLong(key, 1, false), cursor.value());
+                }
+            }
+        }
+        log.info("Main chain index rebuilt up to height {}, {} KB off-heap, cost {} ms", mainChainIndex.top(),
+                mainChainIndex.capacityBytes() / 1024, System.currentTimeMillis() - start);
+    }
+
     public Block getBlockByHash(Bytes32 hashlow, boolean isRaw) {
         if (isRaw) {
             return getRawBlockByHash(hashlow);
@@ -541,36 +887,126 @@ public class BlockStoreImpl implements BlockStore {
         if (block == null) {
             return null;
         }
+        Block cached = blockCache.getRaw(hashlow, block.getInfo());
+        if (cached != null) {
+            return cached;
+        }
 //        log.debug("Data:{}",Hex.toHexString(blockSource.get(hashlow)));
+        MutableBytes raw = resolveRaw(blockSource.get(hashlow.toArray()));
         // 没有源数据
-        if (blockSource.get(hashlow.toArray()) == null) {
+        if (raw == null) {
 //            log.error("No block origin data");
+            if (block.getInfo().getTimestamp() < rawPrunedTime && isPrunable(block.getInfo())) {
+                log.debug("Raw data of block {} was pruned", hashlow.toHexString());
+            }
             return null;
         }
-        block.setXdagBlock(new XdagBlock(blockSource.get(hashlow.toArray())));
+        block.setXdagBlock(new XdagBlock(raw));
         block.setParsed(false);
         block.parse();
+        blockCache.putRaw(hashlow, block);
         return block;
     }
 
-    public Block getBlockInfoByHash(Bytes32 hashlow) {
-        if (!hasBlockInfo(hashlow)) {
-            return null;
+    public long getRawPrunedTime() {
+        return rawPrunedTime;
+    }
+
+    /**
+     * Applied blocks that are neither main nor ours and hold no amount are not read raw once they are final. A block
+     * with an amount is still an input candidate, so its body has to stay readable.
+     */
+    private static boolean isPrunable(BlockInfo info) {
+        return (info.getFlags() & BI_APPLIED) != 0 && (info.getFlags() & (BI_MAIN | BI_OURS)) == 0
+                && (info.getAmount() == null || info.getAmount().isZero());
+    }
+
+    /**
+     * Delete the raw payloads and time index entries of prunable blocks, continuing from the pruned time towards
+     * beforeTime. At most about maxKeys time index entries are visited per call, whole time frames at a time. Their
+     * BlockInfo is kept, raw reads of the pruned blocks return null. The sums drop the pruned blocks too, so sync
+     * only advertises blocks it can still serve.
+     *
+     * @return number of blocks pruned, the pruned time tells how far the call got
+     */
+    public int pruneRawBlocks(long beforeTime, int maxKeys) {
+        long from = rawPrunedTime;
+        if (beforeTime <= from) {
+            return 0;
         }
-        BlockInfo blockInfo = null;
-        byte[] value = indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray()));
-        if (value == null) {
-            return null;
-        } else {
-            try {
-                blockInfo = (BlockInfo) deserialize(value, BlockInfo.class);
-            } catch (DeserializationException e) {
-                log.error("hash low:{}", hashlow.toHexString());
-                log.error("can't deserialize data:{}", Hex.toHexString(value));
-                log.error(e.getMessage(), e);
+        List<byte[]> timeKeys = new ArrayList<>();
+        List<Bytes32> hashlows = new ArrayList<>();
+        long next = beforeTime;
+        long lastFrame = -1;
+        try (KVCursor<byte[], byte[]> cursor = timeSource.cursor(BlockUtils.getTimeKey(from, null),
+                BlockUtils.getTimeKey(beforeTime, null))) {
+            while (cursor.next()) {
+                byte[] key = cursor.key();
+                if (key.length != 41) {
+                    continue;
+                }
+                long frame = BytesUtils.bytesToLong(key, 1, false);
+                // a time frame is never split, so the pruned time can move to the next frame
+                if (timeKeys.size() >= maxKeys && frame != lastFrame) {
+                    next = frame << 16;
+                    break;
+                }
+                lastFrame = frame;
+                timeKeys.add(key);
+                hashlows.add(Bytes32.wrap(BytesUtils.subArray(key, 9, 32)));
+            }
+        }
+        BlockInfo[] infos = getBlockInfosByHash(hashlows);
+        int pruned = 0;
+        try (UnitOfWork ignored = UnitOfWork.begin()) {
+            for (int i = 0; i < infos.length; i++) {
+                if (infos[i] == null || !isPrunable(infos[i])) {
+                    continue;
+                }
+                MutableBytes raw = resolveRaw(blockSource.get(hashlows.get(i).toArray()));
+                if (raw != null) {
+                    removeBlockSums(infos[i].getTimestamp(), new XdagBlock(raw).getSum());
+                }
+                timeSource.delete(timeKeys.get(i));
+                blockSource.delete(hashlows.get(i).toArray());
+                pruned++;
             }
+            indexSource.put(new byte[]{SETTING_PRUNED_TIME}, BytesUtils.longToBytes(next, false));
+        }
+        // raw reads check the pruned time only after the deletes are persisted
+        rawPrunedTime = next;
+        for (int i = 0; i < infos.length; i++) {
+            if (infos[i] != null && isPrunable(infos[i])) {
+                blockCache.invalidate(hashlows.get(i));
+            }
+        }
+        return pruned;
+    }
+
+    /**
+     * Reclaim the space of the time index entries deleted between the two times
+     */
+    public void compactTimeIndex(long fromTime, long toTime) {
+        timeSource.compactRange(BlockUtils.getTimeKey(fromTime, null), BlockUtils.getTimeKey(toTime, null));
+    }
+
+    /**
+     * @return the raw block stored inline or, for a segment location, a read-only view of the segment record
+     */
+    private MutableBytes resolveRaw(byte[] value) {
+        if (!RawBlockSegmentStore.isLocation(value)) {
+            return value == null ? null : MutableBytes.wrap(value);
+        }
+        if (rawSegments == null) {
+            log.error("Raw block is stored in a segment but no segment store is open");
+            return null;
         }
-        return new Block(blockInfo);
+        return rawSegments.read(value);
+    }
+
+    public Block getBlockInfoByHash(Bytes32 hashlow) {
+        BlockInfo blockInfo = getBlockInfo(hashlow);
+        return blockInfo == null ? null : new Block(blockInfo);
 //        if (blockSource.get(hashlow.toArray()) == null) {
 ////            log.error("No block origin data");
 //            return block;
@@ -580,23 +1016,44 @@ public class BlockStoreImpl implements BlockStore {
 //        }
     }
 
+    /**
+     * Cache an info read from the store and return the cached one, an info a write cached meanwhile wins over the
+     * read. Infos staged by the open unit of work stay out of the cache until it commits.
+     */
+    private BlockInfo cacheInfo(BlockInfo blockInfo) {
+        if (blockInfo == null || isStaged(blockInfo.getHashlow())) {
+            return blockInfo;
+        }
+        return blockCache.fillInfo(blockInfo);
+    }
+
+    private boolean isStaged(byte[] hashlow) {
+        UnitOfWork uow = UnitOfWork.current();
+        return uow != null && indexSource instanceof RocksdbKVSource source
+                && uow.lookup(source, BytesUtils.merge(HASH_BLOCK_INFO, hashlow)) != null;
+    }
+
     public BlockInfo getBlockInfo(Bytes32 hashlow) {
-        if (!hasBlockInfo(hashlow)) {
-            return null;
+        if (isStaged(hashlow.toArray())) {
+            return readBlockInfo(hashlow);
         }
-        BlockInfo blockInfo = null;
+        // loads and writes of an info are ordered by the cache, so a load racing with a write cannot leave the
+        // info it read before the write behind
+        return blockCache.getInfo(hashlow, this::readBlockInfo);
+    }
+
+    private BlockInfo readBlockInfo(Bytes32 hashlow) {
         byte[] value = indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray()));
         if (value == null) {
             return null;
-        } else {
-            try {
-                blockInfo = (BlockInfo) deserialize(value, BlockInfo.class);
-            } catch (DeserializationException e) {
-                log.error("hash low:{}", hashlow.toHexString());
-                log.error("can't deserialize data:{}", Hex.toHexString(value));
-                log.error(e.getMessage(), e);
-            }
-            return blockInfo;
+        }
+        try {
+            return BinaryCodec.readBlockInfo(value);
+        } catch (DeserializationException e) {
+            log.error("hash low:{}", hashlow.toHexString());
+            log.error("can't deserialize data:{}", Hex.toHexString(value));
+            log.error(e.getMessage(), e);
+            return null;
         }
     }
 
@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Binary heap with a position index, so membership is O(1) and removal of any element O(log n), where
+ * {@link java.util.PriorityQueue} needs a linear scan for both.
+ * <p>
+ * Elements are identified by {@code equals}/{@code hashCode} and offering an element that is already queued is a
+ * no-op. All operations are synchronized, iterators walk a snapshot in no particular order like those of
+ * {@link java.util.concurrent.PriorityBlockingQueue}.
+ */
+public class IndexedHeap<E> extends AbstractQueue<E> {
+
+    private final Comparator<? super E> comparator;
+    private final Map<E, Integer> positions = new HashMap<>();
+    private Object[] heap;
+    private int size;
+
+    public IndexedHeap(int initialCapacity, Comparator<? super E> comparator) {
+        this.heap = new Object[Math.max(1, initialCapacity)];
+        this.comparator = comparator;
+    }
+
+    @Override
+    public synchronized boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (positions.containsKey(e)) {
+            return false;
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size + (size >> 1) + 1);
+        }
+        heap[size] = e;
+        positions.put(e, size);
+        siftUp(size++);
+        return true;
+    }
+
+    @Override
+    public synchronized E peek() {
+        return size == 0 ? null : elementAt(0);
+    }
+
+    @Override
+    public synchronized E poll() {
+        return size == 0 ? null : removeAt(0);
+    }
+
+    @Override
+    public synchronized boolean contains(Object o) {
+        return o != null && positions.containsKey(o);
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+        Integer i = o == null ? null : positions.get(o);
+        if (i == null) {
+            return false;
+        }
+        removeAt(i);
+        return true;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        Arrays.fill(heap, 0, size, null);
+        positions.clear();
+        size = 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Iterator<E> iterator() {
+        return Arrays.asList((E[]) Arrays.copyOf(heap, size)).iterator();
+    }
+
+    private E removeAt(int i) {
+        E removed = elementAt(i);
+        positions.remove(removed);
+        int last = --size;
+        if (i != last) {
+            E moved = elementAt(last);
+            heap[i] = moved;
+            positions.put(moved, i);
+            heap[last] = null;
+            if (!siftUp(i)) {
+                siftDown(i);
+            }
+        } else {
+            heap[last] = null;
+        }
+        return removed;
+    }
+
+    /**
+     * @return whether the element moved
+     */
+    private boolean siftUp(int i) {
+        int start = i;
+        E e = elementAt(i);
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            E p = elementAt(parent);
+            if (comparator.compare(e, p) >= 0) {
+                break;
+            }
+            heap[i] = p;
+            positions.put(p, i);
+            i = parent;
+        }
+        heap[i] = e;
+        positions.put(e, i);
+        return i != start;
+    }
+
+    private void siftDown(int i) {
+        E e = elementAt(i);
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && comparator.compare(elementAt(right), elementAt(child)) < 0) {
+                child = right;
+            }
+            E c = elementAt(child);
+            if (comparator.compare(e, c) <= 0) {
+                break;
+            }
+            heap[i] = c;
+            positions.put(c, i);
+            i = child;
+        }
+        heap[i] = e;
+        positions.put(e, i);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementAt(int i) {
+        return (E) heap[i];
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+/**
+ * Forward-only cursor over the entries of a {@link KVSource} in key order. It starts before the first entry and holds
+ * native resources, so it has to be closed.
+ *
+ * <pre>
+ * try (KVCursor&lt;byte[], byte[]&gt; cursor = source.prefixCursor(prefix)) {
+ *     while (cursor.next()) {
+ *         ... cursor.key(), cursor.value()
+ *     }
+ * }
+ * </pre>
+ */
+public interface KVCursor<K, V> extends AutoCloseable {
+
+    /**
+     * Move to the next entry
+     *
+     * @return false when there are no more entries
+     */
+    boolean next();
+
+    K key();
+
+    V value();
+
+    @Override
+    void close();
+}
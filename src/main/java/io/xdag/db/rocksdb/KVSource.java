@@ -49,8 +49,45 @@ public interface KVSource<K, V> {
 
     void delete(K key);
 
+    /**
+     * Merge an operand into the value of a key with the store's merge operator, which adds 64-bit little-endian
+     * integers
+     */
+    void merge(K key, V operand);
+
+    /**
+     * Collect all keys of the store in memory, prefer {@link #cursor(Object, Object)} for large stores
+     */
     Set<byte[]> keys() throws RuntimeException;
 
+    /**
+     * Batched point lookup
+     *
+     * @return values in the order of the keys, null for missing keys
+     */
+    List<V> multiGet(List<K> keys);
+
+    /**
+     * Cursor over the keys in {@code [lower, upper)}, a null bound leaves that side open
+     */
+    KVCursor<K, V> cursor(K lower, K upper);
+
+    /**
+     * Cursor over the keys starting with the prefix
+     */
+    KVCursor<K, V> prefixCursor(K prefix);
+
+    /**
+     * Take a consistent read view of the store
+     */
+    KVSnapshot<K, V> snapshot();
+
+    /**
+     * Compact the keys in {@code [begin, end)} so the space of deleted entries is reclaimed, a null bound leaves
+     * that side open
+     */
+    void compactRange(K begin, K end);
+
     List<K> prefixKeyLookup(byte[] key);
 
     void fetchPrefix(byte[] key, Function<Pair<K, V>, Boolean> func);
@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.DefaultSerializers.BigIntegerSerializer;
+import com.esotericsoftware.kryo.serializers.ImmutableSerializer;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import io.xdag.core.BlockInfo;
+import io.xdag.core.PreBlockInfo;
+import io.xdag.core.SnapshotInfo;
+import io.xdag.core.XAmount;
+import io.xdag.core.XdagStats;
+import io.xdag.core.XdagTopStatus;
+import io.xdag.db.execption.DeserializationException;
+import io.xdag.db.execption.SerializationException;
+import io.xdag.utils.UInt128;
+import java.math.BigInteger;
+import org.apache.tuweni.units.bigints.UInt64;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+/**
+ * Kryo based format used by databases written before {@link BinaryCodec}.
+ * <p>
+ * Kept for reading old index/snapshot data and for values that have no fixed layout yet. Kryo instances are not
+ * thread safe, so each thread gets its own instead of sharing one behind a monitor. The registration order must
+ * not change, the registration ids are part of the stored bytes.
+ */
+public final class LegacyKryoCodec {
+
+    private static final ThreadLocal<Kryo> KRYO = ThreadLocal.withInitial(LegacyKryoCodec::newKryo);
+
+    private LegacyKryoCodec() {
+    }
+
+    private static Kryo newKryo() {
+        Kryo kryo = new Kryo();
+        kryo.setReferences(false);
+        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        // difficulties used to be BigInteger fields, UInt128 takes over that id and byte layout
+        kryo.register(UInt128.class, new UInt128Serializer());
+        kryo.register(byte[].class);
+        kryo.register(BlockInfo.class);
+        kryo.register(XdagStats.class);
+        kryo.register(XdagTopStatus.class);
+        kryo.register(SnapshotInfo.class);
+        kryo.register(UInt64.class);
+        kryo.register(XAmount.class);
+        kryo.register(PreBlockInfo.class);
+        return kryo;
+    }
+
+    public static byte[] serialize(final Object obj) throws SerializationException {
+        try (Output output = new Output(256, -1)) {
+            KRYO.get().writeObject(output, obj);
+            return output.toBytes();
+        } catch (final IllegalArgumentException | KryoException exception) {
+            throw new SerializationException(exception.getMessage(), exception);
+        }
+    }
+
+    public static <T> T deserialize(final byte[] bytes, Class<T> type) throws DeserializationException {
+        try (Input input = new Input(bytes)) {
+            return KRYO.get().readObject(input, type);
+        } catch (final IllegalArgumentException | KryoException | NullPointerException exception) {
+            throw new DeserializationException(exception.getMessage(), exception);
+        }
+    }
+
+    /**
+     * Reads and writes {@link UInt128} exactly like Kryo's BigInteger serializer, so values written before the
+     * difficulty type changed still decode and new values stay readable by older nodes. UInt128 is not final,
+     * which keeps the class id in front of each difficulty field as it was for BigInteger.
+     */
+    public static final class UInt128Serializer extends ImmutableSerializer<UInt128> {
+
+        private final BigIntegerSerializer delegate = new BigIntegerSerializer();
+
+        @Override
+        public void write(Kryo kryo, Output output, UInt128 value) {
+            delegate.write(kryo, output, value == null ? null : value.toBigInteger());
+        }
+
+        @Override
+        public UInt128 read(Kryo kryo, Input input, Class<? extends UInt128> type) {
+            return UInt128.valueOf(delegate.read(kryo, input, BigInteger.class));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Dense height to hashlow index of the main chain, kept off-heap in direct buffers of {@link #CHUNK_HEIGHTS} entries.
+ * <p>
+ * Writes come from the block store while the chain is locked, reads may come from any thread. A read racing with a
+ * reorg at the same height can see a stale hashlow, callers check the height of the block they load.
+ */
+public class MainChainIndex {
+
+    public static final int CHUNK_HEIGHTS = 1 << 16;
+    private static final int ENTRY_SIZE = 32;
+    private static final byte[] EMPTY = new byte[ENTRY_SIZE];
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private volatile long top;
+
+    /**
+     * @return the highest indexed main height
+     */
+    public long top() {
+        return top;
+    }
+
+    /**
+     * @return hashlow of the main block at the height, or null if it is not indexed
+     */
+    public byte[] get(long height) {
+        if (height <= 0 || height > top) {
+            return null;
+        }
+        ByteBuffer[] current = chunks;
+        int chunk = (int) (height / CHUNK_HEIGHTS);
+        if (chunk >= current.length) {
+            return null;
+        }
+        byte[] hashlow = new byte[ENTRY_SIZE];
+        current[chunk].get((int) (height % CHUNK_HEIGHTS) * ENTRY_SIZE, hashlow);
+        return Arrays.equals(hashlow, EMPTY) ? null : hashlow;
+    }
+
+    /**
+     * Index the main block of a height, the height becomes the top if it is above it
+     */
+    public synchronized void set(long height, byte[] hashlow) {
+        if (height <= 0 || hashlow.length != ENTRY_SIZE) {
+            return;
+        }
+        int chunk = (int) (height / CHUNK_HEIGHTS);
+        ByteBuffer[] current = chunks;
+        if (chunk >= current.length) {
+            ByteBuffer[] grown = Arrays.copyOf(current, chunk + 1);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = ByteBuffer.allocateDirect(CHUNK_HEIGHTS * ENTRY_SIZE);
+            }
+            chunks = current = grown;
+        }
+        current[chunk].put((int) (height % CHUNK_HEIGHTS) * ENTRY_SIZE, hashlow);
+        if (height > top) {
+            top = height;
+        }
+    }
+
+    /**
+     * Drop all heights above the given one
+     */
+    public synchronized void truncate(long height) {
+        long newTop = Math.max(height, 0);
+        ByteBuffer[] current = chunks;
+        for (long h = top; h > newTop; h--) {
+            int chunk = (int) (h / CHUNK_HEIGHTS);
+            if (chunk < current.length) {
+                current[chunk].put((int) (h % CHUNK_HEIGHTS) * ENTRY_SIZE, EMPTY);
+            }
+        }
+        top = Math.min(top, newTop);
+    }
+
+    public synchronized void clear() {
+        chunks = new ByteBuffer[0];
+        top = 0;
+    }
+
+    /**
+     * @return off-heap bytes held by the index
+     */
+    public long capacityBytes() {
+        return (long) chunks.length * CHUNK_HEIGHTS * ENTRY_SIZE;
+    }
+}
@@ -32,6 +32,7 @@ import io.xdag.utils.BytesUtils;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -45,19 +46,34 @@ import org.bouncycastle.util.encoders.Hex;
 
 import com.google.common.collect.Lists;
 
+/**
+ * Orphan pool backed by the ORPHANIND store.
+ * <p>
+ * The in-memory queues are {@link IndexedHeap}s, so checking and removing a known orphan does not scan the queue.
+ * The number of orphans in the store is kept in memory, {@link #ORPHAN_SIZE} is only written periodically and on
+ * stop, and it is recounted from the store on start.
+ * <p>
+ * Account transactions form a fee-priority mempool of at most {@link #MAX_ORPHAN_SIZE} orphans. A transaction for an
+ * (account, nonce) already in the pool replaces it if it pays at least {@link #RBF_MIN_BUMP_PERCENT} percent more.
+ * When the pool is full a new transaction is admitted only if it pays more than the cheapest account transaction,
+ * which is then evicted together with the later nonces of its account that can no longer be executed.
+ */
 @Getter
 @Slf4j
 public class OrphanBlockStoreImpl implements OrphanBlockStore {
 
+    private static final long PERSIST_INTERVAL_SECONDS = 10;
+
+    public static final int RBF_MIN_BUMP_PERCENT = 10;
 
     // <hash,nexthash>
     private final KVSource<byte[], byte[]> orphanSource;
 
-    private final Queue<OrphanMeta> linkQueue = new PriorityBlockingQueue<>(50, Comparator
+    private final Queue<OrphanMeta> linkQueue = new IndexedHeap<>(50, Comparator
             .comparingLong((OrphanMeta m) -> m.time)
             .thenComparing(m -> m.hashlow.toArray(), UnsignedBytes.lexicographicalComparator()));
 
-    private final Queue<OrphanMeta> mtxQueue = new PriorityBlockingQueue<>(100, Comparator
+    private final Queue<OrphanMeta> mtxQueue = new IndexedHeap<>(100, Comparator
             .comparingLong((OrphanMeta m) -> -m.fee)
             .thenComparingLong(m -> m.time)
             .thenComparing(m -> m.hashlow.toArray(), UnsignedBytes.lexicographicalComparator()));
@@ -78,6 +94,24 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
 
     private final Map<String, UInt64> accountNonce = new ConcurrentHashMap<>();
 
+    // sizes of all vipTxMap and accountTxMap queues
+    private final AtomicLong vipTxCount = new AtomicLong();
+    private final AtomicLong accountTxCount = new AtomicLong();
+
+    // account transactions by account and nonce, the highest paying one for each
+    private final Map<Bytes, OrphanMeta> accountTxIndex = new ConcurrentHashMap<>();
+
+    // account transactions, cheapest and latest nonce first
+    private final Queue<OrphanMeta> evictionQueue = new IndexedHeap<>(100, Comparator
+            .comparingLong((OrphanMeta m) -> m.fee)
+            .thenComparingLong(m -> -m.nonce)
+            .thenComparingLong(m -> -m.time)
+            .thenComparing(m -> m.hashlow.toArray(), UnsignedBytes.lexicographicalComparator()));
+
+    // orphans in the store, persisted lazily to ORPHAN_SIZE
+    private final AtomicLong orphanCount = new AtomicLong();
+    private long persistedOrphanCount = -1;
+
     private static final XAmount averageFee = XAmount.of(100, XUnit.MILLI_XDAG);
 
     private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor();
@@ -91,10 +125,8 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
 
     public void start() {
         this.orphanSource.init();
-        if (orphanSource.get(ORPHAN_SIZE) == null) {
-            this.orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(0, false));
-        }
         rebuildMemoryFromDb();
+        persistOrphanCount();
         startCleaner();
     }
 
@@ -106,29 +138,66 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
         orphanInsertTimeMap.clear();
         vipTxMap.clear();
         mainRef.clear();
-
-        List<Pair<byte[], byte[]>> raw = orphanSource.prefixKeyAndValueLookup(BytesUtils.of(ORPHAN_PREFEX));
-        for (Pair<byte[], byte[]> pair : raw) {
-            OrphanMeta meta = OrphanMeta.parse(pair);
-            addOrphanToMemory(meta, pair.getKey());
+        vipTxCount.set(0);
+        accountTxCount.set(0);
+        accountTxIndex.clear();
+        evictionQueue.clear();
+
+        long count = 0;
+        try (KVCursor<byte[], byte[]> cursor = orphanSource.prefixCursor(BytesUtils.of(ORPHAN_PREFEX))) {
+            while (cursor.next()) {
+                OrphanMeta meta = OrphanMeta.parse(Pair.of(cursor.key(), cursor.value()));
+                addOrphanToMemory(meta, cursor.key());
+                count++;
+            }
+        }
+        byte[] stored = orphanSource.get(ORPHAN_SIZE);
+        if (stored != null && BytesUtils.bytesToLong(stored, 0, false) != count) {
+            log.debug("Stored orphan size {} differs from {} orphans in store", BytesUtils.bytesToLong(stored, 0, false), count);
         }
-        long vipSize = vipTxMap.values().stream().mapToLong(Queue::size).sum();
-        long accountSize = accountTxMap.values().stream().mapToLong(Queue::size).sum();
-        log.debug("init orphan size:{}", BytesUtils.bytesToLong(orphanSource.get(ORPHAN_SIZE), 0, false));
+        orphanCount.set(count);
+        persistedOrphanCount = stored == null ? -1 : BytesUtils.bytesToLong(stored, 0, false);
 
         log.info("OrphanBlockStore memory queues rebuilt from DB: {} link, {} mtx, {} accounts, {} vipTxMap",
-                linkQueue.size(), mtxQueue.size(), accountSize,  vipSize);
+                linkQueue.size(), mtxQueue.size(), accountTxCount.get(), vipTxCount.get());
     }
 
     private void startCleaner() {
         cleaner.scheduleAtFixedRate(() -> cleanExpiredOrphans(15 * 60 * 1000L), 5, 300, TimeUnit.SECONDS);
+        cleaner.scheduleWithFixedDelay(this::persistOrphanCount, PERSIST_INTERVAL_SECONDS, PERSIST_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
     }
 
     @Override
     public void stop() {
+        cleaner.shutdownNow();
+        persistOrphanCount();
         orphanSource.close();
     }
 
+    /**
+     * Write the orphan count to {@link #ORPHAN_SIZE} if it changed since the last write
+     */
+    public synchronized void persistOrphanCount() {
+        long count = orphanCount.get();
+        if (count == persistedOrphanCount) {
+            return;
+        }
+        try {
+            orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(count, false));
+            persistedOrphanCount = count;
+        } catch (Exception e) {
+            log.error("Failed to persist orphan size {}", count, e);
+        }
+    }
+
+    /**
+     * Number of orphans in the store, including those selected as references but not yet deleted
+     */
+    public long getOrphanCount() {
+        return orphanCount.get();
+    }
+
     @Override
     public boolean isRunning() {
         return false;
@@ -136,7 +205,11 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
 
     public void reset() {
         this.orphanSource.reset();
-        this.orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(0, false));
+        synchronized (this) {
+            orphanCount.set(0);
+            this.orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(0, false));
+            persistedOrphanCount = 0;
+        }
     }
 
     private void cleanExpiredOrphans(long maxAgeMillis) {
@@ -149,43 +222,146 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
                     it.remove();
                     continue;
                 }
-                orphanSource.delete(entry.getKey().toArrayUnsafe());
-                long currentSize = BytesUtils.bytesToLong(orphanSource.get(ORPHAN_SIZE), 0, false);
-                orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(currentSize - 1, false));
-                log.debug("cleanExpiredOrphans orphan current size:{}", currentSize);
-                OrphanMeta meta = OrphanMeta.parse(entry.getKey().toArrayUnsafe(), value);
-                mainRef.remove(meta);
-                if (!meta.isTx) {
-                    linkQueue.remove(meta);
-                } else if (BytesUtils.isFullZero(meta.address)) {
-                    mtxQueue.remove(meta);
-                } else {
-                    String addrKey = Hex.toHexString(meta.address);
-                    Queue<OrphanMeta> vipQueue = vipTxMap.get(addrKey);
-                    if (vipQueue != null && vipQueue.contains(meta)) {
-                        vipQueue.remove(meta);
-                        if (vipQueue.isEmpty()) {
-                            vipTxMap.remove(addrKey);
-                            accountNonce.remove(addrKey);
-                        }
-                    }else {
-                        Queue<OrphanMeta> accountQueue = accountTxMap.get(addrKey);
-                        if (accountQueue != null && accountQueue.contains(meta)) {
-                            accountQueue.remove(meta);
-                            if (accountQueue.isEmpty()) {
-                                accountTxMap.remove(addrKey);
-                            }
-                        }
-                    }
-                }
+                dropOrphan(OrphanMeta.parse(entry.getKey().toArrayUnsafe(), value), entry.getKey().toArrayUnsafe());
                 it.remove();
-                kernel.getBlockchain().getXdagStats().nnoref--;
-                kernel.getBlockStore().saveXdagStatus(kernel.getBlockchain().getXdagStats());
                 log.debug("Cleaned expired orphan: {}", Hex.toHexString(entry.getKey().toArray()));
             }
         }
     }
 
+    /**
+     * Remove an orphan from the store and the queues, it will not be referenced any more
+     */
+    private void dropOrphan(OrphanMeta meta, byte[] key) {
+        orphanSource.delete(key);
+        orphanInsertTimeMap.remove(Bytes.wrap(key));
+        long currentSize = orphanCount.decrementAndGet();
+        log.debug("dropOrphan orphan current size:{}", currentSize);
+        removeFromMemory(meta);
+        kernel.getBlockchain().getXdagStats().nnoref--;
+        kernel.getBlockStore().saveXdagStatus(kernel.getBlockchain().getXdagStats());
+    }
+
+    @Override
+    public synchronized boolean admit(byte[] address, UInt64 nonce, XAmount fee) {
+        if (getOrphanSize() < MAX_ORPHAN_SIZE) {
+            return true;
+        }
+        long value = fee.toXAmount().toLong();
+        OrphanMeta existing = address == null ? null : accountTxIndex.get(accountNonceKey(address, nonce.toLong()));
+        if (existing != null && outbids(value, existing.fee)) {
+            return true;
+        }
+        OrphanMeta cheapest = cheapestVictim(address, nonce.toLong());
+        return cheapest != null && value > cheapest.fee;
+    }
+
+    private static boolean outbids(long fee, long replaced) {
+        return fee > replaced && fee - replaced >= replaced / 100 * RBF_MIN_BUMP_PERCENT;
+    }
+
+    /**
+     * Drop a cheaper transaction of the same account and nonce that the new one replaces
+     */
+    private synchronized void replaceAccountTx(OrphanMeta meta) {
+        OrphanMeta existing = accountTxIndex.get(accountNonceKey(meta.address, meta.nonce));
+        if (existing != null && !existing.equals(meta) && outbids(meta.fee, existing.fee)) {
+            log.debug("Replace orphan {} of nonce {} by {}", existing.hashlow, meta.nonce, meta.hashlow);
+            discard(existing);
+        }
+    }
+
+    /**
+     * Evict the cheapest account transactions while the pool is over capacity, but never the one just added or an
+     * earlier nonce of its account, which would take it along
+     */
+    private synchronized void evictOverCapacity(OrphanMeta added) {
+        while (getOrphanSize() > MAX_ORPHAN_SIZE) {
+            OrphanMeta cheapest = cheapestVictim(added.address, added.nonce);
+            if (cheapest == null || cheapest.equals(added)) {
+                break;
+            }
+            evictWithDependants(cheapest);
+        }
+    }
+
+    /**
+     * Cheapest account transaction that can be evicted without an account transaction of address and nonce,
+     * skipping the earlier nonces of that account
+     */
+    private OrphanMeta cheapestVictim(byte[] address, long nonce) {
+        List<OrphanMeta> polled = new ArrayList<>();
+        try {
+            OrphanMeta meta;
+            while ((meta = evictionQueue.poll()) != null) {
+                polled.add(meta);
+                if (address == null || meta.nonce >= nonce || !Arrays.equals(meta.address, address)) {
+                    return meta;
+                }
+            }
+            return null;
+        } finally {
+            polled.forEach(evictionQueue::offer);
+        }
+    }
+
+    private void discard(OrphanMeta meta) {
+        byte[] key = getKeyFromMeta(meta);
+        boolean stored = orphanSource.get(key) != null;
+        if (stored) {
+            dropOrphan(meta, key);
+        } else {
+            removeFromMemory(meta);
+        }
+        untrackAccountTx(meta);
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            // the delete is discarded with the unit, put the orphan back into the queues and the count
+            uow.onRollback(() -> restore(meta, key, stored));
+        }
+    }
+
+    private synchronized void restore(OrphanMeta meta, byte[] key, boolean stored) {
+        addOrphanToMemory(meta, key);
+        if (stored) {
+            orphanCount.incrementAndGet();
+            kernel.getBlockchain().getXdagStats().nnoref++;
+        }
+    }
+
+    private void evictWithDependants(OrphanMeta meta) {
+        String addrKey = Hex.toHexString(meta.address);
+        List<OrphanMeta> evicted = new ArrayList<>();
+        evicted.add(meta);
+        for (Map<String, Queue<OrphanMeta>> txMap : List.of(vipTxMap, accountTxMap)) {
+            Queue<OrphanMeta> queue = txMap.get(addrKey);
+            if (queue != null) {
+                for (OrphanMeta m : queue) {
+                    if (m.nonce > meta.nonce) {
+                        evicted.add(m);
+                    }
+                }
+            }
+        }
+        evicted.forEach(this::discard);
+        log.debug("Evicted {} orphans of {} from nonce {}, fee {}", evicted.size(), addrKey, meta.nonce, meta.fee);
+    }
+
+    private static Bytes accountNonceKey(byte[] address, long nonce) {
+        return Bytes.wrap(Bytes.wrap(address), Bytes.ofUnsignedLong(nonce));
+    }
+
+    private void trackAccountTx(OrphanMeta meta) {
+        accountTxIndex.merge(accountNonceKey(meta.address, meta.nonce), meta,
+                (current, added) -> added.fee > current.fee ? added : current);
+        evictionQueue.offer(meta);
+    }
+
+    private void untrackAccountTx(OrphanMeta meta) {
+        accountTxIndex.remove(accountNonceKey(meta.address, meta.nonce), meta);
+        evictionQueue.remove(meta);
+    }
+
     public void deleteByKey(byte[] hashlow, boolean isTxBlock, UInt64 nonce, XAmount fee, byte[] address) {
         log.debug("deleteByKey");
         byte[] hashL = Arrays.copyOfRange(hashlow, 8, 32);
@@ -195,12 +371,23 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
 
         if (orphanSource.get(key) != null) {
             orphanSource.delete(key);
-            orphanInsertTimeMap.remove(Bytes.wrap(key));
+            Long insertTime = orphanInsertTimeMap.remove(Bytes.wrap(key));
+
+            long currentSize = orphanCount.decrementAndGet();
+            log.debug("deleteByKey current orphan size: {}", currentSize);
+            UnitOfWork uow = UnitOfWork.current();
+            if (uow != null) {
+                // the delete is discarded with the unit, count the orphan again
+                uow.onRollback(() -> undoDelete(key, insertTime));
+            }
+        }
+    }
 
-            long currentsize = BytesUtils.bytesToLong(orphanSource.get(ORPHAN_SIZE), 0, false);
-            orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(currentsize - 1, false));
-            log.debug("deleteByKey current orphan size: {}", currentsize);
+    private synchronized void undoDelete(byte[] key, Long insertTime) {
+        if (insertTime != null) {
+            orphanInsertTimeMap.put(Bytes.wrap(key), insertTime);
         }
+        orphanCount.incrementAndGet();
     }
 
     public void deleteFromQueue(Block block, boolean isTxBlock, UInt64 nonce, XAmount fee, byte[] address) {
@@ -216,35 +403,52 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
         byte[] value = BytesUtils.merge(timeBytes, feeBytes, addrBytes);
 
         OrphanMeta meta = OrphanMeta.parse(key, value);
-        mainRef.remove(meta);
+        if (removeFromMemory(meta)) {
+            UnitOfWork uow = UnitOfWork.current();
+            if (uow != null) {
+                uow.onRollback(() -> restore(meta, key, false));
+            }
+        }
+        logQueueSizes();
+    }
 
+    /**
+     * @return true if the orphan was queued
+     */
+    private boolean removeFromMemory(OrphanMeta meta) {
+        mainRef.remove(meta);
         if (!meta.isTx) {
-            linkQueue.remove(meta);
+            return linkQueue.remove(meta);
         } else if (BytesUtils.isFullZero(meta.address)) {
-            mtxQueue.remove(meta);
+            return mtxQueue.remove(meta);
         } else {
             String addrKey = Hex.toHexString(meta.address);
             Queue<OrphanMeta> vipQueue = vipTxMap.get(addrKey);
-            if (vipQueue != null && vipQueue.contains(meta)) {
-                vipQueue.remove(meta);
+            if (vipQueue != null && vipQueue.remove(meta)) {
+                vipTxCount.decrementAndGet();
+                untrackAccountTx(meta);
                 if (vipQueue.isEmpty()) {
                     vipTxMap.remove(addrKey);
                     accountNonce.remove(addrKey);
                 }
-            }else{
-                Queue<OrphanMeta> accountQueue = accountTxMap.get(addrKey);
-                if (accountQueue != null && accountQueue.contains(meta)) {
-                    accountQueue.remove(meta);
-                    if (accountQueue.isEmpty()) {
-                        accountTxMap.remove(addrKey);
-                    }
+                return true;
+            }
+            Queue<OrphanMeta> accountQueue = accountTxMap.get(addrKey);
+            if (accountQueue != null && accountQueue.remove(meta)) {
+                accountTxCount.decrementAndGet();
+                untrackAccountTx(meta);
+                if (accountQueue.isEmpty()) {
+                    accountTxMap.remove(addrKey);
                 }
+                return true;
             }
+            return false;
         }
-        long vipTxCount = vipTxMap.values().stream().mapToLong(Queue::size).sum();
-        long accountTxCount = accountTxMap.values().stream().mapToLong(Queue::size).sum();
+    }
+
+    private void logQueueSizes() {
         log.info("vipTxCount: {}, accountTxQueue.size(): {}, mtxQueue.size(): {}, linkQueue.size(): {}, mainRef.size() :{}",
-                vipTxCount, accountTxCount, mtxQueue.size(), linkQueue.size(), mainRef.size());
+                vipTxCount.get(), accountTxCount.get(), mtxQueue.size(), linkQueue.size(), mainRef.size());
     }
 
     public void addOrphan(Block block, boolean isTxBlock, UInt64 nonce, XAmount fee, byte[] address) {
@@ -263,32 +467,42 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
 //        System.out.println("OrphanValue: " + Arrays.toString(value));
 
         OrphanMeta meta = OrphanMeta.parse(key, value);
+        boolean accountTx = meta.isTx && !BytesUtils.isFullZero(meta.address);
+        if (accountTx) {
+            replaceAccountTx(meta);
+        }
 
         addOrphanToMemory(meta, key);
 
         if (orphanSource.get(key) == null) {
             orphanSource.put(key, value);
 
-            long currentSize = BytesUtils.bytesToLong(orphanSource.get(ORPHAN_SIZE), 0, false);
-            orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(currentSize + 1, false));
+            long currentSize = orphanCount.incrementAndGet();
             log.debug("orphan current size:{}", currentSize);
+            UnitOfWork uow = UnitOfWork.current();
+            if (uow != null) {
+                // the put is discarded with the unit, take the orphan out of the queues and the count again
+                uow.onRollback(() -> undoAdd(meta, key));
+            }
         }
-        long vipTxCount = vipTxMap.values().stream().mapToLong(Queue::size).sum();
-        long accountTxCount = accountTxMap.values().stream().mapToLong(Queue::size).sum();
-        log.info("vipTxCount: {}, accountTxQueue.size(): {}, mtxQueue.size(): {}, linkQueue.size(): {}, mainRef.size() :{}",
-                vipTxCount, accountTxCount, mtxQueue.size(), linkQueue.size(), mainRef.size());
+        if (accountTx) {
+            evictOverCapacity(meta);
+        }
+        logQueueSizes();
+    }
+
+    private synchronized void undoAdd(OrphanMeta meta, byte[] key) {
+        removeFromMemory(meta);
+        orphanInsertTimeMap.remove(Bytes.wrap(key));
+        orphanCount.decrementAndGet();
     }
 
     public void addOrphanToMemory(OrphanMeta meta, byte[] dbKey) {
         orphanInsertTimeMap.put(Bytes.wrap(dbKey), System.currentTimeMillis());
         if (!meta.isTx) {
-            if (!linkQueue.contains(meta)) {
-                linkQueue.offer(meta);
-            }
+            linkQueue.offer(meta);
         } else if (BytesUtils.isFullZero(meta.address)) {
-            if (!mtxQueue.contains(meta)) {
-                mtxQueue.offer(meta);
-            }
+            mtxQueue.offer(meta);
         } else {
             String addrKey = Hex.toHexString(meta.address);
             UInt64 executedNonceNum = kernel.getAddressStore().getExecutedNonceNum(meta.address);
@@ -299,20 +513,22 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
             if(blockNonce.compareTo(executedNonceNum.add(UInt64.ONE)) == 0 && averageFee.lessThan(XAmount.ofXAmount(meta.fee))){
                 log.info("averageFee:{}, meta.fee: {}", averageFee.toDecimal(2, XUnit.XDAG).toPlainString(), XAmount.ofXAmount(meta.fee).toDecimal(2, XUnit.XDAG).toPlainString());
                 accountNonce.put(addrKey, blockNonce);
-                vipTxMap.computeIfAbsent(addrKey, k -> new PriorityBlockingQueue<>(10, Comparator
+                if (vipTxMap.computeIfAbsent(addrKey, k -> new IndexedHeap<>(10, Comparator
                         .comparingLong((OrphanMeta m) -> m.nonce)
                         .thenComparing(m -> m.time)
-                        .thenComparing(m -> m.hashlow.toArray(), UnsignedBytes.lexicographicalComparator())));
-                if (!vipTxMap.get(addrKey).contains(meta)) {
-                    vipTxMap.get(addrKey).offer(meta);
+                        .thenComparing(m -> m.hashlow.toArray(), UnsignedBytes.lexicographicalComparator())))
+                        .offer(meta)) {
+                    vipTxCount.incrementAndGet();
+                    trackAccountTx(meta);
                 }
             } else {
-                accountTxMap.computeIfAbsent(addrKey, k -> new PriorityBlockingQueue<>(10, Comparator
+                if (accountTxMap.computeIfAbsent(addrKey, k -> new IndexedHeap<>(10, Comparator
                         .comparingLong((OrphanMeta m) -> m.nonce)
                         .thenComparingLong(m -> m.time)
-                        .thenComparing(m -> m.hashlow.toArray(), UnsignedBytes.lexicographicalComparator())));
-                if (!accountTxMap.get(addrKey).contains(meta)) {
-                    accountTxMap.get(addrKey).offer(meta);
+                        .thenComparing(m -> m.hashlow.toArray(), UnsignedBytes.lexicographicalComparator())))
+                        .offer(meta)) {
+                    accountTxCount.incrementAndGet();
+                    trackAccountTx(meta);
                 }
             }
         }
@@ -337,9 +553,7 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
         }
 
         sendtime[1] = Math.min(sendtime[1] + 1, sendtime[0]);
-        long vipTxCount = vipTxMap.values().stream().mapToLong(Queue::size).sum();
-        long accountTxCount = accountTxMap.values().stream().mapToLong(Queue::size).sum();
-        log.info("vipTxCount: {}, accountTxQueue.size(): {}, mtxQueue.size(): {}, linkQueue.size(): {}, mainRef.size() :{}", vipTxCount, accountTxCount, mtxQueue.size(), linkQueue.size(), mainRef.size());
+        logQueueSizes();
         return result;
 
     }
@@ -368,7 +582,11 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
                 orphanInsertTimeMap.remove(Bytes.wrap(getKeyFromMeta(chosen.meta)));
                 Queue<OrphanMeta> vipQueue = vipTxMap.get(chosen.accountKey);
                 if (vipQueue != null) {
-                    vipQueue.poll();
+                    OrphanMeta polled = vipQueue.poll();
+                    if (polled != null) {
+                        vipTxCount.decrementAndGet();
+                        untrackAccountTx(polled);
+                    }
                     if (!vipQueue.isEmpty()) {
                         OrphanMeta next = vipQueue.peek();
                         if (next.getTime() <= cutoffTime) candidateQueue.offer(new CandidateEntry(next, chosen.accountKey, CandidateEntry.EntryType.ACCOUNT_TX));
@@ -380,8 +598,7 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
             }
         }
 
-        long accountTxCount = accountTxMap.values().stream().mapToLong(Queue::size).sum();
-        if ((isMain || (accountTxCount + mtxQueue.size()) == 0 || linkQueue.size() >= totalRequired) && !linkQueue.isEmpty()) {
+        if ((isMain || (accountTxCount.get() + mtxQueue.size()) == 0 || linkQueue.size() >= totalRequired) && !linkQueue.isEmpty()) {
             while (!linkQueue.isEmpty() && result.size() < totalRequired) {
                 OrphanMeta m = linkQueue.peek();
                 if (m.time > cutoffTime) break;
@@ -392,7 +609,7 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
             return result;
         }
 
-        if ((!mtxQueue.isEmpty() || accountTxCount != 0) && result.size() < totalRequired) {
+        if ((!mtxQueue.isEmpty() || accountTxCount.get() != 0) && result.size() < totalRequired) {
             candidateQueue.clear();
             if (!mtxQueue.isEmpty()) {
                 candidateQueue.offer(new CandidateEntry(mtxQueue.peek(), null, CandidateEntry.EntryType.MTX));
@@ -417,7 +634,11 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
                 } else {
                     Queue<OrphanMeta> q = accountTxMap.get(chosen.accountKey);
                     if (q != null) {
-                        q.poll();
+                        OrphanMeta polled = q.poll();
+                        if (polled != null) {
+                            accountTxCount.decrementAndGet();
+                            untrackAccountTx(polled);
+                        }
                         if (!q.isEmpty()) {
                             OrphanMeta next = q.peek();
                             if (next.time <= cutoffTime) {
@@ -442,9 +663,7 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
     }
 
     public long getOrphanSize() {
-        long vipTxCount = vipTxMap.values().stream().mapToLong(Queue::size).sum();
-        long accountTxCount = accountTxMap.values().stream().mapToLong(Queue::size).sum();
-        return linkQueue.size() + mtxQueue.size() + vipTxCount + accountTxCount;
+        return linkQueue.size() + mtxQueue.size() + vipTxCount.get() + accountTxCount.get();
     }
 
     @Getter
@@ -483,12 +702,12 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
         public boolean equals(Object meta) {
             if (meta == null || getClass() != meta.getClass()) return false;
             OrphanMeta m = (OrphanMeta) meta;
-            return Arrays.equals(hashlow.toArray(), m.hashlow.toArray());
+            return hashlow.equals(m.hashlow);
         }
 
         @Override
         public int hashCode() {
-            return Arrays.hashCode(hashlow.toArray());
+            return hashlow.hashCode();
         }
 
     }
@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.core.Block;
+import io.xdag.core.XdagStats;
+import io.xdag.db.BlockStore;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+/**
+ * Background job deleting the raw payloads of final blocks, see {@link BlockStore#pruneRawBlocks(long, int)}. A
+ * block is final once its time frame is more than keepEpochs frames below the top main block. Each pass works in
+ * small batches with pauses in between, so it does not compete with block import, and compacts the time index
+ * range it went through.
+ */
+@Slf4j
+public class RawBlockPruner {
+
+    /**
+     * Lower bound of keepEpochs, deep enough for any reorg the chain still performs
+     */
+    public static final long MIN_KEEP_EPOCHS = 1024;
+    /**
+     * Time index entries visited per batch
+     */
+    static final int PRUNE_BATCH = 1024;
+    private static final long PASS_INTERVAL_MINUTES = 10;
+    private static final long BATCH_PAUSE_MILLIS = 50;
+
+    private static final ThreadFactory factory = BasicThreadFactory.builder()
+            .namingPattern("raw-pruner-%d")
+            .daemon(true)
+            .priority(Thread.MIN_PRIORITY)
+            .build();
+
+    private final BlockStore blockStore;
+    private final long keepEpochs;
+    private ScheduledExecutorService executor;
+    private volatile boolean running;
+
+    public RawBlockPruner(BlockStore blockStore, long keepEpochs) {
+        this.blockStore = blockStore;
+        this.keepEpochs = Math.max(keepEpochs, MIN_KEEP_EPOCHS);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        executor = Executors.newSingleThreadScheduledExecutor(factory);
+        executor.scheduleWithFixedDelay(this::runPass, 1, PASS_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        log.info("Raw block pruning enabled, keeping {} epochs", keepEpochs);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the time below which blocks are final, or 0 if the chain has no main block yet
+     */
+    long finalizedTime() {
+        XdagStats stats = blockStore.getXdagStatus();
+        if (stats == null || stats.nmain <= 0) {
+            return 0;
+        }
+        Block top = blockStore.getBlockByHeight(stats.nmain);
+        if (top == null) {
+            return 0;
+        }
+        long frame = (top.getTimestamp() >> 16) - keepEpochs;
+        return frame <= 0 ? 0 : frame << 16;
+    }
+
+    void runPass() {
+        try {
+            long beforeTime = finalizedTime();
+            long fromTime = blockStore.getRawPrunedTime();
+            if (beforeTime <= fromTime) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            long pruned = 0;
+            while (running && blockStore.getRawPrunedTime() < beforeTime) {
+                pruned += blockStore.pruneRawBlocks(beforeTime, PRUNE_BATCH);
+                Thread.sleep(BATCH_PAUSE_MILLIS);
+            }
+            if (pruned > 0) {
+                blockStore.compactTimeIndex(fromTime, blockStore.getRawPrunedTime());
+            }
+            log.info("Raw block pruning: {} blocks pruned up to time {}, cost {} ms", pruned,
+                    Long.toHexString(blockStore.getRawPrunedTime()), System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Raw block pruning failed", e);
+        }
+    }
+}
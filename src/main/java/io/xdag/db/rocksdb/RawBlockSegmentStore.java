@@ -0,0 +1,264 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.config.Config;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.tuweni.bytes.MutableBytes;
+
+/**
+ * Append-only store for raw 512-byte blocks in memory-mapped segment files.
+ * <p>
+ * Blocks are partitioned by timestamp ({@link #PARTITION_BITS}), every partition appends to its own segment until it
+ * holds {@link #RECORDS_PER_SEGMENT} records. A segment file is a 512-byte header followed by fixed-size records, so a
+ * block is addressed by an 8-byte {@link #LOCATION_SIZE location} {@code <segment id, record index>}. The block store
+ * keeps that location in place of the payload under the block's hashlow.
+ * <p>
+ * Reads return read-only slices of the mapping without copying. A record becomes readable once the header count
+ * covers it, records past the count (left by a crash during an append) are overwritten by the next append.
+ */
+@Slf4j
+public class RawBlockSegmentStore {
+
+    public static final String DIR_NAME = "SEGMENTS";
+    public static final int RECORD_SIZE = 512;
+    public static final int LOCATION_SIZE = 8;
+    public static final int RECORDS_PER_SEGMENT = 65535;
+    /**
+     * A partition spans 2^32 xdag time units, about 48 days
+     */
+    public static final int PARTITION_BITS = 32;
+
+    private static final int MAGIC = 0x58534547;
+    private static final int VERSION = 1;
+    private static final int HEADER_ID = 8;
+    private static final int HEADER_PARTITION = 12;
+    private static final int HEADER_COUNT = 20;
+    private static final long SEGMENT_SIZE = (long) (RECORDS_PER_SEGMENT + 1) * RECORD_SIZE;
+
+    private final Path dir;
+    /**
+     * Whether new blocks are appended here, a disabled store still serves the blocks written before
+     */
+    @Getter
+    private final boolean appendEnabled;
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final Map<Long, Segment> active = new HashMap<>();
+    private int nextId;
+
+    public RawBlockSegmentStore(Path dir, boolean appendEnabled) {
+        this.dir = dir;
+        this.appendEnabled = appendEnabled;
+    }
+
+    /**
+     * @return the store for the node, or null if it is disabled and there are no segments to read
+     */
+    public static RawBlockSegmentStore open(Config config) {
+        Path dir = Paths.get(config.getNodeSpec().getStoreDir(), DIR_NAME);
+        boolean enabled = config.getNodeSpec().isStoreRawSegments();
+        if (!enabled && !Files.isDirectory(dir)) {
+            return null;
+        }
+        return new RawBlockSegmentStore(dir, enabled);
+    }
+
+    public static boolean isLocation(byte[] value) {
+        return value != null && value.length == LOCATION_SIZE;
+    }
+
+    public synchronized void start() {
+        try {
+            Files.createDirectories(dir);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.seg")) {
+                for (Path file : files) {
+                    Segment segment = Segment.load(file);
+                    segments.put(segment.id, segment);
+                    nextId = Math.max(nextId, segment.id + 1);
+                    Segment current = active.get(segment.partition);
+                    if (segment.count() < RECORDS_PER_SEGMENT && (current == null || current.id < segment.id)) {
+                        active.put(segment.partition, segment);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open raw block segments in " + dir, e);
+        }
+        log.info("Raw block segments opened: {} segments in {}, append {}", segments.size(), dir,
+                appendEnabled ? "enabled" : "disabled");
+    }
+
+    /**
+     * Append a raw block to the segment of its time partition. The record is forced to disk before the location can
+     * be committed, right away or, inside a unit of work, just before it commits.
+     *
+     * @return location of the record
+     */
+    public synchronized byte[] append(long timestamp, byte[] raw) {
+        if (raw.length != RECORD_SIZE) {
+            throw new IllegalArgumentException("raw block must be " + RECORD_SIZE + " bytes, got " + raw.length);
+        }
+        long partition = timestamp >>> PARTITION_BITS;
+        Segment segment = active.get(partition);
+        try {
+            if (segment == null || segment.count() >= RECORDS_PER_SEGMENT) {
+                segment = Segment.create(dir, nextId++, partition);
+                segments.put(segment.id, segment);
+                active.put(partition, segment);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create raw block segment in " + dir, e);
+        }
+        int index = segment.append(raw);
+        Segment written = segment;
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            uow.beforeCommit(() -> written.force(index));
+        } else {
+            written.force(index);
+        }
+        return ByteBuffer.allocate(LOCATION_SIZE).putInt(segment.id).putInt(index).array();
+    }
+
+    /**
+     * @return zero-copy read-only view of the record, or null if the location is unknown
+     */
+    public MutableBytes read(byte[] location) {
+        ByteBuffer buffer = ByteBuffer.wrap(location);
+        Segment segment = segments.get(buffer.getInt());
+        return segment == null ? null : segment.read(buffer.getInt());
+    }
+
+    public synchronized void stop() {
+        segments.values().forEach(Segment::flush);
+    }
+
+    public synchronized void reset() {
+        segments.values().forEach(Segment::flush);
+        segments.clear();
+        active.clear();
+        nextId = 0;
+        try {
+            FileUtils.deleteDirectory(dir.toFile());
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+        start();
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    private static final class Segment {
+
+        private final int id;
+        private final long partition;
+        private final MappedByteBuffer buffer;
+        private volatile int count;
+
+        private Segment(int id, long partition, MappedByteBuffer buffer, int count) {
+            this.id = id;
+            this.partition = partition;
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        static Segment create(Path dir, int id, long partition) throws IOException {
+            MappedByteBuffer buffer = map(dir.resolve(String.format("%08x.seg", id)));
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(HEADER_ID, id);
+            buffer.putLong(HEADER_PARTITION, partition);
+            buffer.putInt(HEADER_COUNT, 0);
+            return new Segment(id, partition, buffer, 0);
+        }
+
+        static Segment load(Path file) throws IOException {
+            MappedByteBuffer buffer = map(file);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a raw block segment: " + file);
+            }
+            int count = Math.min(buffer.getInt(HEADER_COUNT), RECORDS_PER_SEGMENT);
+            return new Segment(buffer.getInt(HEADER_ID), buffer.getLong(HEADER_PARTITION), buffer, count);
+        }
+
+        private static MappedByteBuffer map(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                // the mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            }
+        }
+
+        int count() {
+            return count;
+        }
+
+        /**
+         * Called with the store lock held, readers see the record once the volatile count is published
+         */
+        int append(byte[] raw) {
+            int index = count;
+            buffer.put((index + 1) * RECORD_SIZE, raw);
+            buffer.putInt(HEADER_COUNT, index + 1);
+            count = index + 1;
+            return index;
+        }
+
+        MutableBytes read(int index) {
+            if (index < 0 || index >= count) {
+                return null;
+            }
+            return MutableBytes.wrapByteBuffer(buffer.slice((index + 1) * RECORD_SIZE, RECORD_SIZE).asReadOnlyBuffer());
+        }
+
+        /**
+         * Write the record and the header count through to the file
+         */
+        void force(int index) {
+            buffer.force((index + 1) * RECORD_SIZE, RECORD_SIZE);
+            buffer.force(0, RECORD_SIZE);
+        }
+
+        void flush() {
+            buffer.force();
+        }
+    }
+}
@@ -34,8 +34,17 @@ public class RocksdbFactory implements DatabaseFactory {
 
     protected Config config;
 
+    /**
+     * Shared database when the stores are kept as column families, null otherwise
+     */
+    private RocksdbSharedDb sharedDb;
+
     public RocksdbFactory(Config config) {
         this.config = config;
+        if (config.getNodeSpec().isStoreColumnFamilies()) {
+            this.sharedDb = new RocksdbSharedDb(config);
+            RocksdbMigration.warnIfNotMigrated(config);
+        }
     }
 
     @Override
@@ -43,8 +52,11 @@ public class RocksdbFactory implements DatabaseFactory {
         return databases.computeIfAbsent(
                 name, k -> {
                     RocksdbKVSource dataSource;
-                    // time data source must set fixed prefix length
-                    if (Strings.CS.equals(DatabaseName.TIME.toString(), name.toString())) {
+                    if (sharedDb != null && name != DatabaseName.SNAPSHOT) {
+                        dataSource = new RocksdbKVSource(name.toString(),
+                                RocksdbSharedDb.prefixSeekLength(name.toString()), sharedDb);
+                    } else if (Strings.CS.equals(DatabaseName.TIME.toString(), name.toString())) {
+                        // time data source must set fixed prefix length
                         dataSource = new RocksdbKVSource(name.toString(), 9);
                     } else {
                         dataSource = new RocksdbKVSource(name.toString());
@@ -24,7 +24,6 @@
 
 package io.xdag.db.rocksdb;
 
-import com.google.common.collect.Lists;
 import io.xdag.config.Config;
 import io.xdag.utils.BytesUtils;
 import java.io.File;
@@ -32,12 +31,18 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -46,10 +51,9 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.rocksdb.BackupEngine;
 import org.rocksdb.BackupEngineOptions;
-import org.rocksdb.BlockBasedTableConfig;
-import org.rocksdb.BloomFilter;
-import org.rocksdb.CompressionType;
+import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.Env;
+import org.rocksdb.IngestExternalFileOptions;
 import org.rocksdb.LRUCache;
 import org.rocksdb.Options;
 import org.rocksdb.ReadOptions;
@@ -57,6 +61,9 @@ import org.rocksdb.RestoreOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.Snapshot;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 
 @Slf4j
 @Setter
@@ -67,6 +74,11 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         RocksDB.loadLibrary();
     }
 
+    /**
+     * Merge operator of every store, see {@link #merge(byte[], byte[])}
+     */
+    static final String MERGE_OPERATOR = "uint64add";
+
     /**
      * The native RocksDB insert/update/delete are normally thread-safe However
      * closeoperation is not thread-safe. This ReadWriteLock still permits
@@ -77,7 +89,16 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
     private Config config;
     private String name;
     private RocksDB db;
+    /**
+     * Column family holding the data, the default one of {@link #db} unless the source lives in a shared database
+     */
+    private ColumnFamilyHandle columnFamily;
+    private RocksdbSharedDb sharedDb;
     private ReadOptions readOpts;
+    /**
+     * Read options of range cursors, which may cross prefix boundaries
+     */
+    private ReadOptions rangeReadOpts;
     private boolean alive;
     private int prefixSeekLength;
 
@@ -92,6 +113,16 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         log.debug("New RocksdbKVSource: {}", name);
     }
 
+    /**
+     * Create a source backed by a column family of a shared database
+     */
+    public RocksdbKVSource(String name, int prefixSeekLength, RocksdbSharedDb sharedDb) {
+        this.name = name;
+        this.prefixSeekLength = prefixSeekLength;
+        this.sharedDb = sharedDb;
+        log.debug("New RocksdbKVSource: {} in shared db", name);
+    }
+
     @Override
     public void init() {
         resetDbLock.writeLock().lock();
@@ -106,33 +137,40 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                 throw new NullPointerException("no name set to the db");
             }
 
+            if (sharedDb != null) {
+                db = sharedDb.acquire();
+                columnFamily = sharedDb.handle(name, prefixSeekLength);
+                readOpts = new ReadOptions().setPrefixSameAsStart(true).setVerifyChecksums(false);
+                rangeReadOpts = new ReadOptions().setTotalOrderSeek(true).setVerifyChecksums(false);
+                alive = true;
+                log.debug("<~ RocksdbKVSource.init(): {} column family", name);
+                return;
+            }
+
             try (Options options = new Options()) {
                 // most of these options are suggested by
                 // https://github.com/facebook/rocksdb/wiki/Set-Up-Options
 
                 // general options
                 options.setCreateIfMissing(true);
-                options.setCompressionType(CompressionType.LZ4_COMPRESSION);
-                options.setBottommostCompressionType(CompressionType.LZ4_COMPRESSION);
                 options.setLevelCompactionDynamicLevelBytes(true);
                 options.setMaxOpenFiles(config.getNodeSpec().getStoreMaxOpenFiles());
                 options.setIncreaseParallelism(config.getNodeSpec().getStoreMaxThreads());
+                options.setMergeOperatorName(MERGE_OPERATOR);
 
                 // key prefix for state node lookups
                 options.useFixedLengthPrefixExtractor(prefixSeekLength);
 
-                // table options
-                final BlockBasedTableConfig tableCfg;
-                options.setTableFormatConfig(tableCfg = new BlockBasedTableConfig());
-                tableCfg.setBlockSize(16 * 1024);
-                tableCfg.setBlockCache(new LRUCache(32 * 1024 * 1024));
-                tableCfg.setCacheIndexAndFilterBlocks(true);
-                tableCfg.setPinL0FilterAndIndexBlocksInCache(true);
-                tableCfg.setFilterPolicy(new BloomFilter(10, false));
+                // table, compression and write buffer options of the store profile
+                RocksdbTuning tuning = RocksdbTuning.of(config.getNodeSpec().getStoreProfile(), name,
+                        config.getNodeSpec().getStoreTuning().get(name));
+                tuning.applyTo(options, new LRUCache(tuning.getBlockCacheSize() * 1024 * 1024));
+                log.debug("Store {} tuning: {}", name, tuning);
 
                 // read options
                 readOpts = new ReadOptions();
                 readOpts = readOpts.setPrefixSameAsStart(true).setVerifyChecksums(false);
+                rangeReadOpts = new ReadOptions().setTotalOrderSeek(true).setVerifyChecksums(false);
 
                 try {
                     log.debug("Opening database");
@@ -159,6 +197,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                     log.debug("Initializing new or existing database: '{}'", name);
                     try {
                         db = RocksDB.open(options, dbPath.toString());
+                        columnFamily = db.getDefaultColumnFamily();
                     } catch (RocksDBException e) {
                         log.error(e.getMessage(), e);
                         throw new RuntimeException("Failed to initialize database", e);
@@ -183,7 +222,9 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         if (log.isTraceEnabled()) {
             log.trace("~> RocksdbKVSource.backup(): {}", name);
         }
-        Path path = backupPath();
+        Path path = sharedDb != null
+                ? Paths.get(config.getNodeSpec().getStoreDir(), "backup", RocksdbSharedDb.DB_NAME)
+                : backupPath();
         path.toFile().mkdirs();
         try (BackupEngineOptions backupOptions = new BackupEngineOptions(path.toString());
                 BackupEngine backups = BackupEngine.open(Env.getDefault(), backupOptions)) {
@@ -204,6 +245,11 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
 
     @Override
     public void put(byte[] key, byte[] val) {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            uow.put(this, key, val);
+            return;
+        }
         resetDbLock.readLock().lock();
         try {
             if (log.isTraceEnabled()) {
@@ -214,10 +260,10 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                 if (db == null) {
                     log.error("db is null");
                 } else {
-                    db.put(key, val);
+                    db.put(columnFamily, key, val);
                 }
             } else {
-                db.delete(key);
+                db.delete(columnFamily, key);
             }
             if (log.isTraceEnabled()) {
                 log.trace("<~ RocksdbKVSource.put(): {}, key: {}, {}", name, Hex.encodeHexString(key),
@@ -234,12 +280,19 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
 
     @Override
     public byte[] get(byte[] key) {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            byte[] staged = uow.lookup(this, key);
+            if (staged != null) {
+                return UnitOfWork.isTombstone(staged) ? null : staged.clone();
+            }
+        }
         resetDbLock.readLock().lock();
         try {
             if (log.isTraceEnabled()) {
                 log.trace("~> RocksdbKVSource.get(): {}, key: {}", name, Hex.encodeHexString(key));
             }
-            byte[] ret = db.get(readOpts, key);
+            byte[] ret = db.get(columnFamily, readOpts, key);
             if (log.isTraceEnabled()) {
                 log.trace("<~ RocksdbKVSource.get(): {}, key: {}, {}", name, Hex.encodeHexString(key),
                         ret == null ? "null" : ret.length);
@@ -256,12 +309,17 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
 
     @Override
     public void delete(byte[] key) {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            uow.put(this, key, null);
+            return;
+        }
         resetDbLock.readLock().lock();
         try {
             if (log.isTraceEnabled()) {
                 log.trace("~> RocksdbKVSource.delete(): {}, key: {}", name, Hex.encodeHexString(key));
             }
-            db.delete(key);
+            db.delete(columnFamily, key);
             if (log.isTraceEnabled()) {
                 log.trace("<~ RocksdbKVSource.delete(): {}, key: {}", name, Hex.encodeHexString(key));
             }
@@ -273,6 +331,28 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         }
     }
 
+    @Override
+    public void merge(byte[] key, byte[] operand) {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow != null) {
+            uow.merge(this, key, operand);
+            return;
+        }
+        resetDbLock.readLock().lock();
+        try {
+            if (log.isTraceEnabled()) {
+                log.trace("~> RocksdbKVSource.merge(): {}, key: {}", name, Hex.encodeHexString(key));
+            }
+            db.merge(columnFamily, key, operand);
+        } catch (RocksDBException e) {
+            log.error("Failed to merge into db '{}'", name, e);
+            hintOnTooManyOpenFiles(e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
     @Override
     public Set<byte[]> keys() throws RuntimeException {
         resetDbLock.readLock().lock();
@@ -280,7 +360,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             if (log.isTraceEnabled()) {
                 log.trace("~> RocksdbKVSource.keys(): {}", name);
             }
-            try (RocksIterator iterator = db.newIterator()) {
+            try (RocksIterator iterator = db.newIterator(columnFamily)) {
                 Set<byte[]> result = new HashSet<>();
                 for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
                     result.add(iterator.key());
@@ -301,50 +381,81 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
 
     @Override
     public List<byte[]> prefixValueLookup(byte[] key) {
-        List<byte[]> retList = Lists.newLinkedList();
-        fetchPrefix(key, pair -> {
-            retList.add(pair.getValue());
-            return Boolean.FALSE;
-        });
+        List<byte[]> retList = new ArrayList<>();
+        try (KVCursor<byte[], byte[]> cursor = prefixCursor(key)) {
+            while (cursor.next()) {
+                retList.add(cursor.value());
+            }
+        }
         return retList;
     }
 
     @Override
     public List<byte[]> prefixKeyLookup(byte[] key) {
-        List<byte[]> retList = Lists.newLinkedList();
-        fetchPrefix(key, pair -> {
-            retList.add(pair.getKey());
-            return Boolean.FALSE;
-        });
+        List<byte[]> retList = new ArrayList<>();
+        try (KVCursor<byte[], byte[]> cursor = prefixCursor(key)) {
+            while (cursor.next()) {
+                retList.add(cursor.key());
+            }
+        }
         return retList;
     }
 
     public List<Pair<byte[], byte[]>> prefixKeyAndValueLookup(byte[] key) {
-        List<Pair<byte[], byte[]>> retList = Lists.newLinkedList();
-        fetchPrefix(key, pair -> {
-            if(pair.getValue()!=null){
-                retList.add(pair);
+        List<Pair<byte[], byte[]>> retList = new ArrayList<>();
+        try (KVCursor<byte[], byte[]> cursor = prefixCursor(key)) {
+            while (cursor.next()) {
+                retList.add(Pair.of(cursor.key(), cursor.value()));
             }
-            return Boolean.FALSE;
-        });
+        }
         return retList;
     }
 
     @Override
     public void fetchPrefix(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
-        resetDbLock.readLock().lock();
-        try (RocksIterator it = db.newIterator(readOpts)) {
-            for (it.seek(key); it.isValid(); it.next()) {
-                if (BytesUtils.keyStartsWith(it.key(), key)) {
-                    if (func.apply(Pair.of(it.key(), it.value()))) {
-                        return;
-                    }
-                } else {
+        try (KVCursor<byte[], byte[]> cursor = prefixCursor(key)) {
+            while (cursor.next()) {
+                if (func.apply(Pair.of(cursor.key(), cursor.value()))) {
                     return;
                 }
             }
-        } catch (Exception e) {
-            log.error("Failed to seek by prefix in db '{}'", name, e);
+        }
+    }
+
+    @Override
+    public List<byte[]> multiGet(List<byte[]> keys) {
+        UnitOfWork uow = UnitOfWork.current();
+        if (uow == null) {
+            return multiGet(readOpts, keys);
+        }
+        List<byte[]> result = new ArrayList<>(Collections.nCopies(keys.size(), null));
+        List<byte[]> unstaged = new ArrayList<>(keys.size());
+        List<Integer> positions = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] staged = uow.lookup(this, keys.get(i));
+            if (staged == null) {
+                unstaged.add(keys.get(i));
+                positions.add(i);
+            } else if (!UnitOfWork.isTombstone(staged)) {
+                result.set(i, staged.clone());
+            }
+        }
+        List<byte[]> values = multiGet(readOpts, unstaged);
+        for (int i = 0; i < values.size(); i++) {
+            result.set(positions.get(i), values.get(i));
+        }
+        return result;
+    }
+
+    private List<byte[]> multiGet(ReadOptions options, List<byte[]> keys) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        resetDbLock.readLock().lock();
+        try {
+            return db.multiGetAsList(options, Collections.nCopies(keys.size(), columnFamily), keys);
+        } catch (RocksDBException e) {
+            log.error("Failed to multiGet from db '{}'", name, e);
             hintOnTooManyOpenFiles(e);
             throw new RuntimeException(e);
         } finally {
@@ -352,6 +463,102 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         }
     }
 
+    @Override
+    public void compactRange(byte[] begin, byte[] end) {
+        resetDbLock.readLock().lock();
+        try {
+            db.compactRange(columnFamily, begin, end);
+        } catch (RocksDBException e) {
+            log.error("Failed to compact db '{}'", name, e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bulk load sorted SST files, the files are moved into the store when they are on the same file system
+     */
+    public void ingest(List<String> files) {
+        resetDbLock.readLock().lock();
+        try (IngestExternalFileOptions options = new IngestExternalFileOptions()) {
+            options.setMoveFiles(true);
+            db.ingestExternalFile(columnFamily, files, options);
+        } catch (RocksDBException e) {
+            log.error("Failed to ingest {} files into db '{}'", files.size(), name, e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public KVCursor<byte[], byte[]> cursor(byte[] lower, byte[] upper) {
+        return withStaged(new RocksdbCursor(rangeReadOpts, lower, upper, null), lower,
+                key -> upper == null || UnitOfWork.KEY_ORDER.compare(key, upper) < 0);
+    }
+
+    @Override
+    public KVCursor<byte[], byte[]> prefixCursor(byte[] prefix) {
+        return withStaged(new RocksdbCursor(readOpts, prefix, null, prefix), prefix,
+                key -> BytesUtils.keyStartsWith(key, prefix));
+    }
+
+    @Override
+    public KVSnapshot<byte[], byte[]> snapshot() {
+        return new RocksdbSnapshot();
+    }
+
+    /**
+     * Merge the writes staged in the current unit of work into a database cursor
+     */
+    private KVCursor<byte[], byte[]> withStaged(KVCursor<byte[], byte[]> base, byte[] lower,
+            Predicate<byte[]> inRange) {
+        UnitOfWork uow = UnitOfWork.current();
+        NavigableMap<byte[], byte[]> staged = uow == null ? null : uow.tail(this, lower == null ? new byte[0] : lower);
+        if (staged == null) {
+            return base;
+        }
+        List<Map.Entry<byte[], byte[]>> entries = new ArrayList<>();
+        for (Map.Entry<byte[], byte[]> entry : staged.entrySet()) {
+            if (!inRange.test(entry.getKey())) {
+                break;
+            }
+            entries.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        return entries.isEmpty() ? base : new StagedCursor(base, entries);
+    }
+
+    /**
+     * Stage a put, or a delete when the value is null, into a batch for this source's column family
+     */
+    void addTo(WriteBatch batch, byte[] key, byte[] val) throws RocksDBException {
+        if (val == null) {
+            batch.delete(columnFamily, key);
+        } else {
+            batch.put(columnFamily, key, val);
+        }
+    }
+
+    /**
+     * Stage a merge operand into a batch for this source's column family
+     */
+    void mergeTo(WriteBatch batch, byte[] key, byte[] operand) throws RocksDBException {
+        batch.merge(columnFamily, key, operand);
+    }
+
+    /**
+     * Apply a batch atomically, used by {@link UnitOfWork} on commit
+     */
+    void write(WriteOptions writeOptions, WriteBatch batch) throws RocksDBException {
+        resetDbLock.readLock().lock();
+        try {
+            db.write(writeOptions, batch);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
     @Override
     public void close() {
         resetDbLock.writeLock().lock();
@@ -361,8 +568,14 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             }
 
             log.debug("Close db: {}", name);
-            db.close();
+            if (sharedDb != null) {
+                sharedDb.release();
+            } else {
+                db.close();
+            }
             readOpts.close();
+            rangeReadOpts.close();
+            columnFamily = null;
 
             alive = false;
 
@@ -375,6 +588,18 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
 
     @Override
     public void reset() {
+        if (sharedDb != null) {
+            resetDbLock.writeLock().lock();
+            try {
+                if (!isAlive()) {
+                    init();
+                }
+                columnFamily = sharedDb.recreate(name, prefixSeekLength);
+            } finally {
+                resetDbLock.writeLock().unlock();
+            }
+            return;
+        }
         close();
         try {
             FileUtils.deleteDirectory(new File(getPath().toString()));
@@ -401,4 +626,209 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             log.info("");
         }
     }
+
+    /**
+     * Cursor over a RocksDB iterator, holds the read lock until closed
+     */
+    private class RocksdbCursor implements KVCursor<byte[], byte[]> {
+
+        private final RocksIterator it;
+        private final byte[] upper;
+        private final byte[] prefix;
+        private boolean started;
+        private boolean done;
+        private boolean closed;
+        private byte[] key;
+        private byte[] value;
+
+        RocksdbCursor(ReadOptions options, byte[] lower, byte[] upper, byte[] prefix) {
+            this.upper = upper;
+            this.prefix = prefix;
+            resetDbLock.readLock().lock();
+            try {
+                it = db.newIterator(columnFamily, options);
+                if (lower == null) {
+                    it.seekToFirst();
+                } else {
+                    it.seek(lower);
+                }
+            } catch (RuntimeException e) {
+                resetDbLock.readLock().unlock();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean next() {
+            if (done || closed) {
+                return false;
+            }
+            if (started) {
+                it.next();
+            }
+            started = true;
+            if (!it.isValid()) {
+                done = true;
+                try {
+                    it.status();
+                } catch (RocksDBException e) {
+                    log.error("Failed to iterate db '{}'", name, e);
+                    hintOnTooManyOpenFiles(e);
+                    throw new RuntimeException(e);
+                }
+                return false;
+            }
+            byte[] current = it.key();
+            if ((upper != null && UnitOfWork.KEY_ORDER.compare(current, upper) >= 0)
+                    || (prefix != null && !BytesUtils.keyStartsWith(current, prefix))) {
+                done = true;
+                return false;
+            }
+            key = current;
+            value = it.value();
+            return true;
+        }
+
+        @Override
+        public byte[] key() {
+            return key;
+        }
+
+        @Override
+        public byte[] value() {
+            return value;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            it.close();
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Database cursor merged with the writes staged in the current unit of work, staged values win and tombstones
+     * hide the database entry
+     */
+    private static class StagedCursor implements KVCursor<byte[], byte[]> {
+
+        private final KVCursor<byte[], byte[]> base;
+        private final Iterator<Map.Entry<byte[], byte[]>> stagedIt;
+        private Map.Entry<byte[], byte[]> staged;
+        private boolean baseValid;
+        private boolean advanceBase = true;
+        private boolean advanceStaged = true;
+        private byte[] key;
+        private byte[] value;
+
+        StagedCursor(KVCursor<byte[], byte[]> base, List<Map.Entry<byte[], byte[]>> staged) {
+            this.base = base;
+            this.stagedIt = staged.iterator();
+        }
+
+        @Override
+        public boolean next() {
+            while (true) {
+                if (advanceBase) {
+                    baseValid = base.next();
+                    advanceBase = false;
+                }
+                if (advanceStaged) {
+                    staged = stagedIt.hasNext() ? stagedIt.next() : null;
+                    advanceStaged = false;
+                }
+                if (!baseValid && staged == null) {
+                    return false;
+                }
+                int cmp = !baseValid ? 1 : staged == null ? -1 : UnitOfWork.KEY_ORDER.compare(base.key(), staged.getKey());
+                if (cmp < 0) {
+                    key = base.key();
+                    value = base.value();
+                    advanceBase = true;
+                    return true;
+                }
+                advanceStaged = true;
+                advanceBase = cmp == 0;
+                if (!UnitOfWork.isTombstone(staged.getValue())) {
+                    key = staged.getKey();
+                    value = staged.getValue().clone();
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public byte[] key() {
+            return key;
+        }
+
+        @Override
+        public byte[] value() {
+            return value;
+        }
+
+        @Override
+        public void close() {
+            base.close();
+        }
+    }
+
+    /**
+     * Read view pinned to a RocksDB snapshot, holds the read lock until closed
+     */
+    private class RocksdbSnapshot implements KVSnapshot<byte[], byte[]> {
+
+        private final Snapshot snapshot;
+        private final ReadOptions prefixOpts;
+        private final ReadOptions rangeOpts;
+        private boolean closed;
+
+        RocksdbSnapshot() {
+            resetDbLock.readLock().lock();
+            snapshot = db.getSnapshot();
+            prefixOpts = new ReadOptions().setPrefixSameAsStart(true).setVerifyChecksums(false).setSnapshot(snapshot);
+            rangeOpts = new ReadOptions().setTotalOrderSeek(true).setVerifyChecksums(false).setSnapshot(snapshot);
+        }
+
+        @Override
+        public byte[] get(byte[] key) {
+            try {
+                return db.get(columnFamily, prefixOpts, key);
+            } catch (RocksDBException e) {
+                log.error("Failed to get from db '{}'", name, e);
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public List<byte[]> multiGet(List<byte[]> keys) {
+            return RocksdbKVSource.this.multiGet(prefixOpts, keys);
+        }
+
+        @Override
+        public KVCursor<byte[], byte[]> cursor(byte[] lower, byte[] upper) {
+            return new RocksdbCursor(rangeOpts, lower, upper, null);
+        }
+
+        @Override
+        public KVCursor<byte[], byte[]> prefixCursor(byte[] prefix) {
+            return new RocksdbCursor(prefixOpts, prefix, null, prefix);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            prefixOpts.close();
+            rangeOpts.close();
+            db.releaseSnapshot(snapshot);
+            resetDbLock.readLock().unlock();
+        }
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.config.Config;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+/**
+ * Moves the data of the per-store RocksDB directories into the column families of {@link RocksdbSharedDb}.
+ * <p>
+ * Each store is copied in batches into a freshly recreated column family and its old directory is moved to
+ * {@code <storeDir>/migrated/<NAME>} afterwards, so an interrupted run can simply be started again.
+ */
+@Slf4j
+public final class RocksdbMigration {
+
+    /**
+     * Stores that become column families, SNAPSHOT stays a standalone database
+     */
+    public static final List<DatabaseName> STORES = List.of(
+            DatabaseName.INDEX,
+            DatabaseName.BLOCK,
+            DatabaseName.TIME,
+            DatabaseName.ORPHANIND,
+            DatabaseName.ADDRESS,
+            DatabaseName.TXHISTORY);
+
+    public static final String MIGRATED_DIR = "migrated";
+
+    private static final int BATCH_SIZE = 10000;
+
+    private RocksdbMigration() {
+    }
+
+    private static boolean isStandalone(Config config, DatabaseName name) {
+        return Files.exists(Paths.get(config.getNodeSpec().getStoreDir(), name.toString(), "CURRENT"));
+    }
+
+    public static void warnIfNotMigrated(Config config) {
+        for (DatabaseName name : STORES) {
+            if (isStandalone(config, name)) {
+                log.warn("Found standalone database {} in {}, column family mode starts with empty stores. "
+                        + "Run xdag with --migratestore to move the existing data.", name,
+                        config.getNodeSpec().getStoreDir());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Migrate all standalone store directories into the shared database
+     *
+     * @return number of copied entries
+     */
+    public static long migrateToColumnFamilies(Config config, PrintStream out) throws IOException {
+        RocksdbSharedDb sharedDb = new RocksdbSharedDb(config);
+        long total = 0;
+        for (DatabaseName name : STORES) {
+            if (!isStandalone(config, name)) {
+                out.println(name + ": nothing to migrate");
+                continue;
+            }
+            long start = System.currentTimeMillis();
+            int prefixSeekLength = RocksdbSharedDb.prefixSeekLength(name.toString());
+            RocksdbKVSource from = new RocksdbKVSource(name.toString(), prefixSeekLength);
+            from.setConfig(config);
+            RocksdbKVSource to = new RocksdbKVSource(name.toString(), prefixSeekLength, sharedDb);
+            to.setConfig(config);
+            long count;
+            try {
+                from.init();
+                to.init();
+                // drop leftovers of an interrupted run
+                to.reset();
+                count = copy(from, to, out);
+            } finally {
+                from.close();
+                to.close();
+            }
+
+            Path source = Paths.get(config.getNodeSpec().getStoreDir(), name.toString());
+            Path target = Paths.get(config.getNodeSpec().getStoreDir(), MIGRATED_DIR, name.toString());
+            Files.createDirectories(target.getParent());
+            Files.move(source, target);
+            total += count;
+            out.println(name + ": " + count + " entries migrated in " + (System.currentTimeMillis() - start)
+                    + " ms, old data moved to " + target);
+        }
+        return total;
+    }
+
+    /**
+     * Copy every entry of one source into another with batched writes
+     *
+     * @return number of copied entries
+     */
+    public static long copy(RocksdbKVSource from, RocksdbKVSource to, PrintStream out) {
+        long count = 0;
+        try (KVCursor<byte[], byte[]> cursor = from.cursor(null, null);
+                WriteOptions writeOptions = new WriteOptions();
+                WriteBatch batch = new WriteBatch()) {
+            while (cursor.next()) {
+                to.addTo(batch, cursor.key(), cursor.value());
+                if (++count % BATCH_SIZE == 0) {
+                    to.write(writeOptions, batch);
+                    batch.clear();
+                    if (count % (100 * BATCH_SIZE) == 0) {
+                        out.println(from.getName() + ": " + count + " entries copied");
+                    }
+                }
+            }
+            if (batch.count() > 0) {
+                to.write(writeOptions, batch);
+            }
+        } catch (RocksDBException e) {
+            throw new RuntimeException("Failed to copy " + from.getName() + " to " + to.getName(), e);
+        }
+        return count;
+    }
+}
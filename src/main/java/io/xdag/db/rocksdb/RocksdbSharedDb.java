@@ -0,0 +1,249 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.config.Config;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
+import org.rocksdb.LRUCache;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBufferManager;
+
+/**
+ * One RocksDB instance whose column families back the stores of {@link RocksdbFactory} when
+ * {@code node.store.columnFamilies.enable} is set.
+ * <p>
+ * All column families share one LRU block cache and one write buffer manager sized from the node config, and a
+ * write batch may span several column families, so a {@link UnitOfWork} commits atomically across stores.
+ * Column families are tuned from the {@link RocksdbTuning} of the store, and can be further overridden with
+ * RocksDB option strings under {@code node.store.columnFamilies.options.<NAME>}.
+ */
+@Slf4j
+public class RocksdbSharedDb {
+
+    /**
+     * Directory name of the shared database below the store dir
+     */
+    public static final String DB_NAME = "XDAG";
+
+    private static final long MB = 1024L * 1024L;
+
+    private final Config config;
+
+    @Getter
+    private RocksDB db;
+    private DBOptions dbOptions;
+    private LRUCache blockCache;
+    private WriteBufferManager writeBufferManager;
+    private final Map<String, ColumnFamilyHandle> handles = new HashMap<>();
+    private final Map<String, ColumnFamilyOptions> cfOptions = new HashMap<>();
+    private ColumnFamilyHandle defaultHandle;
+    private int refCount;
+
+    public RocksdbSharedDb(Config config) {
+        this.config = config;
+    }
+
+    public Path getPath() {
+        return Paths.get(config.getNodeSpec().getStoreDir(), DB_NAME);
+    }
+
+    /**
+     * Open the database on first use, every call must be paired with {@link #release()}
+     */
+    public synchronized RocksDB acquire() {
+        if (db == null) {
+            open();
+        }
+        refCount++;
+        return db;
+    }
+
+    public synchronized void release() {
+        if (refCount == 0) {
+            return;
+        }
+        if (--refCount == 0) {
+            close();
+        }
+    }
+
+    /**
+     * Get the column family of a store, creating it if it does not exist yet
+     */
+    public synchronized ColumnFamilyHandle handle(String name, int prefixSeekLength) {
+        ColumnFamilyHandle handle = handles.get(name);
+        if (handle != null) {
+            return handle;
+        }
+        try {
+            handle = db.createColumnFamily(new ColumnFamilyDescriptor(cfName(name), options(name, prefixSeekLength)));
+            handles.put(name, handle);
+            log.info("Created column family {} in {}", name, getPath());
+            return handle;
+        } catch (RocksDBException e) {
+            throw new RuntimeException("Failed to create column family " + name, e);
+        }
+    }
+
+    /**
+     * Drop and recreate the column family of a store, used by {@link RocksdbKVSource#reset()}
+     */
+    public synchronized ColumnFamilyHandle recreate(String name, int prefixSeekLength) {
+        ColumnFamilyHandle handle = handles.remove(name);
+        if (handle != null) {
+            try {
+                db.dropColumnFamily(handle);
+            } catch (RocksDBException e) {
+                throw new RuntimeException("Failed to drop column family " + name, e);
+            } finally {
+                handle.close();
+            }
+        }
+        return handle(name, prefixSeekLength);
+    }
+
+    private void open() {
+        Path path = getPath();
+        try {
+            Files.createDirectories(path);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create " + path, e);
+        }
+
+        blockCache = new LRUCache(config.getNodeSpec().getStoreBlockCacheSize() * MB);
+        writeBufferManager = new WriteBufferManager(config.getNodeSpec().getStoreWriteBufferSize() * MB, blockCache);
+        dbOptions = new DBOptions()
+                .setCreateIfMissing(true)
+                .setCreateMissingColumnFamilies(true)
+                .setMaxOpenFiles(config.getNodeSpec().getStoreMaxOpenFiles())
+                .setIncreaseParallelism(config.getNodeSpec().getStoreMaxThreads())
+                .setWriteBufferManager(writeBufferManager);
+        tuning("default").applyTo(dbOptions);
+
+        List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+        descriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, options("default", 0)));
+        try (Options listOptions = new Options()) {
+            if (Files.exists(path.resolve("CURRENT"))) {
+                for (byte[] cf : RocksDB.listColumnFamilies(listOptions, path.toString())) {
+                    String name = new String(cf, StandardCharsets.UTF_8);
+                    if (!name.equals(new String(RocksDB.DEFAULT_COLUMN_FAMILY, StandardCharsets.UTF_8))) {
+                        descriptors.add(new ColumnFamilyDescriptor(cf, options(name, prefixSeekLength(name))));
+                    }
+                }
+            }
+            List<ColumnFamilyHandle> opened = new ArrayList<>();
+            db = RocksDB.open(dbOptions, path.toString(), descriptors, opened);
+            for (int i = 1; i < descriptors.size(); i++) {
+                handles.put(new String(descriptors.get(i).getName(), StandardCharsets.UTF_8), opened.get(i));
+            }
+            defaultHandle = opened.getFirst();
+        } catch (RocksDBException e) {
+            log.error(e.getMessage(), e);
+            throw new RuntimeException("Failed to initialize database", e);
+        }
+        log.info("Opened shared database {} with column families {}, block cache {}MB, write buffer {}MB, profile {}",
+                path, handles.keySet(), config.getNodeSpec().getStoreBlockCacheSize(),
+                config.getNodeSpec().getStoreWriteBufferSize(), config.getNodeSpec().getStoreProfile());
+    }
+
+    private void close() {
+        log.debug("Close shared db: {}", getPath());
+        handles.values().forEach(ColumnFamilyHandle::close);
+        handles.clear();
+        if (defaultHandle != null) {
+            defaultHandle.close();
+            defaultHandle = null;
+        }
+        if (db != null) {
+            db.close();
+            db = null;
+        }
+        cfOptions.values().forEach(ColumnFamilyOptions::close);
+        cfOptions.clear();
+        dbOptions.close();
+        writeBufferManager.close();
+        blockCache.close();
+    }
+
+    private RocksdbTuning tuning(String name) {
+        return RocksdbTuning.of(config.getNodeSpec().getStoreProfile(), name,
+                config.getNodeSpec().getStoreTuning().get(name));
+    }
+
+    private ColumnFamilyOptions options(String name, int prefixSeekLength) {
+        RocksdbTuning tuning = tuning(name);
+        Properties props = tuning.columnFamilyProperties();
+        props.setProperty("level_compaction_dynamic_level_bytes", "true");
+        Map<String, String> overrides = config.getNodeSpec().getStoreColumnFamilyOptions().get(name);
+        if (overrides != null) {
+            props.putAll(overrides);
+        }
+        ColumnFamilyOptions options = ColumnFamilyOptions.getColumnFamilyOptionsFromProps(props);
+        if (options == null) {
+            log.error("Invalid column family options for {}: {}, using defaults", name, overrides);
+            options = tuning.columnFamilyOptions().setLevelCompactionDynamicLevelBytes(true);
+        }
+        if (prefixSeekLength > 0) {
+            options.useFixedLengthPrefixExtractor(prefixSeekLength);
+        }
+        options.setMergeOperatorName(RocksdbKVSource.MERGE_OPERATOR);
+
+        options.setTableFormatConfig(tuning.tableConfig(blockCache));
+
+        ColumnFamilyOptions previous = cfOptions.put(name, options);
+        if (previous != null) {
+            previous.close();
+        }
+        return options;
+    }
+
+    private static byte[] cfName(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Prefix extractor length of a store, has to match {@link RocksdbFactory}
+     */
+    static int prefixSeekLength(String name) {
+        return DatabaseName.TIME.name().equals(name) ? 9 : 0;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.Cache;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompressionType;
+import org.rocksdb.DBOptions;
+import org.rocksdb.Options;
+import org.rocksdb.RateLimiter;
+
+/**
+ * RocksDB settings of one store, taken from a named profile ({@code node.store.profile}) and the per-store
+ * overrides under {@code node.store.tuning.<NAME>}.
+ * <p>
+ * Profiles:
+ * <ul>
+ * <li>{@code default}: the settings the stores always had, 16 KB blocks, a 32 MB cache per store, LZ4</li>
+ * <li>{@code ssd-high-throughput}: large caches and write buffers, direct I/O, small blocks for point reads</li>
+ * <li>{@code hdd-archive}: large blocks to save seeks, ZSTD on the last level, compaction I/O rate limited</li>
+ * <li>{@code low-memory}: small caches and write buffers</li>
+ * </ul>
+ * Within a profile the stores are tuned for their access patterns: INDEX and ADDRESS are point lookups on a hot
+ * set, BLOCK and TIME hold block data and the time index that are written once and rarely rewritten, ORPHANIND is
+ * small with short-lived entries.
+ * <p>
+ * Override keys: blockSize (KB), blockCacheSize (MB), bloomBitsPerKey (0 disables the filter), compression and
+ * bottommostCompression (none, snappy, lz4, lz4hc, zstd), writeBufferSize (MB), maxWriteBufferNumber, rateLimit
+ * (MB/s of flush and compaction writes, 0 disables) and directIO. All stores share one rate limiter, set up by the
+ * first store that asks for one, since they write to the same disk. In column family mode the block cache is the
+ * shared one, and rateLimit and directIO apply to the whole database and are taken from the profile.
+ */
+@Slf4j
+@Getter
+public class RocksdbTuning {
+
+    public static final String DEFAULT_PROFILE = "default";
+    public static final String SSD_HIGH_THROUGHPUT = "ssd-high-throughput";
+    public static final String HDD_ARCHIVE = "hdd-archive";
+    public static final String LOW_MEMORY = "low-memory";
+
+    private static final long MB = 1024L * 1024L;
+
+    private static RateLimiter sharedRateLimiter;
+    private static long sharedRateLimit;
+
+    private int blockSize = 16;
+    private long blockCacheSize = 32;
+    private int bloomBitsPerKey = 10;
+    private CompressionType compression = CompressionType.LZ4_COMPRESSION;
+    private CompressionType bottommostCompression = CompressionType.LZ4_COMPRESSION;
+    private long writeBufferSize = 64;
+    private int maxWriteBufferNumber = 2;
+    private long rateLimit = 0;
+    private boolean directIO = false;
+
+    private RocksdbTuning() {
+    }
+
+    /**
+     * Settings of a store, unknown profiles fall back to {@link #DEFAULT_PROFILE}
+     *
+     * @param store store name, usually a {@link DatabaseName}
+     * @param overrides per-store overrides, may be null
+     */
+    public static RocksdbTuning of(String profile, String store, Map<String, String> overrides) {
+        RocksdbTuning tuning = new RocksdbTuning();
+        String role = store == null ? "" : store;
+        switch (profile == null ? DEFAULT_PROFILE : profile) {
+            case DEFAULT_PROFILE -> {
+            }
+            case SSD_HIGH_THROUGHPUT -> {
+                tuning.blockCacheSize = 128;
+                tuning.writeBufferSize = 128;
+                tuning.maxWriteBufferNumber = 4;
+                tuning.directIO = true;
+                switch (role) {
+                    case "INDEX" -> tuning.blockCacheSize = 512;
+                    case "ADDRESS" -> {
+                        tuning.blockSize = 4;
+                        tuning.blockCacheSize = 256;
+                    }
+                    case "BLOCK", "TIME" -> tuning.blockCacheSize = 256;
+                    case "ORPHANIND" -> {
+                        tuning.writeBufferSize = 32;
+                        tuning.compression = CompressionType.NO_COMPRESSION;
+                        tuning.bottommostCompression = CompressionType.NO_COMPRESSION;
+                    }
+                    default -> {
+                    }
+                }
+            }
+            case HDD_ARCHIVE -> {
+                tuning.blockSize = 64;
+                tuning.blockCacheSize = 64;
+                tuning.bottommostCompression = CompressionType.ZSTD_COMPRESSION;
+                tuning.writeBufferSize = 128;
+                tuning.maxWriteBufferNumber = 3;
+                tuning.rateLimit = 64;
+                switch (role) {
+                    case "INDEX", "ADDRESS" -> {
+                        tuning.blockSize = 16;
+                        tuning.blockCacheSize = 256;
+                    }
+                    case "BLOCK", "TIME" -> tuning.compression = CompressionType.ZSTD_COMPRESSION;
+                    default -> {
+                    }
+                }
+            }
+            case LOW_MEMORY -> {
+                tuning.blockSize = 8;
+                tuning.blockCacheSize = 8;
+                tuning.writeBufferSize = 8;
+                tuning.bottommostCompression = CompressionType.ZSTD_COMPRESSION;
+                if (role.equals("INDEX")) {
+                    tuning.blockCacheSize = 32;
+                    tuning.writeBufferSize = 16;
+                }
+            }
+            default -> {
+                log.error("Unknown store profile {}, using {}", profile, DEFAULT_PROFILE);
+                return of(DEFAULT_PROFILE, store, overrides);
+            }
+        }
+        if (overrides != null) {
+            overrides.forEach(tuning::override);
+        }
+        return tuning;
+    }
+
+    private void override(String key, String value) {
+        try {
+            switch (key) {
+                case "blockSize" -> blockSize = Integer.parseInt(value);
+                case "blockCacheSize" -> blockCacheSize = Long.parseLong(value);
+                case "bloomBitsPerKey" -> bloomBitsPerKey = Integer.parseInt(value);
+                case "compression" -> compression = compressionType(value);
+                case "bottommostCompression" -> bottommostCompression = compressionType(value);
+                case "writeBufferSize" -> writeBufferSize = Long.parseLong(value);
+                case "maxWriteBufferNumber" -> maxWriteBufferNumber = Integer.parseInt(value);
+                case "rateLimit" -> rateLimit = Long.parseLong(value);
+                case "directIO" -> directIO = Boolean.parseBoolean(value);
+                default -> log.error("Unknown store tuning key {}", key);
+            }
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid store tuning {} = {}, keeping {}", key, value, this);
+        }
+    }
+
+    static CompressionType compressionType(String name) {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case "none" -> CompressionType.NO_COMPRESSION;
+            case "snappy" -> CompressionType.SNAPPY_COMPRESSION;
+            case "lz4" -> CompressionType.LZ4_COMPRESSION;
+            case "lz4hc" -> CompressionType.LZ4HC_COMPRESSION;
+            case "zstd" -> CompressionType.ZSTD_COMPRESSION;
+            default -> throw new IllegalArgumentException("Unknown compression " + name);
+        };
+    }
+
+    private static String optionString(CompressionType type) {
+        return switch (type) {
+            case NO_COMPRESSION -> "kNoCompression";
+            case SNAPPY_COMPRESSION -> "kSnappyCompression";
+            case LZ4HC_COMPRESSION -> "kLZ4HCCompression";
+            case ZSTD_COMPRESSION -> "kZSTD";
+            default -> "kLZ4Compression";
+        };
+    }
+
+    /**
+     * Table settings using the given block cache
+     */
+    public BlockBasedTableConfig tableConfig(Cache blockCache) {
+        BlockBasedTableConfig tableCfg = new BlockBasedTableConfig();
+        tableCfg.setBlockSize(blockSize * 1024L);
+        tableCfg.setBlockCache(blockCache);
+        tableCfg.setCacheIndexAndFilterBlocks(true);
+        tableCfg.setPinL0FilterAndIndexBlocksInCache(true);
+        if (bloomBitsPerKey > 0) {
+            tableCfg.setFilterPolicy(new BloomFilter(bloomBitsPerKey, false));
+        }
+        return tableCfg;
+    }
+
+    /**
+     * Apply the settings to the options of a standalone store, which gets its own block cache
+     */
+    public void applyTo(Options options, Cache blockCache) {
+        options.setCompressionType(compression);
+        options.setBottommostCompressionType(bottommostCompression);
+        options.setWriteBufferSize(writeBufferSize * MB);
+        options.setMaxWriteBufferNumber(maxWriteBufferNumber);
+        options.setTableFormatConfig(tableConfig(blockCache));
+        if (rateLimit > 0) {
+            options.setRateLimiter(rateLimiter(rateLimit));
+        }
+        options.setUseDirectReads(directIO);
+        options.setUseDirectIoForFlushAndCompaction(directIO);
+    }
+
+    /**
+     * The limiter of all stores, flushes and compactions of the stores compete for the same disk
+     */
+    private static synchronized RateLimiter rateLimiter(long rateLimit) {
+        if (sharedRateLimiter == null) {
+            sharedRateLimiter = new RateLimiter(rateLimit * MB);
+            sharedRateLimit = rateLimit;
+        } else if (sharedRateLimit != rateLimit) {
+            log.error("Store rate limit {}MB/s ignored, the stores share a limit of {}MB/s", rateLimit,
+                    sharedRateLimit);
+        }
+        return sharedRateLimiter;
+    }
+
+    /**
+     * Database wide settings of the shared database
+     */
+    public void applyTo(DBOptions options) {
+        if (rateLimit > 0) {
+            options.setRateLimiter(rateLimiter(rateLimit));
+        }
+        options.setUseDirectReads(directIO);
+        options.setUseDirectIoForFlushAndCompaction(directIO);
+    }
+
+    /**
+     * Column family settings as RocksDB option strings, so the raw options of
+     * {@code node.store.columnFamilies.options} put on top of them win
+     */
+    public Properties columnFamilyProperties() {
+        Properties props = new Properties();
+        props.setProperty("compression", optionString(compression));
+        props.setProperty("bottommost_compression", optionString(bottommostCompression));
+        props.setProperty("write_buffer_size", String.valueOf(writeBufferSize * MB));
+        props.setProperty("max_write_buffer_number", String.valueOf(maxWriteBufferNumber));
+        return props;
+    }
+
+    /**
+     * Fallback when the option strings do not parse
+     */
+    public ColumnFamilyOptions columnFamilyOptions() {
+        return new ColumnFamilyOptions()
+                .setCompressionType(compression)
+                .setBottommostCompressionType(bottommostCompression)
+                .setWriteBufferSize(writeBufferSize * MB)
+                .setMaxWriteBufferNumber(maxWriteBufferNumber);
+    }
+
+    @Override
+    public String toString() {
+        return "blockSize=" + blockSize + "KB, blockCacheSize=" + blockCacheSize + "MB, bloomBitsPerKey="
+                + bloomBitsPerKey + ", compression=" + compression + "/" + bottommostCompression
+                + ", writeBufferSize=" + writeBufferSize + "MB x " + maxWriteBufferNumber + ", rateLimit="
+                + rateLimit + "MB/s, directIO=" + directIO;
+    }
+}
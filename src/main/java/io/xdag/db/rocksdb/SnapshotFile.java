@@ -0,0 +1,348 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.SstFileWriter;
+
+/**
+ * Portable snapshot file. The entries of every store are streamed in key order and cut into chunks, each chunk
+ * carries a CRC32C of its payload so a damaged or truncated file is refused before anything is ingested.
+ *
+ * <pre>
+ * header:  int magic, int version, long height, long nextTime, int sections
+ * section: utf name, chunks, an empty chunk
+ * chunk:   int entries, int length, payload, long crc32c
+ * payload: (int keyLength, key, int valueLength, value) * entries
+ * trailer: long total entries, int magic
+ * </pre>
+ *
+ * On import the chunks are written into sorted SST files that RocksDB ingests directly, without going through the
+ * memtable and the write-ahead log. They go into the SNAPSHOT stores that {@code makeSnapshot} fills, not into INDEX
+ * and ADDRESS: the node turns those entries into its own stores on the first start, since the ownership flags and
+ * balances depend on its wallet, and writes them there in batches.
+ */
+@Slf4j
+public final class SnapshotFile {
+
+    static final int MAGIC = 0x58534e50;
+    static final int VERSION = 1;
+    /**
+     * Payload bytes after which a chunk is closed
+     */
+    static final int CHUNK_BYTES = 1 << 20;
+    /**
+     * Size after which the import starts a new SST file
+     */
+    static final long SST_FILE_BYTES = 256L << 20;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Stream the stores into a snapshot file. The file is written next to the target and moved in place once
+     * complete.
+     *
+     * @param sections stores by section name, written in the iteration order of the map
+     * @return number of entries written
+     */
+    public static long export(Path file, long height, long nextTime, Map<String, ? extends KVSource<byte[], byte[]>> sections)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long total = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(height);
+            out.writeLong(nextTime);
+            out.writeInt(sections.size());
+            for (Map.Entry<String, ? extends KVSource<byte[], byte[]>> section : sections.entrySet()) {
+                out.writeUTF(section.getKey());
+                long entries = writeSection(out, section.getValue());
+                log.info("Snapshot export: section {} with {} entries", section.getKey(), entries);
+                total += entries;
+            }
+            out.writeLong(total);
+            out.writeInt(MAGIC);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Snapshot export: {} entries, {} bytes in {} ms", total, Files.size(file),
+                System.currentTimeMillis() - start);
+        return total;
+    }
+
+    private static long writeSection(DataOutputStream out, KVSource<byte[], byte[]> source) throws IOException {
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(CHUNK_BYTES + 1024);
+        DataOutputStream payload = new DataOutputStream(chunk);
+        long total = 0;
+        int entries = 0;
+        try (KVCursor<byte[], byte[]> cursor = source.cursor(null, null)) {
+            while (cursor.next()) {
+                byte[] key = cursor.key();
+                byte[] value = cursor.value();
+                payload.writeInt(key.length);
+                payload.write(key);
+                payload.writeInt(value.length);
+                payload.write(value);
+                entries++;
+                if (chunk.size() >= CHUNK_BYTES) {
+                    writeChunk(out, entries, chunk);
+                    total += entries;
+                    entries = 0;
+                }
+            }
+        }
+        if (entries > 0) {
+            writeChunk(out, entries, chunk);
+            total += entries;
+        }
+        writeChunk(out, 0, chunk);
+        return total;
+    }
+
+    private static void writeChunk(DataOutputStream out, int entries, ByteArrayOutputStream chunk) throws IOException {
+        byte[] payload = chunk.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        out.writeInt(entries);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeLong(crc.getValue());
+        chunk.reset();
+    }
+
+    /**
+     * Load a snapshot file into the stores through SST ingestion. The whole file is verified and written into SST
+     * files first, only then is each target reset and given its files, so a damaged file leaves the stores as they
+     * were.
+     *
+     * @param targets store of a section, or null to skip the section
+     * @param workDir directory for the SST files, removed afterwards
+     */
+    public static Header ingest(Path file, Function<String, RocksdbKVSource> targets, Path workDir)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        Files.createDirectories(workDir);
+        long fileSize = Files.size(file);
+        Map<RocksdbKVSource, List<String>> ingests = new LinkedHashMap<>();
+        try (CountingInput counter = new CountingInput(new BufferedInputStream(Files.newInputStream(file)));
+                DataInputStream in = new DataInputStream(counter);
+                Options options = new Options();
+                EnvOptions envOptions = new EnvOptions()) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot file version " + version);
+            }
+            long height = in.readLong();
+            long nextTime = in.readLong();
+            int sections = in.readInt();
+            long total = 0;
+            for (int i = 0; i < sections; i++) {
+                String name = in.readUTF();
+                RocksdbKVSource target = targets.apply(name);
+                List<String> files = new ArrayList<>();
+                long entries = readSection(in, counter, fileSize, name, target == null ? null : workDir, options,
+                        envOptions, files);
+                if (target != null) {
+                    ingests.computeIfAbsent(target, t -> new ArrayList<>()).addAll(files);
+                }
+                log.info("Snapshot import: section {} with {} entries in {} SST files", name, entries, files.size());
+                total += entries;
+            }
+            if (in.readLong() != total || in.readInt() != MAGIC) {
+                throw new IOException("Snapshot file trailer does not match, " + total + " entries read");
+            }
+            // the whole file is verified, the stores are touched from here on
+            for (Map.Entry<RocksdbKVSource, List<String>> entry : ingests.entrySet()) {
+                entry.getKey().reset();
+                if (!entry.getValue().isEmpty()) {
+                    entry.getKey().ingest(entry.getValue());
+                }
+            }
+            log.info("Snapshot import: {} entries in {} ms", total, System.currentTimeMillis() - start);
+            return new Header(height, nextTime, total);
+        } catch (EOFException e) {
+            throw new IOException("Snapshot file is truncated: " + file, e);
+        } finally {
+            FileUtils.deleteQuietly(workDir.toFile());
+        }
+    }
+
+    private static long readSection(DataInputStream in, CountingInput counter, long fileSize, String name,
+            Path workDir, Options options, EnvOptions envOptions, List<String> files) throws IOException {
+        SstFileWriter writer = null;
+        long total = 0;
+        int chunks = 0;
+        try {
+            while (true) {
+                int entries = in.readInt();
+                int length = in.readInt();
+                // the length is not covered by the checksum, it may not point past the end of the file
+                if (entries < 0 || length < 0 || length > fileSize - counter.count) {
+                    throw new IOException("Corrupted chunk " + chunks + " of section " + name);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                if (in.readLong() != crc.getValue()) {
+                    throw new IOException("Checksum mismatch in chunk " + chunks + " of section " + name);
+                }
+                if (entries == 0) {
+                    break;
+                }
+                total += entries;
+                // the entry count is not covered by the checksum either, it must match the payload exactly
+                ByteBuffer buffer = ByteBuffer.wrap(payload);
+                for (int j = 0; j < entries; j++) {
+                    byte[] key = readField(buffer, chunks, name);
+                    byte[] value = readField(buffer, chunks, name);
+                    if (workDir == null) {
+                        continue;
+                    }
+                    if (writer == null) {
+                        String sst = workDir.resolve(name.replace('/', '_') + "-" + files.size() + ".sst").toString();
+                        writer = new SstFileWriter(envOptions, options);
+                        writer.open(sst);
+                        files.add(sst);
+                    }
+                    writer.put(key, value);
+                    if (writer.fileSize() >= SST_FILE_BYTES) {
+                        writer.finish();
+                        writer.close();
+                        writer = null;
+                    }
+                }
+                if (buffer.hasRemaining()) {
+                    throw new IOException("Chunk " + chunks + " of section " + name + " holds more than " + entries
+                            + " entries");
+                }
+                chunks++;
+            }
+            if (writer != null) {
+                writer.finish();
+            }
+            return total;
+        } catch (RocksDBException e) {
+            throw new IOException("Failed to write SST file of section " + name, e);
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    private static byte[] readField(ByteBuffer buffer, int chunk, String name) throws IOException {
+        int length = buffer.remaining() < Integer.BYTES ? -1 : buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Chunk " + chunk + " of section " + name + " holds fewer entries than it counts");
+        }
+        byte[] field = new byte[length];
+        buffer.get(field);
+        return field;
+    }
+
+    /**
+     * Counts the bytes read from the file
+     */
+    private static final class CountingInput extends FilterInputStream {
+
+        long count;
+
+        CountingInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Chain position the snapshot was taken at
+     */
+    @Getter
+    public static class Header {
+
+        private final long height;
+        private final long nextTime;
+        private final long entries;
+
+        Header(long height, long nextTime, long entries) {
+            this.height = height;
+            this.nextTime = nextTime;
+            this.entries = entries;
+        }
+    }
+}
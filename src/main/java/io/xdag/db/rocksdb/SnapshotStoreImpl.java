@@ -23,16 +23,10 @@
  */
 package io.xdag.db.rocksdb;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.KryoException;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
 import io.xdag.core.*;
 import io.xdag.crypto.hash.HashUtils;
 import io.xdag.crypto.keys.ECKeyPair;
 import io.xdag.crypto.keys.Signature;
-import io.xdag.crypto.keys.Signer;
 import io.xdag.db.AddressStore;
 import io.xdag.db.BlockStore;
 import io.xdag.db.SnapshotStore;
@@ -42,20 +36,27 @@ import io.xdag.db.execption.SerializationException;
 import io.xdag.utils.BasicUtils;
 import io.xdag.utils.BytesUtils;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
 import org.apache.tuweni.units.bigints.UInt64;
 import org.bouncycastle.util.encoders.Hex;
-import org.objenesis.strategy.StdInstantiatorStrategy;
-import org.rocksdb.RocksIterator;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static io.xdag.config.Constants.BI_OURS;
 import static io.xdag.db.AddressStore.ADDRESS_SIZE;
@@ -66,9 +67,17 @@ import static io.xdag.utils.BasicUtils.compareAmountTo;
 @Slf4j
 public class SnapshotStoreImpl implements SnapshotStore {
 
-    private final RocksdbKVSource snapshotSource;
+    /**
+     * Snapshot entries written per batch during import
+     */
+    static final int IMPORT_BATCH = 4096;
+    /**
+     * Key range partitions of the block import, must divide 256
+     */
+    static final int IMPORT_PARTITIONS = 64;
+    private static final long PROGRESS_INTERVAL = 10_000;
 
-    private final Kryo kryo;
+    private final RocksdbKVSource snapshotSource;
     @Getter
     private XAmount ourBalance = XAmount.ZERO;
     @Getter
@@ -77,12 +86,20 @@ public class SnapshotStoreImpl implements SnapshotStore {
     private long nextTime;
     @Getter
     private long height;
+    /**
+     * Segment store of the raw blocks, needed when blockSource holds segment locations
+     */
+    @Setter
+    private RawBlockSegmentStore rawSegments;
+    /**
+     * Workers of the block import
+     */
+    @Setter
+    private int importThreads = Runtime.getRuntime().availableProcessors();
 
 
     public SnapshotStoreImpl(RocksdbKVSource snapshotSource) {
         this.snapshotSource = snapshotSource;
-        this.kryo = new Kryo();
-        kryoRegister();
     }
 
     @Override
@@ -113,8 +130,8 @@ public class SnapshotStoreImpl implements SnapshotStore {
     }
 
     public void makeSnapshot(RocksdbKVSource blockSource, RocksdbKVSource indexSource, boolean b) {
-        try (RocksIterator iter = indexSource.getDb().newIterator()) {
-            for (iter.seek(new byte[]{HASH_BLOCK_INFO}); iter.isValid() && iter.key()[0] < SUMS_BLOCK_INFO; iter.next()) {
+        try (KVCursor<byte[], byte[]> iter = indexSource.cursor(new byte[]{HASH_BLOCK_INFO}, new byte[]{SUMS_BLOCK_INFO})) {
+            while (iter.next()) {
                 PreBlockInfo preBlockInfo;
                 BlockInfo blockInfo = new BlockInfo();
                 if (iter.value() != null) {
@@ -136,17 +153,17 @@ public class SnapshotStoreImpl implements SnapshotStore {
                         flag &= ~BI_OURS;
                         blockInfo.setFlags(flag);
                         blockInfo.setSnapshot(true);
-                        save(iter, blockInfo);
+                        save(iter.key(), blockInfo);
                     } else { // Storage block data without public key and balance
                         if ((blockInfo.getAmount() != null && compareAmountTo(blockInfo.getAmount(), XAmount.ZERO) != 0)) {
 //                        if (blockInfo.getAmount() != 0) {
                             blockInfo.setSnapshot(true);
-                            blockInfo.setSnapshotInfo(new SnapshotInfo(false, blockSource.get(
+                            blockInfo.setSnapshotInfo(new SnapshotInfo(false, readRaw(blockSource,
                                     BytesUtils.subArray(iter.key(), 1, 32))));
                             int flag = blockInfo.getFlags();
                             flag &= ~BI_OURS;
                             blockInfo.setFlags(flag);
-                            save(iter, blockInfo);
+                            save(iter.key(), blockInfo);
                         }
                     }
                 }
@@ -163,187 +180,306 @@ public class SnapshotStoreImpl implements SnapshotStore {
         snapshotSource.put(new byte[]{SNAPSHOT_PRESEED}, preSeed);
     }
 
+    private byte[] readRaw(RocksdbKVSource blockSource, byte[] hashlow) {
+        byte[] raw = blockSource.get(hashlow);
+        if (rawSegments != null && RawBlockSegmentStore.isLocation(raw)) {
+            MutableBytes record = rawSegments.read(raw);
+            return record == null ? null : record.toArray();
+        }
+        return raw;
+    }
+
+    /**
+     * Import the snapshot blocks into the block store. The hashlow space is split into partitions that are scanned
+     * by {@link #importThreads} workers, each with its own cursor, and the writes of every
+     * {@link #IMPORT_BATCH} entries go out as one batch.
+     */
     public void saveSnapshotToIndex(BlockStore blockStore, TransactionHistoryStore txHistoryStore, List<ECKeyPair> keys,long snapshotTime) {
-        try (RocksIterator iter = snapshotSource.getDb().newIterator()) {
-            for (iter.seekToFirst(); iter.isValid(); iter.next()) {
-                if (iter.key()[0] == HASH_BLOCK_INFO) {
-                    BlockInfo blockInfo = new BlockInfo();
-                    if (iter.value() != null) {
+        long start = System.currentTimeMillis();
+        OwnerKeys ownerKeys = new OwnerKeys(keys);
+        ImportProgress progress = new ImportProgress("blocks");
+        int threads = Math.max(1, importThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                BasicThreadFactory.builder().namingPattern("snapshot-import-%d").daemon(true).build());
+        try {
+            List<Future<?>> partitions = new ArrayList<>();
+            int step = 256 / IMPORT_PARTITIONS;
+            for (int i = 0; i < IMPORT_PARTITIONS; i++) {
+                byte[] lower = partitionKey(i * step);
+                byte[] upper = i == IMPORT_PARTITIONS - 1 ? new byte[]{(byte) (HASH_BLOCK_INFO + 1)} : partitionKey((i + 1) * step);
+                partitions.add(executor.submit(() -> importPartition(lower, upper, blockStore, txHistoryStore,
+                        ownerKeys, snapshotTime, progress)));
+            }
+            for (Future<?> partition : partitions) {
+                partition.get();
+            }
+            byte[] preSeed = snapshotSource.get(new byte[]{SNAPSHOT_PRESEED});
+            if (preSeed != null) {
+                blockStore.savePreSeed(preSeed);
+            }
+            System.out.println("amount in blocks: " + allBalance.toDecimal(9, XUnit.XDAG).toPlainString());
+            if (txHistoryStore != null) {
+                txHistoryStore.batchSaveTxHistory(null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error(e.getMessage(), e);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+        progress.finish(System.currentTimeMillis() - start, threads);
+    }
+
+    /**
+     * First key of a partition, partitions are split on the first byte after the 8 zero bytes of the hashlow
+     */
+    private static byte[] partitionKey(int firstByte) {
+        byte[] key = new byte[10];
+        key[0] = HASH_BLOCK_INFO;
+        key[9] = (byte) firstByte;
+        return key;
+    }
+
+    private void importPartition(byte[] lower, byte[] upper, BlockStore blockStore,
+            TransactionHistoryStore txHistoryStore, OwnerKeys ownerKeys, long snapshotTime, ImportProgress progress) {
+        XAmount our = XAmount.ZERO;
+        XAmount all = XAmount.ZERO;
+        List<TxHistory> txHistories = new ArrayList<>();
+        try (KVCursor<byte[], byte[]> iter = snapshotSource.cursor(lower, upper)) {
+            boolean more = true;
+            while (more) {
+                int count = 0;
+                try (UnitOfWork ignored = UnitOfWork.begin()) {
+                    while (count < IMPORT_BATCH && (more = iter.next())) {
+                        count++;
+                        BlockInfo blockInfo;
                         try {
-                            blockInfo = (BlockInfo) deserialize(iter.value(), BlockInfo.class);
+                            blockInfo = BinaryCodec.readBlockInfo(iter.value());
                         } catch (DeserializationException e) {
-                            log.error("hash low:{}", Hex.toHexString(blockInfo.getHashlow()));
                             log.error("can't deserialize data:{}", Hex.toHexString(iter.value()));
                             log.error(e.getMessage(), e);
+                            continue;
                         }
                         int flag = blockInfo.getFlags();
-                        int keyIndex = -1;
                         //Determine if it is your own address
-                        SnapshotInfo snapshotInfo = blockInfo.getSnapshotInfo();
-                        if (blockInfo.getSnapshotInfo() != null) {
-                            //public key exists
-                            if (snapshotInfo.getType()) {
-                                byte[] ecKeyPair = snapshotInfo.getData();
-                                for (int i = 0; i < keys.size(); i++) {
-                                    ECKeyPair key = keys.get(i);
-                                    if (key.getPublicKey().toBytes().compareTo(Bytes.wrap(ecKeyPair)) == 0) {
-                                        flag |= BI_OURS;
-                                        keyIndex = i;
-                                        ourBalance = ourBalance.add(blockInfo.getAmount());
-                                        break;
-                                    }
-                                }
-                            } else {    //Verify signature
-                                Block block = new Block(new XdagBlock(snapshotInfo.getData()));
-                                Signature outSig = block.getOutsig();
-                                for (int i = 0; i < keys.size(); i++) {
-                                    ECKeyPair keyPair = keys.get(i);
-                                    byte[] publicKeyBytes = keyPair.getPublicKey().toBytes().toArray();
-                                    Bytes digest = Bytes
-                                            .wrap(block.getSubRawData(block.getOutsigIndex() - 2), Bytes.wrap(publicKeyBytes));
-                                    Bytes32 hash = HashUtils.doubleSha256(Bytes.wrap(digest));
-//                                    if (Signer.verify(hash, Sign.toCanonical(outSig), keyPair.getPublicKey())) {
-                                    // TODO FIXME toCanonical
-                                    if (Signer.verify(hash, outSig, keyPair.getPublicKey())) {
-                                        flag |= BI_OURS;
-                                        keyIndex = i;
-                                        ourBalance = ourBalance.add(blockInfo.getAmount());
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                        blockInfo.setFlags(flag);
-                        if ((flag & BI_OURS) != 0 && keyIndex > -1) {
+                        int keyIndex = ownerKeys.find(blockInfo.getSnapshotInfo());
+                        if (keyIndex > -1) {
+                            flag |= BI_OURS;
+                            our = our.add(blockInfo.getAmount());
                             blockStore.saveOurBlock(keyIndex, blockInfo.getHashlow());
                         }
-                        allBalance = allBalance.add(blockInfo.getAmount());
+                        blockInfo.setFlags(flag);
+                        all = all.add(blockInfo.getAmount());
                         blockStore.saveBlockInfo(blockInfo);
 
-                        if(txHistoryStore != null) {
-                            XdagField.FieldType fieldType = XdagField.FieldType.XDAG_FIELD_SNAPSHOT;
-                            Address address = new Address(Bytes32.wrap(blockInfo.getHashlow()), fieldType, blockInfo.getAmount(),false);
-
-                            TxHistory txHistory = new TxHistory();
-                            txHistory.setAddress(address);
-                            txHistory.setHash(BasicUtils.hash2Address(address.getAddress()));
-                            if(blockInfo.getRemark() != null) {
-                                txHistory.setRemark(new String(blockInfo.getRemark(), StandardCharsets.UTF_8));
-                            }
-                            txHistory.setTimestamp(snapshotTime);
-                            txHistoryStore.batchSaveTxHistory(txHistory);
+                        if (txHistoryStore != null) {
+                            txHistories.add(snapshotTxHistory(blockInfo, snapshotTime));
                         }
                     }
-                } else if (iter.key()[0] == SNAPSHOT_PRESEED) {
-                    blockStore.savePreSeed(iter.value());
                 }
+                if (!txHistories.isEmpty()) {
+                    // the mysql batch of the store is not thread safe
+                    synchronized (txHistoryStore) {
+                        txHistories.forEach(txHistoryStore::batchSaveTxHistory);
+                    }
+                    txHistories.clear();
+                }
+                progress.add(count);
             }
-            System.out.println("amount in blocks: " + allBalance.toDecimal(9, XUnit.XDAG).toPlainString());
-            if (txHistoryStore != null) {
-                txHistoryStore.batchSaveTxHistory(null);
-            }
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
+        }
+        synchronized (this) {
+            ourBalance = ourBalance.add(our);
+            allBalance = allBalance.add(all);
         }
     }
 
+    private static TxHistory snapshotTxHistory(BlockInfo blockInfo, long snapshotTime) {
+        XdagField.FieldType fieldType = XdagField.FieldType.XDAG_FIELD_SNAPSHOT;
+        Address address = new Address(Bytes32.wrap(blockInfo.getHashlow()), fieldType, blockInfo.getAmount(),false);
+
+        TxHistory txHistory = new TxHistory();
+        txHistory.setAddress(address);
+        txHistory.setHash(BasicUtils.hash2Address(address.getAddress()));
+        if(blockInfo.getRemark() != null) {
+            txHistory.setRemark(new String(blockInfo.getRemark(), StandardCharsets.UTF_8));
+        }
+        txHistory.setTimestamp(snapshotTime);
+        return txHistory;
+    }
+
 
     @Override
     public void saveAddress(BlockStore blockStore, AddressStore addressStore, TransactionHistoryStore txHistoryStore, List<ECKeyPair> keys, long snapshotTime) {
-        try (RocksIterator iter = snapshotSource.getDb().newIterator()) {
-            for (iter.seekToFirst(); iter.isValid(); iter.next()) {
-                if (iter.key().length < 20) {
-                    if (iter.key()[0] == ADDRESS_SIZE) {
-                        addressStore.saveAddressSize(iter.value());
-                    }
-                } else {
-                    byte[] address = iter.key(); // address = flag + accountAddress: 30(byte ADDRESS = (byte) 0x30) + fb3fb15072826ffa5f5b6c123029798a27cd0c64
-                    if (Hex.toHexString(address).startsWith("30")) {
-                        XAmount balance = XAmount.ofXAmount(UInt64.fromBytes(Bytes.wrap(iter.value())).toLong());
-                        for (ECKeyPair keyPair : keys) {
-                            byte[] publicKeyBytes = keyPair.getPublicKey().toBytes().toArray();
-                            byte[] myAddress = HashUtils.sha256hash160(Bytes.wrap(publicKeyBytes)).toArray();
-                            if (BytesUtils.compareTo(address, 1, 20, myAddress, 0, 20) == 0) {
-                                ourBalance = ourBalance.add(balance);
-                            }
-                        }
-                        allBalance = allBalance.add(balance); //calculate the address balance
-                        addressStore.snapshotAddress(address, balance);
-                        if (txHistoryStore != null) {
-                            XdagField.FieldType fieldType = XdagField.FieldType.XDAG_FIELD_SNAPSHOT;
-                            Address addr = new Address(BytesUtils.arrayToByte32(Arrays.copyOfRange(address, 1, 21)),
-                                    fieldType, balance, true);
-                            TxHistory txHistory = new TxHistory();
-                            txHistory.setAddress(addr);
-                            txHistory.setHash(BasicUtils.hash2PubAddress(addr.getAddress()));
-                            txHistory.setRemark("snapshot");
-                            txHistory.setTimestamp(snapshotTime);
-                            txHistoryStore.saveTxHistory(txHistory);
-                        }
-                    } // TODO: Restore the transaction quantity for each address from the snapshot.
-                    else if (Hex.toHexString(address).startsWith("50")) {
-                        UInt64 exeTxNonceNum = UInt64.fromBytes(Bytes.wrap(iter.value())).toUInt64();
-                        byte[] TxQuantityKey = BytesUtils.merge(CURRENT_TRANSACTION_QUANTITY, BytesUtils.byte32ToArray(BytesUtils.arrayToByte32(Arrays.copyOfRange(address, 1, 21))).toArrayUnsafe());
-                        addressStore.snapshotTxQuantity(TxQuantityKey, exeTxNonceNum);
-                        addressStore.snapshotExeTxNonceNum(address, exeTxNonceNum);
+        long start = System.currentTimeMillis();
+        OwnerKeys ownerKeys = new OwnerKeys(keys);
+        ImportProgress progress = new ImportProgress("addresses");
+        try (KVCursor<byte[], byte[]> iter = snapshotSource.cursor(null, null)) {
+            boolean more = true;
+            while (more) {
+                int count = 0;
+                try (UnitOfWork ignored = UnitOfWork.begin()) {
+                    while (count < IMPORT_BATCH && (more = iter.next())) {
+                        count++;
+                        saveAddressEntry(iter.key(), iter.value(), addressStore, txHistoryStore, ownerKeys,
+                                snapshotTime);
                     }
                 }
+                progress.add(count);
             }
             System.out.println("amount in address: " + allBalance.toDecimal(9, XUnit.XDAG).toPlainString());
             //sava Address all Balance as AMOUNT_SUM
             addressStore.saveAmountSum(allBalance);
         }
+        progress.finish(System.currentTimeMillis() - start, 1);
+    }
+
+    private void saveAddressEntry(byte[] address, byte[] value, AddressStore addressStore,
+            TransactionHistoryStore txHistoryStore, OwnerKeys ownerKeys, long snapshotTime) {
+        if (address.length < 20) {
+            if (address[0] == ADDRESS_SIZE) {
+                addressStore.saveAddressSize(value);
+            }
+        } else if (address[0] == 0x30) {
+            // address = flag + accountAddress: 30(byte ADDRESS = (byte) 0x30) + fb3fb15072826ffa5f5b6c123029798a27cd0c64
+            XAmount balance = XAmount.ofXAmount(UInt64.fromBytes(Bytes.wrap(value)).toLong());
+            if (ownerKeys.isOurAddress(Bytes.wrap(address, 1, 20))) {
+                ourBalance = ourBalance.add(balance);
+            }
+            allBalance = allBalance.add(balance); //calculate the address balance
+            addressStore.snapshotAddress(address, balance);
+            if (txHistoryStore != null) {
+                XdagField.FieldType fieldType = XdagField.FieldType.XDAG_FIELD_SNAPSHOT;
+                Address addr = new Address(BytesUtils.arrayToByte32(Arrays.copyOfRange(address, 1, 21)),
+                        fieldType, balance, true);
+                TxHistory txHistory = new TxHistory();
+                txHistory.setAddress(addr);
+                txHistory.setHash(BasicUtils.hash2PubAddress(addr.getAddress()));
+                txHistory.setRemark("snapshot");
+                txHistory.setTimestamp(snapshotTime);
+                txHistoryStore.saveTxHistory(txHistory);
+            }
+        } // TODO: Restore the transaction quantity for each address from the snapshot.
+        else if (address[0] == 0x50) {
+            UInt64 exeTxNonceNum = UInt64.fromBytes(Bytes.wrap(value)).toUInt64();
+            byte[] TxQuantityKey = BytesUtils.merge(CURRENT_TRANSACTION_QUANTITY, BytesUtils.byte32ToArray(BytesUtils.arrayToByte32(Arrays.copyOfRange(address, 1, 21))).toArrayUnsafe());
+            addressStore.snapshotTxQuantity(TxQuantityKey, exeTxNonceNum);
+            addressStore.snapshotExeTxNonceNum(address, exeTxNonceNum);
+        }
+    }
+
+    /**
+     * Wallet keys indexed by compressed public key and by address, so ownership of a snapshot entry is a hash
+     * lookup instead of a comparison with every key
+     */
+    static class OwnerKeys {
+
+        private final List<ECKeyPair> keys;
+        private final Bytes[] publicKeys;
+        private final Map<Bytes, Integer> byPublicKey = new HashMap<>();
+        private final Set<Bytes> addresses = new HashSet<>();
+
+        OwnerKeys(List<ECKeyPair> keys) {
+            this.keys = keys;
+            this.publicKeys = new Bytes[keys.size()];
+            for (int i = 0; i < keys.size(); i++) {
+                publicKeys[i] = keys.get(i).getPublicKey().toBytes();
+                byPublicKey.putIfAbsent(publicKeys[i], i);
+                addresses.add(Bytes.wrap(HashUtils.sha256hash160(publicKeys[i]).toArray()));
+            }
+        }
+
+        boolean isOurAddress(Bytes address) {
+            return addresses.contains(address);
+        }
+
+        /**
+         * @return index of the wallet key owning the entry, or -1
+         */
+        int find(SnapshotInfo snapshotInfo) {
+            if (snapshotInfo == null || snapshotInfo.getData() == null) {
+                return -1;
+            }
+            //public key exists
+            if (snapshotInfo.getType()) {
+                return byPublicKey.getOrDefault(Bytes.wrap(snapshotInfo.getData()), -1);
+            }
+            //Verify signature
+            Block block = new Block(new XdagBlock(snapshotInfo.getData()));
+            Signature outSig = block.getOutsig();
+            Bytes data = block.getSubRawData(block.getOutsigIndex() - 2);
+            // wallet keys carried by the block, then the default key that signs main and link blocks
+            boolean defaultTried = false;
+            for (Bytes publicKey : block.getPubKeyBytes()) {
+                Integer i = byPublicKey.get(publicKey);
+                if (i != null && verifyOut(data, outSig, i)) {
+                    return i;
+                }
+                defaultTried |= i != null && i == 0;
+            }
+            return !keys.isEmpty() && !defaultTried && verifyOut(data, outSig, 0) ? 0 : -1;
+        }
+
+        private boolean verifyOut(Bytes data, Signature outSig, int i) {
+            Bytes32 hash = HashUtils.doubleSha256(Bytes.wrap(data, publicKeys[i]));
+            // TODO FIXME toCanonical
+            return SignatureCache.verify(hash, outSig, keys.get(i).getPublicKey());
+        }
+    }
+
+    /**
+     * Counts imported entries and logs the throughput at most every {@link #PROGRESS_INTERVAL} ms
+     */
+    private static class ImportProgress {
+
+        private final String what;
+        private final long start = System.currentTimeMillis();
+        private final AtomicLong done = new AtomicLong();
+        private final AtomicLong lastReport = new AtomicLong(start);
+
+        ImportProgress(String what) {
+            this.what = what;
+        }
+
+        void add(int count) {
+            long total = done.addAndGet(count);
+            long now = System.currentTimeMillis();
+            long last = lastReport.get();
+            if (now - last >= PROGRESS_INTERVAL && lastReport.compareAndSet(last, now)) {
+                log.info("Snapshot import: {} {} done, {}/s", total, what, total * 1000 / Math.max(1, now - start));
+            }
+        }
+
+        void finish(long cost, int threads) {
+            long total = done.get();
+            log.info("Snapshot import: {} {} in {} ms on {} threads, {}/s", total, what, cost, threads,
+                    total * 1000 / Math.max(1, cost));
+        }
     }
 
-    public void save(RocksIterator iter, BlockInfo blockInfo) {
+    public void save(byte[] key, BlockInfo blockInfo) {
         byte[] value = null;
         try {
             value = serialize(blockInfo);
         } catch (SerializationException e) {
             log.error(e.getMessage(), e);
         }
-        snapshotSource.put(iter.key(), value);
+        snapshotSource.put(key, value);
     }
 
     public Object deserialize(final byte[] bytes, Class<?> type) throws DeserializationException {
-        synchronized (kryo) {
-            try {
-                final ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
-                final Input input = new Input(inputStream);
-                return kryo.readObject(input, type);
-            } catch (final IllegalArgumentException | KryoException | NullPointerException exception) {
-                log.debug("Deserialize data:{}", Hex.toHexString(bytes));
-                throw new DeserializationException(exception.getMessage(), exception);
-            }
+        if (type == BlockInfo.class) {
+            return BinaryCodec.readBlockInfo(bytes);
         }
+        return LegacyKryoCodec.deserialize(bytes, type);
     }
 
     public byte[] serialize(final Object obj) throws SerializationException {
-        synchronized (kryo) {
-            try {
-                final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                final Output output = new Output(outputStream);
-                kryo.writeObject(output, obj);
-                output.flush();
-                output.close();
-                return outputStream.toByteArray();
-            } catch (final IllegalArgumentException | KryoException exception) {
-                throw new SerializationException(exception.getMessage(), exception);
-            }
+        if (obj instanceof BlockInfo blockInfo) {
+            return BinaryCodec.encodeBlockInfo(blockInfo);
         }
-    }
-
-    private void kryoRegister() {
-        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
-        kryo.register(BigInteger.class);
-        kryo.register(byte[].class);
-        kryo.register(BlockInfo.class);
-        kryo.register(XdagStats.class);
-        kryo.register(XdagTopStatus.class);
-        kryo.register(SnapshotInfo.class);
-        kryo.register(UInt64.class);
-        kryo.register(XAmount.class);
-        kryo.register(PreBlockInfo.class);
+        return LegacyKryoCodec.serialize(obj);
     }
 
 }
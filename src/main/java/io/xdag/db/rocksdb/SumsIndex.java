@@ -0,0 +1,166 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static io.xdag.db.BlockStore.SUMS_BLOCK_INFO;
+import static io.xdag.db.BlockStore.SUMS_SLOT_INFO;
+
+import io.xdag.db.execption.DeserializationException;
+import io.xdag.utils.BytesUtils;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.bouncycastle.util.encoders.Hex;
+
+/**
+ * Block sums of the sync protocol (the sums.dat files of the C node), kept as one 64-bit counter per slot and field.
+ * <p>
+ * A sums file has 256 slots of {@code <sum, size>} in little-endian order. Every counter is its own key
+ * {@code [SUMS_SLOT_INFO][file][slot][field]} in the index store, and saving a block only issues merge operands that
+ * the {@code uint64add} operator of the store adds up. Reads assemble the 4096-byte layout from the counters, so
+ * callers see the same bytes as with the old whole-file values.
+ */
+@Slf4j
+public class SumsIndex {
+
+    public static final int SLOTS = 256;
+    public static final int SUMS_SIZE = SLOTS * 16;
+
+    private static final byte FIELD_SUM = 0;
+    private static final byte FIELD_SIZE = 1;
+
+    private final KVSource<byte[], byte[]> source;
+
+    public SumsIndex(KVSource<byte[], byte[]> source) {
+        this.source = source;
+    }
+
+    /**
+     * Add a block's sum and size to one slot of a sums file
+     */
+    public void add(String file, int slot, long sum, long size) {
+        source.merge(key(file, slot, FIELD_SUM), BytesUtils.longToBytes(sum, true));
+        source.merge(key(file, slot, FIELD_SIZE), BytesUtils.longToBytes(size, true));
+    }
+
+    /**
+     * @return the 4096-byte sums file, or null if nothing was added to it
+     */
+    public MutableBytes get(String file) {
+        byte[] prefix = prefix(file);
+        MutableBytes sums = MutableBytes.create(SUMS_SIZE);
+        boolean[] found = new boolean[1];
+        source.fetchPrefix(prefix, pair -> {
+            byte[] key = pair.getKey();
+            byte[] value = pair.getValue();
+            if (isCounter(key, prefix.length) && value != null && value.length == 8) {
+                sums.set(offset(key, prefix.length), Bytes.wrap(value));
+                found[0] = true;
+            }
+            return Boolean.FALSE;
+        });
+        return found[0] ? sums : null;
+    }
+
+    /**
+     * Overwrite a whole sums file
+     */
+    public void put(String file, Bytes sums) {
+        if (sums.size() != SUMS_SIZE) {
+            throw new IllegalArgumentException("sums must be " + SUMS_SIZE + " bytes, got " + sums.size());
+        }
+        byte[] prefix = prefix(file);
+        List<byte[]> existing = source.prefixKeyLookup(prefix);
+        for (byte[] key : existing) {
+            if (isCounter(key, prefix.length) && sums.getLong(offset(key, prefix.length), ByteOrder.LITTLE_ENDIAN) == 0) {
+                source.delete(key);
+            }
+        }
+        for (int slot = 0; slot < SLOTS; slot++) {
+            for (byte field = FIELD_SUM; field <= FIELD_SIZE; field++) {
+                Bytes value = sums.slice(slot * 16 + field * 8, 8);
+                if (!value.isZero()) {
+                    source.put(key(file, slot, field), value.toArray());
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert sums files stored as Kryo serialized 4096-byte arrays under {@link io.xdag.db.BlockStore#SUMS_BLOCK_INFO}.
+     * Each file is converted and removed in one unit of work, an interrupted run continues with the files left.
+     */
+    public void migrateLegacy() {
+        List<byte[]> keys = source.prefixKeyLookup(new byte[]{SUMS_BLOCK_INFO});
+        if (keys.isEmpty()) {
+            return;
+        }
+        log.info("Migrating {} sums files to counters...", keys.size());
+        long start = System.currentTimeMillis();
+        int failed = 0;
+        for (byte[] key : keys) {
+            String file = new String(key, 1, key.length - 1, StandardCharsets.UTF_8);
+            try (UnitOfWork uow = UnitOfWork.begin()) {
+                try {
+                    byte[] value = source.get(key);
+                    if (value != null) {
+                        put(file, Bytes.wrap(LegacyKryoCodec.deserialize(value, byte[].class)));
+                    }
+                    source.delete(key);
+                } catch (DeserializationException | IllegalArgumentException e) {
+                    uow.setRollbackOnly();
+                    failed++;
+                    log.error("can't migrate sums file:{}", Hex.toHexString(key), e);
+                }
+            }
+        }
+        log.info("Sums migration done, {} files converted, {} failed, cost {} ms", keys.size() - failed, failed,
+                System.currentTimeMillis() - start);
+    }
+
+    private static byte[] prefix(String file) {
+        return BytesUtils.merge(SUMS_SLOT_INFO, file.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] key(String file, int slot, byte field) {
+        byte[] prefix = prefix(file);
+        byte[] key = new byte[prefix.length + 2];
+        System.arraycopy(prefix, 0, key, 0, prefix.length);
+        key[prefix.length] = (byte) slot;
+        key[prefix.length + 1] = field;
+        return key;
+    }
+
+    private static boolean isCounter(byte[] key, int prefixLength) {
+        return key.length == prefixLength + 2 && (key[prefixLength + 1] == FIELD_SUM || key[prefixLength + 1] == FIELD_SIZE);
+    }
+
+    private static int offset(byte[] key, int prefixLength) {
+        return (key[prefixLength] & 0xff) * 16 + (key[prefixLength + 1] == FIELD_SIZE ? 8 : 0);
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import com.google.common.primitives.UnsignedBytes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+/**
+ * Collects the mutations of one logical operation (block connect, setMain, unSetMain) and writes them with one
+ * {@link WriteBatch} per database when the outermost scope closes.
+ * <p>
+ * The unit of work is bound to the thread that opened it. While it is open, {@link RocksdbKVSource} routes
+ * put/delete of that thread into it and serves get/prefix reads from it first, so the code in between sees its own
+ * writes. Other threads keep reading the last committed state. Nested {@link #begin()} calls join the open unit,
+ * only the outermost {@link #close()} commits.
+ * <p>
+ * Every database is written atomically, repeated writes to the same key collapse into one. Stores that are column
+ * families of one {@link RocksdbSharedDb} share a batch; stores in separate RocksDB instances are committed one
+ * after another.
+ * <p>
+ * Merge operands are written after the staged value of their key. They are not folded into reads before the commit,
+ * a put or delete of the same key drops the operands staged before it.
+ *
+ * <pre>
+ * try (UnitOfWork uow = UnitOfWork.begin()) {
+ *     ...
+ * }
+ * </pre>
+ */
+@Slf4j
+public final class UnitOfWork implements AutoCloseable {
+
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    static final Comparator<byte[]> KEY_ORDER = UnsignedBytes.lexicographicalComparator();
+
+    /**
+     * Marker for deleted keys, compared by identity
+     */
+    private static final byte[] TOMBSTONE = new byte[0];
+
+    private final Map<RocksdbKVSource, TreeMap<byte[], byte[]>> pending = new IdentityHashMap<>();
+    private final Map<RocksdbKVSource, TreeMap<byte[], List<byte[]>>> merges = new IdentityHashMap<>();
+    private final List<Runnable> rollbackHooks = new ArrayList<>();
+    private final List<Runnable> beforeCommitHooks = new ArrayList<>();
+    private final List<Runnable> afterCommitHooks = new ArrayList<>();
+    private int depth;
+    private boolean rollbackOnly;
+    private long stagedWrites;
+
+    private UnitOfWork() {
+    }
+
+    /**
+     * Open a unit of work on the current thread, or join the one already open
+     */
+    public static UnitOfWork begin() {
+        UnitOfWork uow = CURRENT.get();
+        if (uow == null) {
+            uow = new UnitOfWork();
+            CURRENT.set(uow);
+        }
+        uow.depth++;
+        return uow;
+    }
+
+    /**
+     * @return the unit of work open on the current thread, or null
+     */
+    public static UnitOfWork current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Discard all mutations instead of committing them when the outermost scope closes
+     */
+    public void setRollbackOnly() {
+        rollbackOnly = true;
+    }
+
+    /**
+     * Register an action that undoes in-memory side effects if the mutations are not persisted. Hooks run in reverse
+     * order of registration.
+     */
+    public void onRollback(Runnable hook) {
+        rollbackHooks.add(hook);
+    }
+
+    /**
+     * Register an action that runs when the outermost scope is about to commit. The unit is still open on the
+     * thread, so the writes of the hook join the batch. Hooks run in order of registration and are skipped if the
+     * unit is rolled back.
+     */
+    public void beforeCommit(Runnable hook) {
+        beforeCommitHooks.add(hook);
+    }
+
+    /**
+     * Register an action that publishes in-memory state once the mutations are persisted. Hooks run in order of
+     * registration.
+     */
+    public void afterCommit(Runnable hook) {
+        afterCommitHooks.add(hook);
+    }
+
+    @Override
+    public void close() {
+        if (depth == 1 && !rollbackOnly && !beforeCommitHooks.isEmpty()) {
+            try {
+                // a hook may register further hooks
+                for (int i = 0; i < beforeCommitHooks.size(); i++) {
+                    beforeCommitHooks.get(i).run();
+                }
+            } catch (RuntimeException e) {
+                depth = 0;
+                CURRENT.remove();
+                rollback();
+                throw e;
+            }
+        }
+        if (--depth > 0) {
+            return;
+        }
+        CURRENT.remove();
+        if (rollbackOnly) {
+            rollback();
+        } else {
+            commit();
+            runAfterCommitHooks();
+        }
+    }
+
+    void put(RocksdbKVSource source, byte[] key, byte[] value) {
+        pending.computeIfAbsent(source, s -> new TreeMap<>(KEY_ORDER))
+                .put(key, value == null ? TOMBSTONE : value.clone());
+        TreeMap<byte[], List<byte[]>> operands = merges.get(source);
+        if (operands != null) {
+            operands.remove(key);
+        }
+        stagedWrites++;
+    }
+
+    void merge(RocksdbKVSource source, byte[] key, byte[] operand) {
+        merges.computeIfAbsent(source, s -> new TreeMap<>(KEY_ORDER))
+                .computeIfAbsent(key, k -> new ArrayList<>())
+                .add(operand.clone());
+        stagedWrites++;
+    }
+
+    /**
+     * @return the staged value, {@link #isTombstone(byte[]) a tombstone} for a staged delete, or null if the key
+     * was not touched
+     */
+    byte[] lookup(RocksdbKVSource source, byte[] key) {
+        TreeMap<byte[], byte[]> writes = pending.get(source);
+        return writes == null ? null : writes.get(key);
+    }
+
+    /**
+     * @return staged entries starting at the prefix in key order, or null if nothing is staged for the source
+     */
+    NavigableMap<byte[], byte[]> tail(RocksdbKVSource source, byte[] prefix) {
+        TreeMap<byte[], byte[]> writes = pending.get(source);
+        return writes == null || writes.isEmpty() ? null : writes.tailMap(prefix, true);
+    }
+
+    static boolean isTombstone(byte[] value) {
+        return value == TOMBSTONE;
+    }
+
+    private void commit() {
+        // sources that are column families of one database share a batch, so they commit atomically
+        Map<RocksDB, WriteBatch> batches = new IdentityHashMap<>();
+        Map<RocksDB, RocksdbKVSource> writers = new IdentityHashMap<>();
+        int keys = 0;
+        int written = 0;
+        try (WriteOptions writeOptions = new WriteOptions()) {
+            for (Map.Entry<RocksdbKVSource, TreeMap<byte[], byte[]>> entry : pending.entrySet()) {
+                RocksdbKVSource source = entry.getKey();
+                if (entry.getValue().isEmpty()) {
+                    continue;
+                }
+                WriteBatch batch = batches.computeIfAbsent(source.getDb(), db -> new WriteBatch());
+                writers.putIfAbsent(source.getDb(), source);
+                for (Map.Entry<byte[], byte[]> kv : entry.getValue().entrySet()) {
+                    source.addTo(batch, kv.getKey(), isTombstone(kv.getValue()) ? null : kv.getValue());
+                }
+                keys += entry.getValue().size();
+            }
+            for (Map.Entry<RocksdbKVSource, TreeMap<byte[], List<byte[]>>> entry : merges.entrySet()) {
+                RocksdbKVSource source = entry.getKey();
+                if (entry.getValue().isEmpty()) {
+                    continue;
+                }
+                WriteBatch batch = batches.computeIfAbsent(source.getDb(), db -> new WriteBatch());
+                writers.putIfAbsent(source.getDb(), source);
+                for (Map.Entry<byte[], List<byte[]>> kv : entry.getValue().entrySet()) {
+                    for (byte[] operand : kv.getValue()) {
+                        source.mergeTo(batch, kv.getKey(), operand);
+                    }
+                }
+                keys += entry.getValue().size();
+            }
+            for (Map.Entry<RocksDB, WriteBatch> entry : batches.entrySet()) {
+                writers.get(entry.getKey()).write(writeOptions, entry.getValue());
+                written++;
+            }
+        } catch (RocksDBException | RuntimeException e) {
+            log.error("Failed to commit unit of work, {} of {} batches written", written, batches.size(), e);
+            runRollbackHooks();
+            throw e instanceof RuntimeException re ? re : new RuntimeException(e);
+        } finally {
+            batches.values().forEach(WriteBatch::close);
+            pending.clear();
+            merges.clear();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Unit of work committed: {} staged writes, {} keys, {} batches", stagedWrites, keys, written);
+        }
+    }
+
+    private void rollback() {
+        log.debug("Unit of work rolled back, {} staged writes discarded", stagedWrites);
+        pending.clear();
+        merges.clear();
+        beforeCommitHooks.clear();
+        afterCommitHooks.clear();
+        runRollbackHooks();
+    }
+
+    private void runAfterCommitHooks() {
+        for (Runnable hook : afterCommitHooks) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        afterCommitHooks.clear();
+        beforeCommitHooks.clear();
+        rollbackHooks.clear();
+    }
+
+    private void runRollbackHooks() {
+        for (int i = rollbackHooks.size() - 1; i >= 0; i--) {
+            try {
+                rollbackHooks.get(i).run();
+            } catch (RuntimeException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        rollbackHooks.clear();
+    }
+}
@@ -26,7 +26,6 @@ package io.xdag.net;
 import io.xdag.core.*;
 import io.xdag.crypto.core.CryptoProvider;
 import java.util.Arrays;
-import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -34,6 +33,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.time.FastDateFormat;
 import org.apache.tuweni.bytes.Bytes;
@@ -357,7 +357,7 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
 
         log.debug("processNewBlock:{} from node {}", block.getHashLow(), channel.getRemoteAddress());
         BlockWrapper bw = new BlockWrapper(block, msg.getTtl() - 1, channel.getRemotePeer(), false);
-        syncMgr.validateAndAddNewBlock(bw);
+        syncMgr.submitNewBlock(bw);
     }
 
     protected void processSyncBlock(SyncBlockMessage msg) {
@@ -365,7 +365,7 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
         chain.putSyncTxStatus(block.getHashLow(), msg.getExecutionState());
         log.debug("processSyncBlock:{}  from node {}", block.getHashLow(), channel.getRemoteAddress());
         BlockWrapper bw = new BlockWrapper(block, msg.getTtl() - 1, channel.getRemotePeer(), true);
-        syncMgr.validateAndAddNewBlock(bw);
+        syncMgr.submitNewBlock(bw);
     }
 
     /**
@@ -386,20 +386,21 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
                 FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS").format(XdagTime.xdagTimestampToMs(startTime)),
                 FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS").format(XdagTime.xdagTimestampToMs(endTime)),
                 channel.getRemoteAddress());
-        List<Block> blocks = chain.getBlocksByTime(startTime, endTime);
-        for (Block block : blocks) {
-            byte executionState = 0;
-            if (chain.isTxBlock(block)) {
-                int flag = block.getInfo().getFlags() & ~(BI_OURS | BI_REMARK);
-                // 1C
-                if (flag == (BI_REF | BI_MAIN_REF | BI_APPLIED)) {
-                    executionState = 1;
-                } else if (flag == (BI_REF | BI_MAIN_REF)) {// 18
-                    executionState = 2;
+        try (Stream<Block> blocks = chain.streamBlocksByTime(startTime, endTime)) {
+            blocks.forEach(block -> {
+                byte executionState = 0;
+                if (chain.isTxBlock(block)) {
+                    int flag = block.getInfo().getFlags() & ~(BI_OURS | BI_REMARK);
+                    // 1C
+                    if (flag == (BI_REF | BI_MAIN_REF | BI_APPLIED)) {
+                        executionState = 1;
+                    } else if (flag == (BI_REF | BI_MAIN_REF)) {// 18
+                        executionState = 2;
+                    }
                 }
-            }
-            SyncBlockMessage blockMsg = new SyncBlockMessage(block, 1, executionState);
-            msgQueue.sendMessage(blockMsg);
+                SyncBlockMessage blockMsg = new SyncBlockMessage(block, 1, executionState);
+                msgQueue.sendMessage(blockMsg);
+            });
         }
         msgQueue.sendMessage(new BlocksReplyMessage(startTime, endTime, random, chain.getXdagStats()));
     }
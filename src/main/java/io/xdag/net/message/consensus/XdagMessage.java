@@ -23,7 +23,6 @@
  */
 package io.xdag.net.message.consensus;
 
-import java.math.BigInteger;
 
 import org.apache.tuweni.bytes.Bytes32;
 
@@ -31,9 +30,8 @@ import io.xdag.utils.SimpleEncoder;
 import io.xdag.core.XdagStats;
 import io.xdag.net.message.Message;
 import io.xdag.net.message.MessageCode;
-import io.xdag.utils.BytesUtils;
-import io.xdag.utils.Numeric;
 import io.xdag.utils.SimpleDecoder;
+import io.xdag.utils.UInt128;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -90,7 +88,7 @@ public abstract class XdagMessage extends Message  {
         enc.writeLong(random);
         enc.writeBytes(hash.toArray());
 
-        enc.writeBytes(BytesUtils.bigIntegerToBytes(xdagStats.maxdifficulty, 16, false));
+        enc.writeBytes(xdagStats.maxdifficulty.toBytes());
 
         enc.writeLong(xdagStats.totalnblocks);
         enc.writeLong(Math.max(xdagStats.totalnmain, xdagStats.nmain));
@@ -107,7 +105,7 @@ public abstract class XdagMessage extends Message  {
         this.random = dec.readLong();
         this.hash = Bytes32.wrap(dec.readBytes());
 
-        BigInteger maxdifficulty = Numeric.toBigInt(dec.readBytes());
+        UInt128 maxdifficulty = UInt128.fromBytes(dec.readBytes());
         long totalnblocks = dec.readLong();
         long totalnmains = dec.readLong();
         int totalnhosts = dec.readInt();
@@ -281,9 +281,10 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
             if(blockchain.getBlockByHash(block.getHashLow(), true) != null && (block.getInfo().flags & BI_EXTRA) == 0){
                 block = blockchain.getBlockByHash(block.getHashLow(), true);
             }
-            for(Address link : block.getLinks()){
-                sum += blockchain.txNumber(link.getAddress() , block.getHashLow());
-            }
+            Bytes32 mainHashLow = block.getHashLow();
+            int[] txSum = {0};
+            block.forEachLink((link, isAddress) -> txSum[0] += blockchain.txNumber(link.copy(), mainHashLow));
+            sum += txSum[0];
             log.debug("current block: {} , fee :{} , txSum :{}", block.getHashLow() , fee.toDecimal(9, XUnit.XDAG).toPlainString() , sum);
             totalFee = totalFee.add(fee);
             count += sum;
@@ -312,8 +313,8 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
                 .totalNblocks(Long.toString(xdagStats.getTotalnblocks()))
                 .nmain(Long.toString(xdagStats.getNmain()))
                 .totalNmain(Long.toString(Math.max(xdagStats.getTotalnmain(), xdagStats.getNmain())))
-                .curDiff(toQuantityJsonHex(xdagStats.getDifficulty()))
-                .netDiff(toQuantityJsonHex(xdagStats.getMaxdifficulty()))
+                .curDiff(toQuantityJsonHex(xdagStats.getDifficulty().toBigInteger()))
+                .netDiff(toQuantityJsonHex(xdagStats.getMaxdifficulty().toBigInteger()))
                 .hashRateOurs(toQuantityJsonHex(hashrateOurs))
                 .hashRateTotal(toQuantityJsonHex(hashrateTotal))
                 .ourSupply(String.format("%s", blockchain.getSupply(xdagStats.nmain).toDecimal(9, XUnit.XDAG).toPlainString()))
@@ -479,33 +480,28 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
         // 2. try to add blockchain
         // 3. check from address if valid.
         Block block = new Block(new XdagBlock(Hex.decode(rawData)));
-        ImportResult result;
+        ImportOutcome result;
         List<Address> inputs = block.getInputs();
         int inputSize = inputs.size();
         if (inputSize == 0) {
-            result = ImportResult.INVALID_BLOCK;
-            return "THE TX NEEDS INPUT " + result.getErrorInfo();
+            return "THE TX NEEDS INPUT";
         }
         for (Address input : inputs) {
             if (input.getType() == XDAG_FIELD_IN && block.getTxNonceField() != null) {
-                result = ImportResult.INVALID_BLOCK;
-                return "NO NONCE IS REQUIRED FOR MAIN BLOCK TRANSFER " + result.getErrorInfo();
+                return "NO NONCE IS REQUIRED FOR MAIN BLOCK TRANSFER";
             } else if (input.getType() == XDAG_FIELD_INPUT) {
                 Bytes addr = BytesUtils.byte32ToArray(input.getAddress());
                 UInt64 legalNonce = kernel.getAddressStore().getTxQuantity(addr.toArray()).add(UInt64.ONE);
                 UInt64 blockNonce;
                 if (inputSize != 1) {
-                    result = ImportResult.INVALID_BLOCK;
-                    return "ACCOUNT TRANSFER IS LIMITED TO ONE INPUT ONLY " + result.getErrorInfo();
+                    return "ACCOUNT TRANSFER IS LIMITED TO ONE INPUT ONLY";
                 }
                 if (block.getTxNonceField() == null) {
-                    result = ImportResult.INVALID_BLOCK;
-                    return "PLEASE DOWNLOAD THE LATEST WALLET " + result.getErrorInfo();
+                    return "PLEASE DOWNLOAD THE LATEST WALLET";
                 }
                 blockNonce = block.getTxNonceField().getTransactionNonce();
                 if (blockNonce.compareTo(legalNonce) != 0) {
-                    result = ImportResult.INVALID_BLOCK;
-                    return "PLEASE FILL IN THE CORRECT NONCE " + result.getErrorInfo();
+                    return "PLEASE FILL IN THE CORRECT NONCE";
                 }
             }
         }
@@ -513,9 +509,9 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
             result = kernel.getSyncMgr().importBlock(
                     new BlockWrapper(block, kernel.getConfig().getNodeSpec().getTTL()));
         } else {
-            result = ImportResult.INVALID_BLOCK;
+            result = ImportOutcome.of(ImportResult.INVALID_BLOCK, "Transaction check failed");
         }
-        if(result == ImportResult.IMPORTED_NOT_BEST && block.getTxNonceField() != null) {
+        if(result.getResult() == ImportResult.IMPORTED_NOT_BEST && block.getTxNonceField() != null) {
             List<Address> in = block.getInputs();
             UInt64 blockNonce = block.getTxNonceField().getTransactionNonce();
             for (Address input : in) {
@@ -525,7 +521,7 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
                 }
             }
         }
-        return result == ImportResult.IMPORTED_BEST || result == ImportResult.IMPORTED_NOT_BEST ?
+        return result.isImported() ?
                 BasicUtils.hash2Address(block.getHash()) : "INVALID_BLOCK " + result.getErrorInfo();
     }
 
@@ -769,7 +765,7 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
                 .blockTime(xdagTimestampToMs(block.getTimestamp()))
                 .timeStamp(block.getTimestamp())
                 .flags(Integer.toHexString(block.getInfo().getFlags()))
-                .diff(toQuantityJsonHex(block.getInfo().getDifficulty()))
+                .diff(toQuantityJsonHex(block.getInfo().getDifficulty().toBigInteger()))
                 .remark(block.getInfo().getRemark() == null ? "" : new String(block.getInfo().getRemark(),
                         StandardCharsets.UTF_8).trim())
                 .state(getStateByFlags(block.getInfo().getFlags()))
@@ -795,7 +791,7 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
                 .blockTime(xdagTimestampToMs(block.getTimestamp()))
                 .timeStamp(block.getTimestamp())
                 .flags(Integer.toHexString(block.getInfo().getFlags()))
-                .diff(toQuantityJsonHex(block.getInfo().getDifficulty()))
+                .diff(toQuantityJsonHex(block.getInfo().getDifficulty().toBigInteger()))
                 .remark(block.getInfo().getRemark() == null ? "" : new String(block.getInfo().getRemark(),
                         StandardCharsets.UTF_8).trim())
                 .state(getStateByFlags(block.getInfo().getFlags()))
@@ -938,8 +934,8 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
         // create transaction
         List<BlockWrapper> txs = kernel.getWallet().createTransactionBlock(ourAccounts, to, remark, txNonce, txFee);
         for (BlockWrapper blockWrapper : txs) {
-            ImportResult result = kernel.getSyncMgr().validateAndAddNewBlock(blockWrapper);
-            if (result == ImportResult.IMPORTED_BEST || result == ImportResult.IMPORTED_NOT_BEST) {
+            ImportOutcome result = kernel.getSyncMgr().validateAndAddNewBlock(blockWrapper);
+            if (result.isImported()) {
                 kernel.getChannelMgr().sendNewBlock(blockWrapper);
                 Block block = new Block(new XdagBlock(blockWrapper.getBlock().getXdagBlock().getData().toArray()));
                 List<Address> inputs = block.getInputs();
@@ -951,7 +947,7 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
                     }
                 }
                 resInfo.add(hash2Address(blockWrapper.getBlock().getHashLow()));
-            } else if (result == ImportResult.INVALID_BLOCK) {
+            } else if (result.getResult() == ImportResult.INVALID_BLOCK) {
                 resInfo.add(result.getErrorInfo());
             }
         }
@@ -32,12 +32,10 @@ import io.xdag.crypto.keys.ECKeyPair;
 import io.xdag.utils.exception.XdagOverFlowException;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
-import org.apache.tuweni.bytes.MutableBytes;
 import org.apache.tuweni.bytes.MutableBytes32;
 import org.apache.tuweni.units.bigints.UInt64;
 
 import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -56,14 +54,10 @@ public class BasicUtils {
     /**
      * Calculate difficulty from hash by shifting right 32 bits (4 bytes)
      * @param hash Input hash value
-     * @return Calculated difficulty as BigInteger
+     * @return Calculated difficulty, (2^128 - 1) divided by the first 12 bytes of the hash
      */
-    public static BigInteger getDiffByHash(Bytes32 hash) {
-        MutableBytes data = MutableBytes.create(16);
-        data.set(4, hash.slice(0, 12));
-        BigInteger res = new BigInteger(data.toUnprefixedHexString(), 16);
-        BigInteger max = new BigInteger("ffffffffffffffffffffffffffffffff", 16);
-        return max.divide(res);
+    public static UInt128 getDiffByHash(Bytes32 hash) {
+        return UInt128.maxDivide(UInt128.of(hash.getInt(0) & 0xFFFFFFFFL, hash.getLong(4)));
     }
 
     /**
@@ -242,8 +236,8 @@ public class BasicUtils {
      * @param diff Input difficulty
      * @return Logarithm value or 0 if diff <= 0
      */
-    public static double xdag_diff2log(BigInteger diff) {
-        if (diff.compareTo(BigInteger.ZERO) > 0) {
+    public static double xdag_diff2log(UInt128 diff) {
+        if (!diff.isZero()) {
             return Math.log(diff.doubleValue());
         } else {
             return 0.0;
@@ -255,7 +249,7 @@ public class BasicUtils {
      * @param diffs Array of difficulties
      * @return Calculated hash rate
      */
-    public static double xdagHashRate(BigInteger[] diffs){
+    public static double xdagHashRate(UInt128[] diffs){
         double sum = 0;
         for (int i = 0; i < HASH_RATE_LAST_MAX_TIME; i++) {
             sum += xdag_diff2log(diffs[i]);
@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.utils;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Immutable 32-byte block hash held in four longs, with the hash code computed once.
+ * <p>
+ * Used as the key of in-memory maps instead of {@link Bytes32}, which wraps a separate array and hashes all of
+ * its bytes on every lookup. Equal to another key when the 32 bytes are equal.
+ */
+public final class HashKey {
+
+    public static final int BYTES = 32;
+
+    private final long l0;
+    private final long l1;
+    private final long l2;
+    private final long l3;
+    private final int hash;
+
+    HashKey(long l0, long l1, long l2, long l3) {
+        this.l0 = l0;
+        this.l1 = l1;
+        this.l2 = l2;
+        this.l3 = l3;
+        this.hash = hash(l0, l1, l2, l3);
+    }
+
+    /**
+     * @param bytes exactly 32 bytes
+     */
+    public static HashKey of(Bytes bytes) {
+        checkSize(bytes);
+        return new HashKey(bytes.getLong(0), bytes.getLong(8), bytes.getLong(16), bytes.getLong(24));
+    }
+
+    public static HashKey of(byte[] bytes) {
+        return of(Bytes.wrap(bytes));
+    }
+
+    /**
+     * Key of the hashlow of a hash, the first 8 bytes are taken as zero
+     */
+    public static HashKey ofHashLow(Bytes hash) {
+        checkSize(hash);
+        return new HashKey(0L, hash.getLong(8), hash.getLong(16), hash.getLong(24));
+    }
+
+    static void checkSize(Bytes bytes) {
+        if (bytes.size() != BYTES) {
+            throw new IllegalArgumentException("Hash key needs " + BYTES + " bytes, got " + bytes.size());
+        }
+    }
+
+    static int hash(long l0, long l1, long l2, long l3) {
+        long h = l0 * 0x9E3779B97F4A7C15L;
+        h = (h ^ l1) * 0x9E3779B97F4A7C15L;
+        h = (h ^ l2) * 0x9E3779B97F4A7C15L;
+        h = (h ^ l3) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Whether the 32 bytes equal those of this key, without allocating
+     */
+    public boolean matches(Bytes bytes) {
+        return bytes.size() == BYTES && l0 == bytes.getLong(0) && l1 == bytes.getLong(8)
+                && l2 == bytes.getLong(16) && l3 == bytes.getLong(24);
+    }
+
+    long get(int i) {
+        return switch (i) {
+            case 0 -> l0;
+            case 1 -> l1;
+            case 2 -> l2;
+            default -> l3;
+        };
+    }
+
+    public Bytes32 toBytes32() {
+        byte[] out = new byte[BYTES];
+        for (int i = 0; i < 4; i++) {
+            long v = get(i);
+            for (int j = 0; j < 8; j++) {
+                out[i * 8 + j] = (byte) (v >>> (56 - j * 8));
+            }
+        }
+        return Bytes32.wrap(out);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HashKey other)) {
+            return false;
+        }
+        return hash == other.hash && l0 == other.l0 && l1 == other.l1 && l2 == other.l2 && l3 == other.l3;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return toBytes32().toHexString();
+    }
+}
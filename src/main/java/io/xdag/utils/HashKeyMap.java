@@ -0,0 +1,259 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * Open addressing map from 32-byte hashes to values.
+ * <p>
+ * Keys are stored inline as four longs per slot next to their hash code, so an entry costs no key object, no node
+ * and no array wrapper. Lookups by {@link Bytes} read the hash in place and do not allocate. Collisions are resolved
+ * by linear probing and removals shift the following entries back, so there are no tombstones. Null values are not
+ * allowed. Not thread safe, callers guard shared instances themselves.
+ */
+public class HashKeyMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] hashes;
+    /**
+     * Null marks a free slot
+     */
+    private Object[] values;
+    private int mask;
+    private int resizeAt;
+    private int size;
+
+    public HashKeyMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public HashKeyMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * 4];
+        hashes = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity * 3 / 4;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(HashKey key) {
+        return valueAt(find(key.hashCode(), key.get(0), key.get(1), key.get(2), key.get(3)));
+    }
+
+    public V get(Bytes key) {
+        return valueAt(find(key));
+    }
+
+    public boolean containsKey(HashKey key) {
+        return find(key.hashCode(), key.get(0), key.get(1), key.get(2), key.get(3)) >= 0;
+    }
+
+    public boolean containsKey(Bytes key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * @return the previous value, or null
+     */
+    public V put(HashKey key, V value) {
+        return put(key.hashCode(), key.get(0), key.get(1), key.get(2), key.get(3), value);
+    }
+
+    public V put(Bytes key, V value) {
+        HashKey.checkSize(key);
+        long l0 = key.getLong(0);
+        long l1 = key.getLong(8);
+        long l2 = key.getLong(16);
+        long l3 = key.getLong(24);
+        return put(HashKey.hash(l0, l1, l2, l3), l0, l1, l2, l3, value);
+    }
+
+    /**
+     * @return the removed value, or null
+     */
+    public V remove(HashKey key) {
+        return removeAt(find(key.hashCode(), key.get(0), key.get(1), key.get(2), key.get(3)));
+    }
+
+    public V remove(Bytes key) {
+        return removeAt(find(key));
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public void forEach(BiConsumer<HashKey, ? super V> action) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                action.accept(keyAt(i), valueAt(i));
+            }
+        }
+    }
+
+    /**
+     * Remove the entries matching the filter
+     *
+     * @return number of entries removed
+     */
+    public int removeIf(BiPredicate<HashKey, ? super V> filter) {
+        List<HashKey> matched = new ArrayList<>();
+        forEach((key, value) -> {
+            if (filter.test(key, value)) {
+                matched.add(key);
+            }
+        });
+        for (HashKey key : matched) {
+            remove(key);
+        }
+        return matched.size();
+    }
+
+    private int slot(int hash) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private int find(Bytes key) {
+        HashKey.checkSize(key);
+        long l0 = key.getLong(0);
+        long l1 = key.getLong(8);
+        long l2 = key.getLong(16);
+        long l3 = key.getLong(24);
+        return find(HashKey.hash(l0, l1, l2, l3), l0, l1, l2, l3);
+    }
+
+    private int find(int hash, long l0, long l1, long l2, long l3) {
+        for (int i = slot(hash); values[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && matches(i, l0, l1, l2, l3)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int i, long l0, long l1, long l2, long l3) {
+        int k = i * 4;
+        return keys[k] == l0 && keys[k + 1] == l1 && keys[k + 2] == l2 && keys[k + 3] == l3;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int i) {
+        return i < 0 ? null : (V) values[i];
+    }
+
+    private HashKey keyAt(int i) {
+        int k = i * 4;
+        return new HashKey(keys[k], keys[k + 1], keys[k + 2], keys[k + 3]);
+    }
+
+    private V put(int hash, long l0, long l1, long l2, long l3, V value) {
+        Objects.requireNonNull(value, "value");
+        int i = slot(hash);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && matches(i, l0, l1, l2, l3)) {
+                V previous = valueAt(i);
+                values[i] = value;
+                return previous;
+            }
+        }
+        store(i, hash, l0, l1, l2, l3, value);
+        if (++size > resizeAt) {
+            resize();
+        }
+        return null;
+    }
+
+    private void store(int i, int hash, long l0, long l1, long l2, long l3, Object value) {
+        int k = i * 4;
+        keys[k] = l0;
+        keys[k + 1] = l1;
+        keys[k + 2] = l2;
+        keys[k + 3] = l3;
+        hashes[i] = hash;
+        values[i] = value;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+        allocate(oldValues.length * 2);
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = slot(oldHashes[j]);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                int k = j * 4;
+                store(i, oldHashes[j], oldKeys[k], oldKeys[k + 1], oldKeys[k + 2], oldKeys[k + 3], oldValues[j]);
+            }
+        }
+    }
+
+    private V removeAt(int i) {
+        if (i < 0) {
+            return null;
+        }
+        V removed = valueAt(i);
+        size--;
+        // shift back the entries of the probe sequence that would no longer be reachable across the gap
+        int gap = i;
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(hashes[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                int k = j * 4;
+                store(gap, hashes[j], keys[k], keys[k + 1], keys[k + 2], keys[k + 3], values[j]);
+                gap = j;
+            }
+        }
+        values[gap] = null;
+        return removed;
+    }
+}
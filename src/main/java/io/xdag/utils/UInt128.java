@@ -0,0 +1,294 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.utils;
+
+import java.math.BigInteger;
+
+/**
+ * Unsigned 128-bit integer held in two longs, used for block and chain difficulty.
+ * <p>
+ * XDAG difficulties are 128-bit unsigned values, so comparisons and additions on the import path never need a
+ * {@link BigInteger}. Instances are immutable. Conversion to BigInteger is meant for RPC and display only.
+ * <p>
+ * The class is left non-final on purpose, see {@code LegacyKryoCodec.UInt128Serializer}.
+ */
+public class UInt128 implements Comparable<UInt128> {
+
+    public static final UInt128 ZERO = new UInt128(0, 0);
+    public static final UInt128 ONE = new UInt128(0, 1);
+    public static final UInt128 MAX_VALUE = new UInt128(-1L, -1L);
+
+    public static final int BYTES = 16;
+
+    private static final BigInteger TWO_64 = BigInteger.ONE.shiftLeft(64);
+    private static final long MASK_32 = 0xFFFFFFFFL;
+
+    private final long hi;
+    private final long lo;
+
+    private UInt128(long hi, long lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    public static UInt128 of(long hi, long lo) {
+        if (hi == 0) {
+            if (lo == 0) {
+                return ZERO;
+            }
+            if (lo == 1) {
+                return ONE;
+            }
+        }
+        return new UInt128(hi, lo);
+    }
+
+    public static UInt128 valueOf(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        return of(0, value);
+    }
+
+    public static UInt128 valueOf(BigInteger value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.signum() < 0 || value.bitLength() > 128) {
+            throw new IllegalArgumentException("Value out of range: " + value.toString(16));
+        }
+        return of(value.shiftRight(64).longValue(), value.longValue());
+    }
+
+    /**
+     * Big-endian, at most 16 bytes, shorter arrays are zero extended
+     */
+    public static UInt128 fromBytes(byte[] bytes) {
+        if (bytes.length > BYTES) {
+            throw new IllegalArgumentException("Too many bytes: " + bytes.length);
+        }
+        long hi = 0;
+        long lo = 0;
+        for (byte b : bytes) {
+            hi = (hi << 8) | (lo >>> 56);
+            lo = (lo << 8) | (b & 0xFF);
+        }
+        return of(hi, lo);
+    }
+
+    /**
+     * Read 16 big-endian bytes at offset
+     */
+    public static UInt128 fromBytes(byte[] bytes, int offset) {
+        return of(readLong(bytes, offset), readLong(bytes, offset + 8));
+    }
+
+    /**
+     * Write 16 big-endian bytes at offset
+     */
+    public void toBytes(byte[] out, int offset) {
+        for (int i = 7; i >= 0; i--) {
+            out[offset + 7 - i] = (byte) (hi >>> (i * 8));
+            out[offset + 15 - i] = (byte) (lo >>> (i * 8));
+        }
+    }
+
+    public byte[] toBytes() {
+        byte[] out = new byte[BYTES];
+        toBytes(out, 0);
+        return out;
+    }
+
+    public long getHigh() {
+        return hi;
+    }
+
+    public long getLow() {
+        return lo;
+    }
+
+    public boolean isZero() {
+        return (hi | lo) == 0;
+    }
+
+    public UInt128 add(UInt128 other) {
+        long l = lo + other.lo;
+        long carry = Long.compareUnsigned(l, lo) < 0 ? 1 : 0;
+        long h = hi + other.hi;
+        if (Long.compareUnsigned(h, hi) < 0 || (carry == 1 && h == -1L)) {
+            throw new ArithmeticException("UInt128 overflow");
+        }
+        return of(h + carry, l);
+    }
+
+    /**
+     * Unsigned division, throws ArithmeticException on a zero divisor
+     */
+    public UInt128 divide(UInt128 divisor) {
+        if (divisor.isZero()) {
+            throw new ArithmeticException("Division by zero");
+        }
+        if (compareTo(divisor) < 0) {
+            return ZERO;
+        }
+        if (divisor.hi == 0) {
+            if (hi == 0) {
+                return of(0, Long.divideUnsigned(lo, divisor.lo));
+            }
+            long qhi = Long.divideUnsigned(hi, divisor.lo);
+            long rem = Long.remainderUnsigned(hi, divisor.lo);
+            return of(qhi, divideUnsigned128(rem, lo, divisor.lo));
+        }
+        // the quotient fits in 64 bits, estimate it from the top 64 bits of the normalized divisor
+        int s = Long.numberOfLeadingZeros(divisor.hi);
+        long v1 = s == 0 ? divisor.hi : (divisor.hi << s) | (divisor.lo >>> (64 - s));
+        long q = divideUnsigned128(hi >>> 1, (hi << 63) | (lo >>> 1), v1);
+        q >>>= 63 - s;
+        if (q != 0) {
+            q--;
+        }
+        // remainder = this - q * divisor, at most one more step
+        long pLo = q * divisor.lo;
+        long pHi = unsignedMultiplyHigh(q, divisor.lo) + q * divisor.hi;
+        long rLo = lo - pLo;
+        long rHi = hi - pHi - (Long.compareUnsigned(lo, pLo) < 0 ? 1 : 0);
+        if (Long.compareUnsigned(rHi, divisor.hi) > 0
+                || (rHi == divisor.hi && Long.compareUnsigned(rLo, divisor.lo) >= 0)) {
+            q++;
+        }
+        return of(0, q);
+    }
+
+    /**
+     * floor((2^128 - 1) / divisor), the work represented by a hash whose top 128 bits are the divisor
+     */
+    public static UInt128 maxDivide(UInt128 divisor) {
+        return MAX_VALUE.divide(divisor);
+    }
+
+    @Override
+    public int compareTo(UInt128 other) {
+        int c = Long.compareUnsigned(hi, other.hi);
+        return c != 0 ? c : Long.compareUnsigned(lo, other.lo);
+    }
+
+    public UInt128 max(UInt128 other) {
+        return compareTo(other) >= 0 ? this : other;
+    }
+
+    public BigInteger toBigInteger() {
+        BigInteger low = lo >= 0 ? BigInteger.valueOf(lo) : BigInteger.valueOf(lo).add(TWO_64);
+        if (hi == 0) {
+            return low;
+        }
+        BigInteger high = hi >= 0 ? BigInteger.valueOf(hi) : BigInteger.valueOf(hi).add(TWO_64);
+        return high.shiftLeft(64).or(low);
+    }
+
+    public double doubleValue() {
+        return toBigInteger().doubleValue();
+    }
+
+    /**
+     * Hex without leading zeros, same as {@code BigInteger.toString(16)}
+     */
+    public String toHexString() {
+        if (hi == 0) {
+            return Long.toHexString(lo);
+        }
+        String low = Long.toHexString(lo);
+        return Long.toHexString(hi) + "0".repeat(16 - low.length()) + low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof UInt128 other)) {
+            return false;
+        }
+        return hi == other.hi && lo == other.lo;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hi) * 31 + Long.hashCode(lo);
+    }
+
+    @Override
+    public String toString() {
+        return toBigInteger().toString();
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return v;
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    /**
+     * (u1:u0) / v for u1 < v, Hacker's Delight divlu with 32-bit digits
+     */
+    private static long divideUnsigned128(long u1, long u0, long v) {
+        final long b = 1L << 32;
+        int s = Long.numberOfLeadingZeros(v);
+        v <<= s;
+        long vn1 = v >>> 32;
+        long vn0 = v & MASK_32;
+        long un32 = s == 0 ? u1 : (u1 << s) | (u0 >>> (64 - s));
+        long un10 = u0 << s;
+        long un1 = un10 >>> 32;
+        long un0 = un10 & MASK_32;
+
+        long q1 = Long.divideUnsigned(un32, vn1);
+        long rhat = un32 - q1 * vn1;
+        while (Long.compareUnsigned(q1, b) >= 0 || Long.compareUnsigned(q1 * vn0, b * rhat + un1) > 0) {
+            q1--;
+            rhat += vn1;
+            if (Long.compareUnsigned(rhat, b) >= 0) {
+                break;
+            }
+        }
+
+        long un21 = un32 * b + un1 - q1 * v;
+        long q0 = Long.divideUnsigned(un21, vn1);
+        rhat = un21 - q0 * vn1;
+        while (Long.compareUnsigned(q0, b) >= 0 || Long.compareUnsigned(q0 * vn0, b * rhat + un0) > 0) {
+            q0--;
+            rhat += vn1;
+            if (Long.compareUnsigned(rhat, b) >= 0) {
+                break;
+            }
+        }
+        return q1 * b + q0;
+    }
+}
@@ -70,6 +70,7 @@ import io.xdag.net.NetDB;
 import io.xdag.utils.BasicUtils;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.XdagTime;
+import io.xdag.utils.UInt128;
 
 public class CommandsTest {
 
@@ -212,7 +213,7 @@ public class CommandsTest {
     @Test
     public void testPrintBlockInfo() {
         BlockInfo blockInfo = new BlockInfo();
-        blockInfo.setDifficulty(BigInteger.ZERO);
+        blockInfo.setDifficulty(UInt128.ZERO);
 
         long time = XdagTime.xdagTimestampToMs(blockInfo.getTimestamp());
         String st = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS", TimeZone.getDefault()).format(time);
@@ -24,15 +24,31 @@
 
 package io.xdag.core;
 
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.crypto.keys.ECKeyPair;
+import io.xdag.crypto.keys.PublicKey;
+import io.xdag.utils.BasicUtils;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.SimpleEncoder;
+import io.xdag.utils.XdagTime;
 import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes32;
 import org.bouncycastle.util.encoders.Hex;
 import org.junit.Test;
 
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
 
+import static io.xdag.BlockBuilder.generateAddressBlock;
+import static io.xdag.BlockBuilder.generateOldTransactionBlock;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class BlockTest {
 
@@ -75,6 +91,95 @@ public class BlockTest {
           //assertEquals(first.getXdagBlock().getData(), new XdagBlock(Hex.decode(blockRawdata).getData();//A 'block' create by rawdata, its xdagblock will not change.
      }
 
+     @Test
+     public void testVerifiedKeysCachedAndCopied() {
+          Config config = new DevnetConfig();
+          ECKeyPair key = ECKeyPair.fromPrivateKey(SampleKeys.SRIVATE_KEY);
+          Block block = generateAddressBlock(config, key, XdagTime.getCurrentTimestamp());
+          Block decoded = new Block(new XdagBlock(block.getXdagBlock().getData().toArray()));
+          List<PublicKey> keys = decoded.verifiedKeys();
+          assertFalse(keys.isEmpty());
+          assertSame(keys, decoded.verifiedKeys());
+
+          Block copy = new Block(new XdagBlock(block.getXdagBlock().getData().toArray()));
+          copy.copyValidation(decoded);
+          assertFalse(copy.isPreValidated());
+          decoded.setPreValidated(true);
+          copy.copyValidation(decoded);
+          assertTrue(copy.isPreValidated());
+          assertSame(keys, copy.verifiedKeys());
+     }
+
+     @Test
+     public void testLazyAccessorsMatchParsedFields() {
+          Config config = new DevnetConfig();
+          ECKeyPair key = ECKeyPair.fromPrivateKey(SampleKeys.SRIVATE_KEY);
+          Block block = generateAddressBlock(config, key, XdagTime.getCurrentTimestamp());
+          byte[] raw = block.getXdagBlock().getData().toArray();
+
+          XdagBlock xdagBlock = new XdagBlock(raw.clone());
+          long sum = 0;
+          for (XdagField field : new XdagBlock(raw.clone()).getFields()) {
+               sum += field.getSum();
+          }
+          assertEquals(sum, xdagBlock.getSum());
+          assertEquals(block.getTimestamp(), xdagBlock.getTimestamp());
+          MutableBytes32 hashlow = MutableBytes32.create();
+          int links = 0;
+          for (int i = 1; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
+               XdagField field = xdagBlock.getField(i);
+               assertEquals(field.getType(), xdagBlock.getFieldType(i));
+               if (!xdagBlock.isLink(i)) {
+                    continue;
+               }
+               links++;
+               Address address = new Address(field, field.getType() != XdagField.FieldType.XDAG_FIELD_IN
+                       && field.getType() != XdagField.FieldType.XDAG_FIELD_OUT);
+               xdagBlock.copyLinkHashLow(i, hashlow);
+               assertEquals(address.getAddress(), hashlow);
+               assertEquals(address.getAmount(), XAmount.ofXAmount(xdagBlock.getLinkAmount(i)));
+          }
+          assertEquals(block.getLinks().size(), links);
+
+          Block decoded = new Block(new XdagBlock(raw.clone()));
+          assertEquals(key.getPublicKey().toBytes(), decoded.getPubKeyBytes().get(0));
+          assertEquals(key.getPublicKey().toBytes(), decoded.getPubKeys().get(0).toBytes());
+          assertEquals(block.getLinks().size(), decoded.getLinks().size());
+          Block copy = decoded.copy();
+          assertArrayEquals(decoded.toBytes(), copy.toBytes());
+     }
+
+     @Test
+     public void testLinksOfUndecodedBody() {
+          Config config = new DevnetConfig();
+          ECKeyPair key = ECKeyPair.fromPrivateKey(SampleKeys.SRIVATE_KEY);
+          Address from = new Address(Bytes32.fromHexStringLenient("0x12345678abcdef"), XdagField.FieldType.XDAG_FIELD_IN, false);
+          Address to = new Address(BasicUtils.keyPair2Hash(key), XdagField.FieldType.XDAG_FIELD_OUT, true);
+          Block tx = generateOldTransactionBlock(config, key, XdagTime.getCurrentTimestamp(), from, to,
+                  XAmount.of(10, XUnit.XDAG));
+          byte[] raw = tx.getXdagBlock().getData().toArray();
+
+          Block undecoded = new Block(new XdagBlock(raw.clone()));
+          assertEquals(1, undecoded.countLinks(XdagField.FieldType.XDAG_FIELD_IN));
+          assertEquals(1, undecoded.countLinks(XdagField.FieldType.XDAG_FIELD_OUTPUT));
+          List<Bytes32> hashlows = new ArrayList<>();
+          List<Boolean> addresses = new ArrayList<>();
+          undecoded.forEachLink((hashlow, isAddress) -> {
+               hashlows.add(hashlow.copy());
+               addresses.add(isAddress);
+          });
+
+          Block decoded = new Block(new XdagBlock(raw.clone()));
+          List<Address> links = decoded.getLinks();
+          assertEquals(links.size(), hashlows.size());
+          for (int i = 0; i < links.size(); i++) {
+               assertEquals(links.get(i).getAddress(), hashlows.get(i));
+               assertEquals(links.get(i).getIsAddress(), addresses.get(i));
+          }
+          assertEquals(1, decoded.countLinks(XdagField.FieldType.XDAG_FIELD_IN));
+          assertEquals(1, decoded.countLinks(XdagField.FieldType.XDAG_FIELD_OUTPUT));
+     }
+
     /**
      Config config = new Config();
      Wallet xdagWallet;
@@ -49,6 +49,7 @@ import io.xdag.crypto.keys.ECKeyPair;
 import io.xdag.crypto.keys.PrivateKey;
 import org.bouncycastle.util.encoders.Hex;
 import io.xdag.crypto.keys.Signature;
+import io.xdag.utils.UInt128;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -1361,6 +1362,69 @@ public class BlockchainTest {
         assertEquals("0.0", RollBackTxBlockFee.toDecimal(1, XUnit.XDAG).toString());
     }
 
+    @Test
+    public void testUnwindMainRestoresBalances() {
+        ECKeyPair addrKey = ECKeyPair.fromPrivateKey(secretary_1);
+        ECKeyPair poolKey = ECKeyPair.fromPrivateKey(SampleKeys.SRIVATE_KEY);
+        long generateTime = 1600616700000L;
+        Block addressBlock = generateAddressBlock(config, addrKey, generateTime);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        blockchain.getAddressStore().updateBalance(poolKey.toAddress().toArray(), XAmount.of(1000, XUnit.XDAG));
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(new Block(new XdagBlock(addressBlock.toBytes()))));
+        List<Address> pending = Lists.newArrayList();
+        List<Block> extraBlockList = Lists.newLinkedList();
+        Bytes32 ref = addressBlock.getHashLow();
+        for (int i = 1; i <= 10; i++) {
+            generateTime += 64000L;
+            pending.clear();
+            pending.add(new Address(ref, XDAG_FIELD_OUT, false));
+            pending.add(new Address(keyPair2Hash(wallet.getDefKey()), XdagField.FieldType.XDAG_FIELD_COINBASE, true));
+            long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+            Block extraBlock = generateExtraBlock(config, poolKey, xdagTime, pending);
+            assertSame(IMPORTED_BEST, blockchain.tryToConnect(new Block(new XdagBlock(extraBlock.toBytes()))));
+            ref = extraBlock.getHashLow();
+            extraBlockList.add(extraBlock);
+        }
+        blockchain.checkMain();
+
+        Address from = new Address(BytesUtils.arrayToByte32(poolKey.toAddress().toArray()), XDAG_FIELD_INPUT, true);
+        Address to = new Address(BytesUtils.arrayToByte32(addrKey.toAddress().toArray()), XDAG_FIELD_OUTPUT, true);
+        long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+        Block txBlock = generateNewTransactionBlock(config, poolKey, xdagTime - 1, from, to, XAmount.of(100, XUnit.XDAG), UInt64.ONE);
+        ImportResult result = blockchain.tryToConnect(txBlock);
+        assertTrue(result == IMPORTED_NOT_BEST || result == IMPORTED_BEST);
+
+        pending.clear();
+        pending.add(new Address(txBlock.getHashLow(), false));
+        ref = extraBlockList.getLast().getHashLow();
+        for (int i = 1; i <= 16; i++) {
+            generateTime += 64000L;
+            pending.add(new Address(ref, XDAG_FIELD_OUT, false));
+            pending.add(new Address(keyPair2Hash(wallet.getDefKey()), XdagField.FieldType.XDAG_FIELD_COINBASE, true));
+            xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+            Block extraBlock = generateExtraBlock(config, poolKey, xdagTime, pending);
+            blockchain.tryToConnect(extraBlock);
+            ref = extraBlock.getHashLow();
+            extraBlockList.add(extraBlock);
+            pending.clear();
+        }
+        Bytes32 txMain = extraBlockList.get(10).getHashLow();
+        assertEquals("900.00", blockchain.getAddressStore().getBalanceByAddress(toBytesAddress(poolKey).toArrayUnsafe()).toDecimal(2, XUnit.XDAG).toString());
+        assertEquals("99.80", blockchain.getAddressStore().getBalanceByAddress(toBytesAddress(addrKey).toArrayUnsafe()).toDecimal(2, XUnit.XDAG).toString());
+        assertEquals("0.2", kernel.getBlockStore().getBlockInfo(txMain).getFee().toDecimal(1, XUnit.XDAG).toString());
+
+        // unwind every main block above the one before the main block that executed the transaction
+        blockchain.unWindMain(blockchain.getBlockByHash(extraBlockList.get(9).getHashLow(), false));
+
+        assertEquals(0, blockchain.getBlockByHash(txMain, false).getInfo().flags & BI_MAIN);
+        assertEquals(0, blockchain.getBlockByHash(txBlock.getHashLow(), false).getInfo().flags & BI_APPLIED);
+        assertEquals("1000.00", blockchain.getAddressStore().getBalanceByAddress(toBytesAddress(poolKey).toArrayUnsafe()).toDecimal(2, XUnit.XDAG).toString());
+        assertEquals("0.00", blockchain.getAddressStore().getBalanceByAddress(toBytesAddress(addrKey).toArrayUnsafe()).toDecimal(2, XUnit.XDAG).toString());
+        // the accumulated fee is taken back from the main block, not the fee of its header
+        assertEquals("0.0", blockchain.getBlockByHash(txMain, false).getInfo().getAmount().toDecimal(1, XUnit.XDAG).toString());
+        assertEquals("0.0", kernel.getBlockStore().getBlockInfo(txMain).getFee().toDecimal(1, XUnit.XDAG).toString());
+    }
+
     @Test
     public void testIfTxBlockTobeMain() {
         ECKeyPair addrKey = ECKeyPair.fromPrivateKey(secretary_1);
@@ -1892,7 +1956,7 @@ public class BlockchainTest {
             }
         }
 
-        assertEquals(firstDiff, blockchain.getXdagTopStatus().getTopDiff().toString(16));
+        assertEquals(firstDiff, blockchain.getXdagTopStatus().getTopDiff().toHexString());
 
         generateTime = unwindDate;
         ref = Bytes32.wrap(unwindRef);
@@ -1912,7 +1976,7 @@ public class BlockchainTest {
             ref = extraBlock.getHashLow();
         }
 
-        assertEquals(secondDiff, blockchain.getXdagTopStatus().getTopDiff().toString(16));
+        assertEquals(secondDiff, blockchain.getXdagTopStatus().getTopDiff().toHexString());
     }
 
     @Test
@@ -3732,7 +3796,7 @@ public class BlockchainTest {
         assertArrayEquals(blockchain.getBlockByHash(extraBlockList.get(30).getHashLow(), false).getInfo().getHashlow(), blockchain.getBlockByHeight(31).getHashLow().toArray());
 
         BlockInfo info = blockchain.getBlockByHash(highDiffBlock.getHashLow(), false).getInfo();
-        info.setDifficulty(blockchain.getXdagTopStatus().getTopDiff().add(BigInteger.ONE));
+        info.setDifficulty(blockchain.getXdagTopStatus().getTopDiff().add(UInt128.ONE));
         blockchain.getBlockStore().saveBlockInfo(info);
 //        System.out.println("highDiffBlock diff : " + blockchain.getBlockByHash(highDiffBlock.getHashLow(), false).getInfo().getDifficulty().toString());//1391535839169
 
@@ -4480,7 +4544,7 @@ public class BlockchainTest {
         result = blockchain.tryToConnect(higher42);
         assertSame(IMPORTED_NOT_BEST, result);
         assertArrayEquals(blockchain.getBlockByHash(higher42.getHashLow(), false).getInfo().getMaxDiffLink(), extraBlockList.get(58).getHashLow().toArray());
-        blockchain.getBlockByHash(higher42.getHashLow(), false).getInfo().setDifficulty(blockchain.getXdagTopStatus().getTopDiff().add(BigInteger.ONE));
+        blockchain.getBlockByHash(higher42.getHashLow(), false).getInfo().setDifficulty(blockchain.getXdagTopStatus().getTopDiff().add(UInt128.ONE));
 
         pending.clear();
         pending.add(new Address(higher42.getHashLow(), XDAG_FIELD_OUT, false));
@@ -4538,7 +4602,7 @@ public class BlockchainTest {
         result = blockchain.tryToConnect(higher40);
         assertSame(IMPORTED_NOT_BEST, result);
         assertArrayEquals(blockchain.getBlockByHash(higher40.getHashLow(), false).getInfo().getMaxDiffLink(), extraBlockList.get(56).getHashLow().toArray());
-        blockchain.getBlockByHash(higher40.getHashLow(), false).getInfo().setDifficulty(blockchain.getXdagTopStatus().getTopDiff().add(BigInteger.ONE));
+        blockchain.getBlockByHash(higher40.getHashLow(), false).getInfo().setDifficulty(blockchain.getXdagTopStatus().getTopDiff().add(UInt128.ONE));
 
         pending.clear();
         pending.add(new Address(higher40.getHashLow(), XDAG_FIELD_OUT, false));
@@ -4611,7 +4675,7 @@ public class BlockchainTest {
         result = blockchain.tryToConnect(higher39);
         assertSame(IMPORTED_NOT_BEST, result);
         assertArrayEquals(blockchain.getBlockByHash(higher39.getHashLow(), false).getInfo().getMaxDiffLink(), extraBlockList.get(55).getHashLow().toArray());
-        blockchain.getBlockByHash(higher39.getHashLow(), false).getInfo().setDifficulty(blockchain.getXdagTopStatus().getTopDiff().add(BigInteger.ONE));
+        blockchain.getBlockByHash(higher39.getHashLow(), false).getInfo().setDifficulty(blockchain.getXdagTopStatus().getTopDiff().add(UInt128.ONE));
 
         pending.clear();
         pending.add(new Address(higher39.getHashLow(), XDAG_FIELD_OUT, false));
@@ -4652,7 +4716,6 @@ public class BlockchainTest {
 
         long generateTime = 1600616700000L;
         byte[] prefix = new byte[]{ORPHAN_PREFEX};
-        byte[] prefixLength = Hex.decode("FFFFFFFFFFFFFFFF");
         long orphanSourceLength;
 
         List<Address> pending = Lists.newArrayList();
@@ -5757,7 +5820,7 @@ public class BlockchainTest {
             assertEquals(14 + 2 * (i - 1), blockchain.getMBlockTx().size());
             mHashlow.add(ref);
         }
-        orphanSourceLength = BytesUtils.bytesToLong(((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanSource().get(prefixLength), 0, false);
+        orphanSourceLength = ((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanCount();
         assertEquals(18, orphanSourceLength);
 
         assertEquals("0.000", blockchain.getBlockByHash(mTxBlock1.getHashLow(), false).getInfo().getAmount().toDecimal(3, XUnit.XDAG).toString());
@@ -5820,7 +5883,7 @@ public class BlockchainTest {
         assertChainStatus(186, 109, 6, 16, blockchain);
         assertEquals(0, blockchain.getOrphanBlockStore().getOrphanSize());
         assertEquals(22, blockchain.getMBlockTx().size());
-        orphanSourceLength = BytesUtils.bytesToLong(((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanSource().get(prefixLength), 0, false);
+        orphanSourceLength = ((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanCount();
         assertEquals(16, orphanSourceLength);
 
         assertEquals("0.000", blockchain.getBlockByHash(mTxBlock1.getHashLow(), false).getInfo().getAmount().toDecimal(3, XUnit.XDAG).toString());
@@ -5858,7 +5921,7 @@ public class BlockchainTest {
         assertChainStatus(187, 109, 6, 17, blockchain);
         assertEquals(1, blockchain.getOrphanBlockStore().getOrphanSize());
         assertEquals(22, blockchain.getMBlockTx().size());
-        orphanSourceLength = BytesUtils.bytesToLong(((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanSource().get(prefixLength), 0, false);
+        orphanSourceLength = ((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanCount();
         assertEquals(17, orphanSourceLength);
 
         assertEquals(0, blockchain.getBlockByHash(txBlockTobeMain1.getHashLow(), false).getInfo().flags & BI_APPLIED);
@@ -5880,7 +5943,7 @@ public class BlockchainTest {
         assertChainStatus(188, 109, 7, 17, blockchain);
         assertEquals(1, blockchain.getOrphanBlockStore().getOrphanSize());
         assertEquals(22, blockchain.getMBlockTx().size());
-        orphanSourceLength = BytesUtils.bytesToLong(((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanSource().get(prefixLength), 0, false);
+        orphanSourceLength = ((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanCount();
         assertEquals(17, orphanSourceLength);
 
         // todo:The new chain replaces the old chain, and transaction blocks become the main blocks.
@@ -5903,7 +5966,7 @@ public class BlockchainTest {
         assertChainStatus(189, 110, 7, 16, blockchain);
         assertEquals(0, blockchain.getOrphanBlockStore().getOrphanSize());
         assertEquals(23, blockchain.getMBlockTx().size());
-        orphanSourceLength = BytesUtils.bytesToLong(((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanSource().get(prefixLength), 0, false);
+        orphanSourceLength = ((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanCount();
         assertEquals(16, orphanSourceLength);
 
         // todo:Execute transaction blocks
@@ -5929,7 +5992,7 @@ public class BlockchainTest {
         assertChainStatus(190, 111, 7, 16, blockchain);
         assertEquals(0, blockchain.getOrphanBlockStore().getOrphanSize());
         assertEquals(23, blockchain.getMBlockTx().size());
-        orphanSourceLength = BytesUtils.bytesToLong(((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanSource().get(prefixLength), 0, false);
+        orphanSourceLength = ((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanCount();
         assertEquals(16, orphanSourceLength);
 
         // todo:A new transaction block is generated and becomes the main block; the transaction is rolled back before it becomes the main block.
@@ -5947,7 +6010,7 @@ public class BlockchainTest {
         assertChainStatus(191, 112, 6, 17, blockchain);// A transaction block becoming a main block is not an extra block, but the extra block of the main block it references will be set to false.
         assertEquals(1, blockchain.getOrphanBlockStore().getOrphanSize());
         assertEquals(23, blockchain.getMBlockTx().size());
-        orphanSourceLength = BytesUtils.bytesToLong(((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanSource().get(prefixLength), 0, false);
+        orphanSourceLength = ((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanCount();
         assertEquals(17, orphanSourceLength);
 
         assertEquals(0, blockchain.getBlockByHash(txBlockTobeMain2.getHashLow(), false).getInfo().flags & BI_APPLIED);
@@ -5978,7 +6041,7 @@ public class BlockchainTest {
         assertChainStatus(211, 125, 7, 18, blockchain);
         assertEquals(2, blockchain.getOrphanBlockStore().getOrphanSize());
         assertEquals(22, blockchain.getMBlockTx().size());
-        orphanSourceLength = BytesUtils.bytesToLong(((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanSource().get(prefixLength), 0, false);
+        orphanSourceLength = ((OrphanBlockStoreImpl) (kernel.getOrphanBlockStore())).getOrphanCount();
         assertEquals(18, orphanSourceLength);
 
         assertEquals(0, blockchain.getBlockByHash(txBlockTobeMain1.getHashLow(), false).getInfo().flags & BI_APPLIED);
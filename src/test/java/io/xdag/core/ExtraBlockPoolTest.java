@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.core;
+
+import java.util.List;
+import java.util.Map;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExtraBlockPoolTest {
+
+    @Test
+    public void testIterateOldestEpochFirst() {
+        ExtraBlockPool pool = new ExtraBlockPool(10, 100);
+        Block late = block(1, 30);
+        Block early = block(2, 10);
+        Block middle = block(3, 20);
+        pool.put(late.getHashLow(), late);
+        pool.put(early.getHashLow(), early);
+        pool.put(middle.getHashLow(), middle);
+
+        assertSame(early, pool.oldest());
+        List<Block> order = pool.entrySet().stream().map(Map.Entry::getValue).toList();
+        assertEquals(List.of(early, middle, late), order);
+        assertSame(middle, pool.get(Bytes32.wrap(middle.getHashLow())));
+
+        assertSame(early, pool.remove(early.getHashLow()));
+        assertFalse(pool.containsKey(early.getHashLow()));
+        assertSame(middle, pool.oldest());
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testOverflowAndExpiry() {
+        ExtraBlockPool pool = new ExtraBlockPool(3, 100);
+        for (int i = 1; i <= 5; i++) {
+            Block b = block(i, i);
+            pool.put(b.getHashLow(), b);
+        }
+        List<Block> overflow = pool.overflow();
+        assertEquals(2, overflow.size());
+        assertEquals(1, overflow.get(0).getTimestamp() >> 16);
+        assertEquals(2, overflow.get(1).getTimestamp() >> 16);
+        assertTrue(pool.expired().isEmpty());
+
+        Block newest = block(6, 150);
+        pool.put(newest.getHashLow(), newest);
+        // epochs 1 to 5 are more than 100 epochs older than 150
+        assertEquals(5, pool.expired().size());
+
+        pool.clear();
+        assertNull(pool.oldest());
+        assertTrue(pool.overflow().isEmpty());
+    }
+
+    private static Block block(int n, long epoch) {
+        BlockInfo info = new BlockInfo();
+        info.setHashlow(Bytes32.leftPad(Bytes.ofUnsignedInt(n)).toArray());
+        info.setTimestamp(epoch << 16);
+        return new Block(info);
+    }
+}
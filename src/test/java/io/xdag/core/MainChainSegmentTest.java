@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+public class MainChainSegmentTest {
+
+    private static Bytes32 h(int i) {
+        return Bytes32.fromHexStringLenient(Integer.toHexString(i));
+    }
+
+    @Test
+    public void testExtendKeepsOldestFirst() {
+        MainChainSegment segment = new MainChainSegment();
+        segment.extend(h(3), null, List.of(h(3), h(2), h(1)));
+        assertEquals(h(3), segment.getTop());
+        assertEquals(h(1), segment.oldest());
+        assertEquals(3, segment.size());
+
+        // new top links back to the old one
+        segment.extend(h(5), h(3), List.of(h(5), h(4)));
+        assertEquals(5, segment.size());
+        assertEquals(h(1), segment.oldest());
+        assertTrue(segment.contains(h(4)));
+    }
+
+    @Test
+    public void testExtendFromMiddleDropsNewerEntries() {
+        MainChainSegment segment = new MainChainSegment();
+        segment.extend(h(3), null, List.of(h(3), h(2), h(1)));
+        segment.extend(h(9), h(2), List.of(h(9)));
+        assertEquals(3, segment.size());
+        assertFalse(segment.contains(h(3)));
+        assertTrue(segment.contains(h(9)));
+    }
+
+    @Test
+    public void testConfirmAndInvalidate() {
+        MainChainSegment segment = new MainChainSegment();
+        segment.extend(h(3), null, List.of(h(3), h(2), h(1)));
+        segment.confirmed(h(1));
+        assertEquals(h(2), segment.oldest());
+        assertEquals(h(3), segment.getTop());
+
+        // confirming anything but the oldest entry means the segment is stale
+        segment.confirmed(h(3));
+        assertNull(segment.getTop());
+        assertEquals(0, segment.size());
+        assertNull(segment.oldest());
+    }
+}
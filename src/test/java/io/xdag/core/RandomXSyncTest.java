@@ -90,7 +90,7 @@ public class RandomXSyncTest {
         long end = addBlocks(kernel1, 130);
         log.debug("Add block done");
         long nmain = kernel1.getBlockchain().getXdagStats().nmain;
-        String expected = kernel1.getBlockchain().getBlockByHeight(nmain - 1).getInfo().getDifficulty().toString(16);
+        String expected = kernel1.getBlockchain().getBlockByHeight(nmain - 1).getInfo().getDifficulty().toHexString();
 
         // The second and third synchronize the data of the first.
         CountDownLatch latch = new CountDownLatch(1);
@@ -99,7 +99,7 @@ public class RandomXSyncTest {
 
         latch.await();
 
-        String kernel2Diff = kernel2.getBlockchain().getBlockByHeight(nmain - 1).getInfo().getDifficulty().toString(16);
+        String kernel2Diff = kernel2.getBlockchain().getBlockByHeight(nmain - 1).getInfo().getDifficulty().toHexString();
         assertEquals(expected, kernel2Diff);
     }
 
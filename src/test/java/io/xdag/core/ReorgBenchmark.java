@@ -0,0 +1,260 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.core;
+
+import static io.xdag.BlockBuilder.generateAddressBlock;
+import static io.xdag.BlockBuilder.generateExtraBlockGivenRandom;
+import static io.xdag.utils.BasicUtils.keyPair2Hash;
+
+import io.xdag.Kernel;
+import io.xdag.Wallet;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.crypto.keys.ECKeyPair;
+import io.xdag.db.AddressStore;
+import io.xdag.db.BlockStore;
+import io.xdag.db.OrphanBlockStore;
+import io.xdag.db.TransactionHistoryStore;
+import io.xdag.db.rocksdb.AddressStoreImpl;
+import io.xdag.db.rocksdb.BlockStoreImpl;
+import io.xdag.db.rocksdb.DatabaseFactory;
+import io.xdag.db.rocksdb.DatabaseName;
+import io.xdag.db.rocksdb.OrphanBlockStoreImpl;
+import io.xdag.db.rocksdb.RocksdbFactory;
+import io.xdag.utils.XdagTime;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.tuweni.bytes.Bytes32;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main chain switch on synthetic forks.
+ * <p>
+ * A main chain of {@code depth + 4} epochs is built, each epoch holding {@code width} blocks: one chain block
+ * linking all blocks of the previous epoch and {@code width - 1} side blocks linking the previous chain block. A
+ * competing fork with the same shape starts {@code depth} epochs below the top. Every invocation imports the main
+ * chain and the fork up to the block before the one that outweighs the main chain into fresh stores, then the
+ * measured call connects that block, which unwinds {@code depth} main blocks and marks the new chain.
+ * <p>
+ * Not a unit test, run it with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.xdag.core.ReorgBenchmark} or from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReorgBenchmark {
+
+    private static final long START_TIME = 1600616700000L;
+    private static final long EPOCH_MS = 64000L;
+
+    @Param({"16", "64", "256"})
+    public int depth;
+
+    @Param({"1", "4"})
+    public int width;
+
+    private final Config config = new DevnetConfig();
+    private final ECKeyPair key = ECKeyPair.fromPrivateKey(SampleKeys.SRIVATE_KEY);
+
+    /**
+     * Raw blocks in import order, every invocation parses fresh copies
+     */
+    private final List<byte[]> mainChain = new ArrayList<>();
+    private final List<byte[]> fork = new ArrayList<>();
+    /**
+     * Index of the fork block that switches the main chain
+     */
+    private int switchIndex;
+
+    private File storeDir;
+    private DatabaseFactory dbFactory;
+    private Wallet wallet;
+    private BlockchainImpl blockchain;
+    private Block switchBlock;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        byte[] address = generateAddressBlock(config, key, START_TIME).getXdagBlock().getData().toArray();
+        mainChain.add(address);
+        int epochs = depth + 4;
+        List<Bytes32> forkBase = chain(mainChain, parse(address).getHashLow().copy(), 0, epochs, "1234");
+        // the fork replaces the last depth epochs and keeps growing until it outweighs the main chain
+        chain(fork, forkBase.get(epochs - depth - 1), epochs - depth, 2 * depth + 8, "3456");
+
+        open();
+        try {
+            importAll(mainChain);
+            switchIndex = -1;
+            for (int i = 0; i < fork.size() && switchIndex < 0; i++) {
+                Block block = parse(fork.get(i));
+                blockchain.tryToConnect(block);
+                if (block.getHashLow().equals(Bytes32.wrap(blockchain.getXdagTopStatus().getTop()))) {
+                    switchIndex = i;
+                }
+            }
+            if (switchIndex < 0) {
+                throw new IllegalStateException("fork never outweighed the main chain");
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Append the blocks of the given epochs to blocks, returning the chain block hashlow of every epoch
+     */
+    private List<Bytes32> chain(List<byte[]> blocks, Bytes32 base, int firstEpoch, int epochs, String random) {
+        List<Bytes32> chainBlocks = new ArrayList<>();
+        List<Bytes32> previous = Collections.singletonList(base);
+        for (int e = firstEpoch; e < firstEpoch + epochs; e++) {
+            long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(START_TIME + (e + 1) * EPOCH_MS));
+            List<Bytes32> current = new ArrayList<>();
+            for (int w = 0; w < width; w++) {
+                List<Address> pending = new ArrayList<>();
+                for (Bytes32 ref : w == 0 ? previous : previous.subList(0, 1)) {
+                    pending.add(new Address(ref, XdagField.FieldType.XDAG_FIELD_OUT, false));
+                }
+                pending.add(new Address(keyPair2Hash(key), XdagField.FieldType.XDAG_FIELD_COINBASE, true));
+                byte[] raw = generateExtraBlockGivenRandom(config, key, xdagTime - w, pending, random)
+                        .getXdagBlock().getData().toArray();
+                blocks.add(raw);
+                current.add(parse(raw).getHashLow().copy());
+            }
+            chainBlocks.add(current.getFirst());
+            previous = current;
+        }
+        return chainBlocks;
+    }
+
+    private static Block parse(byte[] raw) {
+        return new Block(new XdagBlock(Arrays.copyOf(raw, raw.length)));
+    }
+
+    private void importAll(List<byte[]> blocks) {
+        for (byte[] raw : blocks) {
+            blockchain.tryToConnect(parse(raw));
+        }
+    }
+
+    private void open() throws IOException {
+        storeDir = Files.createTempDirectory("reorg-benchmark").toFile();
+        config.getNodeSpec().setStoreDir(new File(storeDir, "store").getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(new File(storeDir, "backup").getAbsolutePath());
+
+        wallet = new Wallet(config);
+        wallet.unlock("password");
+        wallet.setAccounts(Collections.singletonList(key));
+
+        Kernel kernel = new Kernel(config, key);
+        dbFactory = new RocksdbFactory(config);
+        BlockStore blockStore = new BlockStoreImpl(
+                dbFactory.getDB(DatabaseName.INDEX),
+                dbFactory.getDB(DatabaseName.TIME),
+                dbFactory.getDB(DatabaseName.BLOCK),
+                dbFactory.getDB(DatabaseName.TXHISTORY));
+        blockStore.reset();
+        OrphanBlockStore orphanBlockStore = new OrphanBlockStoreImpl(dbFactory.getDB(DatabaseName.ORPHANIND), kernel);
+        orphanBlockStore.reset();
+        AddressStore addressStore = new AddressStoreImpl(dbFactory.getDB(DatabaseName.ADDRESS));
+        addressStore.reset();
+
+        kernel.setBlockStore(blockStore);
+        kernel.setOrphanBlockStore(orphanBlockStore);
+        kernel.setAddressStore(addressStore);
+        kernel.setTxHistoryStore(Mockito.mock(TransactionHistoryStore.class));
+        kernel.setWallet(wallet);
+        blockchain = new BenchmarkBlockchain(kernel);
+    }
+
+    private void close() throws IOException {
+        blockchain.stopCheckMain();
+        dbFactory.close();
+        FileUtils.deleteDirectory(storeDir);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() throws IOException {
+        open();
+        importAll(mainChain);
+        importAll(fork.subList(0, switchIndex));
+        switchBlock = parse(fork.get(switchIndex));
+    }
+
+    @TearDown(Level.Invocation)
+    public void cleanup() throws IOException {
+        close();
+    }
+
+    @Benchmark
+    public ImportResult switchMainChain() {
+        return blockchain.tryToConnect(switchBlock);
+    }
+
+    static class BenchmarkBlockchain extends BlockchainImpl {
+
+        BenchmarkBlockchain(Kernel kernel) {
+            super(kernel);
+        }
+
+        @Override
+        public void startCheckMain(long period) {
+        }
+
+        @Override
+        public void addOurBlock(int keyIndex, Block block) {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ReorgBenchmark.class.getSimpleName()).build()).run();
+    }
+}
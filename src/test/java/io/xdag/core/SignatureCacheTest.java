@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.crypto.hash.HashUtils;
+import io.xdag.crypto.keys.ECKeyPair;
+import io.xdag.crypto.keys.Signature;
+import io.xdag.crypto.keys.Signer;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SignatureCacheTest {
+
+    private final ECKeyPair key = ECKeyPair.generate();
+    private final ECKeyPair other = ECKeyPair.generate();
+
+    @Before
+    public void setUp() {
+        SignatureCache.invalidateAll();
+    }
+
+    @Test
+    public void testRepeatedVerifyHitsCache() {
+        Bytes32 hash = HashUtils.doubleSha256(Bytes.wrap("signature cache".getBytes()));
+        Signature sig = Signer.sign(hash, key);
+
+        long hits = SignatureCache.getStats().hitCount();
+        assertTrue(SignatureCache.verify(hash, sig, key.getPublicKey()));
+        assertTrue(SignatureCache.verify(hash, sig, key.getPublicKey()));
+        assertEquals(hits + 1, SignatureCache.getStats().hitCount());
+    }
+
+    @Test
+    public void testNegativeResultsAreCachedPerKey() {
+        Bytes32 hash = HashUtils.doubleSha256(Bytes.wrap("wrong key".getBytes()));
+        Signature sig = Signer.sign(hash, key);
+
+        assertFalse(SignatureCache.verify(hash, sig, other.getPublicKey()));
+        assertFalse(SignatureCache.verify(hash, sig, other.getPublicKey()));
+        assertTrue(SignatureCache.verify(hash, sig, key.getPublicKey()));
+        assertEquals(2, SignatureCache.size());
+    }
+
+    @Test
+    public void testDifferentDigestIsNotConfused() {
+        Bytes32 hash = HashUtils.doubleSha256(Bytes.wrap("digest a".getBytes()));
+        Bytes32 tampered = HashUtils.doubleSha256(Bytes.wrap("digest b".getBytes()));
+        Signature sig = Signer.sign(hash, key);
+
+        assertTrue(SignatureCache.verify(hash, sig, key.getPublicKey()));
+        assertFalse(SignatureCache.verify(tampered, sig, key.getPublicKey()));
+    }
+}
@@ -35,9 +35,10 @@ import io.xdag.core.BlockInfo;
 import io.xdag.core.SnapshotBalanceData;
 import io.xdag.db.execption.DeserializationException;
 import io.xdag.db.execption.SerializationException;
+import io.xdag.db.rocksdb.LegacyKryoCodec;
+import io.xdag.utils.UInt128;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.math.BigInteger;
 import org.apache.tuweni.units.bigints.UInt64;
 import org.bouncycastle.util.encoders.Hex;
 import org.junit.Before;
@@ -52,7 +53,7 @@ public class KryoTest {
     public void init() {
         kryo = new Kryo();
         kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
-        kryo.register(BigInteger.class);
+        kryo.register(UInt128.class, new LegacyKryoCodec.UInt128Serializer());
         kryo.register(byte[].class);
         kryo.register(BlockInfo.class);
         kryo.register(long.class);
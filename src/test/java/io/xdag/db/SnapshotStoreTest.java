@@ -55,6 +55,7 @@ import java.util.Collections;
 import java.util.List;
 
 import static io.xdag.BlockBuilder.generateExtraBlock;
+import static io.xdag.config.Constants.BI_OURS;
 import static io.xdag.BlockBuilder.generateOldTransactionBlock;
 import static io.xdag.core.ImportResult.IMPORTED_BEST;
 import static io.xdag.core.ImportResult.IMPORTED_NOT_BEST;
@@ -219,6 +220,46 @@ public class SnapshotStoreTest {
 //        assertEquals(xdagStats.nmain, stats.nmain);
     }
 
+    @Test
+    public void testParallelImportMatchesSingleThread() throws Exception {
+        makeSnapshot();
+        List<ECKeyPair> keys = Lists.newArrayList(ECKeyPair.fromPrivateKey(secretkey_1), poolKey);
+
+        SnapshotStoreImpl single = new SnapshotStoreImpl(snapshotSource);
+        single.setImportThreads(1);
+        BlockStore singleStore = importStore(single, keys);
+
+        SnapshotStoreImpl parallel = new SnapshotStoreImpl(snapshotSource);
+        parallel.setImportThreads(4);
+        BlockStore parallelStore = importStore(parallel, keys);
+
+        assertEquals(single.getAllBalance(), parallel.getAllBalance());
+        assertEquals(single.getOurBalance(), parallel.getOurBalance());
+        assertTrue(parallel.getOurBalance().compareTo(XAmount.ZERO) > 0);
+
+        // blocks stored with their raw data are matched to the second key by the signature check
+        BlockInfo info = parallelStore.getBlockInfo(address2);
+        assertNotNull(info);
+        assertTrue((info.getFlags() & BI_OURS) != 0);
+        assertEquals(1, parallelStore.getKeyIndexByHash(address2));
+        assertEquals(singleStore.getBlockInfo(address3), parallelStore.getBlockInfo(address3));
+    }
+
+    private BlockStore importStore(SnapshotStoreImpl store, List<ECKeyPair> keys) throws IOException {
+        Config importConfig = new DevnetConfig();
+        importConfig.getNodeSpec().setStoreDir(root2.newFolder().getAbsolutePath());
+        importConfig.getNodeSpec().setStoreBackupDir(root2.newFolder().getAbsolutePath());
+        RocksdbFactory factory = new RocksdbFactory(importConfig);
+        BlockStore blockStore = new BlockStoreImpl(
+                factory.getDB(DatabaseName.INDEX),
+                factory.getDB(DatabaseName.TIME),
+                factory.getDB(DatabaseName.BLOCK),
+                factory.getDB(DatabaseName.TXHISTORY));
+        blockStore.reset();
+        store.saveSnapshotToIndex(blockStore, kernel.getTxHistoryStore(), keys, 0);
+        return blockStore;
+    }
+
     public void makeSnapshot() throws IOException {
         dataConfig.getNodeSpec().setStoreDir(backup.getAbsolutePath());
         dataConfig.getNodeSpec().setStoreBackupDir(root2.newFolder().getAbsolutePath());
@@ -0,0 +1,124 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.XAmount;
+import io.xdag.core.XUnit;
+import io.xdag.db.AddressStore;
+import io.xdag.utils.BytesUtils;
+import java.util.concurrent.CompletableFuture;
+import org.apache.tuweni.units.bigints.UInt64;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AddressStoreImplTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+    KVSource<byte[], byte[]> addressSource;
+    AddressStoreImpl addressStore;
+    byte[] address = Hex.decode("fb3fb15072826ffa5f5b6c123029798a27cd0c64");
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+        DatabaseFactory factory = new RocksdbFactory(config);
+        addressSource = factory.getDB(DatabaseName.ADDRESS);
+        addressStore = new AddressStoreImpl(addressSource);
+        addressStore.reset();
+    }
+
+    @Test
+    public void testReadsDoNotWrite() {
+        assertEquals(UInt64.ZERO, addressStore.getExecutedNonceNum(address));
+        assertEquals(UInt64.ZERO, addressStore.getTxQuantity(address));
+        assertFalse(addressStore.addressIsExist(address));
+        assertNull(addressSource.get(BytesUtils.merge(AddressStore.EXECUTED_NONCE_NUM, address)));
+    }
+
+    @Test
+    public void testWritesAreFlushedOnCommit() throws Exception {
+        byte[] balanceKey = BytesUtils.merge(AddressStore.ADDRESS, address);
+        try (UnitOfWork ignored = UnitOfWork.begin()) {
+            for (int i = 1; i <= 100; i++) {
+                addressStore.updateBalance(address, XAmount.of(i, XUnit.XDAG));
+                addressStore.updateExcutedNonceNum(address, true);
+            }
+            addressStore.updateAllBalance(XAmount.of(100, XUnit.XDAG));
+
+            assertEquals(XAmount.of(100, XUnit.XDAG), addressStore.getBalanceByAddress(address));
+            assertEquals(UInt64.valueOf(100), addressStore.getExecutedNonceNum(address));
+            assertEquals(UInt64.ONE, addressStore.getAddressSize());
+            // nothing is staged before the commit, other threads see the committed state
+            assertNull(addressSource.get(balanceKey));
+            assertEquals(XAmount.ZERO, CompletableFuture.supplyAsync(() -> addressStore.getBalanceByAddress(address)).get());
+            assertEquals(XAmount.ZERO, CompletableFuture.supplyAsync(() -> addressStore.getAllBalance()).get());
+        }
+        assertEquals(XAmount.of(100, XUnit.XDAG), addressStore.getBalanceByAddress(address));
+        assertEquals(XAmount.of(100, XUnit.XDAG), addressStore.getAllBalance());
+        assertArrayEquals(XAmount.of(100, XUnit.XDAG).toXAmount().toBytes().toArray(), addressSource.get(balanceKey));
+
+        // a new instance reads the flushed state from the database
+        AddressStoreImpl reopened = new AddressStoreImpl(addressSource);
+        reopened.start();
+        assertEquals(XAmount.of(100, XUnit.XDAG), reopened.getBalanceByAddress(address));
+        assertEquals(UInt64.valueOf(100), reopened.getExecutedNonceNum(address));
+        assertEquals(UInt64.ONE, reopened.getAddressSize());
+        assertEquals(XAmount.of(100, XUnit.XDAG), reopened.getAllBalance());
+    }
+
+    @Test
+    public void testRollbackDropsPendingState() {
+        addressStore.updateBalance(address, XAmount.of(5, XUnit.XDAG));
+        addressStore.updateAllBalance(XAmount.of(5, XUnit.XDAG));
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            addressStore.updateBalance(address, XAmount.of(1, XUnit.XDAG));
+            addressStore.updateBalance(Hex.decode("0000000000000000000000000000000000000001"), XAmount.of(4, XUnit.XDAG));
+            addressStore.updateAllBalance(XAmount.ZERO);
+            addressStore.updateTxQuantity(address, UInt64.valueOf(3));
+            uow.setRollbackOnly();
+        }
+        assertEquals(XAmount.of(5, XUnit.XDAG), addressStore.getBalanceByAddress(address));
+        assertEquals(XAmount.of(5, XUnit.XDAG), addressStore.getAllBalance());
+        assertEquals(UInt64.ONE, addressStore.getAddressSize());
+        assertEquals(UInt64.ZERO, addressStore.getTxQuantity(address));
+        assertFalse(addressStore.addressIsExist(Hex.decode("0000000000000000000000000000000000000001")));
+        assertTrue(addressStore.addressIsExist(address));
+    }
+}
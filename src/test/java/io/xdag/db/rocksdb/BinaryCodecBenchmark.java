@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import io.xdag.core.BlockInfo;
+import io.xdag.core.SnapshotInfo;
+import io.xdag.core.XAmount;
+import io.xdag.core.XdagStats;
+import io.xdag.core.XdagTopStatus;
+import io.xdag.utils.UInt128;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.units.bigints.UInt64;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link BinaryCodec} with the former shared, synchronized Kryo path of BlockStoreImpl.
+ * <p>
+ * Not a unit test, run it with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.xdag.db.rocksdb.BinaryCodecBenchmark} or from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryCodecBenchmark {
+
+    private final Kryo kryo = new Kryo();
+
+    private BlockInfo info;
+    private byte[] kryoBytes;
+    private byte[] binaryBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        kryo.setReferences(false);
+        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        kryo.register(UInt128.class, new LegacyKryoCodec.UInt128Serializer());
+        kryo.register(byte[].class);
+        kryo.register(BlockInfo.class);
+        kryo.register(XdagStats.class);
+        kryo.register(XdagTopStatus.class);
+        kryo.register(SnapshotInfo.class);
+        kryo.register(UInt64.class);
+        kryo.register(XAmount.class);
+
+        info = new BlockInfo();
+        info.setType(0x0000000000000551L);
+        info.setFlags(0x1f);
+        info.setHeight(2_000_000);
+        info.setTimestamp(1602951025307L);
+        info.setDifficulty(UInt128.valueOf(new BigInteger("31354286420799284945296")));
+        info.setAmount(XAmount.of(64_000_000_000L));
+        info.setFee(XAmount.of(100_000_000L));
+        info.setHash(new byte[32]);
+        info.setHashlow(new byte[32]);
+        info.setRef(new byte[32]);
+        info.setMaxDiffLink(new byte[32]);
+
+        kryoBytes = kryoSerialize(info);
+        binaryBytes = BinaryCodec.encodeBlockInfo(info);
+    }
+
+    private byte[] kryoSerialize(Object obj) {
+        synchronized (kryo) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            Output output = new Output(outputStream);
+            kryo.writeObject(output, obj);
+            output.flush();
+            output.close();
+            return outputStream.toByteArray();
+        }
+    }
+
+    private <T> T kryoDeserialize(byte[] bytes, Class<T> type) {
+        synchronized (kryo) {
+            Input input = new Input(new ByteArrayInputStream(bytes));
+            return kryo.readObject(input, type);
+        }
+    }
+
+    @Benchmark
+    public byte[] kryoEncode() {
+        return kryoSerialize(info);
+    }
+
+    @Benchmark
+    public BlockInfo kryoDecode() {
+        return kryoDeserialize(kryoBytes, BlockInfo.class);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() throws Exception {
+        return BinaryCodec.encodeBlockInfo(info);
+    }
+
+    @Benchmark
+    public BlockInfo binaryDecode() throws Exception {
+        return BinaryCodec.decodeBlockInfo(binaryBytes);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public BlockInfo kryoDecodeContended() {
+        return kryoDeserialize(kryoBytes, BlockInfo.class);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public BlockInfo binaryDecodeContended() throws Exception {
+        return BinaryCodec.decodeBlockInfo(binaryBytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BinaryCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.core.BlockInfo;
+import io.xdag.core.SnapshotInfo;
+import io.xdag.core.XAmount;
+import io.xdag.core.XdagStats;
+import io.xdag.core.XdagTopStatus;
+import io.xdag.db.execption.DeserializationException;
+import io.xdag.db.execption.SerializationException;
+import io.xdag.utils.UInt128;
+import java.math.BigInteger;
+import org.junit.Test;
+
+public class BinaryCodecTest {
+
+    private static byte[] hash(int seed) {
+        byte[] hash = new byte[32];
+        for (int i = 0; i < hash.length; i++) {
+            hash[i] = (byte) (seed + i);
+        }
+        return hash;
+    }
+
+    @Test
+    public void testBlockInfoRoundTrip() throws SerializationException, DeserializationException {
+        BlockInfo info = new BlockInfo();
+        info.setType(0x0000000000000551L);
+        info.setFlags(0x1f);
+        info.setHeight(123456);
+        info.setTimestamp(1602951025307L);
+        info.setDifficulty(UInt128.valueOf(new BigInteger("31354286420799284945296")));
+        info.setAmount(XAmount.of(1024));
+        info.setFee(XAmount.TEN);
+        info.setHash(hash(1));
+        info.setHashlow(hash(2));
+        info.setRef(hash(3));
+        info.setMaxDiffLink(hash(4));
+        info.setRemark("hello".getBytes());
+        info.setSnapshot(true);
+        info.setSnapshotInfo(new SnapshotInfo(true, hash(5)));
+
+        byte[] encoded = BinaryCodec.encodeBlockInfo(info);
+        assertTrue(BinaryCodec.isEncoded(encoded, BinaryCodec.KIND_BLOCK_INFO));
+        assertEquals(BinaryCodec.BI_FIXED_SIZE + 5 + 32, encoded.length);
+
+        BlockInfo decoded = BinaryCodec.decodeBlockInfo(encoded);
+        assertEquals(info, decoded);
+        assertEquals(info.getDifficulty(), decoded.getDifficulty());
+        assertEquals(info.getAmount(), decoded.getAmount());
+        assertEquals(info.getFee(), decoded.getFee());
+        assertArrayEquals(info.getHashlow(), decoded.getHashlow());
+        assertArrayEquals(info.getRef(), decoded.getRef());
+        assertArrayEquals(info.getMaxDiffLink(), decoded.getMaxDiffLink());
+        assertArrayEquals(info.getRemark(), decoded.getRemark());
+        assertTrue(decoded.isSnapshot());
+        assertTrue(decoded.getSnapshotInfo().getType());
+        assertArrayEquals(info.getSnapshotInfo().getData(), decoded.getSnapshotInfo().getData());
+    }
+
+    @Test
+    public void testBlockInfoNullFields() throws SerializationException, DeserializationException {
+        BlockInfo info = new BlockInfo();
+        info.setHashlow(hash(7));
+        info.setAmount(null);
+
+        BlockInfo decoded = BinaryCodec.decodeBlockInfo(BinaryCodec.encodeBlockInfo(info));
+        assertNull(decoded.getHash());
+        assertNull(decoded.getRef());
+        assertNull(decoded.getDifficulty());
+        assertNull(decoded.getRemark());
+        assertNull(decoded.getSnapshotInfo());
+        assertNull(decoded.getAmount());
+        assertEquals(XAmount.ZERO, decoded.getFee());
+        assertFalse(decoded.isSnapshot());
+        assertArrayEquals(info.getHashlow(), decoded.getHashlow());
+    }
+
+    @Test
+    public void testLegacyMigration() throws SerializationException, DeserializationException {
+        BlockInfo info = new BlockInfo();
+        info.setHeight(100);
+        info.setHash(hash(1));
+        info.setHashlow(hash(2));
+        info.setDifficulty(UInt128.valueOf(10));
+
+        byte[] legacy = LegacyKryoCodec.serialize(info);
+        assertFalse(BinaryCodec.isEncoded(legacy, BinaryCodec.KIND_BLOCK_INFO));
+        BlockInfo migrated = BinaryCodec.readBlockInfo(BinaryCodec.encodeBlockInfo(BinaryCodec.readBlockInfo(legacy)));
+        assertEquals(info, migrated);
+        assertEquals(info.getDifficulty(), migrated.getDifficulty());
+    }
+
+    @Test(expected = DeserializationException.class)
+    public void testCorruptedLength() throws SerializationException, DeserializationException {
+        BlockInfo info = new BlockInfo();
+        info.setRemark(new byte[]{1, 2, 3});
+        byte[] encoded = BinaryCodec.encodeBlockInfo(info);
+        byte[] truncated = new byte[encoded.length - 1];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        BinaryCodec.decodeBlockInfo(truncated);
+    }
+
+    @Test
+    public void testXdagStatsRoundTrip() throws SerializationException, DeserializationException {
+        XdagStats stats = new XdagStats();
+        stats.init(UInt128.valueOf(0x123456789L), 10, 20);
+        stats.setNhosts(3);
+        stats.setTotalnhosts(5);
+        stats.setNwaitsync(6);
+        stats.setNnoref(7);
+        stats.setNextra(8);
+        stats.setMaintime(9);
+        stats.setBalance(XAmount.of(11));
+        stats.setOurLastBlockHash(hash(9));
+
+        XdagStats decoded = BinaryCodec.readXdagStats(BinaryCodec.encodeXdagStats(stats));
+        assertEquals(stats.getDifficulty(), decoded.getDifficulty());
+        assertEquals(stats.getMaxdifficulty(), decoded.getMaxdifficulty());
+        assertEquals(stats.getNblocks(), decoded.getNblocks());
+        assertEquals(stats.getTotalnmain(), decoded.getTotalnmain());
+        assertEquals(stats.getNhosts(), decoded.getNhosts());
+        assertEquals(stats.getTotalnhosts(), decoded.getTotalnhosts());
+        assertEquals(stats.getNwaitsync(), decoded.getNwaitsync());
+        assertEquals(stats.getNnoref(), decoded.getNnoref());
+        assertEquals(stats.getNextra(), decoded.getNextra());
+        assertEquals(stats.getMaintime(), decoded.getMaintime());
+        assertEquals(stats.getBalance(), decoded.getBalance());
+        assertNull(decoded.getGlobalMiner());
+        assertArrayEquals(stats.getOurLastBlockHash(), decoded.getOurLastBlockHash());
+    }
+
+    @Test
+    public void testTopStatusRoundTrip() throws SerializationException, DeserializationException {
+        XdagTopStatus status = new XdagTopStatus();
+        status.setTop(hash(1));
+        status.setTopDiff(UInt128.MAX_VALUE);
+
+        XdagTopStatus decoded = BinaryCodec.readTopStatus(BinaryCodec.encodeTopStatus(status));
+        assertArrayEquals(status.getTop(), decoded.getTop());
+        assertEquals(status.getTopDiff(), decoded.getTopDiff());
+        assertNull(decoded.getPreTop());
+        assertEquals(UInt128.ZERO, decoded.getPreTopDiff());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.utils.BytesUtils;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static io.xdag.db.OrphanBlockStore.ORPHAN_PREFEX;
+import static io.xdag.db.OrphanBlockStore.ORPHAN_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedHeapTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    @Test
+    public void testMatchesPriorityQueue() {
+        IndexedHeap<Integer> heap = new IndexedHeap<>(4, Comparator.naturalOrder());
+        PriorityQueue<Integer> expected = new PriorityQueue<>();
+        Random random = new Random(7);
+        List<Integer> added = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            int op = random.nextInt(4);
+            if (op < 2 || added.isEmpty()) {
+                int v = random.nextInt(5000);
+                assertEquals(!expected.contains(v), heap.offer(v));
+                if (!expected.contains(v)) {
+                    expected.offer(v);
+                    added.add(v);
+                }
+            } else if (op == 2) {
+                Integer v = added.remove(random.nextInt(added.size()));
+                assertEquals(expected.remove(v), heap.remove(v));
+            } else {
+                Integer v = expected.poll();
+                assertEquals(v, heap.poll());
+                added.remove(v);
+            }
+            assertEquals(expected.size(), heap.size());
+            assertEquals(expected.peek(), heap.peek());
+        }
+        while (!expected.isEmpty()) {
+            assertEquals(expected.poll(), heap.poll());
+        }
+        assertNull(heap.poll());
+    }
+
+    @Test
+    public void testContainsAndRemove() {
+        IndexedHeap<String> heap = new IndexedHeap<>(1, Comparator.naturalOrder());
+        heap.offer("b");
+        heap.offer("a");
+        heap.offer("c");
+        assertTrue(heap.contains("b"));
+        assertTrue(heap.remove("b"));
+        assertFalse(heap.contains("b"));
+        assertFalse(heap.remove("b"));
+        assertEquals("a", heap.poll());
+        assertEquals("c", heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testOrphanCountRecountedOnStart() {
+        Config config = new DevnetConfig();
+        config.getNodeSpec().setStoreDir(root.getRoot().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.getRoot().getAbsolutePath());
+        RocksdbFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> source = factory.getDB(DatabaseName.ORPHANIND);
+        source.init();
+        source.reset();
+        // stale size left by an unclean shutdown
+        source.put(ORPHAN_SIZE, BytesUtils.longToBytes(5, false));
+        for (int i = 0; i < 3; i++) {
+            byte[] key = new byte[34];
+            key[0] = ORPHAN_PREFEX;
+            key[1] = (byte) (i + 1);
+            source.put(key, new byte[36]);
+        }
+
+        OrphanBlockStoreImpl store = new OrphanBlockStoreImpl(source, null);
+        store.start();
+        assertEquals(3, store.getOrphanCount());
+        assertEquals(3, store.getLinkQueue().size());
+        assertEquals(3, BytesUtils.bytesToLong(source.get(ORPHAN_SIZE), 0, false));
+        store.stop();
+    }
+}
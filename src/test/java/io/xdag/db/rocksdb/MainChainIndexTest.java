@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class MainChainIndexTest {
+
+    private static byte[] hashlow(long height) {
+        byte[] hashlow = new byte[32];
+        for (int i = 8; i < 32; i++) {
+            hashlow[i] = (byte) (height + i);
+        }
+        return hashlow;
+    }
+
+    @Test
+    public void testSetGetAndTruncate() {
+        MainChainIndex index = new MainChainIndex();
+        long last = MainChainIndex.CHUNK_HEIGHTS + 10;
+        for (long h = 1; h <= last; h++) {
+            index.set(h, hashlow(h));
+        }
+        assertEquals(last, index.top());
+        assertEquals(2L * MainChainIndex.CHUNK_HEIGHTS * 32, index.capacityBytes());
+        assertArrayEquals(hashlow(1), index.get(1));
+        assertArrayEquals(hashlow(MainChainIndex.CHUNK_HEIGHTS), index.get(MainChainIndex.CHUNK_HEIGHTS));
+        assertNull(index.get(0));
+        assertNull(index.get(last + 1));
+
+        index.truncate(MainChainIndex.CHUNK_HEIGHTS - 1);
+        assertEquals(MainChainIndex.CHUNK_HEIGHTS - 1, index.top());
+        assertNull(index.get(MainChainIndex.CHUNK_HEIGHTS));
+        assertArrayEquals(hashlow(MainChainIndex.CHUNK_HEIGHTS - 1), index.get(MainChainIndex.CHUNK_HEIGHTS - 1));
+
+        // a reorg sets the dropped heights again with other blocks
+        index.set(MainChainIndex.CHUNK_HEIGHTS, hashlow(7));
+        assertArrayEquals(hashlow(7), index.get(MainChainIndex.CHUNK_HEIGHTS));
+        assertNull(index.get(MainChainIndex.CHUNK_HEIGHTS + 1));
+
+        index.clear();
+        assertEquals(0, index.top());
+        assertNull(index.get(1));
+    }
+
+    @Test
+    public void testRollbackRestoresIndex() {
+        MainChainIndex index = new MainChainIndex();
+        index.set(1, hashlow(1));
+        index.set(2, hashlow(2));
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            byte[] old = index.get(2);
+            index.truncate(1);
+            uow.onRollback(() -> index.set(2, old));
+            index.set(2, hashlow(20));
+            uow.onRollback(() -> index.truncate(1));
+            uow.setRollbackOnly();
+        }
+        // hooks undo in reverse order so the original block is back
+        assertArrayEquals(hashlow(2), index.get(2));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.Kernel;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Block;
+import io.xdag.core.BlockInfo;
+import io.xdag.core.Blockchain;
+import io.xdag.core.XAmount;
+import io.xdag.core.XUnit;
+import io.xdag.core.XdagStats;
+import io.xdag.db.AddressStore;
+import io.xdag.db.BlockStore;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.units.bigints.UInt64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static io.xdag.db.OrphanBlockStore.MAX_ORPHAN_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OrphanBlockStoreImplTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    private RocksdbFactory factory;
+    private OrphanBlockStoreImpl store;
+    private long nextHash;
+
+    @Before
+    public void setUp() throws Exception {
+        Config config = new DevnetConfig();
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+        factory = new RocksdbFactory(config);
+
+        Kernel kernel = mock(Kernel.class);
+        AddressStore addressStore = mock(AddressStore.class);
+        when(addressStore.getExecutedNonceNum(any())).thenReturn(UInt64.ZERO);
+        Blockchain blockchain = mock(Blockchain.class);
+        when(blockchain.getXdagStats()).thenReturn(new XdagStats());
+        when(kernel.getAddressStore()).thenReturn(addressStore);
+        when(kernel.getBlockchain()).thenReturn(blockchain);
+        when(kernel.getBlockStore()).thenReturn(mock(BlockStore.class));
+
+        store = new OrphanBlockStoreImpl(factory.getDB(DatabaseName.ORPHANIND), kernel);
+        store.start();
+        store.reset();
+    }
+
+    @After
+    public void tearDown() {
+        store.stop();
+        factory.close();
+    }
+
+    @Test
+    public void testReplaceByFee() {
+        byte[] sender = address(1);
+        addTx(sender, 1, 200);
+        // below capacity the pool policy never turns a block away
+        assertTrue(store.admit(sender, UInt64.ONE, XAmount.of(210, XUnit.MILLI_XDAG)));
+
+        addTx(sender, 1, 220);
+        assertEquals(1, store.getOrphanSize());
+        assertEquals(1, store.getOrphanCount());
+        assertEquals(XAmount.of(220, XUnit.MILLI_XDAG).toXAmount().toLong(),
+                store.getEvictionQueue().peek().getFee());
+    }
+
+    @Test
+    public void testEvictCheapestWithDependants() {
+        // cheap first nonce followed by a rich one, both unusable once the first one is gone
+        byte[] poor = address(0);
+        addTx(poor, 1, 50);
+        addTx(poor, 2, 500);
+        for (int i = 1; i <= MAX_ORPHAN_SIZE - 2; i++) {
+            addTx(address(i), 1, 100);
+        }
+        assertEquals(MAX_ORPHAN_SIZE, store.getOrphanSize());
+
+        byte[] payer = address(100000);
+        assertFalse(store.admit(payer, UInt64.ONE, XAmount.of(50, XUnit.MILLI_XDAG)));
+        assertTrue(store.admit(payer, UInt64.ONE, XAmount.of(60, XUnit.MILLI_XDAG)));
+
+        addTx(payer, 1, 60);
+        assertEquals(MAX_ORPHAN_SIZE - 1, store.getOrphanSize());
+        assertEquals(MAX_ORPHAN_SIZE - 1, store.getOrphanCount());
+        assertFalse(store.getAccountTxIndex().containsKey(Bytes.wrap(Bytes.wrap(poor), Bytes.ofUnsignedLong(2))));
+        // now there is room again
+        assertTrue(store.admit(address(100001), UInt64.ONE, XAmount.of(1, XUnit.MILLI_XDAG)));
+    }
+
+    @Test
+    public void testEvictionSparesPredecessorsOfAdded() {
+        byte[] sender = address(0);
+        addTx(sender, 1, 50);
+        for (int i = 1; i <= MAX_ORPHAN_SIZE - 1; i++) {
+            addTx(address(i), 1, 100);
+        }
+        assertEquals(MAX_ORPHAN_SIZE, store.getOrphanSize());
+
+        // the cheapest entry is the first nonce of the sender, evicting it would take the new one along
+        assertTrue(store.admit(sender, UInt64.valueOf(2), XAmount.of(500, XUnit.MILLI_XDAG)));
+        addTx(sender, 2, 500);
+        assertEquals(MAX_ORPHAN_SIZE, store.getOrphanSize());
+        assertTrue(store.getAccountTxIndex().containsKey(Bytes.wrap(Bytes.wrap(sender), Bytes.ofUnsignedLong(1))));
+        assertTrue(store.getAccountTxIndex().containsKey(Bytes.wrap(Bytes.wrap(sender), Bytes.ofUnsignedLong(2))));
+        assertEquals(XAmount.of(50, XUnit.MILLI_XDAG).toXAmount().toLong(), store.getEvictionQueue().peek().getFee());
+    }
+
+    @Test
+    public void testReplacementIsUndoneOnRollback() {
+        byte[] sender = address(1);
+        addTx(sender, 1, 200);
+        long replaced = XAmount.of(200, XUnit.MILLI_XDAG).toXAmount().toLong();
+        long replacement = XAmount.of(300, XUnit.MILLI_XDAG).toXAmount().toLong();
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            addTx(sender, 1, 300);
+            assertFalse(store.getEvictionQueue().stream().anyMatch(m -> m.getFee() == replaced));
+            uow.setRollbackOnly();
+        }
+        // the replaced transaction is back in the queues, the replacement is gone
+        assertTrue(store.getEvictionQueue().stream().anyMatch(m -> m.getFee() == replaced));
+        assertFalse(store.getEvictionQueue().stream().anyMatch(m -> m.getFee() == replacement));
+        assertEquals(1, store.getEvictionQueue().size());
+        assertEquals(1, store.getOrphanCount());
+    }
+
+    private void addTx(byte[] sender, long nonce, long feeMilli) {
+        BlockInfo info = new BlockInfo();
+        byte[] hashlow = new byte[32];
+        System.arraycopy(Bytes32.fromHexStringLenient(Long.toHexString(++nextHash)).toArray(), 8, hashlow, 8, 24);
+        info.setHashlow(hashlow);
+        info.setTimestamp(nextHash);
+        store.addOrphan(new Block(info), true, UInt64.valueOf(nonce), XAmount.of(feeMilli, XUnit.MILLI_XDAG), sender);
+    }
+
+    private static byte[] address(int n) {
+        byte[] address = new byte[20];
+        address[0] = 1;
+        address[16] = (byte) (n >>> 24);
+        address[17] = (byte) (n >>> 16);
+        address[18] = (byte) (n >>> 8);
+        address[19] = (byte) n;
+        return address;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RawBlockSegmentStoreTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    private static byte[] record(int seed) {
+        byte[] raw = new byte[RawBlockSegmentStore.RECORD_SIZE];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) (seed + i);
+        }
+        return raw;
+    }
+
+    @Test
+    public void testAppendAndReopen() throws Exception {
+        Path dir = root.newFolder().toPath();
+        RawBlockSegmentStore store = new RawBlockSegmentStore(dir, true);
+        store.start();
+        long time = 0x17a00000000L;
+        byte[] first = store.append(time, record(1));
+        byte[] second = store.append(time + 1, record(2));
+        // another time partition goes to another segment
+        byte[] third = store.append(time + (1L << RawBlockSegmentStore.PARTITION_BITS), record(3));
+        assertEquals(RawBlockSegmentStore.LOCATION_SIZE, first.length);
+        assertEquals(2, store.segmentCount());
+        assertArrayEquals(record(2), store.read(second).toArray());
+        store.stop();
+
+        RawBlockSegmentStore reopened = new RawBlockSegmentStore(dir, true);
+        reopened.start();
+        assertEquals(2, reopened.segmentCount());
+        assertArrayEquals(record(1), reopened.read(first).toArray());
+        assertArrayEquals(record(3), reopened.read(third).toArray());
+        // appends continue after the records already stored
+        byte[] fourth = reopened.append(time + 2, record(4));
+        assertArrayEquals(record(4), reopened.read(fourth).toArray());
+        assertArrayEquals(record(2), reopened.read(second).toArray());
+        assertNull(reopened.read(new byte[]{0, 0, 0, 9, 0, 0, 0, 0}));
+    }
+
+    @Test
+    public void testAppendInUnitOfWorkIsReadableAfterCommit() throws Exception {
+        Path dir = root.newFolder().toPath();
+        RawBlockSegmentStore store = new RawBlockSegmentStore(dir, true);
+        store.start();
+        byte[] location;
+        try (UnitOfWork ignored = UnitOfWork.begin()) {
+            location = store.append(1L << 40, record(6));
+        }
+        // no stop(), the record was forced when the unit committed
+        RawBlockSegmentStore reopened = new RawBlockSegmentStore(dir, true);
+        reopened.start();
+        assertArrayEquals(record(6), reopened.read(location).toArray());
+    }
+
+    @Test(expected = java.nio.ReadOnlyBufferException.class)
+    public void testReadIsReadOnly() throws Exception {
+        RawBlockSegmentStore store = new RawBlockSegmentStore(root.newFolder().toPath(), true);
+        store.start();
+        byte[] location = store.append(1L << 40, record(5));
+        store.read(location).set(0, (byte) 1);
+    }
+}
@@ -24,6 +24,7 @@
 
 package io.xdag.db.rocksdb;
 import io.xdag.crypto.hash.HashUtils;
+import io.xdag.config.AbstractConfig;
 import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
 import io.xdag.utils.BlockUtils;
@@ -35,10 +36,19 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class RocksdbKVSourceTest {
 
@@ -102,4 +112,103 @@ public class RocksdbKVSourceTest {
         List<byte[]> values = indexSource.prefixValueLookup(key);
         assertEquals(2, values.size());
     }
+
+    @Test
+    public void testColumnFamilyMode() {
+        ((AbstractConfig) config).setStoreColumnFamilies(true);
+        RocksdbFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        KVSource<byte[], byte[]> timeSource = factory.getDB(DatabaseName.TIME);
+        indexSource.init();
+        timeSource.init();
+
+        byte[] key = Hex.decode("FFFF");
+        indexSource.put(key, Hex.decode("1234"));
+        assertNull(timeSource.get(key));
+
+        timeSource.put(key, Hex.decode("2345"));
+        timeSource.reset();
+        assertNull(timeSource.get(key));
+        assertEquals("1234", Hex.toHexString(indexSource.get(key)));
+        factory.close();
+
+        assertTrue(Files.exists(Paths.get(config.getNodeSpec().getStoreDir(), RocksdbSharedDb.DB_NAME, "CURRENT")));
+        assertFalse(Files.exists(Paths.get(config.getNodeSpec().getStoreDir(), DatabaseName.INDEX.toString())));
+    }
+
+    @Test
+    public void testMigrateToColumnFamilies() throws Exception {
+        RocksdbFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        indexSource.init();
+        for (int i = 0; i < 100; i++) {
+            indexSource.put(new byte[]{(byte) i}, new byte[]{(byte) i, 1});
+        }
+        factory.close();
+
+        long count = RocksdbMigration.migrateToColumnFamilies(config,
+                new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(100, count);
+        assertTrue(Files.exists(Paths.get(config.getNodeSpec().getStoreDir(), RocksdbMigration.MIGRATED_DIR,
+                DatabaseName.INDEX.toString())));
+
+        ((AbstractConfig) config).setStoreColumnFamilies(true);
+        factory = new RocksdbFactory(config);
+        indexSource = factory.getDB(DatabaseName.INDEX);
+        indexSource.init();
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(new byte[]{(byte) i, 1}, indexSource.get(new byte[]{(byte) i}));
+        }
+        factory.close();
+    }
+
+    @Test
+    public void testCursorMultiGetAndSnapshot() {
+        RocksdbFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> source = factory.getDB(DatabaseName.INDEX);
+        source.init();
+        for (int i = 1; i <= 5; i++) {
+            source.put(new byte[]{0x30, (byte) i}, new byte[]{(byte) i});
+        }
+        source.put(new byte[]{0x40, 1}, new byte[]{9});
+
+        List<Integer> seen = new ArrayList<>();
+        try (KVCursor<byte[], byte[]> cursor = source.cursor(new byte[]{0x30, 2}, new byte[]{0x30, 5})) {
+            while (cursor.next()) {
+                seen.add((int) cursor.value()[0]);
+            }
+        }
+        assertEquals(List.of(2, 3, 4), seen);
+
+        KVSnapshot<byte[], byte[]> snapshot = source.snapshot();
+        try (UnitOfWork ignored = UnitOfWork.begin()) {
+            source.delete(new byte[]{0x30, 1});
+            source.put(new byte[]{0x30, 6}, new byte[]{6});
+            seen.clear();
+            try (KVCursor<byte[], byte[]> cursor = source.prefixCursor(new byte[]{0x30})) {
+                while (cursor.next()) {
+                    seen.add((int) cursor.value()[0]);
+                }
+            }
+            assertEquals(List.of(2, 3, 4, 5, 6), seen);
+            List<byte[]> values = source.multiGet(List.of(new byte[]{0x30, 1}, new byte[]{0x30, 6}, new byte[]{0x30, 2}));
+            assertNull(values.get(0));
+            assertArrayEquals(new byte[]{6}, values.get(1));
+            assertArrayEquals(new byte[]{2}, values.get(2));
+        }
+
+        // the snapshot still sees the state before the unit of work
+        assertArrayEquals(new byte[]{1}, snapshot.get(new byte[]{0x30, 1}));
+        assertNull(snapshot.multiGet(List.of(new byte[]{0x30, 6})).get(0));
+        try (KVCursor<byte[], byte[]> cursor = snapshot.cursor(null, null)) {
+            int count = 0;
+            while (cursor.next()) {
+                count++;
+            }
+            assertEquals(6, count);
+        }
+        snapshot.close();
+        assertNull(source.get(new byte[]{0x30, 1}));
+        factory.close();
+    }
 }
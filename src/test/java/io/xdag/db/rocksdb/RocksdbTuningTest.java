@@ -0,0 +1,111 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import java.util.Map;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.CompressionType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RocksdbTuningTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    @Test
+    public void testDefaultProfileKeepsStoreSettings() {
+        RocksdbTuning tuning = RocksdbTuning.of(RocksdbTuning.DEFAULT_PROFILE, DatabaseName.INDEX.name(), null);
+        assertEquals(16, tuning.getBlockSize());
+        assertEquals(32, tuning.getBlockCacheSize());
+        assertEquals(10, tuning.getBloomBitsPerKey());
+        assertEquals(CompressionType.LZ4_COMPRESSION, tuning.getCompression());
+        assertEquals(CompressionType.LZ4_COMPRESSION, tuning.getBottommostCompression());
+        assertEquals(0, tuning.getRateLimit());
+        assertFalse(tuning.isDirectIO());
+        assertEquals(64, RocksdbTuning.of(RocksdbTuning.DEFAULT_PROFILE, DatabaseName.ORPHANIND.name(), null)
+                .getWriteBufferSize());
+    }
+
+    @Test
+    public void testProfilesTuneStores() {
+        RocksdbTuning address = RocksdbTuning.of(RocksdbTuning.SSD_HIGH_THROUGHPUT, DatabaseName.ADDRESS.name(), null);
+        assertEquals(4, address.getBlockSize());
+        assertTrue(address.isDirectIO());
+
+        RocksdbTuning time = RocksdbTuning.of(RocksdbTuning.HDD_ARCHIVE, DatabaseName.TIME.name(), null);
+        assertEquals(64, time.getBlockSize());
+        assertEquals(CompressionType.ZSTD_COMPRESSION, time.getBottommostCompression());
+        assertEquals(64, time.getRateLimit());
+
+        RocksdbTuning orphan = RocksdbTuning.of(RocksdbTuning.LOW_MEMORY, DatabaseName.ORPHANIND.name(), null);
+        assertEquals(8, orphan.getBlockCacheSize());
+        assertEquals(8, orphan.getWriteBufferSize());
+    }
+
+    @Test
+    public void testOverridesAndUnknownProfile() {
+        RocksdbTuning tuning = RocksdbTuning.of("no-such-profile", DatabaseName.BLOCK.name(),
+                Map.of("blockSize", "32", "compression", "zstd", "bloomBitsPerKey", "0", "writeBufferSize", "bad"));
+        assertEquals(32, tuning.getBlockSize());
+        assertEquals(CompressionType.ZSTD_COMPRESSION, tuning.getCompression());
+        assertEquals(0, tuning.getBloomBitsPerKey());
+        assertEquals(64, tuning.getWriteBufferSize());
+        assertEquals("kZSTD", tuning.columnFamilyProperties().getProperty("compression"));
+    }
+
+    @Test
+    public void testOpenStoresWithProfiles() throws Exception {
+        for (String profile : new String[]{RocksdbTuning.SSD_HIGH_THROUGHPUT, RocksdbTuning.HDD_ARCHIVE,
+                RocksdbTuning.LOW_MEMORY}) {
+            for (boolean columnFamilies : new boolean[]{false, true}) {
+                Config config = new DevnetConfig() {
+                    {
+                        storeProfile = profile;
+                        storeColumnFamilies = columnFamilies;
+                        // direct I/O is not supported by every file system the tests run on
+                        storeTuning.put(DatabaseName.INDEX.name(), Map.of("directIO", "false"));
+                        storeTuning.put("default", Map.of("directIO", "false"));
+                    }
+                };
+                config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+                config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+                DatabaseFactory factory = new RocksdbFactory(config);
+                KVSource<byte[], byte[]> index = factory.getDB(DatabaseName.INDEX);
+                index.reset();
+                index.put(Hex.decode("FFFF"), Hex.decode("1234"));
+                assertEquals("1234", Hex.toHexString(index.get(Hex.decode("FFFF"))));
+                factory.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.tuweni.bytes.Bytes;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotFileTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+    }
+
+    private RocksdbKVSource open(String name) {
+        RocksdbKVSource source = new RocksdbKVSource(name);
+        source.setConfig(config);
+        source.init();
+        return source;
+    }
+
+    private static byte[] key(int i) {
+        return Bytes.ofUnsignedInt(i).toArray();
+    }
+
+    private Path export(int entries) throws IOException {
+        RocksdbKVSource blocks = open("EXPORT/BLOCKS");
+        RocksdbKVSource address = open("EXPORT/ADDRESS");
+        for (int i = 0; i < entries; i++) {
+            // values large enough to need several chunks
+            blocks.put(key(i), new byte[512]);
+        }
+        address.put(key(7), key(42));
+        Map<String, RocksdbKVSource> sections = new LinkedHashMap<>();
+        sections.put("SNAPSHOT/BLOCKS", blocks);
+        sections.put("SNAPSHOT/ADDRESS", address);
+        Path file = root.newFile().toPath();
+        assertEquals(entries + 1, SnapshotFile.export(file, 100, 0x1234, sections));
+        blocks.close();
+        address.close();
+        return file;
+    }
+
+    @Test
+    public void testExportAndIngest() throws Exception {
+        int entries = 3 * SnapshotFile.CHUNK_BYTES / 512;
+        Path file = export(entries);
+
+        RocksdbKVSource blocks = open("SNAPSHOT/BLOCKS");
+        RocksdbKVSource address = open("SNAPSHOT/ADDRESS");
+        Map<String, RocksdbKVSource> targets = Map.of("SNAPSHOT/BLOCKS", blocks, "SNAPSHOT/ADDRESS", address);
+        SnapshotFile.Header header = SnapshotFile.ingest(file, targets::get, root.newFolder().toPath());
+        assertEquals(100, header.getHeight());
+        assertEquals(0x1234, header.getNextTime());
+        assertEquals(entries + 1, header.getEntries());
+        assertArrayEquals(new byte[512], blocks.get(key(0)));
+        assertArrayEquals(new byte[512], blocks.get(key(entries - 1)));
+        assertNull(blocks.get(key(entries)));
+        assertArrayEquals(key(42), address.get(key(7)));
+    }
+
+    @Test
+    public void testCorruptedChunkIsRefused() throws Exception {
+        Path file = export(100);
+        byte[] data = Files.readAllBytes(file);
+        data[data.length / 2] ^= 1;
+        Files.write(file, data);
+
+        RocksdbKVSource blocks = open("SNAPSHOT/BLOCKS");
+        try {
+            SnapshotFile.ingest(file, name -> blocks, root.newFolder().toPath());
+            fail("corrupted file was ingested");
+        } catch (IOException e) {
+            assertNull(blocks.get(key(0)));
+        }
+    }
+
+    @Test
+    public void testCorruptedLaterSectionLeavesStoresUntouched() throws Exception {
+        Path file = export(100);
+        byte[] data = Files.readAllBytes(file);
+        // payload of the ADDRESS section, before its checksum, the empty chunk and the trailer
+        data[data.length - 12 - 16 - 8 - 1] ^= 1;
+        Files.write(file, data);
+
+        RocksdbKVSource blocks = open("SNAPSHOT/BLOCKS");
+        RocksdbKVSource address = open("SNAPSHOT/ADDRESS");
+        blocks.put(key(0), key(1));
+        Map<String, RocksdbKVSource> targets = Map.of("SNAPSHOT/BLOCKS", blocks, "SNAPSHOT/ADDRESS", address);
+        try {
+            SnapshotFile.ingest(file, targets::get, root.newFolder().toPath());
+            fail("corrupted file was ingested");
+        } catch (IOException e) {
+            // the intact BLOCKS section was not ingested either
+            assertArrayEquals(key(1), blocks.get(key(0)));
+            assertNull(blocks.get(key(1)));
+        }
+    }
+
+    @Test
+    public void testChunkLengthIsBounded() throws Exception {
+        Path file = export(100);
+        byte[] data = Files.readAllBytes(file);
+        // length of the first chunk: header, section name, entries
+        int offset = 28 + 2 + "SNAPSHOT/BLOCKS".length() + 4;
+        ByteBuffer.wrap(data).putInt(offset, Integer.MAX_VALUE);
+        Files.write(file, data);
+
+        RocksdbKVSource blocks = open("SNAPSHOT/BLOCKS");
+        try {
+            SnapshotFile.ingest(file, name -> blocks, root.newFolder().toPath());
+            fail("chunk length past the end of the file was accepted");
+        } catch (IOException e) {
+            assertNull(blocks.get(key(0)));
+        }
+    }
+
+    @Test
+    public void testEntryCountMustMatchPayload() throws Exception {
+        for (int entries : new int[]{101, 99}) {
+            Path file = export(100);
+            byte[] data = Files.readAllBytes(file);
+            // entry count of the first chunk: header, section name
+            int offset = 28 + 2 + "SNAPSHOT/BLOCKS".length();
+            ByteBuffer.wrap(data).putInt(offset, entries);
+            Files.write(file, data);
+
+            RocksdbKVSource blocks = open("SNAPSHOT/BLOCKS");
+            try {
+                SnapshotFile.ingest(file, name -> blocks, root.newFolder().toPath());
+                fail("entry count " + entries + " of 100 was accepted");
+            } catch (IOException e) {
+                assertNull(blocks.get(key(0)));
+            } finally {
+                blocks.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UnitOfWorkTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+    KVSource<byte[], byte[]> indexSource;
+    KVSource<byte[], byte[]> addressSource;
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+        DatabaseFactory factory = new RocksdbFactory(config);
+        indexSource = factory.getDB(DatabaseName.INDEX);
+        addressSource = factory.getDB(DatabaseName.ADDRESS);
+        indexSource.reset();
+        addressSource.reset();
+    }
+
+    @Test
+    public void testReadYourWritesAndCommit() throws Exception {
+        byte[] key = Hex.decode("3001");
+        byte[] deleted = Hex.decode("3002");
+        indexSource.put(deleted, Hex.decode("ff"));
+
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            indexSource.put(key, Hex.decode("01"));
+            indexSource.put(key, Hex.decode("02"));
+            addressSource.put(key, Hex.decode("03"));
+            indexSource.delete(deleted);
+
+            assertArrayEquals(Hex.decode("02"), indexSource.get(key));
+            assertNull(indexSource.get(deleted));
+            // other threads only see committed state
+            assertNull(CompletableFuture.supplyAsync(() -> indexSource.get(key)).get());
+            assertArrayEquals(Hex.decode("ff"), CompletableFuture.supplyAsync(() -> indexSource.get(deleted)).get());
+        }
+
+        assertNull(UnitOfWork.current());
+        assertArrayEquals(Hex.decode("02"), indexSource.get(key));
+        assertArrayEquals(Hex.decode("03"), addressSource.get(key));
+        assertNull(indexSource.get(deleted));
+    }
+
+    @Test
+    public void testNestedScopesCommitOnce() {
+        byte[] key = Hex.decode("3001");
+        try (UnitOfWork outer = UnitOfWork.begin()) {
+            try (UnitOfWork inner = UnitOfWork.begin()) {
+                assertSame(outer, inner);
+                indexSource.put(key, Hex.decode("01"));
+            }
+            assertSame(outer, UnitOfWork.current());
+            assertArrayEquals(Hex.decode("01"), indexSource.get(key));
+        }
+        assertArrayEquals(Hex.decode("01"), indexSource.get(key));
+    }
+
+    @Test
+    public void testRollback() {
+        byte[] key = Hex.decode("3001");
+        AtomicBoolean hookCalled = new AtomicBoolean();
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            indexSource.put(key, Hex.decode("01"));
+            uow.onRollback(() -> hookCalled.set(true));
+            uow.setRollbackOnly();
+        }
+        assertNull(indexSource.get(key));
+        assertEquals(true, hookCalled.get());
+    }
+
+    @Test
+    public void testCommitHooks() {
+        byte[] key = Hex.decode("3001");
+        AtomicBoolean published = new AtomicBoolean();
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            uow.beforeCommit(() -> {
+                // still open, the write joins the batch
+                assertSame(uow, UnitOfWork.current());
+                indexSource.put(key, Hex.decode("01"));
+                uow.afterCommit(() -> published.set(indexSource.get(key) != null));
+            });
+            try (UnitOfWork ignored = UnitOfWork.begin()) {
+                // nested scopes do not run the hooks
+            }
+            assertNull(indexSource.get(key));
+        }
+        assertNull(UnitOfWork.current());
+        assertArrayEquals(Hex.decode("01"), indexSource.get(key));
+        assertEquals(true, published.get());
+
+        AtomicBoolean skipped = new AtomicBoolean(true);
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            uow.beforeCommit(() -> skipped.set(false));
+            uow.setRollbackOnly();
+        }
+        assertEquals(true, skipped.get());
+    }
+
+    @Test
+    public void testPrefixLookupSeesStagedWrites() {
+        indexSource.put(Hex.decode("3001"), Hex.decode("01"));
+        indexSource.put(Hex.decode("3003"), Hex.decode("03"));
+        indexSource.put(Hex.decode("4001"), Hex.decode("04"));
+
+        try (UnitOfWork ignored = UnitOfWork.begin()) {
+            indexSource.put(Hex.decode("3002"), Hex.decode("02"));
+            indexSource.put(Hex.decode("3003"), Hex.decode("33"));
+            indexSource.delete(Hex.decode("3001"));
+            indexSource.put(Hex.decode("4002"), Hex.decode("05"));
+
+            List<byte[]> values = indexSource.prefixValueLookup(Hex.decode("30"));
+            assertEquals(2, values.size());
+            assertArrayEquals(Hex.decode("02"), values.get(0));
+            assertArrayEquals(Hex.decode("33"), values.get(1));
+        }
+        assertEquals(2, indexSource.prefixValueLookup(Hex.decode("30")).size());
+        assertEquals(2, indexSource.prefixValueLookup(Hex.decode("40")).size());
+    }
+}
@@ -27,11 +27,13 @@ package io.xdag.db.store;
 import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
 import io.xdag.core.Block;
+import io.xdag.core.BlockInfo;
 import io.xdag.core.XAmount;
 import io.xdag.core.XdagBlock;
 import io.xdag.core.XdagStats;
 import io.xdag.db.BlockStore;
 import io.xdag.db.rocksdb.*;
+import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.bouncycastle.util.encoders.Hex;
 import io.xdag.crypto.keys.ECKeyPair;
@@ -40,12 +42,26 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import io.xdag.utils.BytesUtils;
+import io.xdag.utils.FileUtils;
+import io.xdag.utils.XdagTime;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static io.xdag.BlockBuilder.generateAddressBlock;
+import static io.xdag.config.Constants.BI_APPLIED;
+import static io.xdag.config.Constants.BI_MAIN;
+import static io.xdag.config.Constants.BI_MAIN_CHAIN;
+import static io.xdag.config.Constants.BI_MAIN_REF;
+import static io.xdag.config.Constants.BI_REF;
 import static io.xdag.utils.BytesUtils.equalBytes;
 import static org.junit.Assert.*;
 
@@ -115,6 +131,114 @@ public class BlockStoreImplTest {
         assertArrayEquals(block.toBytes(), storedBlock.toBytes());
     }
 
+    @Test
+    public void testSaveBlockInSegments() throws Exception {
+        RawBlockSegmentStore segments = new RawBlockSegmentStore(root.newFolder().toPath(), true);
+        BlockStore bs = new BlockStoreImpl(indexSource, timeSource, blockSource, TxHistorySource,
+                new BlockCache(0, 0), segments);
+        bs.start();
+        Block block = generateAddressBlock(config, ECKeyPair.generate(), System.currentTimeMillis());
+        bs.saveBlock(block);
+        assertEquals(RawBlockSegmentStore.LOCATION_SIZE, blockSource.get(block.getHashLow().toArray()).length);
+        assertEquals(1, segments.segmentCount());
+
+        Block storedBlock = bs.getBlockByHash(block.getHashLow(), true);
+        assertArrayEquals(block.toBytes(), storedBlock.toBytes());
+        assertEquals(1, bs.getBlocksByTime(block.getTimestamp()).size());
+    }
+
+    @Test
+    public void testPruneRawBlocks() throws Exception {
+        BlockStoreImpl bs = new BlockStoreImpl(indexSource, timeSource, blockSource, TxHistorySource);
+        bs.start();
+        long time = System.currentTimeMillis();
+        Block applied = generateAddressBlock(config, ECKeyPair.generate(), time);
+        Block main = generateAddressBlock(config, ECKeyPair.generate(), time);
+        Block pending = generateAddressBlock(config, ECKeyPair.generate(), time);
+        Block funded = generateAddressBlock(config, ECKeyPair.generate(), time);
+        applied.getInfo().setFlags(BI_APPLIED | BI_REF | BI_MAIN_REF);
+        main.getInfo().setFlags(BI_APPLIED | BI_MAIN | BI_MAIN_CHAIN | BI_REF | BI_MAIN_REF);
+        funded.getInfo().setFlags(BI_APPLIED | BI_REF | BI_MAIN_REF);
+        funded.getInfo().setAmount(XAmount.of(1));
+        bs.saveBlock(applied);
+        bs.saveBlock(main);
+        bs.saveBlock(pending);
+        bs.saveBlock(funded);
+
+        List<String> files = FileUtils.getFileName(applied.getTimestamp());
+        String file = files.getLast();
+        int slot = (int) ((applied.getTimestamp() >> (40 - 8 * (files.size() - 1))) & 0xff);
+        MutableBytes sums = bs.getSums(file);
+        long sumBefore = sums.getLong(slot * 16, ByteOrder.LITTLE_ENDIAN);
+        long sizeBefore = sums.getLong(slot * 16 + 8, ByteOrder.LITTLE_ENDIAN);
+
+        long beforeTime = XdagTime.getEndOfEpoch(applied.getTimestamp()) + 1;
+        assertEquals(1, bs.pruneRawBlocks(beforeTime, RawBlockPruner.PRUNE_BATCH));
+        // the sums no longer count the pruned block
+        sums = bs.getSums(file);
+        assertEquals(sumBefore - applied.getXdagBlock().getSum(), sums.getLong(slot * 16, ByteOrder.LITTLE_ENDIAN));
+        assertEquals(sizeBefore - 512, sums.getLong(slot * 16 + 8, ByteOrder.LITTLE_ENDIAN));
+        assertEquals(beforeTime, bs.getRawPrunedTime());
+        assertNull(bs.getBlockByHash(applied.getHashLow(), true));
+        assertNotNull(bs.getBlockInfoByHash(applied.getHashLow()));
+        assertNotNull(bs.getBlockByHash(main.getHashLow(), true));
+        assertNotNull(bs.getBlockByHash(pending.getHashLow(), true));
+        // a block with an amount can still be spent, its body stays
+        assertNotNull(bs.getBlockByHash(funded.getHashLow(), true));
+        assertEquals(3, bs.getBlocksByTime(applied.getTimestamp()).size());
+        assertEquals(0, bs.pruneRawBlocks(beforeTime, RawBlockPruner.PRUNE_BATCH));
+
+        // the pruned time survives a restart
+        BlockStoreImpl reopened = new BlockStoreImpl(indexSource, timeSource, blockSource, TxHistorySource);
+        reopened.start();
+        assertEquals(beforeTime, reopened.getRawPrunedTime());
+    }
+
+    @Test
+    public void testSaveBlockInfoPublishesAfterCommit() throws Exception {
+        BlockStoreImpl bs = new BlockStoreImpl(indexSource, timeSource, blockSource, TxHistorySource);
+        bs.start();
+        Block block = generateAddressBlock(config, ECKeyPair.generate(), System.currentTimeMillis());
+        bs.saveBlock(block);
+        Bytes32 hashlow = block.getHashLow();
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            BlockInfo info = bs.getBlockInfo(hashlow);
+            info.setFlags(info.getFlags() | BI_APPLIED);
+            bs.saveBlockInfo(info);
+            assertNotEquals(0, bs.getBlockInfo(hashlow).getFlags() & BI_APPLIED);
+            // other threads keep the committed info
+            assertEquals(0, CompletableFuture.supplyAsync(() -> bs.getBlockInfo(hashlow).getFlags()).get() & BI_APPLIED);
+            uow.setRollbackOnly();
+        }
+        assertEquals(0, bs.getBlockInfo(hashlow).getFlags() & BI_APPLIED);
+
+        try (UnitOfWork ignored = UnitOfWork.begin()) {
+            BlockInfo info = bs.getBlockInfo(hashlow);
+            info.setFlags(info.getFlags() | BI_APPLIED);
+            bs.saveBlockInfo(info);
+        }
+        assertNotEquals(0, bs.getBlockInfo(hashlow).getFlags() & BI_APPLIED);
+    }
+
+    @Test
+    public void testBlocksByHeightSkipStaleIndexEntries() throws Exception {
+        BlockStoreImpl bs = new BlockStoreImpl(indexSource, timeSource, blockSource, TxHistorySource);
+        bs.start();
+        long time = System.currentTimeMillis();
+        Block main = generateAddressBlock(config, ECKeyPair.generate(), time);
+        Block moved = generateAddressBlock(config, ECKeyPair.generate(), time + 1);
+        bs.saveBlock(main);
+        bs.saveBlock(moved);
+        main.getInfo().setHeight(1);
+        bs.saveBlockInfo(main.getInfo());
+        // the in-memory index still points at a block a reorg took the height from
+        bs.setMainHeight(1, moved.getHashLow().toArray());
+
+        List<Block> blocks = bs.getBlocksByHeight(1, 1);
+        assertEquals(1, blocks.size());
+        assertEquals(main.getHashLow(), blocks.get(0).getHashLow());
+    }
+
     @Test
     public void testSaveBlockInfo()
             throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
@@ -130,6 +254,63 @@ public class BlockStoreImplTest {
         bs.saveBlockInfo(block.getInfo());
         assertEquals(XAmount.TEN, bs.getBlockInfoByHash(block.getHashLow()).getFee());
     }
+    @Test
+    public void testBlockCache()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        BlockStoreImpl bs = new BlockStoreImpl(indexSource, timeSource, blockSource, TxHistorySource, new BlockCache(1, 1));
+        bs.start();
+        long time = System.currentTimeMillis();
+        ECKeyPair key = ECKeyPair.generate();
+        Block block = generateAddressBlock(config, key, time);
+        bs.saveBlock(block);
+
+        Block first = bs.getBlockByHash(block.getHashLow(), true);
+        Block second = bs.getBlockByHash(block.getHashLow(), true);
+        assertArrayEquals(block.toBytes(), second.toBytes());
+        assertEquals(1, bs.getBlockCache().getRawStats().hitCount());
+        assertTrue(bs.getBlockCache().getInfoStats().hitCount() >= 2);
+
+        // mutations on returned blocks must not leak into the cache
+        first.getInfo().setHeight(100);
+        assertEquals(0, bs.getBlockInfoByHash(block.getHashLow()).getInfo().getHeight());
+
+        // write-through keeps the cache coherent
+        first.getInfo().setFee(XAmount.TEN);
+        bs.saveBlockInfo(first.getInfo());
+        assertEquals(100, bs.getBlockInfoByHash(block.getHashLow()).getInfo().getHeight());
+        assertEquals(100, bs.getBlockByHash(block.getHashLow(), true).getInfo().getHeight());
+    }
+
+    @Test
+    public void testCacheLoadDoesNotOverwriteLaterWrite() throws Exception {
+        BlockCache cache = new BlockCache(1, 1);
+        Block block = generateAddressBlock(config, ECKeyPair.generate(), System.currentTimeMillis());
+        Bytes32 hashlow = block.getHashLow();
+        BlockInfo stale = block.getInfo().copy();
+        BlockInfo written = block.getInfo().copy();
+        written.setHeight(7);
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CompletableFuture<BlockInfo> load = CompletableFuture.supplyAsync(() -> cache.getInfo(hashlow, h -> {
+            loading.countDown();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return stale;
+        }));
+        loading.await();
+        // the write lands while the load that read the old info is still running
+        cache.putInfo(written);
+        assertEquals(0, load.get().getHeight());
+        assertEquals(7, cache.getInfo(hashlow).getHeight());
+
+        // a fill from an older read keeps the written info
+        assertEquals(7, cache.fillInfo(stale).getHeight());
+        assertEquals(7, cache.getInfo(hashlow).getHeight());
+    }
+
     @Test
     public void testSaveOurBlock()
             throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
@@ -172,6 +353,35 @@ public class BlockStoreImplTest {
         bs.loadSum(time, time + 64 * 1024, sums);
     }
 
+    @Test
+    public void testSumsCounters() throws Exception {
+        BlockStore bs = new BlockStoreImpl(indexSource, timeSource, blockSource,TxHistorySource);
+        bs.start();
+        String file = BlockStore.SUM_FILE_NAME;
+        bs.updateSum(file, 5, 512, 3);
+        try (UnitOfWork ignored = UnitOfWork.begin()) {
+            bs.updateSum(file, 7, 512, 3);
+            bs.updateSum(file, -1, 512, 255);
+        }
+        MutableBytes sums = bs.getSums(file);
+        assertEquals(4096, sums.size());
+        assertEquals(12, sums.getLong(3 * 16, ByteOrder.LITTLE_ENDIAN));
+        assertEquals(1024, sums.getLong(3 * 16 + 8, ByteOrder.LITTLE_ENDIAN));
+        assertEquals(-1, sums.getLong(255 * 16, ByteOrder.LITTLE_ENDIAN));
+        assertEquals(0, sums.getLong(0, ByteOrder.LITTLE_ENDIAN));
+        assertNull(bs.getSums("00/" + file));
+
+        // legacy whole-file values are converted on start
+        byte[] legacyKey = BytesUtils.merge(BlockStore.SUMS_BLOCK_INFO, "01/sums.dat".getBytes(StandardCharsets.UTF_8));
+        indexSource.put(legacyKey, LegacyKryoCodec.serialize(sums.toArray()));
+        bs.start();
+        assertNull(indexSource.get(legacyKey));
+        assertEquals(sums, bs.getSums("01/sums.dat"));
+
+        bs.putSums("01/sums.dat", MutableBytes.create(4096));
+        assertNull(bs.getSums("01/sums.dat"));
+    }
+
     @Test
     public void getBlockByTimeTest() {
         BlockStore blockStore = new BlockStoreImpl(indexSource, timeSource, blockSource,TxHistorySource);
@@ -193,5 +403,13 @@ public class BlockStoreImplTest {
 
         assertEquals(block, blocks.get(0));
 
+        try (Stream<Block> stream = blockStore.streamBlocksByTime(time - 0x20000, time + 1)) {
+            assertEquals(List.of(block), stream.collect(Collectors.toList()));
+        }
+        try (Stream<Block> stream = blockStore.streamBlocksByTime(time + 0x10000, time + 0x20000)) {
+            assertEquals(0, stream.count());
+        }
+        assertEquals(1, blockStore.getBlocksUsedTime(time, time + 1).size());
+
     }
 }
@@ -26,11 +26,11 @@ package io.xdag.net;
 
 import static org.junit.Assert.assertEquals;
 
-import java.math.BigInteger;
 
 import io.xdag.core.XdagStats;
 import io.xdag.net.message.consensus.SumRequestMessage;
 import io.xdag.utils.BytesUtils;
+import io.xdag.utils.UInt128;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.bouncycastle.util.encoders.Hex;
@@ -93,7 +93,7 @@ public class NetTest {
         long endtime = starttime + 10000;
 
         XdagStats stats = new XdagStats();
-        stats.maxdifficulty = BigInteger.TWO;
+        stats.maxdifficulty = UInt128.valueOf(2);
         stats.totalnblocks = 10001;
         stats.totalnmain = 1001;
         stats.totalnhosts = 11;
@@ -109,7 +109,7 @@ public class NetTest {
         assertEquals(endtime, sumRequestMessage.getEndtime());
 
         XdagStats xdagStats = sumRequestMessage.getXdagStats();
-        assertEquals(BigInteger.TWO, xdagStats.maxdifficulty);
+        assertEquals(UInt128.valueOf(2), xdagStats.maxdifficulty);
         assertEquals(stats.totalnblocks, xdagStats.totalnblocks);
         assertEquals(stats.totalnmain, xdagStats.totalnmain);
         assertEquals(stats.totalnhosts, xdagStats.totalnhosts);
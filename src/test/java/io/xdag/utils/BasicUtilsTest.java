@@ -35,6 +35,8 @@ import org.bouncycastle.util.encoders.Hex;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -85,6 +87,20 @@ public class BasicUtilsTest {
         assertEquals(1024.0, BasicUtils.amount2xdag(4398046511104L), 0.0);
     }
 
+    @Test
+    public void testGetDiffByHash() {
+        BigInteger max = new BigInteger("ffffffffffffffffffffffffffffffff", 16);
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            byte[] raw = new byte[32];
+            random.nextBytes(raw);
+            raw[0] = 0;
+            Bytes32 hash = Bytes32.wrap(raw);
+            BigInteger expected = max.divide(new BigInteger(1, Arrays.copyOfRange(raw, 0, 12)));
+            assertEquals(expected, getDiffByHash(hash).toBigInteger());
+        }
+    }
+
     @Test
     public void testHash2Address() {
         String news = "42cLWCMWZDKPZM8WJfpmI7Lbe3p83U2l";
@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.utils;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Difficulty arithmetic of {@code BlockchainImpl.calculateBlockDiff} with the former BigInteger path and with
+ * {@link UInt128}: the block's own difficulty from its hash, then add and compare against every linked block.
+ * <p>
+ * Not a unit test, run it with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.xdag.utils.DifficultyBenchmark} or from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DifficultyBenchmark {
+
+    private static final int LINKS = 15;
+    private static final BigInteger MAX = new BigInteger("ffffffffffffffffffffffffffffffff", 16);
+
+    private Bytes32 hash;
+    private BigInteger[] bigLinks;
+    private UInt128[] links;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        byte[] raw = new byte[32];
+        random.nextBytes(raw);
+        // a mined hash starts with zero bits
+        raw[0] = raw[1] = raw[2] = 0;
+        hash = Bytes32.wrap(raw);
+        bigLinks = new BigInteger[LINKS];
+        links = new UInt128[LINKS];
+        for (int i = 0; i < LINKS; i++) {
+            bigLinks[i] = new BigInteger(72, random);
+            links[i] = UInt128.valueOf(bigLinks[i]);
+        }
+    }
+
+    @Benchmark
+    public BigInteger bigIntegerBlockDiff() {
+        MutableBytes data = MutableBytes.create(16);
+        data.set(4, hash.slice(0, 12));
+        BigInteger cuDiff = MAX.divide(new BigInteger(data.toUnprefixedHexString(), 16));
+        BigInteger maxDiff = cuDiff;
+        for (BigInteger link : bigLinks) {
+            BigInteger curDiff = link.add(cuDiff);
+            if (curDiff.compareTo(maxDiff) > 0) {
+                maxDiff = curDiff;
+            }
+        }
+        return maxDiff;
+    }
+
+    @Benchmark
+    public UInt128 uint128BlockDiff() {
+        UInt128 cuDiff = BasicUtils.getDiffByHash(hash);
+        UInt128 maxDiff = cuDiff;
+        for (UInt128 link : links) {
+            UInt128 curDiff = link.add(cuDiff);
+            if (curDiff.compareTo(maxDiff) > 0) {
+                maxDiff = curDiff;
+            }
+        }
+        return maxDiff;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DifficultyBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes32;
+import org.junit.Test;
+
+public class HashKeyMapTest {
+
+    private static List<Bytes32> randomHashes(Random random, int count) {
+        List<Bytes32> hashes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MutableBytes32 hash = MutableBytes32.create();
+            if (i % 4 == 0) {
+                // sparse keys collide in the low bits
+                hash.setInt(28, i);
+            } else {
+                byte[] bytes = new byte[32];
+                random.nextBytes(bytes);
+                hash.set(0, Bytes32.wrap(bytes));
+            }
+            hashes.add(hash.copy());
+        }
+        return hashes;
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(1);
+        List<Bytes32> hashes = randomHashes(random, 2000);
+        HashKeyMap<Integer> map = new HashKeyMap<>();
+        Map<Bytes32, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 500_000; i++) {
+            Bytes32 hash = hashes.get(random.nextInt(hashes.size()));
+            int op = random.nextInt(3);
+            if (op == 0) {
+                int value = random.nextInt();
+                assertEquals(expected.put(hash, value), map.put(HashKey.of(hash), value));
+            } else if (op == 1) {
+                assertEquals(expected.remove(hash), map.remove(hash));
+            } else {
+                assertEquals(expected.get(hash), map.get(HashKey.of(hash)));
+                assertEquals(expected.containsKey(hash), map.containsKey(hash));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        Map<Bytes32, Integer> entries = new HashMap<>();
+        map.forEach((key, value) -> entries.put(key.toBytes32(), value));
+        assertEquals(expected, entries);
+    }
+
+    @Test
+    public void testRemoveIf() {
+        HashKeyMap<Integer> map = new HashKeyMap<>(4);
+        List<Bytes32> hashes = randomHashes(new Random(2), 100);
+        for (int i = 0; i < hashes.size(); i++) {
+            map.put(hashes.get(i), i);
+        }
+        assertEquals(50, map.removeIf((key, value) -> value % 2 == 0));
+        assertEquals(50, map.size());
+        for (int i = 0; i < hashes.size(); i++) {
+            assertEquals(i % 2 != 0, map.containsKey(hashes.get(i)));
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(hashes.get(1)));
+    }
+
+    @Test
+    public void testHashKey() {
+        MutableBytes32 hash = MutableBytes32.create();
+        hash.setLong(0, 0x0102030405060708L);
+        hash.setLong(24, -1L);
+        HashKey key = HashKey.of(hash);
+        assertEquals(hash, key.toBytes32());
+        assertTrue(key.matches(hash));
+        assertEquals(key, HashKey.of(hash.toArray()));
+        assertEquals(key.hashCode(), HashKey.of(hash.copy()).hashCode());
+
+        HashKey low = HashKey.ofHashLow(hash);
+        assertFalse(low.equals(key));
+        hash.setLong(0, 0);
+        assertEquals(low, HashKey.of(hash));
+    }
+}
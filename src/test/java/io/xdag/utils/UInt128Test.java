@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+
+public class UInt128Test {
+
+    private static final BigInteger TWO_128 = BigInteger.ONE.shiftLeft(128);
+
+    private static BigInteger random(Random random) {
+        int bits = random.nextInt(129);
+        if (random.nextInt(8) == 0) {
+            // runs of ones hit the carry and normalization edge cases
+            return BigInteger.ONE.shiftLeft(bits).subtract(BigInteger.ONE);
+        }
+        return new BigInteger(bits, random);
+    }
+
+    @Test
+    public void testMatchesBigInteger() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200_000; i++) {
+            BigInteger x = random(random);
+            BigInteger y = random(random);
+            UInt128 ux = UInt128.valueOf(x);
+            UInt128 uy = UInt128.valueOf(y);
+
+            assertEquals(x, ux.toBigInteger());
+            assertEquals(x.toString(16), ux.toHexString());
+            assertEquals(Integer.signum(x.compareTo(y)), Integer.signum(ux.compareTo(uy)));
+            assertEquals(ux, UInt128.fromBytes(ux.toBytes(), 0));
+            if (x.add(y).compareTo(TWO_128) < 0) {
+                assertEquals(x.add(y), ux.add(uy).toBigInteger());
+            }
+            if (y.signum() != 0) {
+                assertEquals(x.divide(y), ux.divide(uy).toBigInteger());
+                assertEquals(TWO_128.subtract(BigInteger.ONE).divide(y), UInt128.maxDivide(uy).toBigInteger());
+            }
+        }
+    }
+
+    @Test
+    public void testBytes() {
+        UInt128 value = UInt128.of(0x0102030405060708L, 0x090a0b0c0d0e0f10L);
+        byte[] expected = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            expected[i] = (byte) (i + 1);
+        }
+        assertArrayEquals(expected, value.toBytes());
+        assertEquals(value, UInt128.fromBytes(expected));
+        assertEquals(UInt128.valueOf(0x0102), UInt128.fromBytes(new byte[]{1, 2}));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testAddOverflow() {
+        UInt128.MAX_VALUE.add(UInt128.ONE);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testDivideByZero() {
+        UInt128.ONE.divide(UInt128.ZERO);
+    }
+
+    @Test
+    public void testAddCarry() {
+        UInt128 sum = UInt128.of(0, -1L).add(UInt128.ONE);
+        assertEquals(UInt128.of(1, 0), sum);
+        assertTrue(sum.compareTo(UInt128.of(0, -1L)) > 0);
+    }
+}
@@ -106,6 +106,23 @@ public class WalletTest {
         assertEquals(k2, key2);
     }
 
+    @Test
+    public void testGetAccountIndex() {
+        wallet.unlock(pwd);
+        wallet.setAccounts(Collections.emptyList());
+        ECKeyPair key1 = ECKeyPair.generate();
+        ECKeyPair key2 = ECKeyPair.generate();
+        wallet.addAccounts(Arrays.asList(key1, key2));
+        assertEquals(0, wallet.getAccountIndex(key1.getPublicKey()));
+        assertEquals(1, wallet.getAccountIndex(AddressUtils.toBytesAddress(key2).toArray()));
+        assertEquals(-1, wallet.getAccountIndex(ECKeyPair.generate().getPublicKey()));
+
+        wallet.removeAccount(key1);
+        assertEquals(-1, wallet.getAccountIndex(key1.getPublicKey()));
+        assertEquals(0, wallet.getAccountIndex(key2.getPublicKey()));
+        assertEquals(key2, wallet.getDefKey());
+    }
+
     @Test
     public void testFlush() throws InterruptedException {
         File file = wallet.getFile();